@@ -0,0 +1,182 @@
+package com.example.onlineshopping.admission;
+
+import com.example.onlineshopping.security.AuthenticatedUser;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Turns write requests away early under overload instead of letting them queue for threads and connections:
+// - order placement (including cart checkout), registration and login have a token bucket per client (the
+//   signed-in user for orders, else the client IP) and 429 + Retry-After when it is empty;
+// - each of those groups, and all writes together, have a concurrency limit, and 503 + Retry-After when it is full.
+// Login (a deliberately slow password hash) and bulk admin writes (imports, rollup rebuilds, shard rebalancing,
+// which run for minutes) are capped by their own groups only, outside "writes": a login flood or a long import
+// never takes the slots order placement needs.
+// Reads (GET, HEAD, OPTIONS) are never limited here. Because writes can only ever hold "writes" worth of threads
+// and connections (plus the login and bulk caps), the rest stays available to catalog reads however hard writes are pushed.
+// Runs after TokenAuthenticationFilter, which identifies the caller. Behind a proxy, set
+// server.forward-headers-strategy so the client IP is the caller's rather than the proxy's.
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    private final AdmissionGroup orders;
+    private final AdmissionGroup registration;
+    private final AdmissionGroup writes;
+    private final AdmissionGroup login;
+    private final AdmissionGroup bulk;
+
+    public AdmissionControlFilter(AdmissionGroup orders, AdmissionGroup registration, AdmissionGroup writes,
+                                  AdmissionGroup login, AdmissionGroup bulk) {
+        this.orders = orders;
+        this.registration = registration;
+        this.writes = writes;
+        this.login = login;
+        this.bulk = bulk;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String method = request.getMethod();
+        if ("GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        AdmissionGroup group = groupFor(request);
+        if (group != null) {
+            long waitNanos = group.checkRate(clientOf(request, group), System.nanoTime());
+            if (waitNanos > 0) {
+                reject(response, HttpStatus.TOO_MANY_REQUESTS, Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L)));
+                return;
+            }
+            if (!group.tryEnter()) {
+                reject(response, HttpStatus.SERVICE_UNAVAILABLE, 1);
+                return;
+            }
+        }
+        boolean shared = group != login && group != bulk; // Those two are capped on their own only
+        if (shared && !writes.tryEnter()) {
+            if (group != null) {
+                group.exit();
+            }
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, 1);
+            return;
+        }
+        if (group != null) {
+            group.recordAdmitted();
+        }
+        if (shared) {
+            writes.recordAdmitted();
+        }
+
+        Permit permit = new Permit(group, shared);
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            async = request.isAsyncStarted();
+            if (async) {
+                // createOrder completes on another thread (group commit): hold the permit until the response is done
+                request.getAsyncContext().addListener(permit);
+            }
+        } finally {
+            if (!async) {
+                permit.release();
+            }
+        }
+    }
+
+    public List<AdmissionGroup> getGroups() {
+        return Arrays.asList(orders, registration, writes, login, bulk);
+    }
+
+    private AdmissionGroup groupFor(HttpServletRequest request) {
+        if (!"POST".equals(request.getMethod())) {
+            return null;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if (path.equals("/api/orders") || path.equals("/api/cart/checkout")) {
+            return orders;
+        }
+        if (path.equals("/api/users/register")) {
+            return registration;
+        }
+        if (path.equals("/api/users/login")) {
+            return login;
+        }
+        if (path.equals("/api/products/imports") || path.equals("/api/rollups/sales/rebuild") || path.equals("/api/orders/shards/rebalance")) {
+            return bulk;
+        }
+        return null;
+    }
+
+    private String clientOf(HttpServletRequest request, AdmissionGroup group) {
+        AuthenticatedUser caller = (AuthenticatedUser) request.getAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE);
+        if (caller != null && group == orders) {
+            return "user:" + caller.getUserId();
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    // No error page dispatch: a shed request should cost as little as possible
+    private static void reject(HttpServletResponse response, HttpStatus status, long retryAfterSeconds) {
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+    }
+
+    // Released exactly once, whether the request ends on this thread or asynchronously
+    private final class Permit implements AsyncListener {
+        private final AdmissionGroup group;
+        private final boolean shared;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Permit(AdmissionGroup group, boolean shared) {
+            this.group = group;
+            this.shared = shared;
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                if (shared) {
+                    writes.exit();
+                }
+                if (group != null) {
+                    group.exit();
+                }
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this); // Listeners are dropped when async is restarted
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.onlineshopping.admission;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Endpoints that share limits: at most maxConcurrent requests in flight, and (optionally) a token bucket per client
+public class AdmissionGroup {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final double ratePerSecond; // Per client; 0 = no per-client limit
+    private final int burst;
+    private final int maxTrackedClients;
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+
+    public AdmissionGroup(String name, int maxConcurrent, double ratePerSecond, int burst, int maxTrackedClients) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.ratePerSecond = ratePerSecond;
+        this.burst = Math.max(1, burst);
+        this.maxTrackedClients = maxTrackedClients;
+    }
+
+    // 0 if the client may go ahead, otherwise nanoseconds until it may try again
+    long checkRate(String client, long nowNanos) {
+        if (ratePerSecond <= 0) {
+            return 0;
+        }
+        TokenBucket bucket = buckets.get(client);
+        if (bucket == null) {
+            if (buckets.size() >= maxTrackedClients) {
+                forgetFullBuckets(nowNanos);
+            }
+            bucket = buckets.computeIfAbsent(client, key -> new TokenBucket(ratePerSecond, burst, nowNanos));
+        }
+        long wait = bucket.tryAcquire(nowNanos);
+        if (wait > 0) {
+            rateLimited.increment();
+        }
+        return wait;
+    }
+
+    // Lock-free counting semaphore that never waits: a full group turns requests away at once
+    boolean tryEnter() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= maxConcurrent) {
+                shed.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void exit() {
+        inFlight.decrementAndGet();
+    }
+
+    void recordAdmitted() {
+        admitted.increment();
+    }
+
+    private void forgetFullBuckets(long nowNanos) {
+        Iterator<TokenBucket> it = buckets.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().isFull(nowNanos)) {
+                it.remove();
+            }
+        }
+    }
+
+    public String getName() { return name; }
+    public int getMaxConcurrent() { return maxConcurrent; }
+    public double getRatePerSecond() { return ratePerSecond; }
+    public int getInFlight() { return inFlight.get(); }
+    public int getTrackedClients() { return buckets.size(); }
+    public long getAdmitted() { return admitted.sum(); }
+    public long getRateLimited() { return rateLimited.sum(); }
+    public long getShed() { return shed.sum(); }
+}
@@ -0,0 +1,42 @@
+package com.example.onlineshopping.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Rate limit of one client as a token bucket, kept in a single long: the "theoretical arrival time" of the next
+// request (generic cell rate algorithm). Taking a token is one CAS, with no lock and no refill thread.
+public class TokenBucket {
+
+    private final long intervalNanos; // Time to earn one token
+    private final long burstNanos;    // How far the arrival time may run ahead of now: burst tokens' worth
+    private final AtomicLong theoreticalArrival;
+
+    public TokenBucket(double tokensPerSecond, int burst, long nowNanos) {
+        if (tokensPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Need tokensPerSecond > 0 and burst >= 1");
+        }
+        this.intervalNanos = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / tokensPerSecond));
+        this.burstNanos = intervalNanos * burst;
+        this.theoreticalArrival = new AtomicLong(nowNanos); // Starts full
+    }
+
+    // 0 if a token was taken, otherwise how many nanoseconds until one will be there
+    public long tryAcquire(long nowNanos) {
+        while (true) {
+            long arrival = theoreticalArrival.get();
+            long next = (arrival - nowNanos > 0 ? arrival : nowNanos) + intervalNanos; // nanoTime values only compare by difference
+            long wait = next - nowNanos - burstNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (theoreticalArrival.compareAndSet(arrival, next)) {
+                return 0;
+            }
+        }
+    }
+
+    // Full again: the client has been quiet long enough that forgetting the bucket changes nothing
+    public boolean isFull(long nowNanos) {
+        return theoreticalArrival.get() - nowNanos <= 0;
+    }
+}
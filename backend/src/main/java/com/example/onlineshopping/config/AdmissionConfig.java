@@ -0,0 +1,46 @@
+package com.example.onlineshopping.config;
+
+import com.example.onlineshopping.admission.AdmissionControlFilter;
+import com.example.onlineshopping.admission.AdmissionGroup;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Per-client rate limits and concurrency caps for write endpoints (see AdmissionControlFilter)
+@Configuration
+@ConditionalOnProperty(name = "app.admission.enabled", havingValue = "true", matchIfMissing = true)
+public class AdmissionConfig {
+
+    @Bean
+    public AdmissionControlFilter admissionControlFilter(
+            @Value("${app.admission.writes.max-concurrent:6}") int writesMaxConcurrent,
+            @Value("${app.admission.orders.max-concurrent:6}") int ordersMaxConcurrent,
+            @Value("${app.admission.orders.rate-per-second:5}") double ordersRate,
+            @Value("${app.admission.orders.burst:10}") int ordersBurst,
+            @Value("${app.admission.registration.max-concurrent:2}") int registrationMaxConcurrent,
+            @Value("${app.admission.registration.rate-per-second:0.2}") double registrationRate,
+            @Value("${app.admission.registration.burst:5}") int registrationBurst,
+            @Value("${app.admission.login.max-concurrent:2}") int loginMaxConcurrent,
+            @Value("${app.admission.login.rate-per-second:1}") double loginRate,
+            @Value("${app.admission.login.burst:10}") int loginBurst,
+            @Value("${app.admission.bulk.max-concurrent:1}") int bulkMaxConcurrent,
+            @Value("${app.admission.max-tracked-clients:100000}") int maxTrackedClients) {
+        return new AdmissionControlFilter(
+                new AdmissionGroup("orders", ordersMaxConcurrent, ordersRate, ordersBurst, maxTrackedClients),
+                new AdmissionGroup("registration", registrationMaxConcurrent, registrationRate, registrationBurst, maxTrackedClients),
+                new AdmissionGroup("writes", writesMaxConcurrent, 0, 1, 0),
+                new AdmissionGroup("login", loginMaxConcurrent, loginRate, loginBurst, maxTrackedClients),
+                new AdmissionGroup("bulk", bulkMaxConcurrent, 0, 1, 0));
+    }
+
+    // Right after the token filter, so the caller is known, and before anything that touches the database
+    @Bean
+    public FilterRegistrationBean<AdmissionControlFilter> admissionControlFilterRegistration(AdmissionControlFilter filter) {
+        FilterRegistrationBean<AdmissionControlFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns("/api/*");
+        registration.setOrder(SecurityConfig.TOKEN_FILTER_ORDER + 1);
+        return registration;
+    }
+}
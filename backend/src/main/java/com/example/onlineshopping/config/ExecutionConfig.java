@@ -0,0 +1,36 @@
+package com.example.onlineshopping.config;
+
+import com.example.onlineshopping.execution.OffloadingHandlerAdapter;
+import com.example.onlineshopping.execution.RequestExecutor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcRegistrations;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+// app.web.execution.mode=async: controller methods that use the database run on the RequestExecutor rather than
+// the Tomcat thread (see OffloadingHandlerAdapter). In the default blocking mode none of this exists.
+@Configuration
+@ConditionalOnProperty(name = "app.web.execution.mode", havingValue = "async")
+public class ExecutionConfig {
+
+    @Bean(destroyMethod = "close")
+    public RequestExecutor requestExecutor(@Value("${app.web.execution.threads:10}") int threads,
+                                           @Value("${app.web.execution.max-queued:200}") int maxQueued,
+                                           @Value("${app.web.execution.virtual-threads:false}") boolean virtualThreads) {
+        return new RequestExecutor(threads, maxQueued, virtualThreads);
+    }
+
+    // Boot's MVC setup configures this adapter (converters, resolvers, interceptors) as it would its own
+    @Bean
+    public WebMvcRegistrations offloadingWebMvcRegistrations(RequestExecutor requestExecutor,
+                                                             @Value("${app.web.execution.timeout-ms:30000}") long timeoutMillis) {
+        return new WebMvcRegistrations() {
+            @Override
+            public RequestMappingHandlerAdapter getRequestMappingHandlerAdapter() {
+                return new OffloadingHandlerAdapter(requestExecutor, timeoutMillis);
+            }
+        };
+    }
+}
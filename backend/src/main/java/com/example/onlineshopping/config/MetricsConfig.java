@@ -0,0 +1,35 @@
+package com.example.onlineshopping.config;
+
+import com.example.onlineshopping.metrics.CountingDataSource;
+import com.example.onlineshopping.metrics.LocalOnlyFilter;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+@Configuration
+public class MetricsConfig {
+
+    // Count each statement and row at the DataSource that JPA, JdbcTemplate and the transaction manager all use.
+    // Only that bean: the pools behind it (replicas) would count the same statements twice
+    @Bean
+    public static BeanPostProcessor countingDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof DataSource && "dataSource".equals(beanName) ? new CountingDataSource((DataSource) bean) : bean;
+            }
+        };
+    }
+
+    // The metrics, and resetting them, are for operators on the host itself
+    @Bean
+    public FilterRegistrationBean<LocalOnlyFilter> metricsLocalOnlyFilter() {
+        FilterRegistrationBean<LocalOnlyFilter> registration = new FilterRegistrationBean<>(new LocalOnlyFilter());
+        registration.addUrlPatterns("/api/metrics", "/api/metrics/*");
+        registration.setOrder(SecurityConfig.TOKEN_FILTER_ORDER - 1); // Before anything looks at the caller
+        return registration;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.onlineshopping.config;
+
+import com.example.onlineshopping.datasource.OrderIdAllocator;
+import com.example.onlineshopping.datasource.OrderShard;
+import com.example.onlineshopping.datasource.OrderShardRebalancer;
+import com.example.onlineshopping.datasource.OrderShards;
+import com.example.onlineshopping.metrics.CountingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+// Where orders live. Without app.orders.shards.urls the primary is the only shard and nothing changes;
+// with it, each URL gets its own pool (not a DataSource bean, so Boot's primary DataSource stays as it is)
+// and the orders tables are created there if missing.
+@Configuration
+public class OrderShardingConfig {
+
+    @Bean(destroyMethod = "close")
+    public OrderShards orderShards(DataSource dataSource, NamedParameterJdbcTemplate namedParameterJdbcTemplate,
+                                   TransactionTemplate transactionTemplate,
+                                   @Value("${app.orders.shards.urls:}") String urls,
+                                   @Value("${app.orders.shards.retired-urls:}") String retiredUrls,
+                                   @Value("${app.orders.shards.username:}") String username,
+                                   @Value("${app.orders.shards.password:}") String password,
+                                   @Value("${app.orders.shards.max-pool-size:10}") int maxPoolSize,
+                                   @Value("${app.orders.shards.fan-out-threads:16}") int fanOutThreads,
+                                   @Value("${app.orders.shards.migrating:false}") boolean migrating) {
+        if (!StringUtils.hasText(urls)) {
+            return OrderShards.unsharded(new OrderShard("primary", dataSource, namedParameterJdbcTemplate, transactionTemplate));
+        }
+        List<OrderShard> shards = pools(urls, "order-shard-", username, password, maxPoolSize);
+        shards.forEach(OrderShard::createSchema);
+        // Retired shards already hold orders (the primary's own tables, when listed to move orders into the shards)
+        List<OrderShard> retired = pools(retiredUrls, "order-shard-retired-", username, password, maxPoolSize);
+        return new OrderShards(shards, retired, fanOutThreads, migrating);
+    }
+
+    private static List<OrderShard> pools(String urls, String namePrefix, String username, String password, int maxPoolSize) {
+        List<OrderShard> shards = new ArrayList<>();
+        for (String url : StringUtils.commaDelimitedListToStringArray(urls)) {
+            if (url.isBlank()) {
+                continue;
+            }
+            HikariDataSource pool = DataSourceBuilder.create().type(HikariDataSource.class)
+                    .url(url.trim()).username(username).password(password).build();
+            pool.setPoolName(namePrefix + shards.size());
+            pool.setMaximumPoolSize(maxPoolSize);
+            shards.add(OrderShard.of(pool.getPoolName(), new CountingDataSource(pool)));
+        }
+        return shards;
+    }
+
+    @Bean
+    public OrderIdAllocator orderIdAllocator(OrderShards orderShards, JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                             @Value("${app.orders.shards.id-block-size:100}") int blockSize) {
+        OrderIdAllocator allocator = new OrderIdAllocator(jdbcTemplate, transactionManager, blockSize);
+        if (orderShards.isSharded()) {
+            allocator.createTable();
+        }
+        return allocator;
+    }
+
+    @Bean
+    public OrderShardRebalancer orderShardRebalancer(@Value("${app.orders.shards.rebalance-batch-size:500}") int batchSize) {
+        return new OrderShardRebalancer(batchSize);
+    }
+}
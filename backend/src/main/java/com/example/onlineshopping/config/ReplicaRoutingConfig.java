@@ -0,0 +1,77 @@
+package com.example.onlineshopping.config;
+
+import com.example.onlineshopping.datasource.ReadYourWritesFilter;
+import com.example.onlineshopping.datasource.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+// Only active when replica URLs are configured; otherwise Boot's single pooled DataSource is used as before.
+// The primary pool keeps the usual spring.datasource.* and spring.datasource.hikari.* settings.
+@Configuration
+@ConditionalOnExpression("!'${app.datasource.replicas.urls:}'.trim().isEmpty()")
+public class ReplicaRoutingConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primary.setPoolName("primary");
+        return primary;
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(HikariDataSource primaryDataSource,
+                                                             @Value("${app.datasource.replicas.urls}") String urls,
+                                                             @Value("${app.datasource.replicas.username:}") String username,
+                                                             @Value("${app.datasource.replicas.password:}") String password,
+                                                             @Value("${app.datasource.replicas.max-pool-size:10}") int maxPoolSize) {
+        List<DataSource> replicas = new ArrayList<>();
+        for (String url : StringUtils.commaDelimitedListToStringArray(urls)) {
+            HikariDataSource replica = DataSourceBuilder.create().type(HikariDataSource.class)
+                    .url(url.trim()).username(username).password(password).build();
+            replica.setPoolName("replica-" + replicas.size());
+            replica.setMaximumPoolSize(maxPoolSize);
+            replica.setReadOnly(true);
+            replicas.add(replica);
+        }
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas);
+    }
+
+    // What JPA, JdbcTemplate and the transaction manager all use
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    // Spring holds a session's connection until the request ends by default; with open-in-view that would keep
+    // a request on whichever target its first transaction picked, so give it back after every transaction
+    @Bean
+    public HibernatePropertiesCustomizer releaseConnectionAfterTransactionCustomizer() {
+        return properties -> properties.put("hibernate.connection.handling_mode", "DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION");
+    }
+
+    @Bean
+    public FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter(
+            @Value("${app.datasource.replicas.read-your-writes-ms:2000}") long windowMillis) {
+        FilterRegistrationBean<ReadYourWritesFilter> registration = new FilterRegistrationBean<>(new ReadYourWritesFilter(windowMillis));
+        registration.addUrlPatterns("/api/*");
+        registration.setOrder(SecurityConfig.TOKEN_FILTER_ORDER + 2); // After admission control
+        return registration;
+    }
+}
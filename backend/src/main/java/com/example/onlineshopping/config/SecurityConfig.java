@@ -0,0 +1,24 @@
+package com.example.onlineshopping.config;
+
+import com.example.onlineshopping.security.TokenAuthenticationFilter;
+import com.example.onlineshopping.security.TokenService;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+@Configuration
+public class SecurityConfig {
+
+    // Filters that need to know the caller are ordered after this one
+    public static final int TOKEN_FILTER_ORDER = Ordered.LOWEST_PRECEDENCE - 100;
+
+    // Bearer tokens are checked on every API call; the filter itself never blocks anonymous requests
+    @Bean
+    public FilterRegistrationBean<TokenAuthenticationFilter> tokenAuthenticationFilter(TokenService tokenService) {
+        FilterRegistrationBean<TokenAuthenticationFilter> registration = new FilterRegistrationBean<>(new TokenAuthenticationFilter(tokenService));
+        registration.addUrlPatterns("/api/*");
+        registration.setOrder(TOKEN_FILTER_ORDER);
+        return registration;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.onlineshopping.config;
+
+import com.example.onlineshopping.startup.SchemaVersionCheck;
+import com.example.onlineshopping.startup.StartupWarmup;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.persistence.EntityManagerFactory;
+
+// Startup behaviour; the prod profile (application-prod.properties) turns all of it on
+@Configuration
+public class StartupConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "app.schema.check", havingValue = "version")
+    public SchemaVersionCheck schemaVersionCheck(EntityManagerFactory entityManagerFactory, JdbcTemplate jdbcTemplate,
+                                                 @Value("${app.schema.record:false}") boolean record,
+                                                 @Value("${spring.jpa.hibernate.ddl-auto:none}") String ddlAuto) {
+        return new SchemaVersionCheck(entityManagerFactory, jdbcTemplate, record, ddlAuto);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.startup.warmup.enabled", havingValue = "true")
+    public StartupWarmup startupWarmup(ApplicationContext context, JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+                                       @Value("${app.startup.warmup.products:50}") int products,
+                                       @Value("${app.startup.warmup.categories:20}") int categories,
+                                       @Value("${app.startup.warmup.rounds:2}") int rounds,
+                                       @Value("${app.startup.warmup.max-ms:20000}") long maxMillis) {
+        return new StartupWarmup(context, jdbcTemplate, objectMapper, products, categories, rounds, maxMillis);
+    }
+
+    // With spring.main.lazy-initialization, a bean is only created when something first needs it. Beans with
+    // scheduled jobs or event listeners must exist from the start (a stock flush or cache eviction that never runs
+    // is a bug, not a saving), so they stay eager; everything else, e.g. the admin controllers, waits for first use
+    @Bean
+    public static LazyInitializationExcludeFilter scheduledAndListeningBeansExcludeFilter() {
+        return (beanName, beanDefinition, beanType) -> beanType != null && !MethodIntrospector.selectMethods(beanType,
+                (MethodIntrospector.MetadataLookup<Boolean>) method -> AnnotatedElementUtils.hasAnnotation(method, Scheduled.class)
+                        || AnnotatedElementUtils.hasAnnotation(method, EventListener.class) ? Boolean.TRUE : null).isEmpty();
+    }
+}
@@ -1,19 +1,36 @@
 package com.example.onlineshopping.config;
 
+import com.example.onlineshopping.metrics.EndpointMetrics;
+import com.example.onlineshopping.metrics.RequestMetricsInterceptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
+    @Autowired
+    private ObjectProvider<EndpointMetrics> endpointMetrics; // Absent in web slice tests
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        EndpointMetrics metrics = endpointMetrics.getIfAvailable();
+        if (metrics != null) {
+            registry.addInterceptor(new RequestMetricsInterceptor(metrics)).addPathPatterns("/api/**");
+        }
+    }
+
     @Override
     public void addCorsMappings(CorsRegistry registry) {
         registry.addMapping("/api/**") // Configure CORS for all /api/ endpoints
             .allowedOrigins("http://localhost:8081", "http://localhost:5173", "http://localhost:3000") // Common frontend dev ports
             .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
             .allowedHeaders("*")
+            .exposedHeaders("X-Next-Cursor")
             .allowCredentials(true);
     }
 }
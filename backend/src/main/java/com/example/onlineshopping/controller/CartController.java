@@ -0,0 +1,228 @@
+package com.example.onlineshopping.controller;
+
+import com.example.onlineshopping.model.Order;
+import com.example.onlineshopping.model.Product;
+import com.example.onlineshopping.model.User;
+import com.example.onlineshopping.repository.ProductRepository;
+import com.example.onlineshopping.repository.UserRepository;
+import com.example.onlineshopping.security.AuthenticatedUser;
+import com.example.onlineshopping.service.CartStore;
+import com.example.onlineshopping.service.CartStore.CartUpdate;
+import com.example.onlineshopping.service.EntityLookupService;
+import com.example.onlineshopping.service.OrderIngestionService;
+import com.example.onlineshopping.service.OrderPlacementException;
+import com.example.onlineshopping.service.OrderService;
+import com.example.onlineshopping.service.OrderService.PreparedOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// The caller's cart, kept on the server; checkout turns it into an order priced from the current products
+@RestController
+@RequestMapping("/api/cart")
+public class CartController {
+
+    @Autowired
+    private CartStore cartStore;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityLookupService entityLookupService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OrderIngestionService orderIngestionService;
+
+    // Lines with current names and prices; products deleted since they were added are dropped from the cart
+    @GetMapping
+    public ResponseEntity<CartView> getCart(@RequestAttribute(name = AuthenticatedUser.REQUEST_ATTRIBUTE, required = false) AuthenticatedUser caller) {
+        if (caller == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(view(caller.getUserId()));
+    }
+
+    // Adds to the quantity already in the cart
+    @PostMapping("/items")
+    public ResponseEntity<CartView> addItem(@RequestBody CartItemRequest item,
+            @RequestAttribute(name = AuthenticatedUser.REQUEST_ATTRIBUTE, required = false) AuthenticatedUser caller) {
+        if (caller == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (item.getProductId() == null || entityLookupService.findProductById(item.getProductId()).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return respond(cartStore.addQuantity(caller.getUserId(), item.getProductId(), item.getQuantity()), caller.getUserId());
+    }
+
+    // Sets the quantity; 0 removes the line
+    @PutMapping("/items/{productId}")
+    public ResponseEntity<CartView> setItem(@PathVariable Long productId, @RequestBody CartItemRequest item,
+            @RequestAttribute(name = AuthenticatedUser.REQUEST_ATTRIBUTE, required = false) AuthenticatedUser caller) {
+        if (caller == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (item.getQuantity() > 0 && entityLookupService.findProductById(productId).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return respond(cartStore.setQuantity(caller.getUserId(), productId, item.getQuantity()), caller.getUserId());
+    }
+
+    @DeleteMapping("/items/{productId}")
+    public ResponseEntity<CartView> removeItem(@PathVariable Long productId,
+            @RequestAttribute(name = AuthenticatedUser.REQUEST_ATTRIBUTE, required = false) AuthenticatedUser caller) {
+        if (caller == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return respond(cartStore.setQuantity(caller.getUserId(), productId, 0), caller.getUserId());
+    }
+
+    @DeleteMapping
+    public ResponseEntity<Void> clearCart(@RequestAttribute(name = AuthenticatedUser.REQUEST_ATTRIBUTE, required = false) AuthenticatedUser caller) {
+        if (caller == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        cartStore.clear(caller.getUserId());
+        return ResponseEntity.noContent().build();
+    }
+
+    // Places an order for everything in the cart, like POST /api/orders; the ordered lines leave the cart once it is saved
+    @PostMapping("/checkout")
+    public CompletableFuture<ResponseEntity<Order>> checkout(@RequestBody CheckoutRequest request,
+            @RequestAttribute(name = AuthenticatedUser.REQUEST_ATTRIBUTE, required = false) AuthenticatedUser caller) {
+        if (caller == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(null));
+        }
+        Long userId = caller.getUserId();
+        // Taken out first, so a second checkout of the same cart (a double click, or another instance) finds it
+        // empty instead of ordering it again; every failure below puts the lines back
+        Map<Long, Integer> quantities = cartStore.takeAll(userId);
+        User buyer = userRepository.getReferenceById(userId);
+        PreparedOrder prepared;
+        try {
+            prepared = orderService.prepareOrder(buyer, quantities, request.getShippingAddress(), request.getBillingAddress());
+        } catch (OrderPlacementException e) {
+            cartStore.putBack(userId, quantities);
+            return CompletableFuture.completedFuture(ResponseEntity.status(OrderController.statusFor(e)).body(null));
+        }
+        try {
+            return orderIngestionService.submit(prepared).whenComplete((savedOrder, failure) -> {
+                if (failure != null) {
+                    cartStore.putBack(userId, quantities);
+                }
+            }).thenApply(savedOrder -> ResponseEntity.status(HttpStatus.CREATED).body(savedOrder));
+        } catch (RejectedExecutionException e) {
+            orderService.abandon(prepared);
+            cartStore.putBack(userId, quantities);
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1").body(null));
+        }
+    }
+
+    private ResponseEntity<CartView> respond(CartUpdate update, Long userId) {
+        switch (update) {
+            case TOO_MANY_LINES:
+                return ResponseEntity.status(HttpStatus.CONFLICT).build();
+            case INVALID:
+                return ResponseEntity.badRequest().build();
+            default:
+                return ResponseEntity.ok(view(userId));
+        }
+    }
+
+    private CartView view(Long userId) {
+        Map<Long, Integer> quantities = cartStore.getCart(userId);
+        if (quantities.isEmpty()) {
+            return new CartView(new ArrayList<>(), BigDecimal.ZERO);
+        }
+        // One query for all the lines
+        Map<Long, Product> products = productRepository.findAllById(quantities.keySet()).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        List<CartLine> lines = new ArrayList<>(quantities.size());
+        BigDecimal total = BigDecimal.ZERO;
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            Product product = products.get(entry.getKey());
+            if (product == null) {
+                cartStore.setQuantity(userId, entry.getKey(), 0); // Deleted since: can never be bought
+                continue;
+            }
+            BigDecimal lineTotal = product.getPrice().multiply(BigDecimal.valueOf(entry.getValue()));
+            lines.add(new CartLine(product.getId(), product.getName(), product.getPrice(), entry.getValue(), lineTotal));
+            total = total.add(lineTotal);
+        }
+        return new CartView(lines, total);
+    }
+
+    static class CartItemRequest {
+        private Long productId;
+        private int quantity;
+
+        public Long getProductId() { return productId; }
+        public void setProductId(Long productId) { this.productId = productId; }
+        public int getQuantity() { return quantity; }
+        public void setQuantity(int quantity) { this.quantity = quantity; }
+    }
+
+    static class CheckoutRequest {
+        private String shippingAddress;
+        private String billingAddress;
+
+        public String getShippingAddress() { return shippingAddress; }
+        public void setShippingAddress(String shippingAddress) { this.shippingAddress = shippingAddress; }
+        public String getBillingAddress() { return billingAddress; }
+        public void setBillingAddress(String billingAddress) { this.billingAddress = billingAddress; }
+    }
+
+    static class CartView {
+        private final List<CartLine> items;
+        private final BigDecimal totalAmount; // At current prices; checkout prices again
+
+        CartView(List<CartLine> items, BigDecimal totalAmount) {
+            this.items = items;
+            this.totalAmount = totalAmount;
+        }
+
+        public List<CartLine> getItems() { return items; }
+        public BigDecimal getTotalAmount() { return totalAmount; }
+    }
+
+    static class CartLine {
+        private final Long productId;
+        private final String productName;
+        private final BigDecimal unitPrice;
+        private final int quantity;
+        private final BigDecimal lineTotal;
+
+        CartLine(Long productId, String productName, BigDecimal unitPrice, int quantity, BigDecimal lineTotal) {
+            this.productId = productId;
+            this.productName = productName;
+            this.unitPrice = unitPrice;
+            this.quantity = quantity;
+            this.lineTotal = lineTotal;
+        }
+
+        public Long getProductId() { return productId; }
+        public String getProductName() { return productName; }
+        public BigDecimal getUnitPrice() { return unitPrice; }
+        public int getQuantity() { return quantity; }
+        public BigDecimal getLineTotal() { return lineTotal; }
+    }
+}
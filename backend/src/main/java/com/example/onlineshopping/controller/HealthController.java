@@ -0,0 +1,39 @@
+package com.example.onlineshopping.controller;
+
+import com.example.onlineshopping.execution.Offload;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.LivenessState;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+// Probes for the load balancer and the autoscaler. Tomcat accepts connections before startup has finished;
+// readiness only turns 200 once it has, including the warm-up (see StartupWarmup)
+@Offload(false)
+@RestController
+@RequestMapping("/api/health")
+public class HealthController {
+
+    @Autowired
+    private ApplicationAvailability applicationAvailability;
+
+    @GetMapping("/readiness")
+    public ResponseEntity<Map<String, String>> getReadiness() {
+        ReadinessState state = applicationAvailability.getReadinessState();
+        HttpStatus status = state == ReadinessState.ACCEPTING_TRAFFIC ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE;
+        return ResponseEntity.status(status).body(Map.of("state", state.name()));
+    }
+
+    @GetMapping("/liveness")
+    public ResponseEntity<Map<String, String>> getLiveness() {
+        LivenessState state = applicationAvailability.getLivenessState();
+        HttpStatus status = state == LivenessState.CORRECT ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE;
+        return ResponseEntity.status(status).body(Map.of("state", state.name()));
+    }
+}
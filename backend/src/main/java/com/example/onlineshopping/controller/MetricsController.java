@@ -0,0 +1,249 @@
+package com.example.onlineshopping.controller;
+
+import com.example.onlineshopping.admission.AdmissionControlFilter;
+import com.example.onlineshopping.admission.AdmissionGroup;
+import com.example.onlineshopping.datasource.ReplicaRoutingDataSource;
+import com.example.onlineshopping.execution.Offload;
+import com.example.onlineshopping.execution.RequestExecutor;
+import com.example.onlineshopping.metrics.EndpointMetrics;
+import com.example.onlineshopping.metrics.EndpointMetrics.EndpointSnapshot;
+import com.example.onlineshopping.service.CartStore;
+import com.example.onlineshopping.service.EntityLookupService;
+import com.example.onlineshopping.service.ProductChangeFeed;
+import com.example.onlineshopping.service.ProductJsonCache;
+import com.example.onlineshopping.service.SingleFlight;
+import com.example.onlineshopping.service.UserIdentityIndex;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Read-only counters for the in-process caches and lookup coalescing (typically an admin function)
+@Offload(false) // Served from memory
+@RestController
+@RequestMapping("/api/metrics")
+public class MetricsController {
+
+    @Autowired
+    private EntityLookupService entityLookupService;
+
+    @Autowired
+    private ProductJsonCache productJsonCache;
+
+    @Autowired
+    private EndpointMetrics endpointMetrics;
+
+    @Autowired
+    private UserIdentityIndex userIdentityIndex;
+
+    @Autowired
+    private ProductChangeFeed productChangeFeed;
+
+    @Autowired
+    private CartStore cartStore;
+
+    @Autowired
+    private ObjectProvider<ReplicaRoutingDataSource> replicaRoutingDataSource; // Only there when replicas are configured
+
+    @Autowired
+    private ObjectProvider<AdmissionControlFilter> admissionControlFilter; // Absent when app.admission.enabled=false
+
+    @Autowired
+    private ObjectProvider<RequestExecutor> requestExecutor; // Only there when app.web.execution.mode=async
+
+    // Latency percentiles (microseconds), SQL statements and entity rows per request, for each endpoint
+    @GetMapping("/endpoints")
+    public List<EndpointSnapshot> getEndpointStats() {
+        return endpointMetrics.snapshot();
+    }
+
+    // Start a fresh measurement window, e.g. before a load test
+    @DeleteMapping("/endpoints")
+    public ResponseEntity<Void> resetEndpointStats() {
+        endpointMetrics.reset();
+        return ResponseEntity.noContent().build();
+    }
+
+    // Calls, database loads and the share of calls that joined another caller's load
+    @GetMapping("/lookups")
+    public Map<String, LookupStats> getLookupStats() {
+        Map<String, LookupStats> stats = new LinkedHashMap<>();
+        stats.put("products", LookupStats.of(entityLookupService.getProductLoads()));
+        stats.put("users", LookupStats.of(entityLookupService.getUserLoads()));
+        return stats;
+    }
+
+    @GetMapping("/product-json-cache")
+    public CacheStats getProductJsonCacheStats() {
+        return new CacheStats(productJsonCache.getHits(), productJsonCache.getMisses(), productJsonCache.sizeInBytes());
+    }
+
+    // Registrations checked against the username/email index and how many of them needed no query
+    @GetMapping("/user-identity-index")
+    public IdentityIndexStats getUserIdentityIndexStats() {
+        return new IdentityIndexStats(userIdentityIndex.getChecks(), userIdentityIndex.getLookupsSkipped(), userIdentityIndex.sizeInBytes());
+    }
+
+    // Connections handed out per target (primary, replica-0, ...); empty without replicas
+    @GetMapping("/datasource-routing")
+    public Map<String, Long> getDataSourceRoutingStats() {
+        ReplicaRoutingDataSource routing = replicaRoutingDataSource.getIfAvailable();
+        return routing == null ? Collections.emptyMap() : routing.getRoutedConnections();
+    }
+
+    // Offloaded handlers in flight (running or queued), admitted, turned away when full (503) and timed out;
+    // empty in blocking mode
+    @GetMapping("/execution")
+    public Map<String, Long> getExecutionStats() {
+        RequestExecutor executor = requestExecutor.getIfAvailable();
+        return executor == null ? Collections.emptyMap() : executor.getStats();
+    }
+
+    // Open change feed connections, events published, and subscribers dropped for falling behind
+    @GetMapping("/product-feed")
+    public Map<String, Long> getProductFeedStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("subscribers", (long) productChangeFeed.getSubscribers());
+        stats.put("published", productChangeFeed.getPublished());
+        stats.put("slowDisconnects", productChangeFeed.getSlowDisconnects());
+        return stats;
+    }
+
+    // Carts in memory and their approximate footprint, loads from the carts table, and carts pushed out for room
+    @GetMapping("/carts")
+    public Map<String, Long> getCartStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("cartsInMemory", cartStore.getCartsInMemory());
+        stats.put("bytesInMemory", cartStore.getBytesInMemory());
+        stats.put("loads", cartStore.getLoads());
+        stats.put("evictions", cartStore.getEvictions());
+        stats.put("unsavedEvicted", (long) cartStore.getUnsavedEvicted());
+        return stats;
+    }
+
+    // Write requests admitted, rate limited (429) and shed at a concurrency limit (503), per group
+    @GetMapping("/admission")
+    public List<AdmissionStats> getAdmissionStats() {
+        AdmissionControlFilter filter = admissionControlFilter.getIfAvailable();
+        List<AdmissionStats> stats = new ArrayList<>();
+        if (filter != null) {
+            for (AdmissionGroup group : filter.getGroups()) {
+                stats.add(AdmissionStats.of(group));
+            }
+        }
+        return stats;
+    }
+
+    static class LookupStats {
+        private long calls;
+        private long loads;
+        private int inFlight;
+        private long waitsTimedOut;
+        private double coalescingRatio;
+
+        static LookupStats of(SingleFlight<?, ?> flight) {
+            LookupStats stats = new LookupStats();
+            stats.calls = flight.getCalls();
+            stats.loads = flight.getLoads();
+            stats.inFlight = flight.getInFlight();
+            stats.waitsTimedOut = flight.getWaitsTimedOut();
+            stats.coalescingRatio = flight.getCoalescingRatio();
+            return stats;
+        }
+
+        public long getCalls() { return calls; }
+        public void setCalls(long calls) { this.calls = calls; }
+        public long getLoads() { return loads; }
+        public void setLoads(long loads) { this.loads = loads; }
+        public int getInFlight() { return inFlight; }
+        public void setInFlight(int inFlight) { this.inFlight = inFlight; }
+        public long getWaitsTimedOut() { return waitsTimedOut; }
+        public void setWaitsTimedOut(long waitsTimedOut) { this.waitsTimedOut = waitsTimedOut; }
+        public double getCoalescingRatio() { return coalescingRatio; }
+        public void setCoalescingRatio(double coalescingRatio) { this.coalescingRatio = coalescingRatio; }
+    }
+
+    static class CacheStats {
+        private long hits;
+        private long misses;
+        private long sizeInBytes;
+
+        CacheStats(long hits, long misses, long sizeInBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.sizeInBytes = sizeInBytes;
+        }
+
+        public long getHits() { return hits; }
+        public void setHits(long hits) { this.hits = hits; }
+        public long getMisses() { return misses; }
+        public void setMisses(long misses) { this.misses = misses; }
+        public long getSizeInBytes() { return sizeInBytes; }
+        public void setSizeInBytes(long sizeInBytes) { this.sizeInBytes = sizeInBytes; }
+    }
+
+    static class IdentityIndexStats {
+        private long checks;
+        private long lookupsSkipped;
+        private long sizeInBytes;
+
+        IdentityIndexStats(long checks, long lookupsSkipped, long sizeInBytes) {
+            this.checks = checks;
+            this.lookupsSkipped = lookupsSkipped;
+            this.sizeInBytes = sizeInBytes;
+        }
+
+        public long getChecks() { return checks; }
+        public void setChecks(long checks) { this.checks = checks; }
+        public long getLookupsSkipped() { return lookupsSkipped; }
+        public void setLookupsSkipped(long lookupsSkipped) { this.lookupsSkipped = lookupsSkipped; }
+        public long getSizeInBytes() { return sizeInBytes; }
+        public void setSizeInBytes(long sizeInBytes) { this.sizeInBytes = sizeInBytes; }
+    }
+
+    static class AdmissionStats {
+        private String group;
+        private int maxConcurrent;
+        private int inFlight;
+        private int trackedClients;
+        private long admitted;
+        private long rateLimited;
+        private long shed;
+
+        static AdmissionStats of(AdmissionGroup group) {
+            AdmissionStats stats = new AdmissionStats();
+            stats.group = group.getName();
+            stats.maxConcurrent = group.getMaxConcurrent();
+            stats.inFlight = group.getInFlight();
+            stats.trackedClients = group.getTrackedClients();
+            stats.admitted = group.getAdmitted();
+            stats.rateLimited = group.getRateLimited();
+            stats.shed = group.getShed();
+            return stats;
+        }
+
+        public String getGroup() { return group; }
+        public void setGroup(String group) { this.group = group; }
+        public int getMaxConcurrent() { return maxConcurrent; }
+        public void setMaxConcurrent(int maxConcurrent) { this.maxConcurrent = maxConcurrent; }
+        public int getInFlight() { return inFlight; }
+        public void setInFlight(int inFlight) { this.inFlight = inFlight; }
+        public int getTrackedClients() { return trackedClients; }
+        public void setTrackedClients(int trackedClients) { this.trackedClients = trackedClients; }
+        public long getAdmitted() { return admitted; }
+        public void setAdmitted(long admitted) { this.admitted = admitted; }
+        public long getRateLimited() { return rateLimited; }
+        public void setRateLimited(long rateLimited) { this.rateLimited = rateLimited; }
+        public long getShed() { return shed; }
+        public void setShed(long shed) { this.shed = shed; }
+    }
+}
@@ -1,99 +1,369 @@
 package com.example.onlineshopping.controller;
 
+import com.example.onlineshopping.dto.OrderSummary;
+import com.example.onlineshopping.execution.Offload;
 import com.example.onlineshopping.model.Order;
+import com.example.onlineshopping.model.OrderStatus;
 import com.example.onlineshopping.model.User;
-import com.example.onlineshopping.repository.OrderRepository;
 import com.example.onlineshopping.repository.UserRepository;
+import com.example.onlineshopping.security.AuthenticatedUser;
+import com.example.onlineshopping.service.OrderExportService;
+import com.example.onlineshopping.service.OrderIngestionService;
+import com.example.onlineshopping.service.OrderPlacementException;
+import com.example.onlineshopping.service.OrderService;
+import com.example.onlineshopping.service.OrderStore;
+import com.example.onlineshopping.service.OrderService.PreparedOrder;
+import com.example.onlineshopping.service.OrderStatusService;
+import com.example.onlineshopping.service.OrderStatusService.TransitionResult;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/orders")
 public class OrderController {
 
     @Autowired
-    private OrderRepository orderRepository;
+    private OrderStore orderStore; // The primary, or the order shards
 
     @Autowired
-    private UserRepository userRepository; // To fetch user for order creation
+    private UserRepository userRepository;
 
-    // Get all orders (potentially admin only)
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OrderIngestionService orderIngestionService;
+
+    @Autowired
+    private OrderStatusService orderStatusService;
+
+    @Autowired
+    private OrderExportService orderExportService;
+
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final String NDJSON = "application/x-ndjson";
+
+    @Value("${app.orders.page.default-size:50}")
+    private int defaultPageSize;
+
+    @Value("${app.orders.page.max-size:500}")
+    private int maxPageSize;
+
+    @Value("${app.orders.status.max-ids-per-request:100000}")
+    private int maxTransitionIds;
+
+    // Get all orders (potentially admin only), newest first
+    // Keyset-paginated: pass the X-Next-Cursor value back as "before" to get the next page
     @GetMapping
-    public List<Order> getAllOrders() {
-        return orderRepository.findAll();
+    public ResponseEntity<List<OrderSummary>> getAllOrders(
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) Integer limit) {
+        OrderCursor cursor = OrderCursor.parse(before);
+        if (before != null && cursor == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        int pageSize = pageSizeOf(limit);
+        List<OrderSummary> orders = cursor == null
+                ? orderStore.findSummaries(null, null, pageSize)
+                : orderStore.findSummaries(cursor.orderDate, cursor.id, pageSize);
+        return pageResponse(orders, pageSize);
+    }
+
+    // Every matching order as NDJSON, one line per order, for analytics pulls (potentially admin only).
+    // from/to are ISO dates or date-times (to is exclusive), status an OrderStatus; gzip if the client accepts it.
+    // Written on the request thread rather than as a StreamingResponseBody: an export may outlast the async timeout.
+    @GetMapping(value = "/export", produces = NDJSON)
+    public void exportOrders(@RequestParam(required = false) String from,
+                             @RequestParam(required = false) String to,
+                             @RequestParam(required = false) String status,
+                             @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                             HttpServletResponse response) throws IOException {
+        LocalDateTime fromDate = parseDateTime(from);
+        LocalDateTime toDate = parseDateTime(to);
+        OrderStatus orderStatus = OrderStatus.parse(status);
+        if ((from != null && fromDate == null) || (to != null && toDate == null) || (status != null && orderStatus == null)) {
+            response.sendError(HttpStatus.BAD_REQUEST.value());
+            return;
+        }
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding("UTF-8");
+        boolean gzip = acceptsGzip(acceptEncoding);
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        OutputStream out = gzip ? new GZIPOutputStream(response.getOutputStream(), 8192) : response.getOutputStream();
+        orderExportService.writeNdjson(fromDate, toDate, orderStatus, out);
+        out.close(); // Finishes the gzip trailer
+    }
+
+    // True if gzip (or x-gzip), or else "*", is listed with a non-zero q-value: "gzip;q=0" is a refusal
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzip = null;
+        Double any = null;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String coding = params[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1.0;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim().toLowerCase(Locale.ROOT);
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0; // Unreadable weight: do not count it as acceptance
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzip = gzip == null ? q : Math.max(gzip, q);
+            } else if (coding.equals("*")) {
+                any = q;
+            }
+        }
+        Double weight = gzip != null ? gzip : any;
+        return weight != null && weight > 0;
     }
 
-    // Get order by ID
+    // "2024-05-01" (start of that day) or "2024-05-01T12:00"; null if neither
+    static LocalDateTime parseDateTime(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return value.length() <= 10 ? LocalDate.parse(value).atStartOfDay() : LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    // Get order by ID (only the buyer's own orders)
     @GetMapping("/{id}")
-    public ResponseEntity<Order> getOrderById(@PathVariable Long id) {
-        Optional<Order> order = orderRepository.findById(id);
+    public ResponseEntity<Order> getOrderById(@PathVariable Long id,
+            @RequestAttribute(name = AuthenticatedUser.REQUEST_ATTRIBUTE, required = false) AuthenticatedUser caller) {
+        if (caller == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        Optional<Order> order = orderStore.findById(id);
+        if (order.isPresent() && !caller.is(order.get().getUserId())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
         return order.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
     }
 
-    // Get orders for a specific user
+    // Get orders for a specific user, newest first (keyset-paginated like getAllOrders; only your own)
     @GetMapping("/user/{userId}")
-    public ResponseEntity<List<Order>> getOrdersByUserId(@PathVariable Long userId) {
-        if (!userRepository.existsById(userId)) {
+    public ResponseEntity<List<OrderSummary>> getOrdersByUserId(
+            @PathVariable Long userId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) Integer limit,
+            @RequestAttribute(name = AuthenticatedUser.REQUEST_ATTRIBUTE, required = false) AuthenticatedUser caller) {
+        HttpStatus denied = UserController.denySelfAccess(caller, userId);
+        if (denied != null) {
+            return ResponseEntity.status(denied).build();
+        }
+        OrderCursor cursor = OrderCursor.parse(before);
+        if (before != null && cursor == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        int pageSize = pageSizeOf(limit);
+        List<OrderSummary> orders = cursor == null
+                ? orderStore.findSummariesByUserId(userId, null, null, pageSize)
+                : orderStore.findSummariesByUserId(userId, cursor.orderDate, cursor.id, pageSize);
+        // Only an empty first page needs the extra round trip to tell "no orders" from "no such user"
+        if (orders.isEmpty() && cursor == null && !userRepository.existsById(userId)) {
             return ResponseEntity.notFound().build(); // User not found
         }
-        List<Order> orders = orderRepository.findByUserId(userId);
-        return ResponseEntity.ok(orders);
+        return pageResponse(orders, pageSize);
     }
 
-    // Create a new order
+    private int pageSizeOf(Integer limit) {
+        return limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+    }
+
+    private static ResponseEntity<List<OrderSummary>> pageResponse(List<OrderSummary> orders, int pageSize) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (orders.size() == pageSize) {
+            OrderSummary last = orders.get(orders.size() - 1);
+            response.header(NEXT_CURSOR_HEADER, new OrderCursor(last.getOrderDate(), last.getId()).toString());
+        }
+        return response.body(orders);
+    }
+
+    // Create a new order for the caller
+    // Completes once the order is committed; with group commit enabled that happens on the batch writer
     @PostMapping
-    public ResponseEntity<Order> createOrder(@RequestBody OrderRequest orderRequest) {
-        Optional<User> userOptional = userRepository.findById(orderRequest.getUserId());
-        if (userOptional.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null); // User not found
+    public CompletableFuture<ResponseEntity<Order>> createOrder(@RequestBody OrderRequest orderRequest,
+            @RequestAttribute(name = AuthenticatedUser.REQUEST_ATTRIBUTE, required = false) AuthenticatedUser caller) {
+        if (caller == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(null));
         }
+        if (orderRequest.getUserId() != null && !caller.is(orderRequest.getUserId())) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.FORBIDDEN).body(null));
+        }
+        // The verified token already names the buyer, so only a reference is needed: no query
+        User buyer = userRepository.getReferenceById(caller.getUserId());
 
-        Order order = new Order();
-        order.setUser(userOptional.get());
-        order.setOrderDate(LocalDateTime.now());
-        order.setStatus("PENDING"); // Default status
-        order.setTotalAmount(orderRequest.getTotalAmount()); // This would typically be calculated based on items
-        order.setShippingAddress(orderRequest.getShippingAddress());
-        order.setBillingAddress(orderRequest.getBillingAddress());
-        // In a real app, you'd create OrderItem entities here based on cart contents
+        // Prices and totals are computed from the current products, never taken from the client
+        PreparedOrder prepared;
+        try {
+            prepared = orderService.prepareOrder(buyer, orderRequest.quantitiesByProduct(),
+                    orderRequest.getShippingAddress(), orderRequest.getBillingAddress());
+        } catch (OrderPlacementException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(statusFor(e)).body(null));
+        }
+        try {
+            return orderIngestionService.submit(prepared)
+                    .thenApply(savedOrder -> ResponseEntity.status(HttpStatus.CREATED).body(savedOrder));
+        } catch (RejectedExecutionException e) {
+            // Queue full: shed the request and let the client come back shortly
+            orderService.abandon(prepared);
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1").body(null));
+        }
+    }
 
-        Order savedOrder = orderRepository.save(order);
-        return ResponseEntity.status(HttpStatus.CREATED).body(savedOrder);
+    static HttpStatus statusFor(OrderPlacementException e) {
+        return e.getReason() == OrderPlacementException.Reason.OUT_OF_STOCK ? HttpStatus.CONFLICT : HttpStatus.BAD_REQUEST;
     }
 
-    // Update order status (typically admin or system function)
+    // Update order status (typically admin or system function); only transitions allowed by OrderStatus are accepted
     @PutMapping("/{id}/status")
     public ResponseEntity<Order> updateOrderStatus(@PathVariable Long id, @RequestBody String status) {
-        Optional<Order> optionalOrder = orderRepository.findById(id);
-        if (optionalOrder.isPresent()) {
-            Order order = optionalOrder.get();
-            order.setStatus(status);
-            return ResponseEntity.ok(orderRepository.save(order));
-        } else {
+        OrderStatus target = OrderStatus.parse(status);
+        if (target == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        Optional<Order> optionalOrder = orderStore.findById(id);
+        if (optionalOrder.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
+        Order order = optionalOrder.get();
+        OrderStatus current = OrderStatus.parse(order.getStatus());
+        if (current == null || !current.canTransitionTo(target)
+                || orderStatusService.transition(List.of(id), current, target).getUpdated().isEmpty()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build(); // Not allowed, or changed by someone else meanwhile
+        }
+        order.setStatus(target.name());
+        return ResponseEntity.ok(order);
+    }
+
+    // Bulk transition, e.g. a fulfillment job moving PROCESSING orders to SHIPPED.
+    // Orders not in "from" are reported as conflicted rather than failing the request.
+    @Offload(timeoutMs = "${app.web.execution.long-running-timeout-ms:3600000}")
+    @PostMapping("/status-transitions")
+    public ResponseEntity<TransitionResult> transitionOrders(@RequestBody StatusTransitionRequest request) {
+        OrderStatus from = OrderStatus.parse(request.getFrom());
+        OrderStatus to = OrderStatus.parse(request.getTo());
+        if (from == null || to == null || !from.canTransitionTo(to)
+                || request.getOrderIds() == null || request.getOrderIds().size() > maxTransitionIds) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(orderStatusService.transition(request.getOrderIds(), from, to));
+    }
+
+    // Position in a newest-first order listing, written as "<orderDate>_<id>"
+    static final class OrderCursor {
+        final LocalDateTime orderDate;
+        final Long id;
+
+        OrderCursor(LocalDateTime orderDate, Long id) {
+            this.orderDate = orderDate;
+            this.id = id;
+        }
+
+        static OrderCursor parse(String value) {
+            if (value == null) {
+                return null;
+            }
+            int separator = value.lastIndexOf('_');
+            if (separator <= 0) {
+                return null;
+            }
+            try {
+                return new OrderCursor(LocalDateTime.parse(value.substring(0, separator)), Long.valueOf(value.substring(separator + 1)));
+            } catch (DateTimeParseException | NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return orderDate + "_" + id;
+        }
+    }
+
+    // Body of the bulk transition: the orders to move, and the status they must be in now
+    static class StatusTransitionRequest {
+        private List<Long> orderIds;
+        private String from;
+        private String to;
+
+        public List<Long> getOrderIds() { return orderIds; }
+        public void setOrderIds(List<Long> orderIds) { this.orderIds = orderIds; }
+        public String getFrom() { return from; }
+        public void setFrom(String from) { this.from = from; }
+        public String getTo() { return to; }
+        public void setTo(String to) { this.to = to; }
     }
 
     // (Simplified DTO for order creation request)
     static class OrderRequest {
-        private Long userId;
-        private java.math.BigDecimal totalAmount;
+        private Long userId; // Optional: the buyer is taken from the token, this only guards against a mix-up
+        private List<OrderItemRequest> items;
         private String shippingAddress;
         private String billingAddress;
         // Getters and Setters
         public Long getUserId() { return userId; }
         public void setUserId(Long userId) { this.userId = userId; }
-        public java.math.BigDecimal getTotalAmount() { return totalAmount; }
-        public void setTotalAmount(java.math.BigDecimal totalAmount) { this.totalAmount = totalAmount; }
+        public List<OrderItemRequest> getItems() { return items; }
+        public void setItems(List<OrderItemRequest> items) { this.items = items; }
         public String getShippingAddress() { return shippingAddress; }
         public void setShippingAddress(String shippingAddress) { this.shippingAddress = shippingAddress; }
         public String getBillingAddress() { return billingAddress; }
         public void setBillingAddress(String billingAddress) { this.billingAddress = billingAddress; }
+
+        // Requested quantity per product, with repeated products merged
+        Map<Long, Integer> quantitiesByProduct() {
+            Map<Long, Integer> quantities = new LinkedHashMap<>();
+            if (items != null) {
+                for (OrderItemRequest item : items) {
+                    quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+                }
+            }
+            return quantities;
+        }
+    }
+
+    static class OrderItemRequest {
+        private Long productId;
+        private int quantity;
+        // Getters and Setters
+        public Long getProductId() { return productId; }
+        public void setProductId(Long productId) { this.productId = productId; }
+        public int getQuantity() { return quantity; }
+        public void setQuantity(int quantity) { this.quantity = quantity; }
     }
 }
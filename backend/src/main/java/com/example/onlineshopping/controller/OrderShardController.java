@@ -0,0 +1,60 @@
+package com.example.onlineshopping.controller;
+
+import com.example.onlineshopping.datasource.OrderShard;
+import com.example.onlineshopping.datasource.OrderShardRebalancer;
+import com.example.onlineshopping.datasource.OrderShardRebalancer.RebalanceReport;
+import com.example.onlineshopping.datasource.OrderShards;
+import com.example.onlineshopping.execution.Offload;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+// Order shard layout and rebalancing (typically an admin function). After appending a shard URL, or moving one
+// to the retired list, restart with app.orders.shards.migrating=true, POST /rebalance, then turn migrating off
+@RestController
+@RequestMapping("/api/orders/shards")
+public class OrderShardController {
+
+    @Autowired
+    private OrderShards orderShards;
+
+    @Autowired
+    private OrderShardRebalancer orderShardRebalancer;
+
+    // Orders per shard, counted on all of them at once
+    @GetMapping
+    public List<ShardStats> getShards() {
+        return orderShards.fanOut(orderShards.all(), shard -> new ShardStats(shard.getName(), orderShards.getRetired().contains(shard),
+                shard.getJdbcTemplate().queryForObject("SELECT COUNT(*) FROM orders", Long.class)));
+    }
+
+    // Moves orders not on their user's shard there; runs to the end and returns what it moved
+    @Offload(timeoutMs = "${app.web.execution.long-running-timeout-ms:3600000}")
+    @PostMapping("/rebalance")
+    public ResponseEntity<RebalanceReport> rebalance() {
+        RebalanceReport report = orderShardRebalancer.rebalance(orderShards);
+        if (report == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build(); // Already running
+        }
+        return ResponseEntity.ok(report);
+    }
+
+    static class ShardStats {
+        private final String name;
+        private final boolean retired;
+        private final long orders;
+
+        ShardStats(String name, boolean retired, long orders) {
+            this.name = name;
+            this.retired = retired;
+            this.orders = orders;
+        }
+
+        public String getName() { return name; }
+        public boolean isRetired() { return retired; }
+        public long getOrders() { return orders; }
+    }
+}
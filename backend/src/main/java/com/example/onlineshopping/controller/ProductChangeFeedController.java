@@ -0,0 +1,45 @@
+package com.example.onlineshopping.controller;
+
+import com.example.onlineshopping.service.ProductChangeFeed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+
+// Live price and stock changes instead of polling the product endpoints:
+// new EventSource('/api/products/changes?category=Books').addEventListener('change', e => ...)
+// Each "change" event carries type (created/updated/deleted/stock), productId, category, price and stock.
+// A "reset" event means changes were missed: refetch what is on screen, then keep listening.
+@RestController
+@RequestMapping("/api/products/changes")
+public class ProductChangeFeedController {
+
+    @Autowired
+    private ProductChangeFeed productChangeFeed;
+
+    // category may be repeated; none = all products. EventSource sends Last-Event-ID by itself when it reconnects;
+    // the lastEventId parameter is for resuming after a page reload
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> subscribe(@RequestParam(required = false) List<String> category,
+                                                @RequestParam(required = false) String lastEventId,
+                                                @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader) {
+        SseEmitter emitter = productChangeFeed.subscribe(category, lastEventIdHeader != null ? lastEventIdHeader : lastEventId);
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "10").build();
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .header("X-Accel-Buffering", "no") // Keep nginx from buffering the stream
+                .body(emitter);
+    }
+}
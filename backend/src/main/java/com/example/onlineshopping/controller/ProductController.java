@@ -1,41 +1,260 @@
 package com.example.onlineshopping.controller;
 
+import com.example.onlineshopping.datasource.ReplicaRoutingDataSource;
+import com.example.onlineshopping.dto.CatalogStamp;
+import com.example.onlineshopping.event.ProductChangedEvent;
+import com.example.onlineshopping.execution.Offload;
 import com.example.onlineshopping.model.Product;
 import com.example.onlineshopping.repository.ProductRepository;
+import com.example.onlineshopping.service.CategoryFacetCounter;
+import com.example.onlineshopping.service.EntityLookupService;
+import com.example.onlineshopping.service.ProductFilterService;
+import com.example.onlineshopping.service.ProductJsonCache;
+import com.example.onlineshopping.service.ProductSearchIndex;
+import com.example.onlineshopping.service.ProductStreamingService;
+import com.example.onlineshopping.service.StockReservationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/products")
 public class ProductController {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     @Autowired
     private ProductRepository productRepository;
 
-    // Get all products or filter by category or name
+    @Autowired
+    private ProductStreamingService productStreamingService;
+
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    @Autowired
+    private StockReservationService stockReservationService;
+
+    @Autowired
+    private ProductJsonCache productJsonCache;
+
+    @Autowired
+    private EntityLookupService entityLookupService;
+
+    @Autowired
+    private ProductFilterService productFilterService;
+
+    @Autowired
+    private CategoryFacetCounter categoryFacetCounter;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.products.page.default-size:50}")
+    private int defaultPageSize;
+
+    @Value("${app.products.page.max-size:500}")
+    private int maxPageSize;
+
+    // Get products or filter by category or name
+    // Every paginated listing takes the X-Next-Cursor value back as "after"; unfiltered listings are keyset-paginated on id
+    // Price range, in-stock, sort, or a category with a name, limit or cursor go through the combined filter;
+    // a bare category is served whole from the JSON cache, a bare name is paged through the search index's ranking
+    // Every listing carries an ETag built from the products' ids and versions, so unchanged data costs a 304
     @GetMapping
-    public List<Product> getAllProducts(
+    public ResponseEntity<?> getAllProducts(
             @RequestParam(required = false) String category,
-            @RequestParam(required = false) String name) {
-        if (category != null && !category.isEmpty()) {
-            return productRepository.findByCategory(category);
+            @RequestParam(required = false) String name,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) BigDecimal minPrice,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(required = false) Boolean inStock,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String after,
+            WebRequest request) throws IOException {
+        boolean hasCategory = category != null && !category.isEmpty();
+        boolean hasName = name != null && !name.isEmpty();
+        boolean filtered = minPrice != null || maxPrice != null || inStock != null || sort != null
+                || (hasCategory && (hasName || limit != null || after != null)) || (hasName && !productSearchIndex.isReady());
+        if (filtered) {
+            return filteredProducts(new ProductFilterService.Filter()
+                    .category(hasCategory ? category : null)
+                    .name(hasName ? name : null)
+                    .minPrice(minPrice)
+                    .maxPrice(maxPrice)
+                    .inStockOnly(Boolean.TRUE.equals(inStock)), sort, after, limit, request);
+        }
+        if (hasCategory) {
+            return cachedJson(ProductJsonCache.categoryKey(category), request, () -> {
+                CatalogStamp stamp = productRepository.findStampByCategory(category);
+                return new Validated(stamp.etag(), stamp.lastModifiedMillis(), () -> productRepository.findByCategory(category));
+            });
+        }
+        if (hasName) {
+            return searchByName(name, after, limit, request);
+        }
+        int pageSize = limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+        long cursor;
+        try {
+            cursor = after == null ? 0L : Long.parseLong(after);
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<Product> page = productRepository.findByIdGreaterThanOrderByIdAsc(cursor, PageRequest.of(0, pageSize));
+        if (notModified(CatalogStamp.of(page), request)) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.size() == pageSize) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(page.get(page.size() - 1).getId()));
+        }
+        return response.body(page);
+    }
+
+    private ResponseEntity<List<Product>> filteredProducts(ProductFilterService.Filter filter, String sort, String after,
+                                                          Integer limit, WebRequest request) {
+        ProductFilterService.Sort order = ProductFilterService.Sort.parse(sort);
+        ProductFilterService.Cursor cursor = order == null || after == null ? null : ProductFilterService.Cursor.parse(after, order);
+        if (order == null || (after != null && cursor == null)) {
+            return ResponseEntity.badRequest().build();
+        }
+        int pageSize = limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+        List<Product> page = productFilterService.find(filter.sort(order), cursor, pageSize);
+        if (notModified(CatalogStamp.of(page), request)) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.size() == pageSize) {
+            response.header(NEXT_CURSOR_HEADER, ProductFilterService.Cursor.after(page.get(page.size() - 1), order).toString());
+        }
+        return response.body(page);
+    }
+
+    // Product count per category, from counters kept up to date by the change events
+    @Offload(false)
+    @GetMapping("/facets")
+    public List<CategoryFacetCounter.Facet> getCategoryFacets() {
+        return categoryFacetCounter.facets();
+    }
+
+    // Sets ETag and Last-Modified; true when the client's copy is current and a 304 has been prepared
+    private static boolean notModified(CatalogStamp stamp, WebRequest request) {
+        return request.checkNotModified(stamp.etag(), stamp.lastModifiedMillis());
+    }
+
+    // Ranked search over name, category and description, paged on the rank of the last hit. Until the index has
+    // loaded, a name goes through the filter instead (a LIKE on the name, in id order)
+    private ResponseEntity<List<Product>> searchByName(String name, String after, Integer limit, WebRequest request) {
+        ProductSearchIndex.Cursor cursor = after == null ? null : ProductSearchIndex.Cursor.parse(after);
+        if (after != null && cursor == null) {
+            return ResponseEntity.badRequest().build();
         }
-        if (name != null && !name.isEmpty()) {
-            return productRepository.findByNameContainingIgnoreCase(name);
+        int pageSize = limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+        ProductSearchIndex.Ranked ranked = productSearchIndex.search(name, cursor, pageSize);
+        List<Product> page = new ArrayList<>(ranked.getIds().size());
+        if (!ranked.getIds().isEmpty()) {
+            Map<Long, Product> byId = productRepository.findAllById(ranked.getIds()).stream()
+                    .collect(Collectors.toMap(Product::getId, Function.identity()));
+            for (Long id : ranked.getIds()) {
+                Product product = byId.get(id);
+                if (product != null) {
+                    page.add(product);
+                }
+            }
         }
-        return productRepository.findAll();
+        if (notModified(CatalogStamp.of(page), request)) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (ranked.getNext() != null) {
+            response.header(NEXT_CURSOR_HEADER, ranked.getNext().toString());
+        }
+        return response.body(page);
+    }
+
+    // Stream the whole catalog as one JSON array, written row by row from a database cursor
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllProducts() {
+        StreamingResponseBody body = productStreamingService::writeAllAsJsonArray;
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
     }
 
     // Get product by ID
     @GetMapping("/{id}")
-    public ResponseEntity<Product> getProductById(@PathVariable Long id) {
-        Optional<Product> product = productRepository.findById(id);
-        return product.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
+    public ResponseEntity<byte[]> getProductById(@PathVariable Long id, WebRequest request) throws IOException {
+        return cachedJson(ProductJsonCache.productKey(id), request, () -> entityLookupService.findProductById(id)
+                .map(product -> new Validated(etagOf(product), lastModifiedOf(product), () -> product))
+                .orElse(null));
+    }
+
+    static String etagOf(Product product) {
+        return "\"" + product.getId() + "-" + product.getVersion() + "\"";
+    }
+
+    private static long lastModifiedOf(Product product) {
+        return product.getLastModified() == null ? -1 : product.getLastModified().toEpochMilli();
+    }
+
+    // What a cache miss needs: the validators first, the body only if the client turns out to need it
+    private static final class Validated {
+        final String etag;
+        final long lastModified;
+        final Supplier<Object> body;
+
+        Validated(String etag, long lastModified, Supplier<Object> body) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.body = body;
+        }
+    }
+
+    // Serialized JSON for a hot read, from the byte cache when possible. A client that is already current
+    // gets its 304 before anything is serialized; a loader returning null means 404.
+    private ResponseEntity<byte[]> cachedJson(String key, WebRequest request, Supplier<Validated> loader) throws IOException {
+        ProductJsonCache.Entry entry = productJsonCache.get(key);
+        if (entry != null) {
+            return request.checkNotModified(entry.getEtag(), entry.getLastModified()) ? null : jsonResponse(entry.getJson());
+        }
+        long generation = productJsonCache.generation(); // Taken before the read so a concurrent change is not cached
+        // Misses read the primary: the entry stays until the next change, so a lagging replica's copy would stay with it
+        Validated validated = ReplicaRoutingDataSource.onPrimary(loader);
+        if (validated == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (request.checkNotModified(validated.etag, validated.lastModified)) {
+            return null;
+        }
+        Object body = ReplicaRoutingDataSource.onPrimary(validated.body);
+        entry = new ProductJsonCache.Entry(objectMapper.writeValueAsBytes(body), validated.etag, validated.lastModified);
+        productJsonCache.put(key, entry, generation);
+        return jsonResponse(entry.getJson());
+    }
+
+    private static ResponseEntity<byte[]> jsonResponse(byte[] json) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(json);
     }
 
     // Create a new product (typically an admin function)
@@ -43,35 +262,101 @@ public class ProductController {
     public ResponseEntity<Product> createProduct(@RequestBody Product product) {
         // Add validation if necessary
         Product savedProduct = productRepository.save(product);
+        eventPublisher.publishEvent(ProductChangedEvent.created(savedProduct));
         return ResponseEntity.status(HttpStatus.CREATED).body(savedProduct);
     }
 
     // Update product (typically an admin function)
+    // Send back the version that was read (as "version", or the ETag as If-Match): if the product changed since, e.g.
+    // through a stock flush, the answer is 409 (412 for If-Match) rather than an overwrite with the stale copy.
+    // stockQuantity is only applied when the request has it; it is then an explicit on-hand count
     @PutMapping("/{id}")
-    public ResponseEntity<Product> updateProduct(@PathVariable Long id, @RequestBody Product productDetails) {
+    public ResponseEntity<Product> updateProduct(@PathVariable Long id, @RequestBody ProductUpdateRequest productDetails,
+                                                 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         Optional<Product> optionalProduct = productRepository.findById(id);
         if (optionalProduct.isPresent()) {
             Product existingProduct = optionalProduct.get();
+            if (ifMatch != null && !matchesAny(ifMatch, etagOf(existingProduct))) {
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+            }
+            if (productDetails.getVersion() != null && productDetails.getVersion() != existingProduct.getVersion()) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).build();
+            }
+            String previousCategory = existingProduct.getCategory();
             existingProduct.setName(productDetails.getName());
             existingProduct.setDescription(productDetails.getDescription());
             existingProduct.setPrice(productDetails.getPrice());
             existingProduct.setCategory(productDetails.getCategory());
             existingProduct.setImageUrl(productDetails.getImageUrl());
-            existingProduct.setStockQuantity(productDetails.getStockQuantity());
-            return ResponseEntity.ok(productRepository.save(existingProduct));
+            if (productDetails.getStockQuantity() != null) {
+                existingProduct.setStockQuantity(productDetails.getStockQuantity());
+            }
+            Product savedProduct;
+            try {
+                savedProduct = productRepository.save(existingProduct);
+            } catch (ObjectOptimisticLockingFailureException e) {
+                // Changed underneath us (e.g. a stock flush landed); the client should reload and retry
+                return ResponseEntity.status(HttpStatus.CONFLICT).build();
+            }
+            if (productDetails.getStockQuantity() != null) {
+                // An explicit stock count from the admin replaces whatever the reservation engine had
+                stockReservationService.setStockLevel(id, savedProduct.getStockQuantity());
+            }
+            eventPublisher.publishEvent(ProductChangedEvent.updated(previousCategory, savedProduct));
+            return ResponseEntity.ok(savedProduct);
         } else {
             return ResponseEntity.notFound().build();
         }
     }
 
+    // If-Match: "*" or a comma-separated list of ETags (a weak W/ one never matches, as RFC 9110 requires)
+    private static boolean matchesAny(String ifMatch, String etag) {
+        for (String candidate : ifMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.equals("*") || trimmed.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     // Delete product (typically an admin function)
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteProduct(@PathVariable Long id) {
-        if (productRepository.existsById(id)) {
-            productRepository.deleteById(id);
+        Optional<Product> product = productRepository.findById(id);
+        if (product.isPresent()) {
+            productRepository.delete(product.get());
+            eventPublisher.publishEvent(ProductChangedEvent.deleted(id, product.get().getCategory()));
             return ResponseEntity.noContent().build();
         } else {
             return ResponseEntity.notFound().build();
         }
     }
+
+    // The editable fields of a product. Nullable where leaving a field out has to be told apart from sending it:
+    // stockQuantity (left out: stock stays with the reservation engine) and version (left out: no conflict check)
+    static class ProductUpdateRequest {
+        private String name;
+        private String description;
+        private BigDecimal price;
+        private String category;
+        private String imageUrl;
+        private Integer stockQuantity;
+        private Long version;
+
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+        public String getDescription() { return description; }
+        public void setDescription(String description) { this.description = description; }
+        public BigDecimal getPrice() { return price; }
+        public void setPrice(BigDecimal price) { this.price = price; }
+        public String getCategory() { return category; }
+        public void setCategory(String category) { this.category = category; }
+        public String getImageUrl() { return imageUrl; }
+        public void setImageUrl(String imageUrl) { this.imageUrl = imageUrl; }
+        public Integer getStockQuantity() { return stockQuantity; }
+        public void setStockQuantity(Integer stockQuantity) { this.stockQuantity = stockQuantity; }
+        public Long getVersion() { return version; }
+        public void setVersion(Long version) { this.version = version; }
+    }
 }
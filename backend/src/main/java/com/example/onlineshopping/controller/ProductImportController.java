@@ -0,0 +1,75 @@
+package com.example.onlineshopping.controller;
+
+import com.example.onlineshopping.execution.Offload;
+import com.example.onlineshopping.service.ProductImportService;
+import com.example.onlineshopping.service.ProductImportService.Format;
+import com.example.onlineshopping.service.ProductImportService.ImportJob;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+// Bulk catalog upserts by SKU (typically an admin function). The body is streamed, never buffered whole:
+// curl -T products.csv -H 'Content-Type: text/csv' http://localhost:8080/api/products/imports
+@RestController
+@RequestMapping("/api/products/imports")
+public class ProductImportController {
+
+    @Autowired
+    private ProductImportService productImportService;
+
+    // Runs the import to the end and returns its report; rows with errors are listed, the others are still applied
+    @PostMapping
+    public ResponseEntity<ImportJob> importProducts(@RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
+                                                    @RequestParam(required = false) String format,
+                                                    HttpServletRequest request) throws IOException {
+        Format parsed = formatOf(format != null ? format : contentType);
+        if (parsed == null) {
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
+        }
+        ImportJob job = productImportService.begin(parsed);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build(); // Another import is still running
+        }
+        productImportService.run(job, request.getInputStream());
+        if (job.getState() == ProductImportService.State.FAILED) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(job); // Batches written before the failure stay written
+        }
+        return ResponseEntity.ok(job);
+    }
+
+    // The last few imports, newest first (including one still running)
+    @Offload(false)
+    @GetMapping
+    public List<ImportJob> getRecentImports() {
+        return productImportService.recentJobs();
+    }
+
+    @Offload(false)
+    @GetMapping("/{id}")
+    public ResponseEntity<ImportJob> getImport(@PathVariable long id) {
+        ImportJob job = productImportService.findJob(id);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
+    }
+
+    // "csv" / text/csv, or "ndjson" / application/x-ndjson (one JSON object per line)
+    static Format formatOf(String value) {
+        if (value == null) {
+            return null;
+        }
+        String lower = value.toLowerCase(Locale.ROOT);
+        if (lower.contains("csv")) {
+            return Format.CSV;
+        }
+        if (lower.contains("ndjson") || lower.contains("jsonl") || lower.contains("json-seq")) {
+            return Format.NDJSON;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.onlineshopping.controller;
+
+import com.example.onlineshopping.execution.Offload;
+import com.example.onlineshopping.model.OrderStatus;
+import com.example.onlineshopping.service.SalesRollupService;
+import com.example.onlineshopping.service.SalesRollupService.GroupBy;
+import com.example.onlineshopping.service.SalesRollupService.RebuildResult;
+import com.example.onlineshopping.service.SalesRollupService.RollupRow;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+
+// Order count and revenue per day, status or user, read from the pre-aggregated rollups (typically an admin function)
+@RestController
+@RequestMapping("/api/rollups/sales")
+public class SalesRollupController {
+
+    @Autowired
+    private SalesRollupService salesRollupService;
+
+    // e.g. ?by=day&from=2024-05-01&to=2024-06-01&status=DELIVERED, ?by=status, ?by=user&userId=42 (to is exclusive)
+    @GetMapping
+    public ResponseEntity<List<RollupRow>> getSales(@RequestParam(defaultValue = "day") String by,
+                                                    @RequestParam(required = false) String from,
+                                                    @RequestParam(required = false) String to,
+                                                    @RequestParam(required = false) String status,
+                                                    @RequestParam(required = false) Long userId) {
+        GroupBy groupBy;
+        LocalDate fromDate;
+        LocalDate toDate;
+        try {
+            groupBy = GroupBy.valueOf(by.toUpperCase(Locale.ROOT));
+            fromDate = from == null ? null : LocalDate.parse(from);
+            toDate = to == null ? null : LocalDate.parse(to);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        OrderStatus orderStatus = OrderStatus.parse(status);
+        if (status != null && orderStatus == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        // Users are only kept in total, not per day, and listing all of them is what the order export is for
+        if (groupBy == GroupBy.USER && (userId == null || fromDate != null || toDate != null)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(salesRollupService.summarize(groupBy, fromDate, toDate, orderStatus, userId));
+    }
+
+    // Recompute every rollup from the orders table
+    @Offload(timeoutMs = "${app.web.execution.long-running-timeout-ms:3600000}")
+    @PostMapping("/rebuild")
+    public RebuildResult rebuild() {
+        return salesRollupService.rebuild();
+    }
+}
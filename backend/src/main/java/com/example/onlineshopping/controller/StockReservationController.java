@@ -0,0 +1,97 @@
+package com.example.onlineshopping.controller;
+
+import com.example.onlineshopping.security.AuthenticatedUser;
+import com.example.onlineshopping.service.StockReservationService;
+import com.example.onlineshopping.service.StockReservationService.ReservationResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/stock")
+public class StockReservationController {
+
+    @Autowired
+    private StockReservationService stockReservationService;
+
+    // Current sellable quantity of a product (on hand minus held reservations)
+    @GetMapping("/products/{productId}")
+    public ResponseEntity<StockLevel> getStockLevel(@PathVariable Long productId) {
+        int available = stockReservationService.availableStock(productId);
+        if (available < 0) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(new StockLevel(productId, available));
+    }
+
+    // Hold stock for a product; the reservation must be committed or released before it expires
+    @PostMapping("/reservations")
+    public ResponseEntity<StockReservationService.Reservation> reserve(@RequestBody ReservationRequest request,
+            @RequestAttribute(name = AuthenticatedUser.REQUEST_ATTRIBUTE, required = false) AuthenticatedUser caller) {
+        if (caller == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build(); // Anonymous holds could take every unit for the TTL
+        }
+        if (request.getProductId() == null || request.getQuantity() <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        ReservationResult result = stockReservationService.reserve(request.getProductId(), request.getQuantity());
+        switch (result.getOutcome()) {
+            case RESERVED:
+                return ResponseEntity.status(HttpStatus.CREATED).body(result.getReservation());
+            case UNKNOWN_PRODUCT:
+                return ResponseEntity.notFound().build();
+            default:
+                return ResponseEntity.status(HttpStatus.CONFLICT).build(); // Not enough stock left
+        }
+    }
+
+    // Turn a reservation into a sale
+    @PostMapping("/reservations/{reservationId}/commit")
+    public ResponseEntity<Void> commit(@PathVariable String reservationId,
+            @RequestAttribute(name = AuthenticatedUser.REQUEST_ATTRIBUTE, required = false) AuthenticatedUser caller) {
+        if (caller == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (stockReservationService.commit(reservationId)) {
+            return ResponseEntity.noContent().build();
+        }
+        return ResponseEntity.notFound().build();
+    }
+
+    // Give reserved units back
+    @DeleteMapping("/reservations/{reservationId}")
+    public ResponseEntity<Void> release(@PathVariable String reservationId,
+            @RequestAttribute(name = AuthenticatedUser.REQUEST_ATTRIBUTE, required = false) AuthenticatedUser caller) {
+        if (caller == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (stockReservationService.release(reservationId)) {
+            return ResponseEntity.noContent().build();
+        }
+        return ResponseEntity.notFound().build();
+    }
+
+    // (Simplified DTO for reservation requests)
+    static class ReservationRequest {
+        private Long productId;
+        private int quantity;
+        // Getters and Setters
+        public Long getProductId() { return productId; }
+        public void setProductId(Long productId) { this.productId = productId; }
+        public int getQuantity() { return quantity; }
+        public void setQuantity(int quantity) { this.quantity = quantity; }
+    }
+
+    static class StockLevel {
+        private final Long productId;
+        private final int available;
+
+        StockLevel(Long productId, int available) {
+            this.productId = productId;
+            this.available = available;
+        }
+        public Long getProductId() { return productId; }
+        public int getAvailable() { return available; }
+    }
+}
@@ -2,7 +2,13 @@ package com.example.onlineshopping.controller;
 
 import com.example.onlineshopping.model.User;
 import com.example.onlineshopping.repository.UserRepository;
+import com.example.onlineshopping.security.AuthenticatedUser;
+import com.example.onlineshopping.security.PasswordHasher;
+import com.example.onlineshopping.security.TokenService;
+import com.example.onlineshopping.service.EntityLookupService;
+import com.example.onlineshopping.service.UserIdentityIndex;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -17,39 +23,71 @@ public class UserController {
     @Autowired
     private UserRepository userRepository;
 
-    // Get all users
+    @Autowired
+    private EntityLookupService entityLookupService;
+
+    @Autowired
+    private PasswordHasher passwordHasher;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private UserIdentityIndex userIdentityIndex;
+
+    // "All users" the caller may see: there are no admin accounts, so that is only their own
     @GetMapping
-    public List<User> getAllUsers() {
-        return userRepository.findAll();
+    public ResponseEntity<List<User>> getAllUsers(
+            @RequestAttribute(name = AuthenticatedUser.REQUEST_ATTRIBUTE, required = false) AuthenticatedUser caller) {
+        if (caller == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(entityLookupService.findUserById(caller.getUserId()).map(List::of).orElseGet(List::of));
     }
 
-    // Get user by ID
+    // Get user by ID (only your own account)
     @GetMapping("/{id}")
-    public ResponseEntity<User> getUserById(@PathVariable Long id) {
-        Optional<User> user = userRepository.findById(id);
+    public ResponseEntity<User> getUserById(@PathVariable Long id,
+            @RequestAttribute(name = AuthenticatedUser.REQUEST_ATTRIBUTE, required = false) AuthenticatedUser caller) {
+        HttpStatus denied = denySelfAccess(caller, id);
+        if (denied != null) {
+            return ResponseEntity.status(denied).build();
+        }
+        Optional<User> user = entityLookupService.findUserById(id);
         return user.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
     }
 
     // Create a new user (basic registration)
     @PostMapping("/register")
     public ResponseEntity<User> registerUser(@RequestBody User user) {
-        // Basic validation: check if username or email already exists
-        if (userRepository.findByUsername(user.getUsername()).isPresent()) {
-            return ResponseEntity.status(HttpStatus.CONFLICT).body(null); // Or a custom error response
+        if (user.getUsername() == null || user.getEmail() == null || user.getPassword() == null) {
+            return ResponseEntity.badRequest().build();
         }
-        if (userRepository.findByEmail(user.getEmail()).isPresent()) {
+        // Most new names are definitely free according to the index; only a "maybe" costs a query
+        if (userIdentityIndex.mightBeTaken(user.getUsername(), user.getEmail())
+                && userRepository.existsByUsernameOrEmail(user.getUsername(), user.getEmail())) {
             return ResponseEntity.status(HttpStatus.CONFLICT).body(null); // Or a custom error response
         }
-        // IMPORTANT: In a real app, hash the password before saving.
-        // Example using a (hypothetical) passwordEncoder:
-        // user.setPassword(passwordEncoder.encode(user.getPassword()));
-        User savedUser = userRepository.save(user);
+        user.setPassword(passwordHasher.hash(user.getPassword()));
+        User savedUser;
+        try {
+            savedUser = userRepository.saveAndFlush(user);
+        } catch (DataIntegrityViolationException e) {
+            // The unique constraints settle concurrent sign-ups for the same name or email
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(null);
+        }
+        userIdentityIndex.add(savedUser);
         return ResponseEntity.status(HttpStatus.CREATED).body(savedUser);
     }
 
-    // Update user (basic example)
+    // Update user (basic example, only your own account)
     @PutMapping("/{id}")
-    public ResponseEntity<User> updateUser(@PathVariable Long id, @RequestBody User userDetails) {
+    public ResponseEntity<User> updateUser(@PathVariable Long id, @RequestBody User userDetails,
+            @RequestAttribute(name = AuthenticatedUser.REQUEST_ATTRIBUTE, required = false) AuthenticatedUser caller) {
+        HttpStatus denied = denySelfAccess(caller, id);
+        if (denied != null) {
+            return ResponseEntity.status(denied).build();
+        }
         Optional<User> optionalUser = userRepository.findById(id);
         if (optionalUser.isPresent()) {
             User existingUser = optionalUser.get();
@@ -59,56 +97,86 @@ public class UserController {
             existingUser.setPhone(userDetails.getPhone());
             // Add more fields to update as needed
             // Be careful with updating username, email, password - requires more logic
-            return ResponseEntity.ok(userRepository.save(existingUser));
+            User savedUser = userRepository.save(existingUser);
+            entityLookupService.forgetUser(id);
+            return ResponseEntity.ok(savedUser);
         } else {
             return ResponseEntity.notFound().build();
         }
     }
 
-    // Delete user
+    // Delete user (only your own account); every token issued to it stops working
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteUser(@PathVariable Long id) {
-        if (userRepository.existsById(id)) {
-            userRepository.deleteById(id);
+    public ResponseEntity<Void> deleteUser(@PathVariable Long id,
+            @RequestAttribute(name = AuthenticatedUser.REQUEST_ATTRIBUTE, required = false) AuthenticatedUser caller) {
+        HttpStatus denied = denySelfAccess(caller, id);
+        if (denied != null) {
+            return ResponseEntity.status(denied).build();
+        }
+        Optional<User> user = userRepository.findById(id);
+        if (user.isPresent()) {
+            userRepository.delete(user.get());
+            entityLookupService.forgetUser(id);
+            tokenService.revokeAllFor(id);
+            userIdentityIndex.remove(user.get());
             return ResponseEntity.noContent().build();
         } else {
             return ResponseEntity.notFound().build();
         }
     }
 
-    // Basic login endpoint (for demonstration, real auth is more complex)
-    // TODO: Implement proper JWT authentication and use Spring Security PasswordEncoder
+    // Login: checks the password hash and returns a signed bearer token for the other endpoints
     @PostMapping("/login")
-    public ResponseEntity<?> loginUser(@RequestBody User loginDetails) { // Changed return type
+    public ResponseEntity<?> loginUser(@RequestBody User loginDetails) {
         Optional<User> userOptional = userRepository.findByUsername(loginDetails.getUsername());
-        if (userOptional.isPresent()) {
-            User user = userOptional.get();
-            // IMPORTANT: This is a placeholder for password checking.
-            // In a real application, you MUST hash passwords and compare hashes (e.g., using BCryptPasswordEncoder).
-            // NEVER store or compare plain text passwords in production.
-            // Example: if (passwordEncoder.matches(loginDetails.getPassword(), user.getPassword())) { ... }
-            if (user.getPassword().equals(loginDetails.getPassword())) {
-                // Successful login (in a real app, return a token like JWT and user details)
-                // For now, return a simple DTO with ID and username
-                LoginResponse response = new LoginResponse(user.getId(), user.getUsername(), "Login successful (token placeholder)");
-                return ResponseEntity.ok(response);
-            } else {
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid username or password");
-            }
+        if (userOptional.isEmpty()) {
+            passwordHasher.burnUnknownUser(loginDetails.getPassword()); // Same cost as a wrong password
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid username or password");
+        }
+        User user = userOptional.get();
+        if (!passwordHasher.matches(loginDetails.getPassword(), user.getPassword())) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid username or password");
+        }
+        if (passwordHasher.needsRehash(user.getPassword())) {
+            // Plain-text or outdated-cost password: upgrade it now that we know the raw value
+            user.setPassword(passwordHasher.hash(loginDetails.getPassword()));
+            userRepository.save(user);
+        }
+        String token = tokenService.issue(user.getId());
+        return ResponseEntity.ok(new LoginResponse(user.getId(), user.getUsername(), "Login successful", token));
+    }
+
+    // Logout: revokes the token the request was made with
+    @PostMapping("/logout")
+    public ResponseEntity<Void> logoutUser(
+            @RequestAttribute(name = AuthenticatedUser.REQUEST_ATTRIBUTE, required = false) AuthenticatedUser caller) {
+        if (caller == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        tokenService.revoke(caller);
+        return ResponseEntity.noContent().build();
+    }
+
+    // 401 without a token, 403 with someone else's; null when the caller is the account owner
+    static HttpStatus denySelfAccess(AuthenticatedUser caller, Long userId) {
+        if (caller == null) {
+            return HttpStatus.UNAUTHORIZED;
         }
-        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid username or password");
+        return caller.is(userId) ? null : HttpStatus.FORBIDDEN;
     }
 
     // Simple DTO for login response
     static class LoginResponse {
         private Long id;
         private String username;
-        private String message; // Or token in a real app
+        private String message;
+        private String token; // Send back as "Authorization: Bearer <token>"
         // Getters and Setters
-        public LoginResponse(Long id, String username, String message) {
+        public LoginResponse(Long id, String username, String message, String token) {
             this.id = id;
             this.username = username;
             this.message = message;
+            this.token = token;
         }
         public Long getId() { return id; }
         public void setId(Long id) { this.id = id; }
@@ -116,5 +184,7 @@ public class UserController {
         public void setUsername(String username) { this.username = username; }
         public String getMessage() { return message; }
         public void setMessage(String message) { this.message = message; }
+        public String getToken() { return token; }
+        public void setToken(String token) { this.token = token; }
     }
 }
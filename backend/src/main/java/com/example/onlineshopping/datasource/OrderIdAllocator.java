@@ -0,0 +1,71 @@
+package com.example.onlineshopping.datasource;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+// Ids for orders and order lines that are unique across shards (each shard counting on its own would hand out 1, 2, ...
+// everywhere). Blocks of ids are reserved from a counter row per sequence in the primary, one UPDATE per block;
+// ids left in a block at shutdown are simply never used.
+public class OrderIdAllocator {
+
+    public static final String ORDERS = "orders";
+    public static final String ORDER_ITEMS = "order_items";
+
+    static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS order_id_blocks (name VARCHAR(64) NOT NULL PRIMARY KEY, next_id BIGINT NOT NULL)";
+    private static final String RESERVE = "UPDATE order_id_blocks SET next_id = next_id + ? WHERE name = ?";
+    private static final String READ = "SELECT next_id FROM order_id_blocks WHERE name = ?";
+    private static final String START = "INSERT INTO order_id_blocks (name, next_id) VALUES (?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int blockSize;
+    private final Map<String, long[]> blocks = new HashMap<>(); // Sequence -> {next id, end of block}
+
+    public OrderIdAllocator(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, int blockSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Its own short transaction, so the counter row is never locked for as long as a caller's transaction
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.blockSize = Math.max(1, blockSize);
+    }
+
+    public void createTable() {
+        jdbcTemplate.execute(CREATE_TABLE);
+    }
+
+    // The next id of the sequence; firstFree gives the lowest unused id in case the counter does not exist yet
+    // (the highest id already stored anywhere, plus one)
+    public synchronized long next(String sequence, LongSupplier firstFree) {
+        long[] block = blocks.get(sequence);
+        if (block == null || block[0] == block[1]) {
+            long start = reserve(sequence, firstFree);
+            block = new long[]{start, start + blockSize};
+            blocks.put(sequence, block);
+        }
+        return block[0]++;
+    }
+
+    private long reserve(String sequence, LongSupplier firstFree) {
+        while (true) {
+            Long end = transactionTemplate.execute(status -> jdbcTemplate.update(RESERVE, blockSize, sequence) == 0
+                    ? null : jdbcTemplate.queryForObject(READ, Long.class, sequence));
+            if (end != null) {
+                return end - blockSize;
+            }
+            try {
+                long start = Math.max(1, firstFree.getAsLong());
+                transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(START, sequence, start + blockSize));
+                return start;
+            } catch (DuplicateKeyException e) {
+                // Another instance started the counter first: reserve from it
+            }
+        }
+    }
+}
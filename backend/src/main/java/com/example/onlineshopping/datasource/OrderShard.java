@@ -0,0 +1,87 @@
+package com.example.onlineshopping.datasource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// One database holding orders and their lines: a shard, or without sharding the primary itself.
+// Every statement against it goes through its own templates, so a transaction never spans two shards.
+public class OrderShard {
+
+    private final String name;
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public OrderShard(String name, DataSource dataSource, NamedParameterJdbcTemplate namedJdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.name = name;
+        this.dataSource = dataSource;
+        this.jdbcTemplate = namedJdbcTemplate.getJdbcTemplate();
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    // A shard database with a transaction manager of its own
+    public static OrderShard of(String name, DataSource dataSource) {
+        return new OrderShard(name, dataSource, new NamedParameterJdbcTemplate(dataSource),
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+    }
+
+    public String getName() { return name; }
+    public DataSource getDataSource() { return dataSource; }
+    public JdbcTemplate getJdbcTemplate() { return jdbcTemplate; }
+    public NamedParameterJdbcTemplate getNamedJdbcTemplate() { return namedJdbcTemplate; }
+    public TransactionTemplate getTransactionTemplate() { return transactionTemplate; }
+
+    // Creates the orders and order_items tables if missing, with the columns Hibernate gives them on the primary
+    // (ids are assigned by OrderIdAllocator, so no auto-increment) and the indexes the listings need
+    public void createSchema() {
+        for (String statement : schema(isMySql())) {
+            jdbcTemplate.execute(statement);
+        }
+    }
+
+    private boolean isMySql() {
+        try {
+            String product = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+            return product != null && product.toLowerCase(Locale.ROOT).contains("mysql");
+        } catch (MetaDataAccessException e) {
+            throw new IllegalStateException("Cannot reach order shard " + name, e);
+        }
+    }
+
+    // MySQL has no CREATE INDEX IF NOT EXISTS, so its indexes are declared inline
+    static List<String> schema(boolean mySql) {
+        String timestamp = mySql ? "DATETIME(6)" : "TIMESTAMP(6)";
+        String ordersIndexes = ", INDEX idx_orders_user_date (user_id, order_date, id), INDEX idx_orders_date (order_date, id)";
+        String itemsIndexes = ", INDEX idx_order_items_order (order_id)";
+        List<String> statements = new ArrayList<>();
+        statements.add("CREATE TABLE IF NOT EXISTS orders (id BIGINT NOT NULL PRIMARY KEY, user_id BIGINT NOT NULL, "
+                + "order_date " + timestamp + " NOT NULL, status VARCHAR(255) NOT NULL, total_amount DECIMAL(19,2) NOT NULL, "
+                + "shipping_address VARCHAR(255), billing_address VARCHAR(255)" + (mySql ? ordersIndexes : "") + ")");
+        statements.add("CREATE TABLE IF NOT EXISTS order_items (id BIGINT NOT NULL PRIMARY KEY, order_id BIGINT NOT NULL, "
+                + "product_id BIGINT NOT NULL, product_name VARCHAR(255) NOT NULL, unit_price DECIMAL(19,2) NOT NULL, "
+                + "quantity INT NOT NULL, line_total DECIMAL(19,2) NOT NULL" + (mySql ? itemsIndexes : "") + ")");
+        if (!mySql) {
+            statements.add("CREATE INDEX IF NOT EXISTS idx_orders_user_date ON orders (user_id, order_date, id)");
+            statements.add("CREATE INDEX IF NOT EXISTS idx_orders_date ON orders (order_date, id)");
+            statements.add("CREATE INDEX IF NOT EXISTS idx_order_items_order ON order_items (order_id)");
+        }
+        return statements;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.onlineshopping.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Moves every order (with its lines) that is not on the shard its user maps to, after shards were appended to
+// app.orders.shards.urls or moved to app.orders.shards.retired-urls. Safe to run while orders are placed and change
+// status: each batch is copied to its new shard first and only then deleted from the old one, and only where the
+// status is still the copied one; an order whose status changed meanwhile is copied again. Until it is deleted
+// from the old shard an order exists twice, which the readers allow for (reads look at every shard meanwhile).
+// An interrupted run can simply be started again.
+public class OrderShardRebalancer {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderShardRebalancer.class);
+
+    static final String ORDER_COLUMNS = "id, user_id, order_date, status, total_amount, shipping_address, billing_address";
+    static final String ITEM_COLUMNS = "id, order_id, product_id, product_name, unit_price, quantity, line_total";
+    private static final String SCAN = "SELECT " + ORDER_COLUMNS + " FROM orders WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String READ_ORDERS = "SELECT " + ORDER_COLUMNS + " FROM orders WHERE id IN (:ids)";
+    private static final String READ_ITEMS = "SELECT " + ITEM_COLUMNS + " FROM order_items WHERE order_id IN (:ids)";
+    private static final String INSERT_ORDER = "INSERT INTO orders (" + ORDER_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_ITEM = "INSERT INTO order_items (" + ITEM_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String DELETE_ORDERS = "DELETE FROM orders WHERE id IN (:ids)";
+    private static final String DELETE_ITEMS = "DELETE FROM order_items WHERE order_id IN (:ids)";
+    private static final String DELETE_UNCHANGED = "DELETE FROM orders WHERE id = ? AND status = ?";
+
+    private final int batchSize;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public OrderShardRebalancer(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public static final class RebalanceReport {
+        private final long scanned;
+        private final long moved;
+        private final Map<String, Long> movedTo;
+        private final long millis;
+
+        RebalanceReport(long scanned, long moved, Map<String, Long> movedTo, long millis) {
+            this.scanned = scanned;
+            this.moved = moved;
+            this.movedTo = movedTo;
+            this.millis = millis;
+        }
+
+        public long getScanned() { return scanned; }
+        public long getMoved() { return moved; }
+        public Map<String, Long> getMovedTo() { return movedTo; }
+        public long getMillis() { return millis; }
+    }
+
+    // Null if a rebalance is already running
+    public RebalanceReport rebalance(OrderShards layout) {
+        if (!running.compareAndSet(false, true)) {
+            return null;
+        }
+        long start = System.nanoTime();
+        layout.beginRebalance();
+        try {
+            long scanned = 0;
+            long moved = 0;
+            Map<String, Long> movedTo = new LinkedHashMap<>();
+            for (OrderShard source : layout.all()) {
+                long lastId = 0;
+                while (true) {
+                    List<Map<String, Object>> page = source.getJdbcTemplate().queryForList(SCAN, lastId, batchSize);
+                    if (page.isEmpty()) {
+                        break;
+                    }
+                    lastId = id(page.get(page.size() - 1));
+                    scanned += page.size();
+                    Map<OrderShard, List<Map<String, Object>>> misplaced = new LinkedHashMap<>();
+                    for (Map<String, Object> order : page) {
+                        OrderShard target = layout.shardFor(((Number) order.get("user_id")).longValue());
+                        if (target != source) {
+                            misplaced.computeIfAbsent(target, shard -> new ArrayList<>()).add(order);
+                        }
+                    }
+                    for (Map.Entry<OrderShard, List<Map<String, Object>>> entry : misplaced.entrySet()) {
+                        move(source, entry.getKey(), entry.getValue());
+                        moved += entry.getValue().size();
+                        movedTo.merge(entry.getKey().getName(), (long) entry.getValue().size(), Long::sum);
+                    }
+                }
+            }
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            log.info("Order shards rebalanced: {} of {} orders moved in {} ms", moved, scanned, millis);
+            return new RebalanceReport(scanned, moved, movedTo, millis);
+        } finally {
+            layout.endRebalance();
+            running.set(false);
+        }
+    }
+
+    private void move(OrderShard source, OrderShard target, List<Map<String, Object>> orders) {
+        List<Long> ids = new ArrayList<>(orders.size());
+        orders.forEach(order -> ids.add(id(order)));
+        MapSqlParameterSource params = new MapSqlParameterSource("ids", ids);
+        List<Map<String, Object>> items = source.getNamedJdbcTemplate().queryForList(READ_ITEMS, params);
+
+        target.getTransactionTemplate().executeWithoutResult(status -> {
+            // Copies left behind by an interrupted run (or an earlier attempt below) are replaced
+            target.getNamedJdbcTemplate().update(DELETE_ITEMS, params);
+            target.getNamedJdbcTemplate().update(DELETE_ORDERS, params);
+            target.getJdbcTemplate().batchUpdate(INSERT_ORDER, rows(orders, ORDER_COLUMNS));
+            if (!items.isEmpty()) {
+                target.getJdbcTemplate().batchUpdate(INSERT_ITEM, rows(items, ITEM_COLUMNS));
+            }
+        });
+
+        List<Long> changed = source.getTransactionTemplate().execute(status -> {
+            List<Object[]> unchanged = new ArrayList<>(orders.size());
+            orders.forEach(order -> unchanged.add(new Object[]{order.get("id"), order.get("status")}));
+            int[] deleted = source.getJdbcTemplate().batchUpdate(DELETE_UNCHANGED, unchanged);
+            List<Long> gone = new ArrayList<>();
+            List<Long> stillThere = new ArrayList<>();
+            for (int i = 0; i < deleted.length; i++) {
+                (deleted[i] == 0 ? stillThere : gone).add(ids.get(i));
+            }
+            if (!gone.isEmpty()) {
+                source.getNamedJdbcTemplate().update(DELETE_ITEMS, new MapSqlParameterSource("ids", gone));
+            }
+            return stillThere;
+        });
+        if (changed.isEmpty()) {
+            return;
+        }
+        // Status changed between copy and delete: copy those orders again as they are now
+        List<Map<String, Object>> current = source.getNamedJdbcTemplate().queryForList(READ_ORDERS, new MapSqlParameterSource("ids", changed));
+        if (!current.isEmpty()) {
+            move(source, target, current);
+        }
+    }
+
+    private static long id(Map<String, Object> row) {
+        return ((Number) row.get("id")).longValue();
+    }
+
+    private static List<Object[]> rows(List<Map<String, Object>> rows, String columns) {
+        String[] names = columns.split(", ");
+        List<Object[]> values = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            Object[] value = new Object[names.length];
+            for (int i = 0; i < names.length; i++) {
+                value[i] = row.get(names[i]);
+            }
+            values.add(value);
+        }
+        return values;
+    }
+}
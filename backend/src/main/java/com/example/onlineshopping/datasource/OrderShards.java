@@ -0,0 +1,191 @@
+package com.example.onlineshopping.datasource;
+
+import com.example.onlineshopping.metrics.RequestCounters;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// The databases orders are partitioned over, by user id. A user's orders all live on one shard, chosen with a
+// jump consistent hash so that appending a shard moves only about 1/N of the users (all of them to the new one).
+// Retired shards get no new orders but are still read until OrderShardRebalancer has emptied them.
+// Queries that span users run on every shard at once through fanOut().
+public class OrderShards implements Closeable {
+
+    private final List<OrderShard> shards;
+    private final List<OrderShard> retired;
+    private final List<OrderShard> all;
+    private final boolean sharded;
+    private final boolean migrating;
+    private final AtomicInteger rebalancing = new AtomicInteger();
+    private final ExecutorService fanOutPool;
+
+    public OrderShards(List<OrderShard> shards, List<OrderShard> retired, int fanOutThreads, boolean migrating) {
+        this(shards, retired, true, fanOutThreads, migrating);
+    }
+
+    private OrderShards(List<OrderShard> shards, List<OrderShard> retired, boolean sharded, int fanOutThreads, boolean migrating) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one order shard is required");
+        }
+        this.shards = List.copyOf(shards);
+        this.retired = List.copyOf(retired);
+        List<OrderShard> combined = new ArrayList<>(shards);
+        combined.addAll(retired);
+        this.all = Collections.unmodifiableList(combined);
+        this.sharded = sharded;
+        this.migrating = migrating;
+        if (all.size() > 1) {
+            AtomicInteger threads = new AtomicInteger();
+            fanOutPool = Executors.newFixedThreadPool(Math.max(1, fanOutThreads), runnable -> {
+                Thread thread = new Thread(runnable, "order-shard-fan-out-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            fanOutPool = null;
+        }
+    }
+
+    // Orders stay in the primary (the only "shard"), read and written as before
+    public static OrderShards unsharded(OrderShard primary) {
+        return new OrderShards(List.of(primary), List.of(), false, 0, false);
+    }
+
+    // True when orders live in their own databases rather than the primary
+    public boolean isSharded() {
+        return sharded;
+    }
+
+    // Where the user's orders live and new ones are written
+    public OrderShard shardFor(long userId) {
+        return shards.get(jumpHash(userId, shards.size()));
+    }
+
+    // Where to look for the user's orders: while a rebalance may still be moving them, every shard
+    public List<OrderShard> shardsForUser(long userId) {
+        return isMigrating() ? all : List.of(shardFor(userId));
+    }
+
+    // Active shards first, then retired ones
+    public List<OrderShard> all() {
+        return all;
+    }
+
+    public List<OrderShard> getShards() {
+        return shards;
+    }
+
+    public List<OrderShard> getRetired() {
+        return retired;
+    }
+
+    // Set after the shard list changed (app.orders.shards.migrating), while a rebalance runs, or while shards are being retired
+    public boolean isMigrating() {
+        return migrating || !retired.isEmpty() || rebalancing.get() > 0;
+    }
+
+    void beginRebalance() {
+        rebalancing.incrementAndGet();
+    }
+
+    void endRebalance() {
+        rebalancing.decrementAndGet();
+    }
+
+    // Runs the work on each shard in parallel (the first on the calling thread) and returns the results in shard order.
+    // The work runs outside any transaction of the caller: each shard opens its own if it needs one.
+    public <T> List<T> fanOut(List<OrderShard> targets, Function<OrderShard, T> work) {
+        if (targets.size() == 1 || fanOutPool == null) {
+            List<T> results = new ArrayList<>(targets.size());
+            for (OrderShard shard : targets) {
+                results.add(work.apply(shard));
+            }
+            return results;
+        }
+        List<Future<Counted<T>>> futures = new ArrayList<>(targets.size());
+        for (int i = 1; i < targets.size(); i++) {
+            OrderShard shard = targets.get(i);
+            futures.add(fanOutPool.submit(() -> {
+                RequestCounters counters = RequestCounters.current();
+                int statements = counters.getStatements();
+                long rows = counters.getRows();
+                T result = work.apply(shard);
+                return new Counted<>(result, counters.getStatements() - statements, counters.getRows() - rows);
+            }));
+        }
+        List<T> results = new ArrayList<>(targets.size());
+        try {
+            results.add(work.apply(targets.get(0)));
+            for (Future<Counted<T>> future : futures) {
+                Counted<T> counted = future.get();
+                // The request metrics count per thread: charge the caller's request with the pool thread's work
+                RequestCounters.current().add(counted.statements, counted.rows);
+                results.add(counted.result);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while querying order shards", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(false)); // After a failure, skip shards not started yet
+        }
+        return results;
+    }
+
+    private static final class Counted<T> {
+        final T result;
+        final int statements;
+        final long rows;
+
+        Counted(T result, int statements, long rows) {
+            this.result = result;
+            this.statements = statements;
+            this.rows = rows;
+        }
+    }
+
+    // Jump consistent hash (Lamping and Veach): maps the key to [0, buckets); going from n to n + 1 buckets
+    // only moves keys into the new bucket. Shards must therefore be added and removed at the end of the list.
+    static int jumpHash(long key, int buckets) {
+        long bucket = -1;
+        long next = 0;
+        while (next < buckets) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+    // The shard pools are owned here (the primary, when it is the only shard, is closed by the container)
+    @Override
+    public void close() throws IOException {
+        if (fanOutPool != null) {
+            fanOutPool.shutdownNow();
+        }
+        if (!sharded) {
+            return;
+        }
+        for (OrderShard shard : all) {
+            if (shard.getDataSource() instanceof Closeable) {
+                ((Closeable) shard.getDataSource()).close();
+            }
+        }
+    }
+}
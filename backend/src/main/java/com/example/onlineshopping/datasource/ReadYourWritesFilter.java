@@ -0,0 +1,69 @@
+package com.example.onlineshopping.datasource;
+
+import com.example.onlineshopping.security.AuthenticatedUser;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Decides which requests must not read from a replica:
+// - every write request (POST, PUT, DELETE, ...), so read-modify-write handlers load the row they are about to change
+//   from the primary rather than a lagging copy;
+// - a signed-in user's requests for a short window after they wrote, so replica lag never makes their own update
+//   or order look lost.
+// Everything else reads from the replicas. Runs after TokenAuthenticationFilter, which identifies the caller.
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    private static final int PURGE_THRESHOLD = 10_000;
+
+    private final long windowNanos;
+    private final Map<Long, Long> lastWrites = new ConcurrentHashMap<>(); // User id -> System.nanoTime() of the last write
+
+    public ReadYourWritesFilter(long windowMillis) {
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        AuthenticatedUser caller = (AuthenticatedUser) request.getAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE);
+        boolean write = isWrite(request.getMethod());
+        boolean pinned = write || (caller != null && wroteRecently(caller.getUserId()));
+        if (pinned) {
+            ReplicaRoutingDataSource.pinToPrimary();
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (pinned) {
+                ReplicaRoutingDataSource.unpin();
+            }
+            if (write && caller != null) {
+                recordWrite(caller.getUserId());
+            }
+        }
+    }
+
+    private boolean wroteRecently(Long userId) {
+        Long lastWrite = lastWrites.get(userId);
+        return lastWrite != null && System.nanoTime() - lastWrite < windowNanos;
+    }
+
+    private void recordWrite(Long userId) {
+        long now = System.nanoTime();
+        lastWrites.put(userId, now);
+        if (lastWrites.size() > PURGE_THRESHOLD) {
+            lastWrites.values().removeIf(at -> now - at >= windowNanos);
+        }
+    }
+
+    private static boolean isWrite(String method) {
+        return !("GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method));
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.onlineshopping.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Sends read-only transactions to the replicas (round robin) and everything else to the primary.
+// It has to sit behind a LazyConnectionDataSourceProxy: a transaction is only marked read-only once it has begun,
+// so the physical connection must be chosen at the first statement rather than when the transaction starts.
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    static final String PRIMARY = "primary";
+
+    // Set for requests that must see their own recent writes
+    private static final ThreadLocal<Boolean> pinnedToPrimary = new ThreadLocal<>();
+
+    private final List<DataSource> replicas;
+    private final String[] replicaKeys;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Map<String, LongAdder> routed = new LinkedHashMap<>();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas) {
+        if (replicas.isEmpty()) {
+            throw new IllegalArgumentException("At least one replica is required");
+        }
+        this.replicas = replicas;
+        this.replicaKeys = new String[replicas.size()];
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        routed.put(PRIMARY, new LongAdder());
+        for (int i = 0; i < replicas.size(); i++) {
+            replicaKeys[i] = "replica-" + i;
+            targets.put(replicaKeys[i], replicas.get(i));
+            routed.put(replicaKeys[i], new LongAdder());
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    public static void pinToPrimary() {
+        pinnedToPrimary.set(Boolean.TRUE);
+    }
+
+    public static void unpin() {
+        pinnedToPrimary.remove();
+    }
+
+    // So work handed to another thread for this request can be pinned there too
+    public static boolean isPinnedToPrimary() {
+        return pinnedToPrimary.get() != null;
+    }
+
+    // Runs reads that must not lag behind the primary there, even in read-only transactions; a no-op without replicas
+    public static <T> T onPrimary(Supplier<T> work) {
+        boolean alreadyPinned = pinnedToPrimary.get() != null;
+        pinToPrimary();
+        try {
+            return work.get();
+        } finally {
+            if (!alreadyPinned) {
+                unpin();
+            }
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String key = PRIMARY;
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() && pinnedToPrimary.get() == null) {
+            key = replicaKeys[Math.floorMod(next.getAndIncrement(), replicaKeys.length)];
+        }
+        routed.get(key).increment();
+        return key;
+    }
+
+    // Physical connections handed out per target since startup
+    public Map<String, Long> getRoutedConnections() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        routed.forEach((key, count) -> counts.put(key, count.sum()));
+        return counts;
+    }
+
+    // The primary is its own bean and closed by the container; the replica pools are owned here
+    @Override
+    public void close() throws IOException {
+        for (DataSource replica : replicas) {
+            if (replica instanceof Closeable) {
+                ((Closeable) replica).close();
+            }
+        }
+    }
+}
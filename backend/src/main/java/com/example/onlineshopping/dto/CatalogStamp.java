@@ -0,0 +1,69 @@
+package com.example.onlineshopping.dto;
+
+import com.example.onlineshopping.model.Product;
+
+import java.time.Instant;
+import java.util.List;
+
+// Cheap fingerprint of a set of products, used as the validator for listing ETags, so the body never has to be
+// serialized (let alone hashed) to answer If-None-Match. Count, id sum and version sum, plus a sum of per-row
+// hashes of (id, version) so that changes which keep both plain sums (one product edited, another one swapped
+// for a neighbour id) still move it. Sums can still collide, so the ETag is sent as weak: "same listing", not
+// "same bytes".
+public class CatalogStamp {
+    // For pairHash; ProductRepository.findStampByCategory spells out the same arithmetic in the query
+    public static final long PAIR_MODULUS = 2_147_483_647L;
+
+    private final long count;
+    private final long idSum;
+    private final long versionSum;
+    private final long pairSum;
+    private final Instant lastModified;
+
+    // Filled by an aggregate query; the sums are null when the set is empty
+    public CatalogStamp(Long count, Long idSum, Long versionSum, Long pairSum, Instant lastModified) {
+        this.count = count == null ? 0 : count;
+        this.idSum = idSum == null ? 0 : idSum;
+        this.versionSum = versionSum == null ? 0 : versionSum;
+        this.pairSum = pairSum == null ? 0 : pairSum;
+        this.lastModified = lastModified;
+    }
+
+    // The same fingerprint for a page that is already loaded
+    public static CatalogStamp of(List<Product> products) {
+        long idSum = 0;
+        long versionSum = 0;
+        long pairSum = 0;
+        Instant lastModified = null;
+        for (Product product : products) {
+            idSum += product.getId();
+            versionSum += product.getVersion();
+            pairSum += pairHash(product.getId(), product.getVersion());
+            if (product.getLastModified() != null && (lastModified == null || product.getLastModified().isAfter(lastModified))) {
+                lastModified = product.getLastModified();
+            }
+        }
+        return new CatalogStamp((long) products.size(), idSum, versionSum, pairSum, lastModified);
+    }
+
+    static long pairHash(long id, long version) {
+        long x = (id * 31 + version) % PAIR_MODULUS;
+        return x * x % PAIR_MODULUS;
+    }
+
+    public String etag() {
+        return "W/\"" + count + "-" + Long.toHexString(idSum) + "-" + Long.toHexString(versionSum)
+                + "-" + Long.toHexString(pairSum) + "\"";
+    }
+
+    // Epoch millis for Last-Modified, -1 when no product in the set carries a timestamp
+    public long lastModifiedMillis() {
+        return lastModified == null ? -1 : lastModified.toEpochMilli();
+    }
+
+    public long getCount() { return count; }
+    public long getIdSum() { return idSum; }
+    public long getVersionSum() { return versionSum; }
+    public long getPairSum() { return pairSum; }
+    public Instant getLastModified() { return lastModified; }
+}
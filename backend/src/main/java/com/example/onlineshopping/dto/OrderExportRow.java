@@ -0,0 +1,37 @@
+package com.example.onlineshopping.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// One line of the NDJSON order export: the order header plus its buyer, without line items
+public class OrderExportRow {
+    private final Long id;
+    private final LocalDateTime orderDate;
+    private final String status;
+    private final BigDecimal totalAmount;
+    private final Long userId;
+    private final String username;
+    private final String shippingAddress;
+    private final String billingAddress;
+
+    public OrderExportRow(Long id, LocalDateTime orderDate, String status, BigDecimal totalAmount, Long userId, String username,
+                          String shippingAddress, String billingAddress) {
+        this.id = id;
+        this.orderDate = orderDate;
+        this.status = status;
+        this.totalAmount = totalAmount;
+        this.userId = userId;
+        this.username = username;
+        this.shippingAddress = shippingAddress;
+        this.billingAddress = billingAddress;
+    }
+
+    public Long getId() { return id; }
+    public LocalDateTime getOrderDate() { return orderDate; }
+    public String getStatus() { return status; }
+    public BigDecimal getTotalAmount() { return totalAmount; }
+    public Long getUserId() { return userId; }
+    public String getUsername() { return username; }
+    public String getShippingAddress() { return shippingAddress; }
+    public String getBillingAddress() { return billingAddress; }
+}
@@ -0,0 +1,31 @@
+package com.example.onlineshopping.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Slim read model for order listings: filled straight from a JPQL constructor expression,
+// so a page of orders is one SQL statement and never drags in the full User
+public class OrderSummary {
+    private final Long id;
+    private final LocalDateTime orderDate;
+    private final String status;
+    private final BigDecimal totalAmount;
+    private final Long userId;
+    private final String username;
+
+    public OrderSummary(Long id, LocalDateTime orderDate, String status, BigDecimal totalAmount, Long userId, String username) {
+        this.id = id;
+        this.orderDate = orderDate;
+        this.status = status;
+        this.totalAmount = totalAmount;
+        this.userId = userId;
+        this.username = username;
+    }
+
+    public Long getId() { return id; }
+    public LocalDateTime getOrderDate() { return orderDate; }
+    public String getStatus() { return status; }
+    public BigDecimal getTotalAmount() { return totalAmount; }
+    public Long getUserId() { return userId; }
+    public String getUsername() { return username; }
+}
@@ -0,0 +1,29 @@
+package com.example.onlineshopping.dto;
+
+import java.math.BigDecimal;
+
+// One entry of the product change feed: what a catalog page needs to update a product in place
+public class ProductChange {
+    private final String type;             // created, updated, deleted, or stock (sellable quantity only)
+    private final Long productId;
+    private final String category;         // Current category (for deleted: the last one known)
+    private final String previousCategory; // Set when the product moved out of another category
+    private final BigDecimal price;        // Null for deleted and stock
+    private final Integer stock;           // Sellable units; null for deleted
+
+    public ProductChange(String type, Long productId, String category, String previousCategory, BigDecimal price, Integer stock) {
+        this.type = type;
+        this.productId = productId;
+        this.category = category;
+        this.previousCategory = previousCategory;
+        this.price = price;
+        this.stock = stock;
+    }
+
+    public String getType() { return type; }
+    public Long getProductId() { return productId; }
+    public String getCategory() { return category; }
+    public String getPreviousCategory() { return previousCategory; }
+    public BigDecimal getPrice() { return price; }
+    public Integer getStock() { return stock; }
+}
@@ -0,0 +1,38 @@
+package com.example.onlineshopping.event;
+
+import com.example.onlineshopping.model.Product;
+
+// Published after a product has been created, updated or deleted, so in-memory views of the catalog can follow along
+public class ProductChangedEvent {
+
+    public enum Type { CREATED, UPDATED, DELETED }
+
+    private final Type type;
+    private final Long productId;
+    private final String previousCategory; // Category before the change, when known (null for CREATED)
+    private final Product product;         // State after the change (null for DELETED)
+
+    private ProductChangedEvent(Type type, Long productId, String previousCategory, Product product) {
+        this.type = type;
+        this.productId = productId;
+        this.previousCategory = previousCategory;
+        this.product = product;
+    }
+
+    public static ProductChangedEvent created(Product product) {
+        return new ProductChangedEvent(Type.CREATED, product.getId(), null, product);
+    }
+
+    public static ProductChangedEvent updated(String previousCategory, Product product) {
+        return new ProductChangedEvent(Type.UPDATED, product.getId(), previousCategory, product);
+    }
+
+    public static ProductChangedEvent deleted(Long productId, String previousCategory) {
+        return new ProductChangedEvent(Type.DELETED, productId, previousCategory, null);
+    }
+
+    public Type getType() { return type; }
+    public Long getProductId() { return productId; }
+    public String getPreviousCategory() { return previousCategory; }
+    public Product getProduct() { return product; }
+}
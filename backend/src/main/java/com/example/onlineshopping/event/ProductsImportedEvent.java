@@ -0,0 +1,25 @@
+package com.example.onlineshopping.event;
+
+import com.example.onlineshopping.model.Product;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// Published after each committed batch of a bulk product import, instead of one ProductChangedEvent per row
+public class ProductsImportedEvent {
+
+    private final List<Product> products;                // State after the batch, inserted and updated alike
+    private final Map<Long, String> previousCategories;  // Updated products only: category before the import
+    private final Map<Long, Integer> stockLevels;        // Products whose row set the on-hand quantity explicitly
+
+    public ProductsImportedEvent(List<Product> products, Map<Long, String> previousCategories, Map<Long, Integer> stockLevels) {
+        this.products = Collections.unmodifiableList(products);
+        this.previousCategories = Collections.unmodifiableMap(previousCategories);
+        this.stockLevels = Collections.unmodifiableMap(stockLevels);
+    }
+
+    public List<Product> getProducts() { return products; }
+    public Map<Long, String> getPreviousCategories() { return previousCategories; }
+    public Map<Long, Integer> getStockLevels() { return stockLevels; }
+}
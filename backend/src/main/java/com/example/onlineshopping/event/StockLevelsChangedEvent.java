@@ -0,0 +1,16 @@
+package com.example.onlineshopping.event;
+
+import java.util.Collections;
+import java.util.Map;
+
+// Published after the stock reservation engine has written sold quantities back to the products table
+public class StockLevelsChangedEvent {
+
+    private final Map<Long, String> categoriesByProduct; // Product id -> its category, for precise invalidation
+
+    public StockLevelsChangedEvent(Map<Long, String> categoriesByProduct) {
+        this.categoriesByProduct = Collections.unmodifiableMap(categoriesByProduct);
+    }
+
+    public Map<Long, String> getCategoriesByProduct() { return categoriesByProduct; }
+}
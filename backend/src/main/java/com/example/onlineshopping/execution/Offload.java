@@ -0,0 +1,23 @@
+package com.example.onlineshopping.execution;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// How a controller method (or every method of a controller) runs when app.web.execution.mode=async.
+// Unannotated handlers are offloaded with the default timeout; see OffloadingHandlerAdapter.
+@Documented
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Offload {
+
+    // false keeps the handler on the request thread: for handlers served from memory, which would only
+    // queue behind database work on the offload pool
+    boolean value() default true;
+
+    // Milliseconds before the caller gets 503 (504 for a write already running); placeholders are resolved ("${app.some.timeout-ms:60000}").
+    // Empty = app.web.execution.timeout-ms
+    String timeoutMs() default "";
+}
@@ -0,0 +1,195 @@
+package com.example.onlineshopping.execution;
+
+import com.example.onlineshopping.OnlineShoppingApplication;
+import com.example.onlineshopping.datasource.ReplicaRoutingDataSource;
+import com.example.onlineshopping.metrics.RequestCounters;
+import com.example.onlineshopping.metrics.RequestMetricsInterceptor;
+import com.example.onlineshopping.metrics.RequestMetricsInterceptor.OffloadedWork;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.ServletInvocableHandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Used in place of Spring's adapter when app.web.execution.mode=async: the application's controller methods run
+// on the RequestExecutor and the Tomcat thread goes back to the pool while they wait on the database. Arguments
+// (including the request body) are still resolved on the request thread; the method itself becomes a WebAsyncTask,
+// and its return value is written on the async dispatch exactly as it would have been. Left on the request thread:
+// - methods that are already asynchronous (CompletableFuture, SSE, streaming bodies, ...);
+// - methods that take the raw request or response, or their streams, and so do their own I/O;
+// - methods or controllers marked @Offload(false), and everything outside this application (e.g. /error).
+public class OffloadingHandlerAdapter extends RequestMappingHandlerAdapter {
+
+    private static final String APPLICATION_PACKAGE = OnlineShoppingApplication.class.getPackageName() + ".";
+    private static final long RUNS_IN_PLACE = -1;
+    private static final Set<String> SAFE_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    private static final List<Class<?>> ASYNC_RETURN_TYPES = List.of(Callable.class, WebAsyncTask.class, DeferredResult.class,
+            CompletionStage.class, ListenableFuture.class, ResponseBodyEmitter.class, StreamingResponseBody.class);
+    private static final List<Class<?>> RAW_IO_PARAMETER_TYPES = List.of(ServletRequest.class, ServletResponse.class,
+            InputStream.class, OutputStream.class, Reader.class, Writer.class);
+
+    private final RequestExecutor requestExecutor;
+    private final long defaultTimeoutMillis;
+    private final Map<Method, Long> timeouts = new ConcurrentHashMap<>(); // RUNS_IN_PLACE, or the timeout to use
+
+    public OffloadingHandlerAdapter(RequestExecutor requestExecutor, long defaultTimeoutMillis) {
+        this.requestExecutor = requestExecutor;
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+    }
+
+    @Override
+    protected ServletInvocableHandlerMethod createInvocableHandlerMethod(HandlerMethod handlerMethod) {
+        long timeoutMillis = timeouts.computeIfAbsent(handlerMethod.getMethod(), method -> timeoutFor(handlerMethod));
+        if (timeoutMillis == RUNS_IN_PLACE) {
+            return super.createInvocableHandlerMethod(handlerMethod);
+        }
+        return new OffloadedHandlerMethod(handlerMethod, timeoutMillis);
+    }
+
+    private long timeoutFor(HandlerMethod handlerMethod) {
+        if (!handlerMethod.getBeanType().getName().startsWith(APPLICATION_PACKAGE)
+                || isAsync(handlerMethod.getReturnType()) || doesOwnIo(handlerMethod)) {
+            return RUNS_IN_PLACE;
+        }
+        Offload offload = handlerMethod.getMethodAnnotation(Offload.class);
+        if (offload == null) {
+            offload = AnnotatedElementUtils.findMergedAnnotation(handlerMethod.getBeanType(), Offload.class);
+        }
+        if (offload != null && !offload.value()) {
+            return RUNS_IN_PLACE;
+        }
+        if (offload == null || offload.timeoutMs().isEmpty()) {
+            return defaultTimeoutMillis;
+        }
+        ConfigurableBeanFactory beanFactory = getBeanFactory();
+        String timeout = beanFactory == null ? offload.timeoutMs() : beanFactory.resolveEmbeddedValue(offload.timeoutMs());
+        return Long.parseLong(timeout.trim());
+    }
+
+    // ResponseEntity<SseEmitter> and the like count as async too
+    private static boolean isAsync(MethodParameter returnType) {
+        ResolvableType type = ResolvableType.forMethodParameter(returnType);
+        if (HttpEntity.class.isAssignableFrom(type.toClass())) {
+            type = type.getGeneric();
+        }
+        Class<?> returned = type.toClass();
+        return ASYNC_RETURN_TYPES.stream().anyMatch(async -> async.isAssignableFrom(returned));
+    }
+
+    private static boolean doesOwnIo(HandlerMethod handlerMethod) {
+        for (MethodParameter parameter : handlerMethod.getMethodParameters()) {
+            Class<?> type = parameter.getParameterType();
+            if (RAW_IO_PARAMETER_TYPES.stream().anyMatch(io -> io.isAssignableFrom(type))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ResponseEntity<Object> unavailable() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+    }
+
+    // A request that never started, or only reads, can simply be sent again. A write that started may still commit
+    // after the answer has gone out, so it gets 504 without Retry-After: the outcome is unknown, and the client
+    // should check (e.g. list its orders) before sending it again
+    static ResponseEntity<Object> timedOut(boolean started, String method) {
+        if (!started || SAFE_METHODS.contains(method)) {
+            return unavailable();
+        }
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build();
+    }
+
+    private class OffloadedHandlerMethod extends ServletInvocableHandlerMethod {
+
+        private final long timeoutMillis;
+
+        OffloadedHandlerMethod(HandlerMethod handlerMethod, long timeoutMillis) {
+            super(handlerMethod);
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        @Override
+        public Object invokeForRequest(NativeWebRequest request, ModelAndViewContainer mavContainer, Object... providedArgs)
+                throws Exception {
+            Object[] args = getMethodArgumentValues(request, mavContainer, providedArgs);
+            if (!requestExecutor.tryAcquire()) {
+                return unavailable();
+            }
+            // The slot is given back when the method returns or, if the request ended before it got to run, when it
+            // times out in the queue or completes; whichever claims the task first decides which
+            AtomicBoolean claimed = new AtomicBoolean();
+            // The request's thread-bound state that the data access layer reads
+            boolean pinnedToPrimary = ReplicaRoutingDataSource.isPinnedToPrimary();
+            HttpServletRequest servletRequest = request.getNativeRequest(HttpServletRequest.class);
+            OffloadedWork work = RequestMetricsInterceptor.offloadedWork(servletRequest);
+            String method = servletRequest.getMethod();
+
+            WebAsyncTask<Object> task = new WebAsyncTask<>(timeoutMillis, requestExecutor.getTaskExecutor(), () -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    return null; // Nobody is waiting for the result any more
+                }
+                RequestCounters counters = RequestCounters.current();
+                int statements = counters.getStatements();
+                long rows = counters.getRows();
+                if (pinnedToPrimary) {
+                    ReplicaRoutingDataSource.pinToPrimary();
+                }
+                try {
+                    return doInvoke(args);
+                } finally {
+                    if (pinnedToPrimary) {
+                        ReplicaRoutingDataSource.unpin();
+                    }
+                    work.add(counters.getStatements() - statements, counters.getRows() - rows);
+                    requestExecutor.release();
+                }
+            });
+            task.onTimeout(() -> {
+                requestExecutor.recordTimeout();
+                // Claiming it here keeps a queued task from running at all once its request has been answered
+                boolean started = !claimed.compareAndSet(false, true);
+                if (!started) {
+                    requestExecutor.release();
+                }
+                return timedOut(started, method);
+            });
+            task.onCompletion(() -> {
+                if (claimed.compareAndSet(false, true)) {
+                    requestExecutor.release();
+                }
+            });
+            return task;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.onlineshopping.execution;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.io.Closeable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Where offloaded controller methods run. Sized to the connection pool, so a handler that gets a thread
+// also gets a connection instead of holding a thread while it waits for one; the rest wait in the queue,
+// which costs memory rather than threads. At most threads + maxQueued requests are admitted at once, and
+// beyond that callers are told to come back (503) rather than queueing without bound.
+// With virtual threads (Java 21+) every handler gets its own thread and only the admission limit applies.
+public class RequestExecutor implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestExecutor.class);
+
+    private final ExecutorService executor;
+    private final AsyncTaskExecutor taskExecutor;
+    private final int threads;
+    private final int maxInFlight;
+    private final boolean virtualThreads;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    public RequestExecutor(int threads, int maxQueued, boolean virtualThreads) {
+        this.threads = Math.max(1, threads);
+        this.maxInFlight = this.threads + Math.max(0, maxQueued);
+        ExecutorService virtual = virtualThreads ? virtualThreadPerTaskExecutor() : null;
+        this.virtualThreads = virtual != null;
+        if (virtual != null) {
+            this.executor = virtual;
+        } else {
+            AtomicInteger created = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(this.threads, this.threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "request-offload-" + created.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+        this.taskExecutor = new TaskExecutorAdapter(executor);
+    }
+
+    // Looked up reflectively: the build targets Java 11, the runtime may be newer
+    private static ExecutorService virtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Virtual threads need Java 21 or later (running {}); using a thread pool for offloaded handlers",
+                    System.getProperty("java.version"));
+            return null;
+        }
+    }
+
+    // Takes one of the in-flight slots; false when they are all taken
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= maxInFlight) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                admitted.increment();
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    public void recordTimeout() {
+        timedOut.increment();
+    }
+
+    public AsyncTaskExecutor getTaskExecutor() { return taskExecutor; }
+    public int getInFlight() { return inFlight.get(); }
+    public boolean isVirtualThreads() { return virtualThreads; }
+
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("threads", virtualThreads ? -1L : threads);
+        stats.put("maxInFlight", (long) maxInFlight);
+        stats.put("inFlight", (long) inFlight.get());
+        stats.put("admitted", admitted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("timedOut", timedOut.sum());
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.onlineshopping.metrics;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Counts, for the request on the current thread, every statement prepared on one of this DataSource's connections
+// and every row read through one of their result sets. Counting at the connection sees Hibernate, JdbcTemplate and
+// DTO queries alike, where Hibernate's own hooks only saw the first.
+public class CountingDataSource extends DelegatingDataSource implements Closeable {
+
+    public CountingDataSource(DataSource target) {
+        super(target);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return (Connection) counting(Connection.class, super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return (Connection) counting(Connection.class, super.getConnection(username, password));
+    }
+
+    // Closes the pool underneath, which the container would otherwise have closed itself
+    @Override
+    public void close() throws IOException {
+        if (getTargetDataSource() instanceof Closeable) {
+            ((Closeable) getTargetDataSource()).close();
+        }
+    }
+
+    // Wraps what a connection, statement or result set hands out: statements and result sets are counted, the rest
+    // passes through as it is
+    private static Object counting(Class<?> type, Object target) {
+        return Proxy.newProxyInstance(CountingDataSource.class.getClassLoader(), new Class<?>[]{type}, (self, method, args) -> {
+            switch (method.getName()) {
+                case "equals":
+                    return self == args[0];
+                case "hashCode":
+                    return System.identityHashCode(self);
+                default:
+                    break;
+            }
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof Statement && target instanceof Connection) {
+                RequestCounters.statementPrepared();
+                return counting(method.getReturnType(), result);
+            }
+            if (result instanceof ResultSet && target instanceof Statement && !method.getName().equals("getGeneratedKeys")) {
+                return counting(ResultSet.class, result);
+            }
+            if (Boolean.TRUE.equals(result) && target instanceof ResultSet && method.getName().equals("next")) {
+                RequestCounters.rowLoaded();
+            }
+            return result;
+        });
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.onlineshopping.metrics;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.method.HandlerMethod;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency and database work per REST endpoint, keyed by handler method.
+// Only @RestController methods in the controller package are tracked.
+@Component
+public class EndpointMetrics {
+
+    static final String CONTROLLER_PACKAGE = "com.example.onlineshopping.controller";
+
+    private static final EndpointStats NOT_TRACKED = new EndpointStats(null);
+
+    private final ConcurrentMap<Method, EndpointStats> endpoints = new ConcurrentHashMap<>();
+
+    static final class EndpointStats {
+        final String name;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder statements = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        final AtomicLong maxStatements = new AtomicLong();
+
+        EndpointStats(String name) {
+            this.name = name;
+        }
+
+        void record(long micros, int statementCount, long rowCount, boolean failed) {
+            latency.record(micros);
+            statements.add(statementCount);
+            rows.add(rowCount);
+            if (failed) {
+                errors.increment();
+            }
+            long currentMax = maxStatements.get();
+            while (statementCount > currentMax && !maxStatements.compareAndSet(currentMax, statementCount)) {
+                currentMax = maxStatements.get();
+            }
+        }
+    }
+
+    // Route is only used the first time the method is seen, to name it (e.g. "GET /api/products/{id}")
+    public void record(HandlerMethod handler, String httpMethod, String route, long micros, int statementCount, long rowCount, boolean failed) {
+        EndpointStats stats = endpoints.get(handler.getMethod());
+        if (stats == null) {
+            stats = endpoints.computeIfAbsent(handler.getMethod(), method -> isTracked(handler)
+                    ? new EndpointStats(httpMethod + " " + route)
+                    : NOT_TRACKED);
+        }
+        if (stats != NOT_TRACKED) {
+            stats.record(micros, statementCount, rowCount, failed);
+        }
+    }
+
+    private static boolean isTracked(HandlerMethod handler) {
+        Class<?> type = handler.getBeanType();
+        return type.isAnnotationPresent(RestController.class) && type.getPackage().getName().equals(CONTROLLER_PACKAGE);
+    }
+
+    public List<EndpointSnapshot> snapshot() {
+        List<EndpointSnapshot> snapshots = new ArrayList<>();
+        for (EndpointStats stats : endpoints.values()) {
+            if (stats != NOT_TRACKED) {
+                snapshots.add(new EndpointSnapshot(stats));
+            }
+        }
+        snapshots.sort(Comparator.comparing(EndpointSnapshot::getEndpoint));
+        return snapshots;
+    }
+
+    public void reset() {
+        endpoints.clear();
+    }
+
+    public static class EndpointSnapshot {
+        private final String endpoint;
+        private final long count;
+        private final long errors;
+        private final long meanMicros;
+        private final long p50Micros;
+        private final long p99Micros;
+        private final long p999Micros;
+        private final long maxMicros;
+        private final double statementsPerRequest;
+        private final long maxStatements;
+        private final double rowsPerRequest;
+
+        EndpointSnapshot(EndpointStats stats) {
+            this.endpoint = stats.name;
+            this.count = stats.latency.getCount();
+            this.errors = stats.errors.sum();
+            this.meanMicros = stats.latency.getMean();
+            this.p50Micros = stats.latency.percentile(0.50);
+            this.p99Micros = stats.latency.percentile(0.99);
+            this.p999Micros = stats.latency.percentile(0.999);
+            this.maxMicros = stats.latency.getMax();
+            this.statementsPerRequest = count == 0 ? 0 : (double) stats.statements.sum() / count;
+            this.maxStatements = stats.maxStatements.get();
+            this.rowsPerRequest = count == 0 ? 0 : (double) stats.rows.sum() / count;
+        }
+
+        public String getEndpoint() { return endpoint; }
+        public long getCount() { return count; }
+        public long getErrors() { return errors; }
+        public long getMeanMicros() { return meanMicros; }
+        public long getP50Micros() { return p50Micros; }
+        public long getP99Micros() { return p99Micros; }
+        public long getP999Micros() { return p999Micros; }
+        public long getMaxMicros() { return maxMicros; }
+        public double getStatementsPerRequest() { return statementsPerRequest; }
+        public long getMaxStatements() { return maxStatements; }
+        public double getRowsPerRequest() { return rowsPerRequest; }
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.onlineshopping.metrics;
+
+// Per-thread tallies of database work for the request currently running on that thread.
+// One instance per thread, reused across requests, so counting never allocates.
+public final class RequestCounters {
+
+    private static final ThreadLocal<RequestCounters> CURRENT = ThreadLocal.withInitial(RequestCounters::new);
+
+    private int statements;
+    private long rows;
+    private long startNanos;
+
+    private RequestCounters() {
+    }
+
+    public static RequestCounters current() {
+        return CURRENT.get();
+    }
+
+    static void statementPrepared() {
+        CURRENT.get().statements++;
+    }
+
+    static void rowLoaded() {
+        CURRENT.get().rows++;
+    }
+
+    // Work done for this thread's request on another thread (see OrderShards.fanOut)
+    public void add(int statements, long rows) {
+        this.statements += statements;
+        this.rows += rows;
+    }
+
+    void start(long startNanos, int statements, long rows) {
+        this.startNanos = startNanos;
+        this.statements = statements;
+        this.rows = rows;
+    }
+
+    public int getStatements() { return statements; }
+    public long getRows() { return rows; }
+    public long getStartNanos() { return startNanos; }
+}
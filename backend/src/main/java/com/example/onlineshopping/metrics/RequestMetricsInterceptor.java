@@ -0,0 +1,89 @@
+package com.example.onlineshopping.metrics;
+
+import com.example.onlineshopping.startup.StartupWarmup;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+// Times each controller call and attributes the SQL run on the request thread to it.
+// Async handlers (CompletableFuture, streaming bodies) are timed from the first dispatch to the last.
+// Handlers run on another thread (see OffloadingHandlerAdapter) report what they counted there through OffloadedWork.
+public class RequestMetricsInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String ASYNC_START = RequestMetricsInterceptor.class.getName() + ".start";
+    private static final String ASYNC_STATEMENTS = RequestMetricsInterceptor.class.getName() + ".statements";
+    private static final String ASYNC_ROWS = RequestMetricsInterceptor.class.getName() + ".rows";
+    private static final String OFFLOADED_WORK = RequestMetricsInterceptor.class.getName() + ".offloaded";
+
+    private final EndpointMetrics endpointMetrics;
+
+    public RequestMetricsInterceptor(EndpointMetrics endpointMetrics) {
+        this.endpointMetrics = endpointMetrics;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        RequestCounters counters = RequestCounters.current();
+        Object asyncStart = request.getAttribute(ASYNC_START);
+        if (request.getDispatcherType() == DispatcherType.ASYNC && asyncStart != null) {
+            int statements = (Integer) request.getAttribute(ASYNC_STATEMENTS);
+            long rows = (Long) request.getAttribute(ASYNC_ROWS);
+            OffloadedWork offloaded = (OffloadedWork) request.getAttribute(OFFLOADED_WORK);
+            if (offloaded != null) {
+                statements += offloaded.statements;
+                rows += offloaded.rows;
+            }
+            counters.start((Long) asyncStart, statements, rows);
+        } else {
+            counters.start(System.nanoTime(), 0, 0);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // The request thread is released here; carry what was counted so far over to the async dispatch
+        RequestCounters counters = RequestCounters.current();
+        request.setAttribute(ASYNC_START, counters.getStartNanos());
+        request.setAttribute(ASYNC_STATEMENTS, counters.getStatements());
+        request.setAttribute(ASYNC_ROWS, counters.getRows());
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (!(handler instanceof HandlerMethod) || request.getHeader(StartupWarmup.HEADER) != null) {
+            return; // Warm-up traffic is not what the endpoint statistics are for
+        }
+        RequestCounters counters = RequestCounters.current();
+        long micros = (System.nanoTime() - counters.getStartNanos()) / 1_000;
+        Object route = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        endpointMetrics.record((HandlerMethod) handler, request.getMethod(), route == null ? request.getRequestURI() : route.toString(),
+                micros, counters.getStatements(), counters.getRows(), ex != null || response.getStatus() >= 500);
+    }
+
+    // Attached on the request thread before the handler is handed off; the other thread adds its counts once
+    // the handler returns, before the request is dispatched back (a handler finishing after a timeout only
+    // writes to this holder, never to a request that may already be recycled)
+    public static OffloadedWork offloadedWork(HttpServletRequest request) {
+        OffloadedWork work = new OffloadedWork();
+        request.setAttribute(OFFLOADED_WORK, work);
+        return work;
+    }
+
+    public static final class OffloadedWork {
+        private volatile int statements;
+        private volatile long rows;
+
+        private OffloadedWork() {
+        }
+
+        public void add(int statements, long rows) {
+            this.statements += statements;
+            this.rows += rows;
+        }
+    }
+}
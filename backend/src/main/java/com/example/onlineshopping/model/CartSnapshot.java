@@ -0,0 +1,37 @@
+package com.example.onlineshopping.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+import java.time.Instant;
+
+// Last saved state of a user's cart: the packed lines exactly as CartStore keeps them in memory
+// (8 bytes per line: product id in the high 40 bits, quantity in the low 24). Written by CartStore with JDBC;
+// mapped here so the schema is created like every other table.
+@Entity
+@Table(name = "carts", indexes = @Index(name = "idx_carts_updated_at", columnList = "updatedAt"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartSnapshot {
+
+    @Id
+    private Long userId;
+
+    @Lob
+    @Column(nullable = false)
+    private byte[] items;
+
+    @Column(nullable = false)
+    private Instant updatedAt; // Last change, for expiring abandoned carts
+
+    @Column(nullable = false)
+    private long revision; // Compared and set by every write-through change, so instances never overwrite each other
+}
@@ -1,10 +1,14 @@
 package com.example.onlineshopping.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
@@ -16,6 +20,7 @@ import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 @Entity
@@ -29,25 +34,38 @@ public class Order {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @ManyToOne
+    // Lazy and left out of the JSON: order responses carry userId instead of the whole user
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     private User user;
 
     @Column(nullable = false)
     private LocalDateTime orderDate;
 
     @Column(nullable = false)
-    private String status; // e.g., PENDING, PROCESSING, SHIPPED, DELIVERED, CANCELED
+    private String status; // Name of an OrderStatus; change it through OrderStatusService so transitions are checked
 
     @Column(nullable = false)
-    private BigDecimal totalAmount;
+    private BigDecimal totalAmount; // Sum of the line totals, computed on the server
 
     private String shippingAddress;
     private String billingAddress;
 
-    // In a more complex scenario, you'd have an OrderItem entity
-    // to store details of each product in the order.
-    // For simplicity, we might store a summary or skip detailed items for now.
-    // @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, orphanRemoval = true)
-    // private List<OrderItem> orderItems;
+    @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, orphanRemoval = true)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private List<OrderItem> orderItems = new ArrayList<>();
+
+    // Reading the id of a lazy user does not load it
+    public Long getUserId() {
+        return user == null ? null : user.getId();
+    }
+
+    public void addOrderItem(OrderItem item) {
+        item.setOrder(this);
+        orderItems.add(item);
+    }
 }
@@ -0,0 +1,49 @@
+package com.example.onlineshopping.model;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+// Order lifecycle. Orders are stored with the constant's name in orders.status.
+//   PENDING -> PROCESSING -> SHIPPED -> DELIVERED
+//   PENDING, PROCESSING -> CANCELED
+public enum OrderStatus {
+    PENDING,
+    PROCESSING,
+    SHIPPED,
+    DELIVERED,
+    CANCELED;
+
+    public Set<OrderStatus> next() {
+        switch (this) {
+            case PENDING:
+                return EnumSet.of(PROCESSING, CANCELED);
+            case PROCESSING:
+                return EnumSet.of(SHIPPED, CANCELED);
+            case SHIPPED:
+                return EnumSet.of(DELIVERED);
+            default:
+                return EnumSet.noneOf(OrderStatus.class); // Final
+        }
+    }
+
+    public boolean canTransitionTo(OrderStatus target) {
+        return next().contains(target);
+    }
+
+    // Lenient about case, whitespace and JSON quotes; null if it is not a known status
+    public static OrderStatus parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        String name = value.trim();
+        if (name.length() >= 2 && name.startsWith("\"") && name.endsWith("\"")) {
+            name = name.substring(1, name.length() - 1).trim();
+        }
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
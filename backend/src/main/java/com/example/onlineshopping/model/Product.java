@@ -2,27 +2,41 @@ package com.example.onlineshopping.model;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import lombok.AllArgsConstructor;
+import org.hibernate.annotations.DynamicUpdate;
 
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.persistence.Table;
 import javax.persistence.Column;
+import javax.persistence.Version;
 import java.math.BigDecimal;
+import java.time.Instant;
 
 @Entity
-@Table(name = "products")
+// category + price serves category listings and filtered/price-sorted pages within a category; price alone the same
+// without a category. (InnoDB appends the primary key to both, which the keyset pages use as tie-breaker.)
+@Table(name = "products", indexes = {
+        @Index(name = "idx_products_category_price", columnList = "category, price"),
+        @Index(name = "idx_products_price", columnList = "price")
+})
+@DynamicUpdate // Only write changed columns, so editing a product never overwrites stock flushed by the reservation engine
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 public class Product {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // Supplier's stock keeping unit: the key bulk imports match on (optional for products created by hand)
+    @Column(unique = true, length = 64)
+    private String sku;
+
     @Column(nullable = false)
     private String name;
 
@@ -35,4 +49,27 @@ public class Product {
     private String category;
     private String imageUrl;
     private int stockQuantity;
+
+    // Bumped by Hibernate on every update (and by the stock flush); the basis of the product's ETag
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private long version;
+
+    private Instant lastModified;
+
+    public Product(Long id, String name, String description, BigDecimal price, String category, String imageUrl, int stockQuantity) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.price = price;
+        this.category = category;
+        this.imageUrl = imageUrl;
+        this.stockQuantity = stockQuantity;
+    }
+
+    @PrePersist
+    @PreUpdate
+    void touch() {
+        lastModified = Instant.now();
+    }
 }
@@ -0,0 +1,48 @@
+package com.example.onlineshopping.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+// Pre-aggregated order count and revenue of one bucket (a day or a user) in one status.
+// Maintained incrementally by SalesRollupService; mapped here so the schema is created like every other table.
+@Entity
+@Table(name = "sales_rollups")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SalesRollup {
+
+    @EmbeddedId
+    private Key id;
+
+    @Column(nullable = false)
+    private long orderCount;
+
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal totalAmount;
+
+    @Embeddable
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+
+        @Column(length = 8)
+        private String dimension; // "day" or "user"
+
+        @Column(length = 32)
+        private String bucket;    // ISO date (sorts chronologically) or user id
+
+        @Column(length = 16)
+        private String status;
+    }
+}
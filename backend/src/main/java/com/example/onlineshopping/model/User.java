@@ -1,5 +1,6 @@
 package com.example.onlineshopping.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
@@ -26,7 +27,8 @@ public class User {
     private String username;
 
     @Column(nullable = false)
-    private String password; // In a real app, this should be hashed
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY) // Accepted on register/login, never serialized
+    private String password; // PBKDF2 hash from PasswordHasher; plain text only on the way in, or for accounts not yet upgraded
 
     @Column(nullable = false, unique = true)
     private String email;
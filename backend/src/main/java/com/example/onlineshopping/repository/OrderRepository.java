@@ -1,14 +1,40 @@
 package com.example.onlineshopping.repository;
 
+import com.example.onlineshopping.dto.OrderSummary;
 import com.example.onlineshopping.model.Order;
 import com.example.onlineshopping.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
+@Transactional(readOnly = true)
 public interface OrderRepository extends JpaRepository<Order, Long> {
     List<Order> findByUser(User user);
-    List<Order> findByUserId(Long userId);
+    List<Order> findByUser_Id(Long userId); // "_" pins the path to user.id rather than Order.getUserId()
+
+    // Order summaries, newest first, keyset-paginated on (orderDate, id); each page is a single joined statement
+    String SUMMARY_SELECT = "SELECT new com.example.onlineshopping.dto.OrderSummary(o.id, o.orderDate, o.status, o.totalAmount, u.id, u.username) "
+            + "FROM Order o JOIN o.user u ";
+    String NEWEST_FIRST = " ORDER BY o.orderDate DESC, o.id DESC";
+    String BEFORE_CURSOR = "(o.orderDate < :beforeDate OR (o.orderDate = :beforeDate AND o.id < :beforeId))";
+
+    @Query(SUMMARY_SELECT + NEWEST_FIRST)
+    List<OrderSummary> findSummaries(Pageable pageable);
+
+    @Query(SUMMARY_SELECT + "WHERE " + BEFORE_CURSOR + NEWEST_FIRST)
+    List<OrderSummary> findSummariesBefore(@Param("beforeDate") LocalDateTime beforeDate, @Param("beforeId") Long beforeId, Pageable pageable);
+
+    @Query(SUMMARY_SELECT + "WHERE u.id = :userId" + NEWEST_FIRST)
+    List<OrderSummary> findSummariesByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    @Query(SUMMARY_SELECT + "WHERE u.id = :userId AND " + BEFORE_CURSOR + NEWEST_FIRST)
+    List<OrderSummary> findSummariesByUserIdBefore(@Param("userId") Long userId, @Param("beforeDate") LocalDateTime beforeDate,
+                                                   @Param("beforeId") Long beforeId, Pageable pageable);
 }
@@ -1,13 +1,39 @@
 package com.example.onlineshopping.repository;
 
+import com.example.onlineshopping.dto.CatalogStamp;
 import com.example.onlineshopping.model.Product;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
 import java.util.List;
+import java.util.stream.Stream;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+// Query methods default to read-only transactions (like the inherited finders), which go to a replica when one is configured
 @Repository
+@Transactional(readOnly = true)
 public interface ProductRepository extends JpaRepository<Product, Long> {
     List<Product> findByCategory(String category);
-    List<Product> findByNameContainingIgnoreCase(String name);
+
+    // Validator for a category listing, computed without reading the rows into the application
+    @Query("SELECT new com.example.onlineshopping.dto.CatalogStamp(COUNT(p), SUM(p.id), SUM(p.version), "
+            + "SUM(MOD(MOD(p.id * 31 + p.version, 2147483647) * MOD(p.id * 31 + p.version, 2147483647), 2147483647)), "
+            + "MAX(p.lastModified)) FROM Product p WHERE p.category = :category")
+    CatalogStamp findStampByCategory(@Param("category") String category);
+
+
+    // Keyset page: the products after the given id, in id order (use 0 for the first page)
+    List<Product> findByIdGreaterThanOrderByIdAsc(Long afterId, Pageable pageable);
+
+    // Forward-only cursor over the whole catalog; must be consumed inside a transaction and closed
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT p FROM Product p ORDER BY p.id")
+    Stream<Product> streamAllOrderedById();
 }
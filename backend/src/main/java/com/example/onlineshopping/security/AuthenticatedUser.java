@@ -0,0 +1,30 @@
+package com.example.onlineshopping.security;
+
+import java.time.Instant;
+
+// The caller behind a verified token; put on the request by TokenAuthenticationFilter
+public class AuthenticatedUser {
+
+    public static final String REQUEST_ATTRIBUTE = "com.example.onlineshopping.security.AuthenticatedUser";
+
+    private final Long userId;
+    private final String tokenId;
+    private final Instant issuedAt;
+    private final Instant expiresAt;
+
+    public AuthenticatedUser(Long userId, String tokenId, Instant issuedAt, Instant expiresAt) {
+        this.userId = userId;
+        this.tokenId = tokenId;
+        this.issuedAt = issuedAt;
+        this.expiresAt = expiresAt;
+    }
+
+    public boolean is(Long otherUserId) {
+        return userId.equals(otherUserId);
+    }
+
+    public Long getUserId() { return userId; }
+    public String getTokenId() { return tokenId; }
+    public Instant getIssuedAt() { return issuedAt; }
+    public Instant getExpiresAt() { return expiresAt; }
+}
@@ -0,0 +1,91 @@
+package com.example.onlineshopping.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.Semaphore;
+
+// PBKDF2-HMAC-SHA256 password hashes, stored as "pbkdf2$<iterations>$<salt>$<hash>".
+// The iteration count sets the cost of a login; a semaphore caps how many hashes run at once,
+// so a burst of logins queues up instead of taking every CPU away from the rest of the API.
+@Component
+public class PasswordHasher {
+
+    private static final String PREFIX = "pbkdf2$";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final SecureRandom random = new SecureRandom();
+    private final int iterations;
+    private final Semaphore permits;
+
+    // Verified when the username is unknown, so a miss costs the same as a wrong password
+    private final String dummyHash;
+
+    public PasswordHasher(@Value("${app.security.password.iterations:310000}") int iterations,
+                          @Value("${app.security.password.max-concurrent-hashes:0}") int maxConcurrentHashes) {
+        this.iterations = iterations;
+        this.permits = new Semaphore(maxConcurrentHashes > 0 ? maxConcurrentHashes : Runtime.getRuntime().availableProcessors(), true);
+        this.dummyHash = hash("not-a-real-password");
+    }
+
+    public String hash(String rawPassword) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] hash = pbkdf2(rawPassword, salt, iterations);
+        Base64.Encoder encoder = Base64.getEncoder();
+        return PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    // Accepts legacy plain-text values too, so accounts created before hashing can still sign in (and get upgraded)
+    public boolean matches(String rawPassword, String stored) {
+        if (rawPassword == null || stored == null) {
+            return false;
+        }
+        if (!stored.startsWith(PREFIX)) {
+            return MessageDigest.isEqual(rawPassword.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        // A damaged value (bad Base64, iteration count or empty salt) is a failed login, not a server error
+        try {
+            Base64.Decoder decoder = Base64.getDecoder();
+            byte[] expected = decoder.decode(parts[3]);
+            byte[] actual = pbkdf2(rawPassword, decoder.decode(parts[2]), Integer.parseInt(parts[1]));
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException e) { // Includes NumberFormatException
+            return false;
+        }
+    }
+
+    // True for plain-text values and hashes made with a different cost than the one configured now
+    public boolean needsRehash(String stored) {
+        return stored == null || !stored.startsWith(PREFIX + iterations + "$");
+    }
+
+    public void burnUnknownUser(String rawPassword) {
+        matches(rawPassword == null ? "" : rawPassword, dummyHash);
+    }
+
+    private byte[] pbkdf2(String rawPassword, byte[] salt, int rounds) {
+        PBEKeySpec spec = new PBEKeySpec(rawPassword.toCharArray(), salt, rounds, HASH_BITS);
+        permits.acquireUninterruptibly();
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2 is not available", e);
+        } finally {
+            permits.release();
+            spec.clearPassword();
+        }
+    }
+}
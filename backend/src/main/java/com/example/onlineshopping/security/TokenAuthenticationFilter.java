@@ -0,0 +1,41 @@
+package com.example.onlineshopping.security;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+// Resolves "Authorization: Bearer <token>" to an AuthenticatedUser request attribute, without touching the database.
+// Requests without a bearer token pass through anonymously; a bad or revoked token is rejected with 401.
+// Whether an endpoint needs a caller at all is up to its controller.
+public class TokenAuthenticationFilter extends OncePerRequestFilter {
+
+    private static final String BEARER = "Bearer ";
+
+    private final TokenService tokenService;
+
+    public TokenAuthenticationFilter(TokenService tokenService) {
+        this.tokenService = tokenService;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (header != null && header.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            AuthenticatedUser user = tokenService.verify(header.substring(BEARER.length()).trim());
+            if (user == null) {
+                response.setHeader(HttpHeaders.WWW_AUTHENTICATE, "Bearer error=\"invalid_token\"");
+                response.sendError(HttpStatus.UNAUTHORIZED.value(), "Invalid or expired token");
+                return;
+            }
+            request.setAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE, user);
+        }
+        chain.doFilter(request, response);
+    }
+}
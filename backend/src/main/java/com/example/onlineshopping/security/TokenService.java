@@ -0,0 +1,129 @@
+package com.example.onlineshopping.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Issues and verifies stateless bearer tokens: "<payload>.<HMAC-SHA256 of payload>", both base64url.
+// The payload carries the user id, issue and expiry times and a random token id, so verifying a token
+// needs no database or cache; only the small revocation maps below are consulted.
+@Service
+public class TokenService {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenService.class);
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final String VERSION = "1";
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecureRandom random = new SecureRandom();
+    private final ThreadLocal<Mac> macs;
+    private final long ttlSeconds;
+
+    private final Map<String, Instant> revokedTokens = new ConcurrentHashMap<>(); // Token id -> its expiry
+    private final Map<Long, Instant> revokedUsers = new ConcurrentHashMap<>();    // User id -> tokens issued up to here are void
+
+    public TokenService(@Value("${app.security.token.secret:}") String secret,
+                        @Value("${app.security.token.ttl-seconds:3600}") long ttlSeconds) {
+        byte[] key;
+        if (secret.isEmpty()) {
+            key = new byte[32];
+            random.nextBytes(key);
+            log.warn("app.security.token.secret is not set; using a random key, so tokens will not survive a restart");
+        } else {
+            key = Base64.getDecoder().decode(secret);
+        }
+        SecretKeySpec keySpec = new SecretKeySpec(key, ALGORITHM);
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(keySpec);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HMAC-SHA256 is not available", e);
+            }
+        });
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    public String issue(Long userId) {
+        long issuedAt = Instant.now().getEpochSecond();
+        byte[] id = new byte[12];
+        random.nextBytes(id);
+        String payload = VERSION + "." + userId + "." + issuedAt + "." + (issuedAt + ttlSeconds) + "." + ENCODER.encodeToString(id);
+        String encodedPayload = ENCODER.encodeToString(payload.getBytes(StandardCharsets.US_ASCII));
+        return encodedPayload + "." + ENCODER.encodeToString(sign(encodedPayload));
+    }
+
+    // The caller if the token is intact, unexpired and not revoked; null otherwise
+    public AuthenticatedUser verify(String token) {
+        int dot = token.lastIndexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        String encodedPayload = token.substring(0, dot);
+        try {
+            if (!MessageDigest.isEqual(sign(encodedPayload), DECODER.decode(token.substring(dot + 1)))) {
+                return null;
+            }
+            String[] fields = new String(DECODER.decode(encodedPayload), StandardCharsets.US_ASCII).split("\\.");
+            if (fields.length != 5 || !VERSION.equals(fields[0])) {
+                return null;
+            }
+            AuthenticatedUser user = new AuthenticatedUser(Long.valueOf(fields[1]), fields[4],
+                    Instant.ofEpochSecond(Long.parseLong(fields[2])), Instant.ofEpochSecond(Long.parseLong(fields[3])));
+            return isValid(user) ? user : null;
+        } catch (IllegalArgumentException e) {
+            return null; // Not base64 or not numbers: a forged or truncated token
+        }
+    }
+
+    private boolean isValid(AuthenticatedUser user) {
+        if (!Instant.now().isBefore(user.getExpiresAt()) || revokedTokens.containsKey(user.getTokenId())) {
+            return false;
+        }
+        Instant revokedAt = revokedUsers.get(user.getUserId());
+        return revokedAt == null || user.getIssuedAt().isAfter(revokedAt);
+    }
+
+    // Logout: this token only
+    public void revoke(AuthenticatedUser user) {
+        revokedTokens.put(user.getTokenId(), user.getExpiresAt());
+    }
+
+    // Every token issued to the user so far, e.g. when the account is deleted
+    public void revokeAllFor(Long userId) {
+        revokedUsers.put(userId, Instant.now());
+    }
+
+    public int revokedCount() {
+        return revokedTokens.size() + revokedUsers.size();
+    }
+
+    // Entries are only needed until the tokens they cover would have expired anyway
+    @Scheduled(fixedDelayString = "${app.security.token.purge-interval-ms:60000}")
+    public void purgeRevocations() {
+        Instant now = Instant.now();
+        revokedTokens.values().removeIf(expiresAt -> expiresAt.isBefore(now));
+        revokedUsers.values().removeIf(revokedAt -> revokedAt.plusSeconds(ttlSeconds).isBefore(now));
+    }
+
+    private byte[] sign(String encodedPayload) {
+        return macs.get().doFinal(encodedPayload.getBytes(StandardCharsets.US_ASCII));
+    }
+}
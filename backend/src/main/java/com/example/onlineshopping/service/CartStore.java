@@ -0,0 +1,724 @@
+package com.example.onlineshopping.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+// Shopping carts keyed by user id, held in memory in compact form and saved to the carts table in the background.
+// - Each cart is one long[]: a line is product id << 24 | quantity. Arrays are replaced, never changed in place,
+//   so a reference is also a version. Carts live in striped open-addressing tables of primitive arrays: roughly
+//   60 bytes per cart plus 8 per line, with no per-line or per-entry objects.
+// - max-carts bounds the heap. When a stripe is full, its least recently used carts leave memory; unsaved ones are
+//   kept aside until the next snapshot. A cart not in memory is loaded from the table when next used.
+// - With write-through (the default), every change is a compare-and-set on the row's revision and every read first
+//   checks that revision, so several instances can serve the same user: memory saves decoding and rows, not queries.
+//   A change that loses the race is applied again to the table's newer copy.
+// - Without it, changed carts are written every snapshot-interval-ms (a restart loses at most that much) and
+//   memory is trusted as is. That is only correct when each user's requests reach one instance (e.g. the load
+//   balancer routes on the user), or with a single instance.
+// - Carts idle for idle-minutes leave memory; carts unchanged for ttl-days are deleted.
+@Component
+public class CartStore {
+
+    private static final Logger log = LoggerFactory.getLogger(CartStore.class);
+
+    static final int QUANTITY_BITS = 24;
+    public static final int MAX_QUANTITY = (1 << QUANTITY_BITS) - 1;
+    public static final long MAX_PRODUCT_ID = (1L << (Long.SIZE - QUANTITY_BITS)) - 1;
+
+    private static final long[] EMPTY = new long[0];
+    private static final int MAX_STRIPES = 64;
+    private static final int EVICTION_SAMPLE = 256;
+
+    private static final String SELECT_CART = "SELECT items, updated_at, revision FROM carts WHERE user_id = ?";
+    private static final String SELECT_REVISION = "SELECT revision FROM carts WHERE user_id = ?";
+    private static final String UPDATE_CART = "UPDATE carts SET items = ?, updated_at = ?, revision = revision + 1 WHERE user_id = ?";
+    private static final String INSERT_CART = "INSERT INTO carts (user_id, items, updated_at, revision) VALUES (?, ?, ?, ?)";
+    private static final String DELETE_CART = "DELETE FROM carts WHERE user_id = ?";
+    private static final String DELETE_ABANDONED = "DELETE FROM carts WHERE updated_at < ?";
+    // Write-through: only if the row is still the revision the change was made to
+    private static final String UPDATE_CART_AT = "UPDATE carts SET items = ?, updated_at = ?, revision = revision + 1 "
+            + "WHERE user_id = ? AND revision = ?";
+    private static final String DELETE_CART_AT = "DELETE FROM carts WHERE user_id = ? AND revision = ?";
+
+    // Revision of a cart with no row. A new row starts at the current time in milliseconds rather than at 1, so a
+    // row that was deleted and created again never repeats a revision an instance may still hold in memory
+    private static final long NO_ROW = -1;
+    private static final long CONFLICT = Long.MIN_VALUE;
+
+    // Epoch second the in-memory times count from
+    private static final long STARTED = System.currentTimeMillis() / 1000;
+
+    public enum CartUpdate { UPDATED, TOO_MANY_LINES, INVALID }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final int maxLines;
+    private final boolean writeThrough;
+    private final long idleSeconds;
+    private final long ttlSeconds;
+    private final Stripe[] stripes;
+
+    // Carts pushed out of memory before their last change was saved; written by the next snapshot
+    private final Map<Long, Spilled> spilled = new ConcurrentHashMap<>();
+    private final AtomicLong spillsSaved = new AtomicLong(); // Lets a loader tell whether the table changed under it
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CartStore(@Value("${app.carts.max-carts:2000000}") int maxCarts,
+                     @Value("${app.carts.max-lines:100}") int maxLines,
+                     @Value("${app.carts.idle-minutes:60}") long idleMinutes,
+                     @Value("${app.carts.ttl-days:30}") long ttlDays,
+                     @Value("${app.carts.write-through:true}") boolean writeThrough) {
+        this.maxLines = maxLines;
+        this.writeThrough = writeThrough;
+        this.ttlSeconds = ttlDays * 86_400;
+        this.idleSeconds = Math.min(idleMinutes * 60, ttlSeconds);
+        int stripeCount = Math.max(1, Math.min(MAX_STRIPES, Integer.highestOneBit(Math.max(1, maxCarts / 1024))));
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(Math.max(1, maxCarts / stripeCount));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        snapshot();
+    }
+
+    // Product id -> quantity, in the order the lines were added
+    public Map<Long, Integer> getCart(Long userId) {
+        return toMap(read(userId));
+    }
+
+    // Quantity 0 removes the line
+    public CartUpdate setQuantity(Long userId, Long productId, int quantity) {
+        if (productId == null || productId <= 0 || productId > MAX_PRODUCT_ID || quantity < 0 || quantity > MAX_QUANTITY) {
+            return CartUpdate.INVALID;
+        }
+        return write(userId, lines -> withQuantity(lines, productId, quantity), maxLines);
+    }
+
+    public CartUpdate addQuantity(Long userId, Long productId, int quantity) {
+        if (productId == null || productId <= 0 || productId > MAX_PRODUCT_ID || quantity <= 0 || quantity > MAX_QUANTITY) {
+            return CartUpdate.INVALID;
+        }
+        return write(userId, lines -> {
+            int index = indexOf(lines, productId);
+            long total = (index < 0 ? 0 : quantityOf(lines[index])) + (long) quantity;
+            return total > MAX_QUANTITY ? null : withQuantity(lines, productId, (int) total);
+        }, maxLines);
+    }
+
+    public void clear(Long userId) {
+        write(userId, lines -> EMPTY, maxLines);
+    }
+
+    // Empties the cart and returns what was in it, in one step: of two checkouts of the same cart (a double click,
+    // or two instances), only one gets the lines
+    public Map<Long, Integer> takeAll(Long userId) {
+        long[][] taken = new long[1][];
+        write(userId, lines -> {
+            taken[0] = lines; // The last call is the one that was applied
+            return EMPTY;
+        }, maxLines);
+        return toMap(taken[0]);
+    }
+
+    // Returns lines taken for a checkout that failed, adding to anything put in the cart meanwhile
+    public void putBack(Long userId, Map<Long, Integer> taken) {
+        if (taken.isEmpty()) {
+            return;
+        }
+        write(userId, lines -> {
+            long[] result = lines;
+            for (Map.Entry<Long, Integer> line : taken.entrySet()) {
+                int index = indexOf(result, line.getKey());
+                long total = (index < 0 ? 0 : quantityOf(result[index])) + (long) line.getValue();
+                result = withQuantity(result, line.getKey(), (int) Math.min(total, MAX_QUANTITY));
+            }
+            return result;
+        }, Integer.MAX_VALUE); // They were in the cart a moment ago, so the line limit does not turn them away
+    }
+
+    // Writes every changed cart: upsert by user id, or delete once it is empty
+    @Scheduled(fixedDelayString = "${app.carts.snapshot-interval-ms:5000}")
+    public synchronized void snapshot() {
+        for (Stripe stripe : stripes) {
+            List<Dirty> changed = new ArrayList<>();
+            synchronized (stripe) {
+                for (int slot = 0; slot < stripe.userIds.length; slot++) {
+                    if (stripe.userIds[slot] != 0 && stripe.dirty[slot]) {
+                        changed.add(new Dirty(stripe.userIds[slot], stripe.lines[slot], stripe.modified[slot]));
+                    }
+                }
+            }
+            if (changed.isEmpty() || !save(changed)) {
+                continue;
+            }
+            // Clean only where the cart is still the version that was written
+            synchronized (stripe) {
+                for (Dirty cart : changed) {
+                    int slot = stripe.find(cart.userId);
+                    if (slot >= 0 && stripe.lines[slot] == cart.lines) {
+                        stripe.dirty[slot] = false;
+                    }
+                }
+            }
+        }
+        if (!spilled.isEmpty()) {
+            List<Dirty> changed = new ArrayList<>();
+            for (Map.Entry<Long, Spilled> entry : spilled.entrySet()) {
+                changed.add(new Dirty(entry.getKey(), entry.getValue().lines, entry.getValue().modified));
+            }
+            if (save(changed)) {
+                for (Dirty cart : changed) {
+                    Spilled entry = spilled.get(cart.userId);
+                    if (entry != null && entry.lines == cart.lines && spilled.remove(cart.userId, entry)) {
+                        spillsSaved.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    // Drops idle carts from memory and abandoned ones everywhere
+    @Scheduled(fixedDelayString = "${app.carts.sweep-interval-ms:60000}")
+    public void sweep() {
+        int now = now();
+        int idleCutoff = (int) (now - idleSeconds);
+        int abandonedCutoff = (int) (now - ttlSeconds);
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                int slot = 0;
+                while (slot < stripe.userIds.length) {
+                    boolean occupied = stripe.userIds[slot] != 0;
+                    if (occupied && (stripe.modified[slot] < abandonedCutoff
+                            || (!stripe.dirty[slot] && stripe.accessed[slot] < idleCutoff))) {
+                        stripe.removeAt(slot); // Another cart may shift into this slot: look at it again
+                    } else {
+                        slot++;
+                    }
+                }
+            }
+        }
+        spilled.values().removeIf(entry -> entry.modified < abandonedCutoff);
+        int deleted = jdbcTemplate.update(DELETE_ABANDONED, toTimestamp(abandonedCutoff));
+        if (deleted > 0) {
+            log.info("Deleted {} carts unchanged for {} days", deleted, ttlSeconds / 86_400);
+        }
+    }
+
+    public long getCartsInMemory() {
+        long carts = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                carts += stripe.size;
+            }
+        }
+        return carts;
+    }
+
+    // Tables plus line arrays, not counting carts waiting to be saved after eviction
+    public long getBytesInMemory() {
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                bytes += (long) stripe.userIds.length * Stripe.BYTES_PER_SLOT + (long) stripe.size * 16 + (long) stripe.lineCount * Long.BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    public long getLoads() { return loads.sum(); }
+    public long getEvictions() { return evictions.sum(); }
+    public int getUnsavedEvicted() { return spilled.size(); }
+
+    private long[] read(Long userId) {
+        Stripe stripe = stripeFor(userId);
+        // With write-through, the copy in memory is only used while the table still has the same revision
+        boolean checked = !writeThrough;
+        long tableRevision = checked ? NO_ROW : selectRevision(userId);
+        while (true) {
+            synchronized (stripe) {
+                int slot = stripe.find(userId);
+                if (slot >= 0) {
+                    if (checked || isCurrent(stripe.revisions[slot], tableRevision)) {
+                        stripe.accessed[slot] = now();
+                        return stripe.lines[slot];
+                    }
+                    stripe.removeAt(slot); // Changed through another instance; nothing unsaved is lost
+                }
+            }
+            load(userId, stripe);
+            checked = true; // Read after the revision was
+        }
+    }
+
+    // Equal, or this instance has already written past what the table showed a moment ago
+    private static boolean isCurrent(long inMemory, long inTable) {
+        return inMemory == inTable || (inTable != NO_ROW && inMemory > inTable);
+    }
+
+    // Applies change to the current lines; a null result means the change is not possible
+    private CartUpdate write(Long userId, UnaryOperator<long[]> change, int lineLimit) {
+        if (writeThrough) {
+            return writeThrough(userId, change, lineLimit);
+        }
+        Stripe stripe = stripeFor(userId);
+        while (true) {
+            synchronized (stripe) {
+                int slot = stripe.find(userId);
+                if (slot >= 0) {
+                    long[] before = stripe.lines[slot];
+                    long[] after = change.apply(before);
+                    if (after == null) {
+                        return CartUpdate.INVALID;
+                    }
+                    if (after.length > lineLimit && after.length > before.length) {
+                        return CartUpdate.TOO_MANY_LINES;
+                    }
+                    if (after != before) {
+                        int now = now();
+                        stripe.lineCount += after.length - before.length;
+                        stripe.lines[slot] = after;
+                        stripe.dirty[slot] = true;
+                        stripe.modified[slot] = now;
+                        stripe.accessed[slot] = now;
+                    }
+                    return CartUpdate.UPDATED;
+                }
+            }
+            load(userId, stripe);
+        }
+    }
+
+    // The change is made to the copy in memory and written only if the row is still at that copy's revision;
+    // otherwise the copy is dropped, and the change is made again to a fresh one
+    private CartUpdate writeThrough(Long userId, UnaryOperator<long[]> change, int lineLimit) {
+        Stripe stripe = stripeFor(userId);
+        while (true) {
+            long[] before = null;
+            long revision = NO_ROW;
+            synchronized (stripe) {
+                int slot = stripe.find(userId);
+                if (slot >= 0) {
+                    before = stripe.lines[slot];
+                    revision = stripe.revisions[slot];
+                }
+            }
+            if (before == null) {
+                load(userId, stripe);
+                continue;
+            }
+            long[] after = change.apply(before);
+            if (after == null) {
+                return CartUpdate.INVALID;
+            }
+            if (after.length > lineLimit && after.length > before.length) {
+                return CartUpdate.TOO_MANY_LINES;
+            }
+            if (after == before) {
+                return CartUpdate.UPDATED;
+            }
+            int now = now();
+            long saved = saveThrough(userId, revision, after, now);
+            synchronized (stripe) {
+                int slot = stripe.find(userId);
+                boolean unchanged = slot >= 0 && stripe.lines[slot] == before && stripe.revisions[slot] == revision;
+                if (saved != CONFLICT && unchanged) {
+                    stripe.lineCount += after.length - before.length;
+                    stripe.lines[slot] = after;
+                    stripe.revisions[slot] = saved;
+                    stripe.modified[slot] = now;
+                    stripe.accessed[slot] = now;
+                } else if (slot >= 0 && (saved != CONFLICT || unchanged)) {
+                    stripe.removeAt(slot); // Stale either way: the next read loads the row
+                }
+            }
+            if (saved != CONFLICT) {
+                return CartUpdate.UPDATED;
+            }
+        }
+    }
+
+    // The row's new revision (NO_ROW once an emptied cart is deleted), or CONFLICT if it was not at revision
+    private long saveThrough(Long userId, long revision, long[] lines, int modified) {
+        if (lines.length == 0) {
+            return revision == NO_ROW || jdbcTemplate.update(DELETE_CART_AT, userId, revision) == 1 ? NO_ROW : CONFLICT;
+        }
+        Timestamp updatedAt = toTimestamp(modified);
+        if (revision == NO_ROW) {
+            long created = System.currentTimeMillis();
+            try {
+                jdbcTemplate.update(INSERT_CART, userId, encode(lines), updatedAt, created);
+                return created;
+            } catch (DuplicateKeyException e) {
+                return CONFLICT; // Created through another instance meanwhile
+            }
+        }
+        return jdbcTemplate.update(UPDATE_CART_AT, encode(lines), updatedAt, userId, revision) == 1 ? revision + 1 : CONFLICT;
+    }
+
+    private long selectRevision(Long userId) {
+        List<Long> revisions = jdbcTemplate.queryForList(SELECT_REVISION, Long.class, userId);
+        return revisions.isEmpty() ? NO_ROW : revisions.get(0);
+    }
+
+    // Brings a cart into memory: from the carts waiting to be saved, else from the table, else empty
+    private void load(Long userId, Stripe stripe) {
+        while (true) {
+            long savedBefore = spillsSaved.get();
+            Spilled pending = spilled.get(userId);
+            Spilled found = pending != null ? pending : select(userId);
+            synchronized (stripe) {
+                if (stripe.find(userId) >= 0) {
+                    return; // Another thread loaded it
+                }
+                Spilled latest = spilled.remove(userId);
+                if (latest == null && (pending != null || spillsSaved.get() != savedBefore)) {
+                    continue; // Written and dropped while we were reading: the table may be newer than what we have
+                }
+                boolean unsaved = latest != null;
+                Spilled cart = unsaved ? latest : found;
+                if (stripe.size >= stripe.capacity) {
+                    makeRoom(stripe);
+                }
+                int slot = -1 - stripe.find(userId);
+                stripe.insert(slot, userId, cart.lines, cart.modified, cart.revision, unsaved);
+                loads.increment();
+                return;
+            }
+        }
+    }
+
+    private Spilled select(Long userId) {
+        List<Spilled> rows = jdbcTemplate.query(SELECT_CART,
+                (rs, rowNum) -> new Spilled(decode(rs.getBytes("items")),
+                        toSeconds(rs.getTimestamp("updated_at")), rs.getLong("revision")), userId);
+        return rows.isEmpty() ? new Spilled(EMPTY, now(), NO_ROW) : rows.get(0);
+    }
+
+    // Frees about an eighth of a full stripe, least recently used first (the cutoff comes from a random sample)
+    private void makeRoom(Stripe stripe) {
+        int[] sample = new int[EVICTION_SAMPLE];
+        int sampled = 0;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int mask = stripe.userIds.length - 1;
+        for (int tries = 0; sampled < EVICTION_SAMPLE && tries < EVICTION_SAMPLE * 8; tries++) {
+            int slot = random.nextInt() & mask;
+            if (stripe.userIds[slot] != 0) {
+                sample[sampled++] = stripe.accessed[slot];
+            }
+        }
+        int cutoff = Integer.MAX_VALUE;
+        if (sampled > 0) {
+            Arrays.sort(sample, 0, sampled);
+            cutoff = sample[sampled / 8];
+        }
+        int slot = 0;
+        while (slot < stripe.userIds.length) {
+            if (stripe.userIds[slot] != 0 && stripe.accessed[slot] <= cutoff) {
+                if (stripe.dirty[slot]) {
+                    spilled.put(stripe.userIds[slot], new Spilled(stripe.lines[slot], stripe.modified[slot], stripe.revisions[slot]));
+                }
+                stripe.removeAt(slot);
+                evictions.increment();
+            } else {
+                slot++;
+            }
+        }
+    }
+
+    private boolean save(List<Dirty> carts) {
+        try {
+            List<Object[]> updates = new ArrayList<>();
+            List<Object[]> deletes = new ArrayList<>();
+            List<Dirty> written = new ArrayList<>();
+            for (Dirty cart : carts) {
+                if (cart.lines.length == 0) {
+                    deletes.add(new Object[]{cart.userId});
+                } else {
+                    updates.add(new Object[]{encode(cart.lines), toTimestamp(cart.modified), cart.userId});
+                    written.add(cart);
+                }
+            }
+            if (!deletes.isEmpty()) {
+                jdbcTemplate.batchUpdate(DELETE_CART, deletes);
+            }
+            if (!updates.isEmpty()) {
+                int[] counts = jdbcTemplate.batchUpdate(UPDATE_CART, updates);
+                List<Object[]> inserts = new ArrayList<>();
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] == 0) {
+                        Object[] update = updates.get(i);
+                        inserts.add(new Object[]{update[2], update[0], update[1], System.currentTimeMillis()});
+                    }
+                }
+                if (!inserts.isEmpty()) {
+                    jdbcTemplate.batchUpdate(INSERT_CART, inserts);
+                }
+            }
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Failed to save {} carts, will retry", carts.size(), e);
+            return false;
+        }
+    }
+
+    private Stripe stripeFor(Long userId) {
+        return stripes[(int) (mix(userId) >>> 32) & (stripes.length - 1)];
+    }
+
+    private static Map<Long, Integer> toMap(long[] lines) {
+        Map<Long, Integer> cart = new LinkedHashMap<>();
+        for (long line : lines) {
+            cart.put(productOf(line), quantityOf(line));
+        }
+        return cart;
+    }
+
+    private static long[] withQuantity(long[] lines, long productId, int quantity) {
+        int index = indexOf(lines, productId);
+        if (index < 0) {
+            if (quantity == 0) {
+                return lines;
+            }
+            long[] grown = Arrays.copyOf(lines, lines.length + 1);
+            grown[lines.length] = pack(productId, quantity);
+            return grown;
+        }
+        if (quantity == 0) {
+            long[] shrunk = new long[lines.length - 1];
+            System.arraycopy(lines, 0, shrunk, 0, index);
+            System.arraycopy(lines, index + 1, shrunk, index, lines.length - index - 1);
+            return shrunk;
+        }
+        long[] changed = lines.clone();
+        changed[index] = pack(productId, quantity);
+        return changed;
+    }
+
+    private static int indexOf(long[] lines, long productId) {
+        for (int i = 0; i < lines.length; i++) {
+            if (productOf(lines[i]) == productId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static long pack(long productId, int quantity) {
+        return productId << QUANTITY_BITS | quantity;
+    }
+
+    static long productOf(long line) {
+        return line >>> QUANTITY_BITS;
+    }
+
+    static int quantityOf(long line) {
+        return (int) (line & MAX_QUANTITY);
+    }
+
+    static byte[] encode(long[] lines) {
+        ByteBuffer buffer = ByteBuffer.allocate(lines.length * Long.BYTES);
+        for (long line : lines) {
+            buffer.putLong(line);
+        }
+        return buffer.array();
+    }
+
+    static long[] decode(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long[] lines = new long[bytes.length / Long.BYTES];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = buffer.getLong();
+        }
+        return lines;
+    }
+
+    // Seconds since this process started: an int lasts 68 years either side, where epoch seconds would stop in 2038
+    private static int now() {
+        return (int) (System.currentTimeMillis() / 1000 - STARTED);
+    }
+
+    private static Timestamp toTimestamp(int seconds) {
+        return Timestamp.from(Instant.ofEpochSecond(STARTED + seconds));
+    }
+
+    // Rows from long before this process clamp to the oldest time an int holds, which is just as expired
+    private static int toSeconds(Timestamp timestamp) {
+        long seconds = timestamp.toInstant().getEpochSecond() - STARTED;
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, seconds));
+    }
+
+    // SplitMix64 finalizer: user ids are sequential, slots and stripes need the bits spread
+    private static long mix(long key) {
+        key ^= key >>> 30;
+        key *= 0xbf58476d1ce4e5b9L;
+        key ^= key >>> 27;
+        key *= 0x94d049bb133111ebL;
+        key ^= key >>> 31;
+        return key;
+    }
+
+    private static final class Spilled {
+        final long[] lines;
+        final int modified;
+        final long revision;
+
+        Spilled(long[] lines, int modified, long revision) {
+            this.lines = lines;
+            this.modified = modified;
+            this.revision = revision;
+        }
+    }
+
+    private static final class Dirty {
+        final long userId;
+        final long[] lines;
+        final int modified;
+
+        Dirty(long userId, long[] lines, int modified) {
+            this.userId = userId;
+            this.lines = lines;
+            this.modified = modified;
+        }
+    }
+
+    // Linear-probing table from user id (0 = free slot) to cart, in parallel primitive arrays.
+    // Guarded by the stripe's monitor.
+    private static final class Stripe {
+        static final int INITIAL_SLOTS = 64;
+        static final int BYTES_PER_SLOT = Long.BYTES * 2 + 4 + Integer.BYTES * 2 + 1; // Key, revision, array reference, two times, flag
+
+        final int capacity;
+        final int maxSlots;
+        long[] userIds;
+        long[][] lines;
+        long[] revisions; // The row's revision when this copy was loaded or written; checked only with write-through
+        int[] accessed; // Seconds since the process started: last read or write, for idle and LRU eviction
+        int[] modified; // Last write, for expiry and the saved updated_at
+        boolean[] dirty;
+        int size;
+        long lineCount;
+
+        // Starts small and doubles as carts arrive, so an idle or test instance doesn't hold the full bound
+        Stripe(int capacity) {
+            this.capacity = capacity;
+            this.maxSlots = Integer.highestOneBit(capacity * 4 / 3 + 1) << 1; // Load factor at most 0.75, never full
+            allocate(Math.min(maxSlots, INITIAL_SLOTS));
+        }
+
+        private void allocate(int slots) {
+            userIds = new long[slots];
+            lines = new long[slots][];
+            revisions = new long[slots];
+            accessed = new int[slots];
+            modified = new int[slots];
+            dirty = new boolean[slots];
+        }
+
+        // Doubles the table and puts every cart back at its slot under the new mask
+        private void grow() {
+            long[] oldUserIds = userIds;
+            long[][] oldLines = lines;
+            long[] oldRevisions = revisions;
+            int[] oldAccessed = accessed;
+            int[] oldModified = modified;
+            boolean[] oldDirty = dirty;
+            allocate(oldUserIds.length << 1);
+            for (int i = 0; i < oldUserIds.length; i++) {
+                if (oldUserIds[i] != 0) {
+                    int slot = -1 - find(oldUserIds[i]);
+                    userIds[slot] = oldUserIds[i];
+                    lines[slot] = oldLines[i];
+                    revisions[slot] = oldRevisions[i];
+                    accessed[slot] = oldAccessed[i];
+                    modified[slot] = oldModified[i];
+                    dirty[slot] = oldDirty[i];
+                }
+            }
+        }
+
+        // The slot holding userId, or -1 - (the free slot where it would go)
+        int find(long userId) {
+            int mask = userIds.length - 1;
+            int slot = (int) mix(userId) & mask;
+            while (userIds[slot] != 0) {
+                if (userIds[slot] == userId) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1 - slot;
+        }
+
+        // slot comes from find(); it is looked up again if the table has to grow first
+        void insert(int slot, long userId, long[] cart, int modifiedAt, long revision, boolean unsaved) {
+            if ((size + 1) * 4L > userIds.length * 3L && userIds.length < maxSlots) {
+                grow();
+                slot = -1 - find(userId);
+            }
+            userIds[slot] = userId;
+            lines[slot] = cart;
+            revisions[slot] = revision;
+            accessed[slot] = now();
+            modified[slot] = modifiedAt;
+            dirty[slot] = unsaved;
+            size++;
+            lineCount += cart.length;
+        }
+
+        // Backward-shift deletion: later entries of the same probe run move up, so lookups need no tombstones
+        void removeAt(int slot) {
+            int mask = userIds.length - 1;
+            lineCount -= lines[slot].length;
+            int hole = slot;
+            int next = slot;
+            while (true) {
+                next = (next + 1) & mask;
+                long key = userIds[next];
+                if (key == 0) {
+                    break;
+                }
+                int home = (int) mix(key) & mask;
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    userIds[hole] = key;
+                    lines[hole] = lines[next];
+                    revisions[hole] = revisions[next];
+                    accessed[hole] = accessed[next];
+                    modified[hole] = modified[next];
+                    dirty[hole] = dirty[next];
+                    hole = next;
+                }
+            }
+            userIds[hole] = 0;
+            lines[hole] = null;
+            dirty[hole] = false;
+            size--;
+        }
+    }
+}
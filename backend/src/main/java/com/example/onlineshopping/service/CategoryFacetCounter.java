@@ -0,0 +1,115 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.event.ProductChangedEvent;
+import com.example.onlineshopping.event.ProductsImportedEvent;
+import com.example.onlineshopping.model.Product;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Number of products per category for the catalog's facet list, kept in memory and moved by the product change
+// events, so showing the facets never runs a COUNT. Loaded once on startup with one GROUP BY over the category
+// index, and re-synced from it now and then to pick up changes made through other instances.
+@Component
+public class CategoryFacetCounter {
+
+    private static final Logger log = LoggerFactory.getLogger(CategoryFacetCounter.class);
+
+    private static final String COUNT_BY_CATEGORY = "SELECT category, COUNT(*) AS products FROM products "
+            + "WHERE category IS NOT NULL GROUP BY category";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private volatile Map<String, Long> counts = new ConcurrentHashMap<>();
+
+    public static final class Facet {
+        private final String category;
+        private final long count;
+
+        Facet(String category, long count) {
+            this.category = category;
+            this.count = count;
+        }
+
+        public String getCategory() { return category; }
+        public long getCount() { return count; }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    @Scheduled(fixedDelayString = "${app.products.facets.resync-interval-ms:600000}",
+            initialDelayString = "${app.products.facets.resync-interval-ms:600000}")
+    public synchronized void rebuild() {
+        long start = System.nanoTime();
+        Map<String, Long> loaded = new ConcurrentHashMap<>();
+        jdbcTemplate.query(COUNT_BY_CATEGORY, rs -> {
+            loaded.put(rs.getString("category"), rs.getLong("products"));
+        });
+        counts = loaded;
+        log.debug("Category facets loaded: {} categories in {} ms", loaded.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // Categories with at least one product, in name order
+    public List<Facet> facets() {
+        List<Facet> facets = new ArrayList<>();
+        new ConcurrentSkipListMap<>(counts).forEach((category, count) -> {
+            if (count > 0) {
+                facets.add(new Facet(category, count));
+            }
+        });
+        return facets;
+    }
+
+    @EventListener
+    public synchronized void onProductChanged(ProductChangedEvent event) {
+        switch (event.getType()) {
+            case CREATED:
+                adjust(event.getProduct().getCategory(), 1);
+                break;
+            case UPDATED:
+                move(event.getPreviousCategory(), event.getProduct().getCategory());
+                break;
+            default:
+                adjust(event.getPreviousCategory(), -1);
+        }
+    }
+
+    @EventListener
+    public synchronized void onProductsImported(ProductsImportedEvent event) {
+        for (Product product : event.getProducts()) {
+            if (event.getPreviousCategories().containsKey(product.getId())) {
+                move(event.getPreviousCategories().get(product.getId()), product.getCategory());
+            } else {
+                adjust(product.getCategory(), 1); // Inserted by the import
+            }
+        }
+    }
+
+    private void move(String from, String to) {
+        if (from == null ? to != null : !from.equals(to)) {
+            adjust(from, -1);
+            adjust(to, 1);
+        }
+    }
+
+    private void adjust(String category, long delta) {
+        if (category != null) {
+            counts.merge(category, delta, Long::sum);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.onlineshopping.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Set membership with no false negatives and a tunable false positive rate, in a few bits per key.
+// Each slot is a 4-bit counter (16 per long) rather than a single bit, so keys can be removed again.
+// Counters that reach 15 stick there: removals never underflow them, at the cost of a few permanent positives.
+// All updates are lock-free CAS loops on the packed words.
+public class CountingBloomFilter {
+
+    private static final int COUNTER_BITS = 4;
+    private static final int COUNTERS_PER_WORD = Long.SIZE / COUNTER_BITS;
+    private static final long MAX_COUNT = (1L << COUNTER_BITS) - 1;
+
+    private final AtomicLongArray words;
+    private final long counters;
+    private final int hashes;
+
+    public CountingBloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Need expectedInsertions > 0 and 0 < falsePositiveRate < 1");
+        }
+        // Standard sizing: m = -n ln p / (ln 2)^2 slots, k = m/n ln 2 hash functions
+        long slots = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        long wordCount = (slots + COUNTERS_PER_WORD - 1) / COUNTERS_PER_WORD;
+        if (wordCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Filter too large: " + slots + " counters");
+        }
+        this.words = new AtomicLongArray((int) wordCount);
+        this.counters = wordCount * COUNTERS_PER_WORD;
+        this.hashes = Math.max(1, (int) Math.round((double) counters / expectedInsertions * Math.log(2)));
+    }
+
+    public void add(String key) {
+        long hash = hash(key);
+        for (int i = 0; i < hashes; i++) {
+            increment(slot(hash, i));
+        }
+    }
+
+    // Only remove keys that were added, otherwise other keys' counters are taken down with them
+    public void remove(String key) {
+        long hash = hash(key);
+        for (int i = 0; i < hashes; i++) {
+            decrement(slot(hash, i));
+        }
+    }
+
+    // False means the key was definitely never added (or has been removed)
+    public boolean mightContain(String key) {
+        long hash = hash(key);
+        for (int i = 0; i < hashes; i++) {
+            if (count(slot(hash, i)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long sizeInBytes() {
+        return (long) words.length() * Long.BYTES;
+    }
+
+    public int getHashes() {
+        return hashes;
+    }
+
+    // Double hashing (Kirsch-Mitzenmacher): slot i = h1 + i * h2, both halves of one 64-bit hash
+    private long slot(long hash, int i) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        return Math.floorMod(h1 + (long) i * h2, counters);
+    }
+
+    private long count(long slot) {
+        return (words.get((int) (slot / COUNTERS_PER_WORD)) >>> shift(slot)) & MAX_COUNT;
+    }
+
+    private void increment(long slot) {
+        int word = (int) (slot / COUNTERS_PER_WORD);
+        int shift = shift(slot);
+        while (true) {
+            long current = words.get(word);
+            if (((current >>> shift) & MAX_COUNT) == MAX_COUNT) {
+                return; // Saturated
+            }
+            if (words.compareAndSet(word, current, current + (1L << shift))) {
+                return;
+            }
+        }
+    }
+
+    private void decrement(long slot) {
+        int word = (int) (slot / COUNTERS_PER_WORD);
+        int shift = shift(slot);
+        while (true) {
+            long current = words.get(word);
+            long count = (current >>> shift) & MAX_COUNT;
+            if (count == 0 || count == MAX_COUNT) {
+                return; // Never added, or saturated and no longer exact
+            }
+            if (words.compareAndSet(word, current, current - (1L << shift))) {
+                return;
+            }
+        }
+    }
+
+    private static int shift(long slot) {
+        return (int) (slot % COUNTERS_PER_WORD) * COUNTER_BITS;
+    }
+
+    // FNV-1a over the UTF-8 bytes, then the SplitMix64 finalizer to spread the bits across both halves
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 30;
+        hash *= 0xbf58476d1ce4e5b9L;
+        hash ^= hash >>> 27;
+        hash *= 0x94d049bb133111ebL;
+        hash ^= hash >>> 31;
+        return hash;
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.onlineshopping.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+// Minimal streaming RFC 4180 reader: comma separated, fields optionally in double quotes, "" for a quote inside
+// a quoted field, and line breaks allowed inside quotes. Reads one record at a time, never the whole input.
+public class CsvReader {
+
+    private final Reader reader;
+    private int peeked = -2; // -2 = nothing peeked
+    private int line = 1;
+    private int recordLine;
+
+    public CsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    // The next record's fields, or null at the end of the input. Blank lines are skipped.
+    public List<String> next() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                return null;
+            }
+            if (c == '\r' || c == '\n') {
+                consumeLineBreak(c);
+                continue;
+            }
+            if (c == '\uFEFF' && line == 1) {
+                continue; // Byte order mark
+            }
+            unread(c);
+            recordLine = line;
+            return readRecord();
+        }
+    }
+
+    // Line number (1-based) where the record last returned by next() started
+    public int getRecordLine() {
+        return recordLine;
+    }
+
+    private List<String> readRecord() throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean fieldStarted = false;
+        while (true) {
+            int c = read();
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quoted field starting on line " + recordLine);
+                }
+                if (c == '"') {
+                    int following = read();
+                    if (following == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        unread(following);
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                }
+                continue;
+            }
+            if (c == -1 || c == '\r' || c == '\n') {
+                fields.add(field.toString());
+                if (c != -1) {
+                    consumeLineBreak(c);
+                }
+                return fields;
+            }
+            if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+                fieldStarted = false;
+            } else if (c == '"' && !fieldStarted) {
+                quoted = true;
+                fieldStarted = true;
+            } else {
+                field.append((char) c);
+                fieldStarted = true;
+            }
+        }
+    }
+
+    private void consumeLineBreak(int c) throws IOException {
+        if (c == '\r') {
+            int following = read();
+            if (following != '\n') {
+                unread(following);
+            }
+        }
+        line++;
+    }
+
+    private int read() throws IOException {
+        if (peeked != -2) {
+            int c = peeked;
+            peeked = -2;
+            return c;
+        }
+        return reader.read();
+    }
+
+    private void unread(int c) {
+        peeked = c;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.datasource.ReplicaRoutingDataSource;
+import com.example.onlineshopping.event.ProductChangedEvent;
+import com.example.onlineshopping.event.ProductsImportedEvent;
+import com.example.onlineshopping.event.StockLevelsChangedEvent;
+import com.example.onlineshopping.model.Product;
+import com.example.onlineshopping.model.User;
+import com.example.onlineshopping.repository.ProductRepository;
+import com.example.onlineshopping.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityManager;
+import java.util.Optional;
+
+// Read-only lookups by id that share one database load between concurrent callers of the same id,
+// so a featured product (or a cold cache) costs one query rather than one per request.
+// The loaded entity is detached because it is handed to several request threads.
+@Service
+public class EntityLookupService {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private final SingleFlight<Long, Optional<Product>> productLoads = new SingleFlight<>();
+    private final SingleFlight<Long, Optional<User>> userLoads = new SingleFlight<>();
+
+    // From the primary: these loads fill the product JSON cache, which must not keep a lagging replica's copy
+    public Optional<Product> findProductById(Long id) {
+        return productLoads.load(id, key -> ReplicaRoutingDataSource.onPrimary(() -> detached(productRepository.findById(key))));
+    }
+
+    public Optional<User> findUserById(Long id) {
+        return userLoads.load(id, key -> detached(userRepository.findById(key)));
+    }
+
+    public void forgetUser(Long id) {
+        userLoads.forget(id);
+    }
+
+    // Runs ahead of the JSON cache's listener: once the cache has moved on, nobody may join a pre-change load
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onProductChanged(ProductChangedEvent event) {
+        productLoads.forget(event.getProductId());
+    }
+
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onStockLevelsChanged(StockLevelsChangedEvent event) {
+        event.getCategoriesByProduct().keySet().forEach(productLoads::forget);
+    }
+
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onProductsImported(ProductsImportedEvent event) {
+        event.getProducts().forEach(product -> productLoads.forget(product.getId()));
+    }
+
+    public SingleFlight<Long, Optional<Product>> getProductLoads() { return productLoads; }
+    public SingleFlight<Long, Optional<User>> getUserLoads() { return userLoads; }
+
+    private <T> Optional<T> detached(Optional<T> entity) {
+        entity.ifPresent(entityManager::detach);
+        return entity;
+    }
+}
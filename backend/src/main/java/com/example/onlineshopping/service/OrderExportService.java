@@ -0,0 +1,217 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.datasource.OrderShard;
+import com.example.onlineshopping.datasource.OrderShards;
+import com.example.onlineshopping.dto.OrderExportRow;
+import com.example.onlineshopping.model.Order;
+import com.example.onlineshopping.model.OrderStatus;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+// Orders as NDJSON, written while they are read from a forward-only cursor: memory stays flat at any volume.
+// Read-only, so with replicas configured the export runs on a replica rather than the primary.
+// With order shards there is one cursor per shard, merged by id, and usernames are looked up per chunk of rows.
+@Service
+public class OrderExportService {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderExportService.class);
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private OrderShards orderShards;
+
+    @Autowired
+    private OrderStore orderStore;
+
+    // Rows per round trip; MySQL only honours it with useCursorFetch=true on the URL (otherwise it buffers everything)
+    @Value("${app.orders.export.fetch-size:1000}")
+    private int fetchSize;
+
+    private ObjectWriter rowWriter;
+
+    @PostConstruct
+    void init() {
+        // No flush per row: the generator and the response buffer decide when bytes go out
+        rowWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    // Orders with from <= orderDate < to and the given status (each filter optional), in id order; returns the row count
+    @Transactional(readOnly = true)
+    public long writeNdjson(LocalDateTime from, LocalDateTime to, OrderStatus status, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        if (orderShards.isSharded()) {
+            long written = writeFromShards(from, to, status, out);
+            log.info("Exported {} orders from {} shards in {} ms", written, orderShards.all().size(), (System.nanoTime() - start) / 1_000_000);
+            return written;
+        }
+        StringBuilder jpql = new StringBuilder("SELECT o FROM Order o JOIN FETCH o.user u WHERE 1 = 1");
+        if (from != null) {
+            jpql.append(" AND o.orderDate >= :from");
+        }
+        if (to != null) {
+            jpql.append(" AND o.orderDate < :to");
+        }
+        if (status != null) {
+            jpql.append(" AND o.status = :status");
+        }
+        jpql.append(" ORDER BY o.id");
+        TypedQuery<Order> query = entityManager.createQuery(jpql.toString(), Order.class)
+                .setHint(HINT_FETCH_SIZE, fetchSize)
+                .setHint(HINT_READONLY, true); // No dirty-checking snapshots
+        if (from != null) {
+            query.setParameter("from", from);
+        }
+        if (to != null) {
+            query.setParameter("to", to);
+        }
+        if (status != null) {
+            query.setParameter("status", status.name());
+        }
+
+        long written = 0;
+        try (Stream<Order> orders = query.getResultStream()) {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null); // Rows end with '\n' below instead of Jackson's default space between values
+            Iterator<Order> iterator = orders.iterator();
+            while (iterator.hasNext()) {
+                Order order = iterator.next();
+                rowWriter.writeValue(generator, new OrderExportRow(order.getId(), order.getOrderDate(), order.getStatus(),
+                        order.getTotalAmount(), order.getUserId(), order.getUser().getUsername(),
+                        order.getShippingAddress(), order.getBillingAddress()));
+                generator.writeRaw('\n');
+                // Keep the persistence context empty; the user is detached too, a later order of theirs loads a fresh copy
+                entityManager.detach(order.getUser());
+                entityManager.detach(order);
+                written++;
+            }
+            generator.flush();
+        }
+        log.info("Exported {} orders in {} ms", written, (System.nanoTime() - start) / 1_000_000);
+        return written;
+    }
+
+    // The next row of one shard's cursor
+    private static final class ShardCursor {
+        final Iterator<OrderExportRow> rows;
+        OrderExportRow head;
+
+        ShardCursor(Iterator<OrderExportRow> rows) {
+            this.rows = rows;
+            this.head = rows.next();
+        }
+    }
+
+    private long writeFromShards(LocalDateTime from, LocalDateTime to, OrderStatus status, OutputStream out) throws IOException {
+        StringBuilder sql = new StringBuilder("SELECT id, order_date, status, total_amount, user_id, shipping_address, billing_address "
+                + "FROM orders WHERE 1 = 1");
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        if (from != null) {
+            sql.append(" AND order_date >= :from");
+            params.addValue("from", Timestamp.valueOf(from));
+        }
+        if (to != null) {
+            sql.append(" AND order_date < :to");
+            params.addValue("to", Timestamp.valueOf(to));
+        }
+        if (status != null) {
+            sql.append(" AND status = :status");
+            params.addValue("status", status.name());
+        }
+        sql.append(" ORDER BY id");
+
+        List<Stream<OrderExportRow>> streams = new ArrayList<>();
+        long written = 0;
+        try {
+            PriorityQueue<ShardCursor> cursors = new PriorityQueue<>(Comparator.comparing((ShardCursor cursor) -> cursor.head.getId()));
+            for (OrderShard shard : orderShards.all()) {
+                // A template of its own for the fetch size, so the shard's other queries are not fetched through a cursor
+                JdbcTemplate cursorTemplate = new JdbcTemplate(shard.getDataSource());
+                cursorTemplate.setFetchSize(fetchSize);
+                Stream<OrderExportRow> rows = new NamedParameterJdbcTemplate(cursorTemplate).queryForStream(sql.toString(), params,
+                        (rs, rowNum) -> new OrderExportRow(rs.getLong("id"), rs.getTimestamp("order_date").toLocalDateTime(), rs.getString("status"),
+                                rs.getBigDecimal("total_amount"), rs.getLong("user_id"), null, rs.getString("shipping_address"), rs.getString("billing_address")));
+                streams.add(rows);
+                Iterator<OrderExportRow> iterator = rows.iterator();
+                if (iterator.hasNext()) {
+                    cursors.add(new ShardCursor(iterator));
+                }
+            }
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            List<OrderExportRow> chunk = new ArrayList<>(fetchSize);
+            Long lastId = null;
+            while (!cursors.isEmpty()) {
+                ShardCursor cursor = cursors.poll();
+                OrderExportRow row = cursor.head;
+                if (!row.getId().equals(lastId)) { // Mid-rebalance an order can be on two shards for a moment
+                    chunk.add(row);
+                    lastId = row.getId();
+                }
+                if (cursor.rows.hasNext()) {
+                    cursor.head = cursor.rows.next();
+                    cursors.add(cursor);
+                }
+                if (chunk.size() == fetchSize || cursors.isEmpty()) {
+                    written += writeChunk(chunk, generator);
+                }
+            }
+            generator.flush();
+        } finally {
+            streams.forEach(Stream::close);
+        }
+        return written;
+    }
+
+    // The shards have no users table: one query to the primary for the chunk's usernames
+    private int writeChunk(List<OrderExportRow> chunk, JsonGenerator generator) throws IOException {
+        Set<Long> userIds = new HashSet<>();
+        chunk.forEach(row -> userIds.add(row.getUserId()));
+        Map<Long, String> usernames = orderStore.usernames(userIds);
+        for (OrderExportRow row : chunk) {
+            rowWriter.writeValue(generator, new OrderExportRow(row.getId(), row.getOrderDate(), row.getStatus(), row.getTotalAmount(),
+                    row.getUserId(), usernames.get(row.getUserId()), row.getShippingAddress(), row.getBillingAddress()));
+            generator.writeRaw('\n');
+        }
+        int rows = chunk.size();
+        chunk.clear();
+        return rows;
+    }
+}
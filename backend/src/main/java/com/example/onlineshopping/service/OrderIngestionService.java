@@ -0,0 +1,198 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.model.Order;
+import com.example.onlineshopping.service.OrderService.PreparedOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Write-behind ingestion for new orders. In group-commit mode validated orders are queued and a single
+// writer saves them many per transaction, so checkout throughput is no longer capped by the commit rate.
+// In direct mode (the default) every order is saved in its own transaction on the request thread.
+@Service
+public class OrderIngestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderIngestionService.class);
+
+    public static final String MODE_DIRECT = "direct";
+    public static final String MODE_GROUP_COMMIT = "group-commit";
+
+    @Autowired
+    private OrderStore orderStore;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Value("${app.orders.ingestion.mode:direct}")
+    private String mode;
+
+    @Value("${app.orders.ingestion.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${app.orders.ingestion.max-batch-size:200}")
+    private int maxBatchSize;
+
+    @Value("${app.orders.ingestion.max-flush-latency-ms:20}")
+    private long maxFlushLatencyMs;
+
+    private BlockingQueue<PendingOrder> queue;
+    private Thread writer;
+    private volatile boolean running;
+
+    private static final class PendingOrder {
+        final PreparedOrder prepared;
+        final long enqueuedAtNanos = System.nanoTime();
+        final CompletableFuture<Order> result = new CompletableFuture<>();
+
+        PendingOrder(PreparedOrder prepared) {
+            this.prepared = prepared;
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!isGroupCommit()) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        writer = new Thread(this::writeLoop, "order-group-commit");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Order group commit enabled (queue {}, batch {}, max latency {} ms)", queueCapacity, maxBatchSize, maxFlushLatencyMs);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false; // The writer drains what is already queued before it exits
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+    }
+
+    public boolean isGroupCommit() {
+        return MODE_GROUP_COMMIT.equalsIgnoreCase(mode);
+    }
+
+    // Saves the order and completes with the saved entity (and its id). In group-commit mode this happens on the
+    // writer thread; throws RejectedExecutionException when the queue is full so the caller can shed the request.
+    public CompletableFuture<Order> submit(PreparedOrder prepared) {
+        if (!isGroupCommit()) {
+            return saveDirectly(prepared);
+        }
+        PendingOrder pending = new PendingOrder(prepared);
+        if (!running || !queue.offer(pending)) {
+            throw new RejectedExecutionException("Order queue is full");
+        }
+        return pending.result;
+    }
+
+    private CompletableFuture<Order> saveDirectly(PreparedOrder prepared) {
+        return CompletableFuture.completedFuture(orderService.save(prepared));
+    }
+
+    private void writeLoop() {
+        List<PendingOrder> batch = new ArrayList<>(maxBatchSize);
+        long maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxFlushLatencyMs);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingOrder first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // Fill the batch until it is full or the oldest order has waited long enough
+                long deadline = first.enqueuedAtNanos + maxLatencyNanos;
+                while (batch.size() < maxBatchSize) {
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || !running) {
+                        break;
+                    }
+                    PendingOrder next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                log.error("Order group commit failed unexpectedly", e);
+                for (PendingOrder pending : batch) {
+                    if (!pending.result.isDone()) {
+                        orderService.abandon(pending.prepared);
+                        pending.result.completeExceptionally(e);
+                    }
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // With order shards a transaction cannot span shards, so each shard's part of the batch commits on its own
+    private void writeBatch(List<PendingOrder> batch) {
+        for (List<PendingOrder> group : orderStore.groupByShard(batch, pending -> pending.prepared.getOrder())) {
+            writeGroup(group);
+        }
+    }
+
+    private void writeGroup(List<PendingOrder> batch) {
+        List<Order> orders = new ArrayList<>(batch.size());
+        for (PendingOrder pending : batch) {
+            orders.add(pending.prepared.getOrder());
+        }
+        List<Order> saved;
+        try {
+            saved = orderStore.saveAll(orders);
+        } catch (RuntimeException e) {
+            // One bad order must not fail its neighbours: retry them one transaction each
+            log.warn("Group commit of {} orders failed, retrying individually", batch.size(), e);
+            for (PendingOrder pending : batch) {
+                clearGeneratedIds(pending.prepared.getOrder()); // Ids handed out by the rolled back attempt
+                try {
+                    complete(pending, orderStore.save(pending.prepared.getOrder()));
+                } catch (RuntimeException single) {
+                    orderService.abandon(pending.prepared);
+                    pending.result.completeExceptionally(single);
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            complete(batch.get(i), saved.get(i));
+        }
+    }
+
+    private static void clearGeneratedIds(Order order) {
+        order.setId(null);
+        order.getOrderItems().forEach(item -> item.setId(null));
+    }
+
+    private void complete(PendingOrder pending, Order saved) {
+        orderService.confirm(pending.prepared);
+        pending.result.complete(saved);
+    }
+
+    public int queuedOrders() {
+        return queue == null ? 0 : queue.size();
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.onlineshopping.service;
+
+// Thrown when an order cannot be placed as requested; the reason tells the caller how to respond
+public class OrderPlacementException extends RuntimeException {
+
+    public enum Reason { NO_ITEMS, INVALID_QUANTITY, UNKNOWN_PRODUCT, OUT_OF_STOCK }
+
+    private final Reason reason;
+
+    public OrderPlacementException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
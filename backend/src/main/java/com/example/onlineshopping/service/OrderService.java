@@ -0,0 +1,136 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.model.Order;
+import com.example.onlineshopping.model.OrderItem;
+import com.example.onlineshopping.model.OrderStatus;
+import com.example.onlineshopping.model.Product;
+import com.example.onlineshopping.model.User;
+import com.example.onlineshopping.repository.ProductRepository;
+import com.example.onlineshopping.service.OrderPlacementException.Reason;
+import com.example.onlineshopping.service.StockReservationService.Outcome;
+import com.example.onlineshopping.service.StockReservationService.ReservationResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Turns requested lines into a priced order: prices come from the current products, stock is reserved
+// for every line before anything is written, and the order plus its lines are saved in one transaction.
+@Service
+public class OrderService {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private OrderStore orderStore;
+
+    @Autowired
+    private StockReservationService stockReservationService;
+
+    @Autowired
+    private SalesRollupService salesRollupService;
+
+    // An order that has been priced and has its stock held, but is not saved yet
+    public static final class PreparedOrder {
+        private final Order order;
+        private final List<String> reservationIds;
+
+        PreparedOrder(Order order, List<String> reservationIds) {
+            this.order = order;
+            this.reservationIds = reservationIds;
+        }
+
+        public Order getOrder() { return order; }
+        public List<String> getReservationIds() { return reservationIds; }
+    }
+
+    public Order placeOrder(User user, Map<Long, Integer> quantities, String shippingAddress, String billingAddress) {
+        return save(prepareOrder(user, quantities, shippingAddress, billingAddress));
+    }
+
+    // Saves a prepared order in its own transaction, then settles its reservations either way
+    public Order save(PreparedOrder prepared) {
+        Order savedOrder;
+        try {
+            savedOrder = orderStore.save(prepared.getOrder());
+        } catch (RuntimeException e) {
+            abandon(prepared);
+            throw e;
+        }
+        confirm(prepared);
+        return savedOrder;
+    }
+
+    // Prices the lines and reserves their stock, all or nothing
+    public PreparedOrder prepareOrder(User user, Map<Long, Integer> quantities, String shippingAddress, String billingAddress) {
+        if (quantities == null || quantities.isEmpty()) {
+            throw new OrderPlacementException(Reason.NO_ITEMS, "An order needs at least one item");
+        }
+        for (Map.Entry<Long, Integer> line : quantities.entrySet()) {
+            if (line.getKey() == null || line.getValue() == null || line.getValue() <= 0) {
+                throw new OrderPlacementException(Reason.INVALID_QUANTITY, "Invalid quantity for product " + line.getKey());
+            }
+        }
+
+        // One query for all the lines
+        Map<Long, Product> products = productRepository.findAllById(quantities.keySet()).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        for (Long productId : quantities.keySet()) {
+            if (!products.containsKey(productId)) {
+                throw new OrderPlacementException(Reason.UNKNOWN_PRODUCT, "Unknown product " + productId);
+            }
+        }
+
+        // The rows just read carry the stock, so cold products need no query of their own to reserve
+        stockReservationService.preload(products.values());
+        List<String> reservationIds = new ArrayList<>(quantities.size());
+        for (Map.Entry<Long, Integer> line : quantities.entrySet()) {
+            ReservationResult result = stockReservationService.reserve(line.getKey(), line.getValue());
+            if (result.getOutcome() != Outcome.RESERVED) {
+                reservationIds.forEach(stockReservationService::release);
+                throw new OrderPlacementException(Reason.OUT_OF_STOCK, "Not enough stock for product " + line.getKey());
+            }
+            reservationIds.add(result.getReservation().getId());
+        }
+
+        Order order = new Order();
+        order.setUser(user);
+        order.setOrderDate(LocalDateTime.now());
+        order.setStatus(OrderStatus.PENDING.name()); // Default status
+        order.setShippingAddress(shippingAddress);
+        order.setBillingAddress(billingAddress);
+        BigDecimal total = BigDecimal.ZERO;
+        for (Map.Entry<Long, Integer> line : quantities.entrySet()) {
+            Product product = products.get(line.getKey());
+            BigDecimal lineTotal = product.getPrice().multiply(BigDecimal.valueOf(line.getValue()));
+            OrderItem item = new OrderItem();
+            item.setProductId(product.getId());
+            item.setProductName(product.getName());
+            item.setUnitPrice(product.getPrice());
+            item.setQuantity(line.getValue());
+            item.setLineTotal(lineTotal);
+            order.addOrderItem(item);
+            total = total.add(lineTotal);
+        }
+        order.setTotalAmount(total);
+        return new PreparedOrder(order, reservationIds);
+    }
+
+    // The order is saved: the held stock is sold and the order counts in the sales rollups
+    public void confirm(PreparedOrder prepared) {
+        prepared.getReservationIds().forEach(stockReservationService::commit);
+        salesRollupService.orderPlaced(prepared.getOrder());
+    }
+
+    // The order could not be saved: give the held stock back
+    public void abandon(PreparedOrder prepared) {
+        prepared.getReservationIds().forEach(stockReservationService::release);
+    }
+}
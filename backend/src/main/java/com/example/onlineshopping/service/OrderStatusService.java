@@ -0,0 +1,128 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.datasource.OrderShard;
+import com.example.onlineshopping.datasource.OrderShards;
+import com.example.onlineshopping.model.OrderStatus;
+import com.example.onlineshopping.service.SalesRollupService.OrderFacts;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Moves orders between statuses with set-based compare-and-set statements instead of load-modify-save per order.
+// Each chunk of ids is one transaction: lock the rows still in the expected status, then update exactly those,
+// so the result can say which orders moved and which were in another status (or did not exist).
+// With order shards an id does not tell its shard, so every shard runs each chunk on its own rows, in parallel.
+@Service
+public class OrderStatusService {
+
+    // Also reads what the sales rollups need to move the locked orders' amounts to the new status
+    private static final String LOCK_EXPECTED = "SELECT id, order_date, user_id, total_amount FROM orders "
+            + "WHERE id IN (:ids) AND status = :from ORDER BY id FOR UPDATE";
+    private static final String APPLY = "UPDATE orders SET status = :to WHERE id IN (:ids) AND status = :from";
+    private static final String EXISTING = "SELECT id FROM orders WHERE id IN (:ids)";
+
+    @Autowired
+    private OrderShards orderShards;
+
+    @Autowired
+    private SalesRollupService salesRollupService;
+
+    @Value("${app.orders.status.chunk-size:1000}")
+    private int chunkSize;
+
+    public static final class TransitionResult {
+        private final OrderStatus from;
+        private final OrderStatus to;
+        private final List<Long> updated = new ArrayList<>();
+        private final List<Long> conflicted = new ArrayList<>(); // Exists, but was not in the expected status
+        private final List<Long> notFound = new ArrayList<>();
+
+        TransitionResult(OrderStatus from, OrderStatus to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        public OrderStatus getFrom() { return from; }
+        public OrderStatus getTo() { return to; }
+        public List<Long> getUpdated() { return updated; }
+        public List<Long> getConflicted() { return conflicted; }
+        public List<Long> getNotFound() { return notFound; }
+    }
+
+    // Chunks commit one by one: if a later chunk fails, the earlier ones stay applied
+    public TransitionResult transition(Collection<Long> orderIds, OrderStatus from, OrderStatus to) {
+        if (!from.canTransitionTo(to)) {
+            throw new IllegalArgumentException("An order cannot go from " + from + " to " + to);
+        }
+        TransitionResult result = new TransitionResult(from, to);
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(orderIds));
+        ids.remove(null);
+        for (int start = 0; start < ids.size(); start += chunkSize) {
+            List<Long> chunk = ids.subList(start, Math.min(ids.size(), start + chunkSize));
+            List<OrderFacts> moved = applyChunk(chunk, result);
+            salesRollupService.statusChanged(moved, from, to); // Committed, so the rollups may count it
+        }
+        return result;
+    }
+
+    // What one shard's transaction found: the rows it locked and moved, and which ids it holds at all (if asked)
+    private static final class ShardOutcome {
+        final Map<Long, OrderFacts> moved = new HashMap<>();
+        Set<Long> existing = Set.of();
+    }
+
+    private List<OrderFacts> applyChunk(List<Long> chunk, TransitionResult result) {
+        MapSqlParameterSource params = new MapSqlParameterSource("ids", chunk)
+                .addValue("from", result.from.name())
+                .addValue("to", result.to.name());
+        List<ShardOutcome> outcomes = orderShards.fanOut(orderShards.all(),
+                shard -> shard.getTransactionTemplate().execute(status -> applyOnShard(shard, params, chunk.size())));
+        // Mid-rebalance an order can be on two shards at once: both copies move, the rollups count it once
+        Map<Long, OrderFacts> locked = new HashMap<>();
+        Set<Long> existing = new HashSet<>();
+        for (ShardOutcome outcome : outcomes) {
+            outcome.moved.forEach(locked::putIfAbsent);
+            existing.addAll(outcome.existing);
+        }
+        List<OrderFacts> moved = new ArrayList<>(locked.values());
+        if (locked.size() == chunk.size()) {
+            result.updated.addAll(chunk);
+            return moved;
+        }
+        for (Long id : chunk) {
+            if (locked.containsKey(id)) {
+                result.updated.add(id);
+            } else if (existing.contains(id)) {
+                result.conflicted.add(id);
+            } else {
+                result.notFound.add(id);
+            }
+        }
+        return moved;
+    }
+
+    private static ShardOutcome applyOnShard(OrderShard shard, MapSqlParameterSource params, int chunkSize) {
+        ShardOutcome outcome = new ShardOutcome();
+        shard.getNamedJdbcTemplate().query(LOCK_EXPECTED, params, rs -> {
+            outcome.moved.put(rs.getLong("id"), new OrderFacts(rs.getTimestamp("order_date").toLocalDateTime(), rs.getLong("user_id"), rs.getBigDecimal("total_amount")));
+        });
+        if (!outcome.moved.isEmpty()) {
+            // Same predicate as the lock, so it touches exactly the locked rows
+            shard.getNamedJdbcTemplate().update(APPLY, params);
+        }
+        if (outcome.moved.size() < chunkSize) {
+            outcome.existing = new HashSet<>(shard.getNamedJdbcTemplate().queryForList(EXISTING, params, Long.class));
+        }
+        return outcome;
+    }
+}
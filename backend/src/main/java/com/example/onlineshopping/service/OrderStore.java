@@ -0,0 +1,256 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.datasource.OrderIdAllocator;
+import com.example.onlineshopping.datasource.OrderShard;
+import com.example.onlineshopping.datasource.OrderShards;
+import com.example.onlineshopping.dto.OrderSummary;
+import com.example.onlineshopping.model.Order;
+import com.example.onlineshopping.model.OrderItem;
+import com.example.onlineshopping.model.User;
+import com.example.onlineshopping.repository.OrderRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Where orders and their lines are saved and looked up. Unsharded they stay in the primary and go through
+// OrderRepository as before. With app.orders.shards.urls set, each user's orders live on one shard (OrderShards)
+// and are read and written with plain JDBC, since a shard has no users table to join: listings across users
+// query every shard in parallel and merge the pages, and usernames come from the primary in one query per page.
+@Service
+public class OrderStore {
+
+    private static final String INSERT_ORDER = "INSERT INTO orders (id, user_id, order_date, status, total_amount, shipping_address, billing_address) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_ITEM = "INSERT INTO order_items (id, order_id, product_id, product_name, unit_price, quantity, line_total) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String SELECT_ORDER = "SELECT id, user_id, order_date, status, total_amount, shipping_address, billing_address FROM orders WHERE id = ?";
+    private static final String SELECT_ITEMS = "SELECT id, product_id, product_name, unit_price, quantity, line_total FROM order_items WHERE order_id = ? ORDER BY id";
+    private static final String SUMMARY_SELECT = "SELECT id, order_date, status, total_amount, user_id FROM orders";
+    private static final String BEFORE_CURSOR = "(order_date < :beforeDate OR (order_date = :beforeDate AND id < :beforeId))";
+    private static final String NEWEST_FIRST = " ORDER BY order_date DESC, id DESC LIMIT :limit";
+    private static final String USERNAMES = "SELECT id, username FROM users WHERE id IN (:ids)";
+
+    private static final Comparator<OrderSummary> BY_NEWEST = Comparator.comparing(OrderSummary::getOrderDate)
+            .thenComparing(OrderSummary::getId).reversed();
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderShards orderShards;
+
+    @Autowired
+    private OrderIdAllocator orderIdAllocator;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    public boolean isSharded() {
+        return orderShards.isSharded();
+    }
+
+    // The order and its lines in one transaction
+    public Order save(Order order) {
+        if (!orderShards.isSharded()) {
+            return transactionTemplate.execute(status -> orderRepository.save(order));
+        }
+        assignIds(order);
+        OrderShard shard = orderShards.shardFor(order.getUserId());
+        shard.getTransactionTemplate().executeWithoutResult(status -> insert(shard, List.of(order)));
+        return order;
+    }
+
+    // All in one transaction when unsharded; sharded, one transaction per shard, in parallel. A caller that needs
+    // the batch to succeed or fail as a whole should pass orders of one shard only (see groupByShard)
+    public List<Order> saveAll(List<Order> orders) {
+        if (!orderShards.isSharded()) {
+            return transactionTemplate.execute(status -> orderRepository.saveAll(orders));
+        }
+        orders.forEach(this::assignIds);
+        Map<OrderShard, List<Order>> byShard = new LinkedHashMap<>();
+        for (Order order : orders) {
+            byShard.computeIfAbsent(orderShards.shardFor(order.getUserId()), shard -> new ArrayList<>()).add(order);
+        }
+        orderShards.fanOut(new ArrayList<>(byShard.keySet()), shard -> {
+            shard.getTransactionTemplate().executeWithoutResult(status -> insert(shard, byShard.get(shard)));
+            return null;
+        });
+        return orders;
+    }
+
+    // Splits work on orders into groups that each touch a single shard (one group when unsharded)
+    public <T> Collection<List<T>> groupByShard(List<T> items, Function<T, Order> orderOf) {
+        if (!orderShards.isSharded()) {
+            return List.of(items);
+        }
+        Map<OrderShard, List<T>> groups = new LinkedHashMap<>();
+        for (T item : items) {
+            groups.computeIfAbsent(orderShards.shardFor(orderOf.apply(item).getUserId()), shard -> new ArrayList<>()).add(item);
+        }
+        return groups.values();
+    }
+
+    // With its lines; ids do not say which shard an order is on, so sharded this asks all of them at once
+    public Optional<Order> findById(Long id) {
+        if (!orderShards.isSharded()) {
+            return orderRepository.findById(id);
+        }
+        return orderShards.fanOut(orderShards.all(), shard -> {
+            List<Order> found = shard.getJdbcTemplate().query(SELECT_ORDER, (rs, rowNum) -> orderOf(rs), id);
+            found.forEach(order -> shard.getJdbcTemplate().query(SELECT_ITEMS, (rs, rowNum) -> itemOf(rs), id).forEach(order::addOrderItem));
+            return found;
+        }).stream().flatMap(List::stream).findFirst();
+    }
+
+    // Newest first; beforeDate/beforeId are the keyset cursor (both null for the first page)
+    public List<OrderSummary> findSummaries(LocalDateTime beforeDate, Long beforeId, int limit) {
+        if (!orderShards.isSharded()) {
+            return beforeDate == null
+                    ? orderRepository.findSummaries(PageRequest.of(0, limit))
+                    : orderRepository.findSummariesBefore(beforeDate, beforeId, PageRequest.of(0, limit));
+        }
+        return summaries(orderShards.all(), null, beforeDate, beforeId, limit);
+    }
+
+    public List<OrderSummary> findSummariesByUserId(Long userId, LocalDateTime beforeDate, Long beforeId, int limit) {
+        if (!orderShards.isSharded()) {
+            return beforeDate == null
+                    ? orderRepository.findSummariesByUserId(userId, PageRequest.of(0, limit))
+                    : orderRepository.findSummariesByUserIdBefore(userId, beforeDate, beforeId, PageRequest.of(0, limit));
+        }
+        return summaries(orderShards.shardsForUser(userId), userId, beforeDate, beforeId, limit);
+    }
+
+    // Each shard returns its own newest `limit` after the cursor; the newest `limit` of those are the page
+    private List<OrderSummary> summaries(List<OrderShard> shards, Long userId, LocalDateTime beforeDate, Long beforeId, int limit) {
+        StringBuilder sql = new StringBuilder(SUMMARY_SELECT);
+        MapSqlParameterSource params = new MapSqlParameterSource("limit", limit);
+        List<String> conditions = new ArrayList<>();
+        if (userId != null) {
+            conditions.add("user_id = :userId");
+            params.addValue("userId", userId);
+        }
+        if (beforeDate != null) {
+            conditions.add(BEFORE_CURSOR);
+            params.addValue("beforeDate", Timestamp.valueOf(beforeDate)).addValue("beforeId", beforeId);
+        }
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        sql.append(NEWEST_FIRST);
+        List<OrderSummary> merged = new ArrayList<>();
+        orderShards.fanOut(shards, shard -> shard.getNamedJdbcTemplate().query(sql.toString(), params, (rs, rowNum) ->
+                new OrderSummary(rs.getLong("id"), rs.getTimestamp("order_date").toLocalDateTime(), rs.getString("status"),
+                        rs.getBigDecimal("total_amount"), rs.getLong("user_id"), null))).forEach(merged::addAll);
+        merged.sort(BY_NEWEST);
+        List<OrderSummary> page = new ArrayList<>(Math.min(limit, merged.size()));
+        for (OrderSummary summary : merged) {
+            if (page.size() == limit) {
+                break;
+            }
+            // Mid-rebalance an order can be on two shards for a moment
+            if (page.isEmpty() || !page.get(page.size() - 1).getId().equals(summary.getId())) {
+                page.add(summary);
+            }
+        }
+        Map<Long, String> usernames = usernames(page.stream().map(OrderSummary::getUserId).distinct().collect(Collectors.toList()));
+        List<OrderSummary> named = new ArrayList<>(page.size());
+        for (OrderSummary summary : page) {
+            named.add(new OrderSummary(summary.getId(), summary.getOrderDate(), summary.getStatus(), summary.getTotalAmount(),
+                    summary.getUserId(), usernames.get(summary.getUserId())));
+        }
+        return named;
+    }
+
+    // Usernames from the primary, one query for all the ids
+    public Map<Long, String> usernames(Collection<Long> userIds) {
+        Map<Long, String> usernames = new HashMap<>();
+        if (!userIds.isEmpty()) {
+            jdbcTemplate.query(USERNAMES, new MapSqlParameterSource("ids", userIds),
+                    rs -> { usernames.put(rs.getLong("id"), rs.getString("username")); });
+        }
+        return usernames;
+    }
+
+    private void assignIds(Order order) {
+        if (order.getId() == null) {
+            order.setId(orderIdAllocator.next(OrderIdAllocator.ORDERS, () -> highestId("orders") + 1));
+        }
+        for (OrderItem item : order.getOrderItems()) {
+            if (item.getId() == null) {
+                item.setId(orderIdAllocator.next(OrderIdAllocator.ORDER_ITEMS, () -> highestId("order_items") + 1));
+            }
+        }
+    }
+
+    // Only needed once, before the id counters exist: what the shards (and the primary, if it is being drained) hold
+    private long highestId(String table) {
+        return orderShards.fanOut(orderShards.all(), shard -> {
+            Long highest = shard.getJdbcTemplate().queryForObject("SELECT MAX(id) FROM " + table, Long.class);
+            return highest == null ? 0L : highest;
+        }).stream().mapToLong(Long::longValue).max().orElse(0);
+    }
+
+    private static void insert(OrderShard shard, List<Order> orders) {
+        List<Object[]> orderRows = new ArrayList<>(orders.size());
+        List<Object[]> itemRows = new ArrayList<>();
+        for (Order order : orders) {
+            orderRows.add(new Object[]{order.getId(), order.getUserId(), Timestamp.valueOf(order.getOrderDate()), order.getStatus(),
+                    order.getTotalAmount(), order.getShippingAddress(), order.getBillingAddress()});
+            for (OrderItem item : order.getOrderItems()) {
+                itemRows.add(new Object[]{item.getId(), order.getId(), item.getProductId(), item.getProductName(),
+                        item.getUnitPrice(), item.getQuantity(), item.getLineTotal()});
+            }
+        }
+        shard.getJdbcTemplate().batchUpdate(INSERT_ORDER, orderRows);
+        if (!itemRows.isEmpty()) {
+            shard.getJdbcTemplate().batchUpdate(INSERT_ITEM, itemRows);
+        }
+    }
+
+    private static Order orderOf(ResultSet rs) throws SQLException {
+        User user = new User();
+        user.setId(rs.getLong("user_id")); // Only the id: like the lazy reference JPA would give
+        Order order = new Order();
+        order.setId(rs.getLong("id"));
+        order.setUser(user);
+        order.setOrderDate(rs.getTimestamp("order_date").toLocalDateTime());
+        order.setStatus(rs.getString("status"));
+        order.setTotalAmount(rs.getBigDecimal("total_amount"));
+        order.setShippingAddress(rs.getString("shipping_address"));
+        order.setBillingAddress(rs.getString("billing_address"));
+        return order;
+    }
+
+    private static OrderItem itemOf(ResultSet rs) throws SQLException {
+        OrderItem item = new OrderItem();
+        item.setId(rs.getLong("id"));
+        item.setProductId(rs.getLong("product_id"));
+        item.setProductName(rs.getString("product_name"));
+        item.setUnitPrice(rs.getBigDecimal("unit_price"));
+        item.setQuantity(rs.getInt("quantity"));
+        item.setLineTotal(rs.getBigDecimal("line_total"));
+        return item;
+    }
+}
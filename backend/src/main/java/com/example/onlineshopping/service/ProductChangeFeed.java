@@ -0,0 +1,437 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.dto.ProductChange;
+import com.example.onlineshopping.event.ProductChangedEvent;
+import com.example.onlineshopping.event.ProductsImportedEvent;
+import com.example.onlineshopping.event.StockLevelsChangedEvent;
+import com.example.onlineshopping.model.Product;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Pushes product price and stock changes to catalog pages as server-sent events, so they need not poll.
+// - Changes are collected per product and published every coalesce-ms: a burst of edits becomes one event.
+// - The last buffer-size events stay in a ring buffer; a client reconnecting with Last-Event-ID gets what it
+//   missed, or a "reset" event (refetch what you show) when that is no longer buffered.
+// - Idle connections hold no thread (servlet async). Each subscriber has an outbox drained by a small sender pool;
+//   one that falls max-backlog events behind is disconnected and catches up from the buffer when it reconnects.
+// Like the other in-memory catalog views, it only sees changes made through this instance.
+@Component
+public class ProductChangeFeed {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductChangeFeed.class);
+
+    public static final String CHANGE_EVENT = "change";
+    public static final String RESET_EVENT = "reset";
+
+    private static final long RECONNECT_MILLIS = 3000;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private StockReservationService stockReservationService;
+
+    private final int bufferSize;
+    private final int maxBacklog;
+    private final int maxSubscribers;
+    private final long timeoutMillis;
+
+    // Event ids are "<epoch>-<sequence>": an id handed out by an earlier process never resumes into this one
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private final Map<Long, PendingChange> pending = new LinkedHashMap<>(); // Guarded by itself
+
+    // Guarded by ring: the buffer, the sequence and the subscriber index change together, so a new subscriber's
+    // replay and the live events after it neither overlap nor leave a gap
+    private final Entry[] ring;
+    private long lastId = 0;
+    private final Set<Subscriber> unfiltered = new HashSet<>();
+    private final Map<String, Set<Subscriber>> byCategory = new HashMap<>();
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService sender;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder slowDisconnects = new LongAdder();
+
+    public ProductChangeFeed(@Value("${app.products.feed.buffer-size:10000}") int bufferSize,
+                             @Value("${app.products.feed.max-backlog:1000}") int maxBacklog,
+                             @Value("${app.products.feed.max-subscribers:40000}") int maxSubscribers,
+                             @Value("${app.products.feed.timeout-ms:1800000}") long timeoutMillis,
+                             @Value("${app.products.feed.sender-threads:4}") int senderThreads) {
+        this.bufferSize = Math.max(1, bufferSize);
+        this.maxBacklog = maxBacklog;
+        this.maxSubscribers = maxSubscribers;
+        this.timeoutMillis = timeoutMillis;
+        this.ring = new Entry[this.bufferSize];
+        AtomicInteger threads = new AtomicInteger();
+        this.sender = Executors.newFixedThreadPool(Math.max(1, senderThreads), runnable -> {
+            Thread thread = new Thread(runnable, "product-feed-sender-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.disconnect();
+        }
+        sender.shutdown();
+    }
+
+    // Null when the feed is at max-subscribers. Categories empty = every product
+    public SseEmitter subscribe(Collection<String> categories, String lastEventId) {
+        if (subscribers.size() >= maxSubscribers) {
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Set<String> wanted = categories == null ? Collections.emptySet() : new HashSet<>(categories);
+        Subscriber subscriber = new Subscriber(emitter, wanted);
+        emitter.onCompletion(subscriber::closed);
+        emitter.onError(error -> subscriber.closed());
+        emitter.onTimeout(emitter::complete); // The browser reconnects with Last-Event-ID
+
+        synchronized (ring) {
+            subscriber.offer(Entry.OPEN);
+            if (lastEventId != null && !lastEventId.isEmpty()) {
+                long resumeAfter = resumePoint(lastEventId);
+                if (resumeAfter < 0) {
+                    subscriber.offer(Entry.reset(lastId));
+                } else {
+                    for (long id = resumeAfter + 1; id <= lastId; id++) {
+                        Entry entry = ring[(int) (id % bufferSize)];
+                        if (subscriber.wants(entry)) {
+                            subscriber.offer(entry);
+                        }
+                    }
+                }
+            }
+            subscribers.add(subscriber);
+            if (wanted.isEmpty()) {
+                unfiltered.add(subscriber);
+            } else {
+                for (String category : wanted) {
+                    byCategory.computeIfAbsent(category, key -> new HashSet<>()).add(subscriber);
+                }
+            }
+        }
+        return emitter;
+    }
+
+    @EventListener
+    public void onProductChanged(ProductChangedEvent event) {
+        Product product = event.getProduct();
+        switch (event.getType()) {
+            case CREATED:
+                record(event.getProductId(), Type.CREATED, product.getCategory(), null, product.getPrice(), product.getStockQuantity());
+                break;
+            case UPDATED:
+                record(event.getProductId(), Type.UPDATED, product.getCategory(), event.getPreviousCategory(), product.getPrice(),
+                        product.getStockQuantity());
+                break;
+            default:
+                record(event.getProductId(), Type.DELETED, event.getPreviousCategory(), event.getPreviousCategory(), null, null);
+        }
+    }
+
+    @EventListener
+    public void onStockLevelsChanged(StockLevelsChangedEvent event) {
+        for (Map.Entry<Long, String> product : event.getCategoriesByProduct().entrySet()) {
+            record(product.getKey(), Type.STOCK, product.getValue(), product.getValue(), null, null);
+        }
+    }
+
+    @EventListener
+    public void onProductsImported(ProductsImportedEvent event) {
+        for (Product product : event.getProducts()) {
+            boolean updated = event.getPreviousCategories().containsKey(product.getId());
+            record(product.getId(), updated ? Type.UPDATED : Type.CREATED, product.getCategory(),
+                    event.getPreviousCategories().get(product.getId()), product.getPrice(), product.getStockQuantity());
+        }
+    }
+
+    // Publishes what was recorded since the last run: one event per changed product
+    @Scheduled(fixedDelayString = "${app.products.feed.coalesce-ms:250}")
+    public void flush() {
+        List<Map.Entry<Long, PendingChange>> changes;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            changes = new ArrayList<>(pending.entrySet());
+            pending.clear();
+        }
+        // Serialized once, outside the lock, and shared by every subscriber
+        List<Object[]> serialized = new ArrayList<>(changes.size());
+        for (Map.Entry<Long, PendingChange> change : changes) {
+            ProductChange payload = change.getValue().toPayload(change.getKey());
+            try {
+                serialized.add(new Object[]{payload, objectMapper.writeValueAsString(payload)});
+            } catch (JsonProcessingException e) {
+                log.warn("Could not serialize change of product {}", change.getKey(), e);
+            }
+        }
+        synchronized (ring) {
+            for (Object[] item : serialized) {
+                ProductChange payload = (ProductChange) item[0];
+                Entry entry = new Entry(++lastId, payload.getCategory(), payload.getPreviousCategory(), (String) item[1]);
+                ring[(int) (entry.id % bufferSize)] = entry;
+                deliver(entry);
+            }
+        }
+        published.add(serialized.size());
+    }
+
+    // A comment line now and then, so proxies keep idle connections open and dead ones are found and dropped
+    @Scheduled(fixedDelayString = "${app.products.feed.heartbeat-ms:15000}")
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(Entry.HEARTBEAT);
+        }
+    }
+
+    public int getSubscribers() { return subscribers.size(); }
+    public long getPublished() { return published.sum(); }
+    public long getSlowDisconnects() { return slowDisconnects.sum(); }
+
+    private void record(Long productId, Type type, String category, String before, BigDecimal price, Integer onHand) {
+        PendingChange change = new PendingChange(type, category, before, price, onHand);
+        synchronized (pending) {
+            PendingChange earlier = pending.get(productId);
+            pending.put(productId, earlier == null ? change : earlier.then(change));
+        }
+    }
+
+    private void deliver(Entry entry) {
+        for (Subscriber subscriber : unfiltered) {
+            subscriber.offer(entry);
+        }
+        Set<Subscriber> current = entry.category == null ? null : byCategory.get(entry.category);
+        if (current != null) {
+            for (Subscriber subscriber : current) {
+                subscriber.offer(entry);
+            }
+        }
+        Set<Subscriber> previous = entry.previousCategory == null ? null : byCategory.get(entry.previousCategory);
+        if (previous != null) {
+            for (Subscriber subscriber : previous) {
+                if (current == null || !current.contains(subscriber)) { // Watching both categories: one copy
+                    subscriber.offer(entry);
+                }
+            }
+        }
+    }
+
+    // Sequence to replay after, or -1 if the id is from another process or has left the buffer
+    private long resumePoint(String lastEventId) {
+        int dash = lastEventId.lastIndexOf('-');
+        if (dash <= 0 || !lastEventId.substring(0, dash).equals(epoch)) {
+            return -1;
+        }
+        long id;
+        try {
+            id = Long.parseLong(lastEventId.substring(dash + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        long oldest = Math.max(1, lastId - bufferSize + 1);
+        return id < oldest - 1 || id > lastId ? -1 : id;
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        if (!subscribers.remove(subscriber)) {
+            return;
+        }
+        synchronized (ring) {
+            unfiltered.remove(subscriber);
+            for (String category : subscriber.categories) {
+                Set<Subscriber> watching = byCategory.get(category);
+                if (watching != null) {
+                    watching.remove(subscriber);
+                    if (watching.isEmpty()) {
+                        byCategory.remove(category);
+                    }
+                }
+            }
+        }
+    }
+
+    private enum Type { CREATED, UPDATED, DELETED, STOCK }
+
+    // What is known about one product's changes within the current window
+    private final class PendingChange {
+        final Type type;
+        final String category;
+        final String before;    // Category at the start of the window (null for a product created in it)
+        final BigDecimal price;
+        final Integer onHand;
+
+        PendingChange(Type type, String category, String before, BigDecimal price, Integer onHand) {
+            this.type = type;
+            this.category = category;
+            this.before = before;
+            this.price = price;
+            this.onHand = onHand;
+        }
+
+        PendingChange then(PendingChange later) {
+            Type merged;
+            if (later.type == Type.DELETED) {
+                merged = Type.DELETED;
+            } else if (type == Type.CREATED || type == Type.DELETED || later.type == Type.STOCK) {
+                merged = type;
+            } else {
+                merged = later.type;
+            }
+            boolean laterHasValues = later.type == Type.CREATED || later.type == Type.UPDATED;
+            return new PendingChange(merged, later.category != null ? later.category : category,
+                    before,
+                    laterHasValues ? later.price : price, laterHasValues ? later.onHand : onHand);
+        }
+
+        ProductChange toPayload(Long productId) {
+            String previous = Objects.equals(before, category) ? null : before;
+            if (type == Type.DELETED) {
+                return new ProductChange("deleted", productId, category, previous, null, null);
+            }
+            // Sellable units where the reservation engine tracks the product (on hand minus held and sold), read now
+            // so the event is as fresh as possible; otherwise the on-hand quantity that was saved
+            int tracked = stockReservationService.trackedAvailableStock(productId);
+            Integer stock = tracked >= 0 ? Integer.valueOf(tracked) : onHand;
+            String name = type == Type.CREATED ? "created" : type == Type.UPDATED ? "updated" : "stock";
+            return new ProductChange(name, productId, category, previous, price, stock);
+        }
+    }
+
+    // A published event (or a control message) ready to write to any subscriber
+    private static final class Entry {
+        static final Entry OPEN = new Entry(0, null, null, null);
+        static final Entry HEARTBEAT = new Entry(0, null, null, null);
+
+        final long id;
+        final String category;
+        final String previousCategory;
+        final String json; // Null for control messages
+
+        Entry(long id, String category, String previousCategory, String json) {
+            this.id = id;
+            this.category = category;
+            this.previousCategory = previousCategory;
+            this.json = json;
+        }
+
+        static Entry reset(long lastId) {
+            return new Entry(lastId, null, null, null);
+        }
+    }
+
+    private final class Subscriber {
+        final SseEmitter emitter;
+        final Set<String> categories;
+        final Queue<Entry> outbox = new ConcurrentLinkedQueue<>();
+        final AtomicInteger backlog = new AtomicInteger();
+        final AtomicBoolean draining = new AtomicBoolean();
+        volatile boolean closed;
+
+        Subscriber(SseEmitter emitter, Set<String> categories) {
+            this.emitter = emitter;
+            this.categories = categories;
+        }
+
+        boolean wants(Entry entry) {
+            return entry != null && (categories.isEmpty() || categories.contains(entry.category)
+                    || (entry.previousCategory != null && categories.contains(entry.previousCategory)));
+        }
+
+        // Never blocks: the write happens on the sender pool
+        void offer(Entry entry) {
+            if (closed) {
+                return;
+            }
+            if (backlog.incrementAndGet() > maxBacklog) {
+                slowDisconnects.increment();
+                disconnect();
+                return;
+            }
+            outbox.add(entry);
+            if (draining.compareAndSet(false, true)) {
+                sender.execute(this::drain);
+            }
+        }
+
+        void drain() {
+            do {
+                Entry entry;
+                while ((entry = outbox.poll()) != null) {
+                    backlog.decrementAndGet();
+                    if (!closed) {
+                        send(entry);
+                    }
+                }
+                draining.set(false);
+            } while (!outbox.isEmpty() && draining.compareAndSet(false, true));
+        }
+
+        private void send(Entry entry) {
+            try {
+                if (entry == Entry.OPEN) {
+                    emitter.send(SseEmitter.event().reconnectTime(RECONNECT_MILLIS).comment("connected"));
+                } else if (entry == Entry.HEARTBEAT) {
+                    emitter.send(SseEmitter.event().comment(""));
+                } else if (entry.json == null) {
+                    emitter.send(SseEmitter.event().id(epoch + "-" + entry.id).name(RESET_EVENT).data("{}", MediaType.APPLICATION_JSON));
+                } else {
+                    emitter.send(SseEmitter.event().id(epoch + "-" + entry.id).name(CHANGE_EVENT).data(entry.json, MediaType.APPLICATION_JSON));
+                }
+            } catch (IOException | IllegalStateException e) {
+                closed(); // Client went away; the container completes the request
+            }
+        }
+
+        // Also called while delivering, so leaving the index is left to the sender thread
+        void disconnect() {
+            closed = true;
+            sender.execute(() -> {
+                unsubscribe(this);
+                emitter.complete();
+            });
+        }
+
+        void closed() {
+            closed = true;
+            unsubscribe(this);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.model.Product;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Catalog listings with any mix of category, name, price range and in-stock filters, sorted on the server.
+// Pages are keyset-based like the plain listing (the cursor is the last row's sort key), so a deep page costs
+// the same as the first and nothing is counted. The indexes on Product cover category + price and price alone.
+// A name matches the way a plain name search does, through ProductSearchIndex (name, category and description);
+// only until the index has loaded is it a LIKE on the name column.
+@Service
+public class ProductFilterService {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    public enum Sort {
+        ID("p.id"),
+        NEWEST("p.id DESC"),
+        PRICE_ASC("p.price, p.id"),
+        PRICE_DESC("p.price DESC, p.id DESC");
+
+        private final String orderBy;
+
+        Sort(String orderBy) {
+            this.orderBy = orderBy;
+        }
+
+        // "price_asc", "price-asc", "PRICE_ASC"...; null if unknown
+        public static Sort parse(String value) {
+            try {
+                return value == null ? ID : valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    // Everything optional except sort and limit
+    public static final class Filter {
+        private String category;
+        private String name;
+        private BigDecimal minPrice;
+        private BigDecimal maxPrice;
+        private boolean inStockOnly;
+        private Sort sort = Sort.ID;
+
+        public Filter category(String category) { this.category = category; return this; }
+        public Filter name(String name) { this.name = name; return this; }
+        public Filter minPrice(BigDecimal minPrice) { this.minPrice = minPrice; return this; }
+        public Filter maxPrice(BigDecimal maxPrice) { this.maxPrice = maxPrice; return this; }
+        public Filter inStockOnly(boolean inStockOnly) { this.inStockOnly = inStockOnly; return this; }
+        public Filter sort(Sort sort) { this.sort = sort; return this; }
+    }
+
+    // Position after the last row of a page: "<id>" for the id sorts, "<price>_<id>" for the price sorts
+    public static final class Cursor {
+        final BigDecimal price;
+        final long id;
+
+        Cursor(BigDecimal price, long id) {
+            this.price = price;
+            this.id = id;
+        }
+
+        public static Cursor after(Product product, Sort sort) {
+            return new Cursor(isPriceSort(sort) ? product.getPrice() : null, product.getId());
+        }
+
+        // Null if the value does not fit the sort
+        public static Cursor parse(String value, Sort sort) {
+            try {
+                if (!isPriceSort(sort)) {
+                    return new Cursor(null, Long.parseLong(value));
+                }
+                int separator = value.lastIndexOf('_');
+                return separator <= 0 ? null
+                        : new Cursor(new BigDecimal(value.substring(0, separator)), Long.parseLong(value.substring(separator + 1)));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return price == null ? String.valueOf(id) : price.toPlainString() + "_" + id;
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public List<Product> find(Filter filter, Cursor after, int limit) {
+        List<Long> nameMatches = null;
+        if (filter.name != null && productSearchIndex.isReady()) {
+            nameMatches = productSearchIndex.matchingIds(filter.name);
+            if (nameMatches.isEmpty()) {
+                return new ArrayList<>();
+            }
+        }
+        StringBuilder jpql = new StringBuilder("SELECT p FROM Product p WHERE 1 = 1");
+        if (filter.category != null) {
+            jpql.append(" AND p.category = :category");
+        }
+        if (nameMatches != null) {
+            jpql.append(" AND p.id IN :nameMatches");
+        } else if (filter.name != null) {
+            jpql.append(" AND LOWER(p.name) LIKE :name ESCAPE '!'"); // Not '\', which MySQL reads as escaping the quote
+        }
+        if (filter.minPrice != null) {
+            jpql.append(" AND p.price >= :minPrice");
+        }
+        if (filter.maxPrice != null) {
+            jpql.append(" AND p.price <= :maxPrice");
+        }
+        if (filter.inStockOnly) {
+            jpql.append(" AND p.stockQuantity > 0");
+        }
+        if (after != null) {
+            switch (filter.sort) {
+                case NEWEST:
+                    jpql.append(" AND p.id < :afterId");
+                    break;
+                case PRICE_ASC:
+                    jpql.append(" AND (p.price > :afterPrice OR (p.price = :afterPrice AND p.id > :afterId))");
+                    break;
+                case PRICE_DESC:
+                    jpql.append(" AND (p.price < :afterPrice OR (p.price = :afterPrice AND p.id < :afterId))");
+                    break;
+                default:
+                    jpql.append(" AND p.id > :afterId");
+            }
+        }
+        jpql.append(" ORDER BY ").append(filter.sort.orderBy);
+
+        TypedQuery<Product> query = entityManager.createQuery(jpql.toString(), Product.class).setMaxResults(limit);
+        if (filter.category != null) {
+            query.setParameter("category", filter.category);
+        }
+        if (nameMatches != null) {
+            query.setParameter("nameMatches", nameMatches);
+        } else if (filter.name != null) {
+            String escaped = filter.name.toLowerCase(Locale.ROOT).replace("!", "!!").replace("%", "!%").replace("_", "!_");
+            query.setParameter("name", "%" + escaped + "%");
+        }
+        if (filter.minPrice != null) {
+            query.setParameter("minPrice", filter.minPrice);
+        }
+        if (filter.maxPrice != null) {
+            query.setParameter("maxPrice", filter.maxPrice);
+        }
+        if (after != null) {
+            query.setParameter("afterId", after.id);
+            if (isPriceSort(filter.sort)) {
+                query.setParameter("afterPrice", after.price);
+            }
+        }
+        return query.getResultList();
+    }
+
+    private static boolean isPriceSort(Sort sort) {
+        return sort == Sort.PRICE_ASC || sort == Sort.PRICE_DESC;
+    }
+}
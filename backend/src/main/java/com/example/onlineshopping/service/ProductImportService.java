@@ -0,0 +1,556 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.event.ProductsImportedEvent;
+import com.example.onlineshopping.model.Product;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bulk catalog import from CSV or NDJSON, read from the request body as a stream.
+// Pipeline: the request thread parses and validates rows and hands full batches to a writer thread through
+// a small bounded queue. When the database falls behind, the queue fills, the request thread blocks and the
+// upload itself slows down, so memory stays at a few batches whatever the size of the feed.
+// Rows are matched on SKU: each batch is one transaction of a lookup plus JDBC-batched UPDATEs and INSERTs.
+@Service
+public class ProductImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductImportService.class);
+
+    private static final String SELECT_EXISTING = "SELECT id, sku, name, description, price, category, image_url, stock_quantity "
+            + "FROM products WHERE sku IN (:skus)";
+    private static final String SELECT_IDS = "SELECT id, sku FROM products WHERE sku IN (:skus)";
+    // version and last_modified move like they do for any other change, so cached ETags stop matching.
+    // Stock is only written when the row sets it: the reservation engine flushes sales into that column meanwhile.
+    private static final String UPDATE = "UPDATE products SET name = ?, description = ?, price = ?, category = ?, image_url = ?, "
+            + "stock_quantity = COALESCE(?, stock_quantity), version = version + 1, last_modified = CURRENT_TIMESTAMP WHERE id = ?";
+    private static final int[] UPDATE_TYPES = {Types.VARCHAR, Types.VARCHAR, Types.DECIMAL, Types.VARCHAR, Types.VARCHAR,
+            Types.INTEGER, Types.BIGINT};
+    private static final String INSERT = "INSERT INTO products (sku, name, description, price, category, image_url, stock_quantity, "
+            + "version, last_modified) VALUES (?, ?, ?, ?, ?, ?, ?, 0, CURRENT_TIMESTAMP)";
+
+    private static final int MAX_SKU_LENGTH = 64;
+    private static final int MAX_TEXT_LENGTH = 255;
+    private static final int MAX_DESCRIPTION_LENGTH = 1000;
+    private static final BigDecimal MAX_PRICE = new BigDecimal("99999999999999999.99"); // decimal(19,2)
+    private static final int KEPT_JOBS = 10;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.products.import.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${app.products.import.queue-batches:4}")
+    private int queueBatches;
+
+    @Value("${app.products.import.max-reported-errors:1000}")
+    private int maxReportedErrors;
+
+    private final AtomicReference<ImportJob> running = new AtomicReference<>();
+    private final Deque<ImportJob> recentJobs = new ConcurrentLinkedDeque<>();
+    private final AtomicLong jobIds = new AtomicLong();
+
+    public enum Format { CSV, NDJSON }
+
+    public enum State { RUNNING, COMPLETED, FAILED }
+
+    public static final class RowError {
+        private final int line;
+        private final String sku;
+        private final String message;
+
+        RowError(int line, String sku, String message) {
+            this.line = line;
+            this.sku = sku;
+            this.message = message;
+        }
+
+        public int getLine() { return line; }
+        public String getSku() { return sku; }
+        public String getMessage() { return message; }
+    }
+
+    // Progress of one import, readable while it runs
+    public static final class ImportJob {
+        private final long id;
+        private final Format format;
+        private final Instant startedAt = Instant.now();
+        private final int maxReportedErrors;
+        private volatile Instant finishedAt;
+        private volatile State state = State.RUNNING;
+        private volatile String failure;
+        private final LongAdder rowsRead = new LongAdder();
+        private final LongAdder inserted = new LongAdder();
+        private final LongAdder updated = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder batchesWritten = new LongAdder();
+        private final LongAdder backpressureNanos = new LongAdder(); // Time the parser waited for the writer
+        private final List<RowError> errors = Collections.synchronizedList(new ArrayList<>());
+
+        ImportJob(long id, Format format, int maxReportedErrors) {
+            this.id = id;
+            this.format = format;
+            this.maxReportedErrors = maxReportedErrors;
+        }
+
+        void reject(int line, String sku, String message) {
+            rejected.increment();
+            if (errors.size() < maxReportedErrors) {
+                errors.add(new RowError(line, sku, message));
+            }
+        }
+
+        void fail(String message) {
+            if (failure == null) {
+                failure = message;
+            }
+        }
+
+        public long getId() { return id; }
+        public Format getFormat() { return format; }
+        public Instant getStartedAt() { return startedAt; }
+        public Instant getFinishedAt() { return finishedAt; }
+        public State getState() { return state; }
+        public String getFailure() { return failure; }
+        public long getRowsRead() { return rowsRead.sum(); }
+        public long getInserted() { return inserted.sum(); }
+        public long getUpdated() { return updated.sum(); }
+        public long getRejected() { return rejected.sum(); }
+        public long getBatchesWritten() { return batchesWritten.sum(); }
+        public long getBackpressureMillis() { return TimeUnit.NANOSECONDS.toMillis(backpressureNanos.sum()); }
+
+        public List<RowError> getErrors() {
+            synchronized (errors) {
+                return new ArrayList<>(errors);
+            }
+        }
+    }
+
+    // A parsed record before validation: field names are normalized ("image_url", "imageUrl" -> "imageurl")
+    static final class RawRow {
+        final int line;
+        final Map<String, String> fields;
+        final String error;
+
+        RawRow(int line, Map<String, String> fields, String error) {
+            this.line = line;
+            this.fields = fields;
+            this.error = error;
+        }
+
+        String get(String field) {
+            String value = fields.get(field);
+            if (value == null) {
+                return null;
+            }
+            value = value.trim();
+            return value.isEmpty() ? null : value;
+        }
+    }
+
+    // A valid row. Optional fields left out of the feed (null) keep their current value on update.
+    static final class ImportRow {
+        final int line;
+        final String sku;
+        final String name;
+        final BigDecimal price;
+        final String description;
+        final String category;
+        final String imageUrl;
+        final Integer stockQuantity;
+
+        ImportRow(int line, String sku, String name, BigDecimal price, String description, String category, String imageUrl,
+                  Integer stockQuantity) {
+            this.line = line;
+            this.sku = sku;
+            this.name = name;
+            this.price = price;
+            this.description = description;
+            this.category = category;
+            this.imageUrl = imageUrl;
+            this.stockQuantity = stockQuantity;
+        }
+
+        void applyTo(Product product) {
+            product.setName(name);
+            product.setPrice(price);
+            if (description != null) {
+                product.setDescription(description);
+            }
+            if (category != null) {
+                product.setCategory(category);
+            }
+            if (imageUrl != null) {
+                product.setImageUrl(imageUrl);
+            }
+            if (stockQuantity != null) {
+                product.setStockQuantity(stockQuantity);
+            }
+        }
+    }
+
+    // What a committed batch changed, for the counters and the change event
+    private static final class BatchOutcome {
+        final List<Product> products = new ArrayList<>();
+        final Map<Long, String> previousCategories = new HashMap<>();
+        final Map<Long, Integer> stockLevels = new HashMap<>();
+        int inserted;
+        int updated;
+    }
+
+    private interface RowSource {
+        RawRow next() throws IOException;
+    }
+
+    // Null if another import is still running: one at a time keeps SKU upserts free of races between imports
+    public ImportJob begin(Format format) {
+        ImportJob job = new ImportJob(jobIds.incrementAndGet(), format, maxReportedErrors);
+        if (!running.compareAndSet(null, job)) {
+            return null;
+        }
+        recentJobs.addFirst(job);
+        while (recentJobs.size() > KEPT_JOBS) {
+            recentJobs.pollLast();
+        }
+        return job;
+    }
+
+    // Reads the whole input on the calling thread and returns once every batch is written (or the import failed)
+    public void run(ImportJob job, InputStream input) {
+        BlockingQueue<List<ImportRow>> queue = new ArrayBlockingQueue<>(Math.max(1, queueBatches));
+        List<ImportRow> end = new ArrayList<>(0); // Compared by identity: no more batches
+        Thread writer = new Thread(() -> writeLoop(job, queue, end), "product-import-" + job.id);
+        writer.setDaemon(true);
+        writer.start();
+        try {
+            RowSource source = job.format == Format.CSV ? csvRows(input) : ndjsonRows(input);
+            List<ImportRow> batch = new ArrayList<>(batchSize);
+            RawRow raw;
+            while (job.failure == null && (raw = source.next()) != null) {
+                job.rowsRead.increment();
+                ImportRow row = validate(raw, job);
+                if (row == null) {
+                    continue;
+                }
+                batch.add(row);
+                if (batch.size() >= batchSize) {
+                    hand(job, queue, batch, writer);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty() && job.failure == null) {
+                hand(job, queue, batch, writer);
+            }
+        } catch (IOException e) {
+            job.fail("Could not read the input: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.fail("Interrupted");
+        } catch (RuntimeException e) {
+            job.fail(e.getMessage());
+        } finally {
+            finish(job, queue, end, writer);
+        }
+    }
+
+    public ImportJob findJob(long id) {
+        for (ImportJob job : recentJobs) {
+            if (job.id == id) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    // Newest first
+    public List<ImportJob> recentJobs() {
+        return new ArrayList<>(recentJobs);
+    }
+
+    // Blocks while the queue is full; that wait is the backpressure on the upload
+    private void hand(ImportJob job, BlockingQueue<List<ImportRow>> queue, List<ImportRow> batch, Thread writer)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+            if (job.failure != null || !writer.isAlive()) {
+                throw new IllegalStateException(job.failure != null ? job.failure : "Import writer stopped");
+            }
+        }
+        job.backpressureNanos.add(System.nanoTime() - start);
+    }
+
+    private void finish(ImportJob job, BlockingQueue<List<ImportRow>> queue, List<ImportRow> end, Thread writer) {
+        try {
+            // The writer drains what was handed over before it sees the end marker
+            while (writer.isAlive() && !queue.offer(end, 100, TimeUnit.MILLISECONDS)) {
+                // Still writing
+            }
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.fail("Interrupted");
+            writer.interrupt();
+        }
+        job.state = job.failure == null ? State.COMPLETED : State.FAILED;
+        job.finishedAt = Instant.now();
+        running.compareAndSet(job, null);
+        log.info("Product import {} {}: {} rows read, {} inserted, {} updated, {} rejected in {} ms",
+                job.id, job.state, job.getRowsRead(), job.getInserted(), job.getUpdated(), job.getRejected(),
+                job.finishedAt.toEpochMilli() - job.startedAt.toEpochMilli());
+    }
+
+    private void writeLoop(ImportJob job, BlockingQueue<List<ImportRow>> queue, List<ImportRow> end) {
+        try {
+            while (true) {
+                List<ImportRow> batch = queue.take();
+                if (batch == end) {
+                    return;
+                }
+                if (job.failure == null) {
+                    writeBatch(job, batch); // After a failure the rest is drained unwritten so the parser can stop
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.fail("Interrupted");
+        } catch (RuntimeException e) {
+            log.error("Product import {} failed", job.id, e);
+            job.fail("Database write failed: " + e.getMessage());
+        }
+    }
+
+    private void writeBatch(ImportJob job, List<ImportRow> rows) {
+        // The last row for a SKU wins, as if the rows had been applied one after the other
+        Map<String, ImportRow> bySku = new LinkedHashMap<>();
+        for (ImportRow row : rows) {
+            bySku.put(row.sku, row);
+        }
+        List<ImportRow> unique = new ArrayList<>(bySku.values());
+        try {
+            record(job, transactionTemplate.execute(status -> upsert(unique)));
+        } catch (DataIntegrityViolationException e) {
+            // One bad row must not fail its neighbours: retry them one transaction each.
+            // Anything other than a constraint or data error (lost connection, ...) fails the import instead.
+            for (ImportRow row : unique) {
+                try {
+                    record(job, transactionTemplate.execute(status -> upsert(Collections.singletonList(row))));
+                } catch (DataIntegrityViolationException single) {
+                    job.reject(row.line, row.sku, "Rejected by the database: " + single.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+    }
+
+    private void record(ImportJob job, BatchOutcome outcome) {
+        job.inserted.add(outcome.inserted);
+        job.updated.add(outcome.updated);
+        job.batchesWritten.increment();
+        eventPublisher.publishEvent(new ProductsImportedEvent(outcome.products, outcome.previousCategories, outcome.stockLevels));
+    }
+
+    private BatchOutcome upsert(List<ImportRow> rows) {
+        BatchOutcome outcome = new BatchOutcome();
+        List<String> skus = new ArrayList<>(rows.size());
+        rows.forEach(row -> skus.add(row.sku));
+        Map<String, Product> existing = new HashMap<>();
+        jdbcTemplate.query(SELECT_EXISTING, new MapSqlParameterSource("skus", skus), rs -> {
+            Product product = new Product(rs.getLong("id"), rs.getString("name"), rs.getString("description"), rs.getBigDecimal("price"),
+                    rs.getString("category"), rs.getString("image_url"), rs.getInt("stock_quantity"));
+            product.setSku(rs.getString("sku"));
+            existing.put(product.getSku(), product);
+        });
+
+        List<Object[]> updates = new ArrayList<>();
+        List<Object[]> inserts = new ArrayList<>();
+        Map<String, Product> created = new HashMap<>();
+        for (ImportRow row : rows) {
+            Product product = existing.get(row.sku);
+            if (product != null) {
+                outcome.previousCategories.put(product.getId(), product.getCategory());
+                row.applyTo(product);
+                updates.add(new Object[]{product.getName(), product.getDescription(), product.getPrice(), product.getCategory(),
+                        product.getImageUrl(), row.stockQuantity, product.getId()});
+            } else {
+                product = new Product();
+                product.setSku(row.sku);
+                row.applyTo(product);
+                inserts.add(new Object[]{product.getSku(), product.getName(), product.getDescription(), product.getPrice(),
+                        product.getCategory(), product.getImageUrl(), product.getStockQuantity()});
+                created.put(product.getSku(), product);
+            }
+            outcome.products.add(product);
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.getJdbcTemplate().batchUpdate(UPDATE, updates, UPDATE_TYPES);
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.getJdbcTemplate().batchUpdate(INSERT, inserts);
+            // Batched inserts do not report generated keys portably; one lookup gets them all
+            jdbcTemplate.query(SELECT_IDS, new MapSqlParameterSource("skus", new ArrayList<>(created.keySet())),
+                    rs -> { created.get(rs.getString("sku")).setId(rs.getLong("id")); });
+        }
+        for (ImportRow row : rows) {
+            if (row.stockQuantity != null) {
+                Product product = existing.containsKey(row.sku) ? existing.get(row.sku) : created.get(row.sku);
+                outcome.stockLevels.put(product.getId(), row.stockQuantity);
+            }
+        }
+        outcome.updated = updates.size();
+        outcome.inserted = inserts.size();
+        return outcome;
+    }
+
+    private ImportRow validate(RawRow raw, ImportJob job) {
+        String sku = raw.get("sku");
+        if (raw.error != null) {
+            return reject(job, raw, sku, raw.error);
+        }
+        if (sku == null || sku.length() > MAX_SKU_LENGTH) {
+            return reject(job, raw, sku, "sku is required and at most " + MAX_SKU_LENGTH + " characters");
+        }
+        String name = raw.get("name");
+        if (name == null || name.length() > MAX_TEXT_LENGTH) {
+            return reject(job, raw, sku, "name is required and at most " + MAX_TEXT_LENGTH + " characters");
+        }
+        BigDecimal price;
+        try {
+            price = new BigDecimal(raw.get("price") == null ? "" : raw.get("price"));
+        } catch (NumberFormatException e) {
+            return reject(job, raw, sku, "price is required and must be a number");
+        }
+        if (price.signum() < 0 || price.scale() > 2 || price.compareTo(MAX_PRICE) > 0) {
+            return reject(job, raw, sku, "price must be between 0 and " + MAX_PRICE + " with at most 2 decimals");
+        }
+        Integer stock = null;
+        if (raw.get("stockquantity") != null) {
+            try {
+                stock = Integer.valueOf(raw.get("stockquantity"));
+            } catch (NumberFormatException e) {
+                stock = -1;
+            }
+            if (stock < 0) {
+                return reject(job, raw, sku, "stock_quantity must be a whole number, 0 or more");
+            }
+        }
+        String description = raw.get("description");
+        String category = raw.get("category");
+        String imageUrl = raw.get("imageurl");
+        if ((description != null && description.length() > MAX_DESCRIPTION_LENGTH)
+                || (category != null && category.length() > MAX_TEXT_LENGTH)
+                || (imageUrl != null && imageUrl.length() > MAX_TEXT_LENGTH)) {
+            return reject(job, raw, sku, "description is limited to " + MAX_DESCRIPTION_LENGTH
+                    + " characters, category and image_url to " + MAX_TEXT_LENGTH);
+        }
+        return new ImportRow(raw.line, sku, name, price, description, category, imageUrl, stock);
+    }
+
+    private static ImportRow reject(ImportJob job, RawRow raw, String sku, String message) {
+        job.reject(raw.line, sku, message);
+        return null;
+    }
+
+    // First record is the header; column names are matched case-insensitively, unknown columns are ignored
+    private RowSource csvRows(InputStream input) throws IOException {
+        CsvReader reader = new CsvReader(new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8)));
+        List<String> header = reader.next();
+        if (header == null) {
+            return () -> null;
+        }
+        List<String> columns = new ArrayList<>(header.size());
+        header.forEach(column -> columns.add(normalizeField(column)));
+        return () -> {
+            List<String> record = reader.next();
+            if (record == null) {
+                return null;
+            }
+            Map<String, String> fields = new HashMap<>();
+            for (int i = 0; i < Math.min(columns.size(), record.size()); i++) {
+                fields.put(columns.get(i), record.get(i));
+            }
+            String error = record.size() == columns.size() ? null
+                    : "Expected " + columns.size() + " fields but found " + record.size();
+            return new RawRow(reader.getRecordLine(), fields, error);
+        };
+    }
+
+    // One JSON object per line; a malformed line only rejects that row
+    private RowSource ndjsonRows(InputStream input) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        int[] lineNumber = {0};
+        return () -> {
+            String line;
+            do {
+                line = reader.readLine();
+                lineNumber[0]++;
+            } while (line != null && line.trim().isEmpty());
+            if (line == null) {
+                return null;
+            }
+            Map<String, String> fields = new HashMap<>();
+            JsonNode node;
+            try {
+                node = objectMapper.readTree(line);
+            } catch (IOException e) {
+                return new RawRow(lineNumber[0], fields, "Not valid JSON");
+            }
+            if (node == null || !node.isObject()) {
+                return new RawRow(lineNumber[0], fields, "Expected a JSON object");
+            }
+            Iterator<Map.Entry<String, JsonNode>> it = node.fields();
+            while (it.hasNext()) {
+                Map.Entry<String, JsonNode> field = it.next();
+                if (!field.getValue().isNull()) {
+                    fields.put(normalizeField(field.getKey()), field.getValue().isValueNode() ? field.getValue().asText() : field.getValue().toString());
+                }
+            }
+            return new RawRow(lineNumber[0], fields, null);
+        };
+    }
+
+    private static String normalizeField(String name) {
+        return name.trim().toLowerCase(Locale.ROOT).replace("_", "").replace("-", "").replace(" ", "");
+    }
+}
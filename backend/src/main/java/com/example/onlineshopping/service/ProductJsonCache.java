@@ -0,0 +1,233 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.event.ProductChangedEvent;
+import com.example.onlineshopping.event.ProductsImportedEvent;
+import com.example.onlineshopping.model.Product;
+import com.example.onlineshopping.event.StockLevelsChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+// Ready-to-send UTF-8 JSON for the hottest catalog reads (single products and category listings).
+// A hit is written straight to the response, skipping both Hibernate and Jackson.
+// The cache is split into LRU segments bounded by bytes, and entries are dropped as soon as a product changes.
+// Changes made through another instance raise no event here, so entries also expire after max-age: that bounds how
+// long this instance serves (or answers 304 for) a listing another instance has changed.
+@Component
+public class ProductJsonCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long maxAgeNanos;
+
+    // Bumped on every invalidation; a value loaded before a bump may be stale and is not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ProductJsonCache(@Value("${app.cache.product-json.max-bytes:67108864}") long maxBytes,
+                            @Value("${app.cache.product-json.max-age-ms:5000}") long maxAgeMillis) {
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(1, maxBytes / SEGMENTS));
+        }
+    }
+
+    public static String productKey(Long productId) {
+        return "id:" + productId;
+    }
+
+    public static String categoryKey(String category) {
+        return "category:" + category;
+    }
+
+    // Read before loading from the database and hand back to put()
+    public long generation() {
+        return generation.get();
+    }
+
+    // Serialized body plus the validators it was served with, so a hit can also answer conditional requests
+    public static final class Entry {
+        private final byte[] json;
+        private final String etag;
+        private final long lastModified; // Epoch millis, -1 if unknown
+
+        public Entry(byte[] json, String etag, long lastModified) {
+            this.json = json;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        public byte[] getJson() { return json; }
+        public String getEtag() { return etag; }
+        public long getLastModified() { return lastModified; }
+    }
+
+    public Entry get(String key) {
+        Entry entry = segmentFor(key).get(key, System.nanoTime() - maxAgeNanos);
+        if (entry == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return entry;
+    }
+
+    public void put(String key, Entry entry, long generationAtLoad) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            // Checked under the segment lock: invalidate() bumps the generation before taking it
+            if (generation.get() == generationAtLoad) {
+                segment.put(key, entry, System.nanoTime());
+            }
+        }
+    }
+
+    public void invalidate(String key) {
+        generation.incrementAndGet();
+        segmentFor(key).remove(key);
+    }
+
+    public void invalidateAllCategories() {
+        generation.incrementAndGet();
+        for (Segment segment : segments) {
+            segment.removeIf(key -> key.startsWith("category:"));
+        }
+    }
+
+    @EventListener
+    public void onProductChanged(ProductChangedEvent event) {
+        invalidate(productKey(event.getProductId()));
+        if (event.getProduct() != null) {
+            invalidate(categoryKey(event.getProduct().getCategory()));
+        }
+        if (event.getPreviousCategory() != null) {
+            invalidate(categoryKey(event.getPreviousCategory()));
+        } else if (event.getType() == ProductChangedEvent.Type.DELETED) {
+            invalidateAllCategories(); // Category unknown, so any listing may hold the product
+        }
+    }
+
+    @EventListener
+    public void onStockLevelsChanged(StockLevelsChangedEvent event) {
+        for (Map.Entry<Long, String> product : event.getCategoriesByProduct().entrySet()) {
+            invalidate(productKey(product.getKey()));
+            if (product.getValue() != null) {
+                invalidate(categoryKey(product.getValue()));
+            }
+        }
+    }
+
+    // A batch touches many products but usually few categories: each listing is dropped once
+    @EventListener
+    public void onProductsImported(ProductsImportedEvent event) {
+        Set<String> categories = new HashSet<>();
+        for (Product product : event.getProducts()) {
+            invalidate(productKey(product.getId()));
+            if (product.getCategory() != null) {
+                categories.add(product.getCategory());
+            }
+        }
+        for (String previous : event.getPreviousCategories().values()) {
+            if (previous != null) {
+                categories.add(previous);
+            }
+        }
+        categories.forEach(category -> invalidate(categoryKey(category)));
+    }
+
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+
+    public long sizeInBytes() {
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.bytes();
+        }
+        return total;
+    }
+
+    private Segment segmentFor(String key) {
+        return segments[(key.hashCode() & 0x7fffffff) % SEGMENTS];
+    }
+
+    private static final class Segment {
+        private final long maxBytes;
+        private final LinkedHashMap<String, Cached> entries = new LinkedHashMap<>(64, 0.75f, true); // Access order = LRU
+        private long bytes;
+
+        Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        // Null for an entry stored before storedAfter, which is dropped so the caller reloads it
+        synchronized Entry get(String key, long storedAfter) {
+            Cached cached = entries.get(key);
+            if (cached == null) {
+                return null;
+            }
+            if (cached.storedAt - storedAfter < 0) {
+                remove(key);
+                return null;
+            }
+            return cached.entry;
+        }
+
+        synchronized void put(String key, Entry entry, long now) {
+            if (entry.json.length > maxBytes) {
+                return; // Would evict everything else, not worth caching
+            }
+            Cached previous = entries.put(key, new Cached(entry, now));
+            bytes += entry.json.length - (previous == null ? 0 : previous.entry.json.length);
+            Iterator<Cached> eldest = entries.values().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                bytes -= eldest.next().entry.json.length;
+                eldest.remove();
+            }
+        }
+
+        synchronized void remove(String key) {
+            Cached previous = entries.remove(key);
+            if (previous != null) {
+                bytes -= previous.entry.json.length;
+            }
+        }
+
+        synchronized void removeIf(Predicate<String> predicate) {
+            Iterator<Map.Entry<String, Cached>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Cached> entry = it.next();
+                if (predicate.test(entry.getKey())) {
+                    bytes -= entry.getValue().entry.json.length;
+                    it.remove();
+                }
+            }
+        }
+
+        synchronized long bytes() {
+            return bytes;
+        }
+    }
+
+    private static final class Cached {
+        final Entry entry;
+        final long storedAt; // System.nanoTime()
+
+        Cached(Entry entry, long storedAt) {
+            this.entry = entry;
+            this.storedAt = storedAt;
+        }
+    }
+}
@@ -0,0 +1,527 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.datasource.ReplicaRoutingDataSource;
+import com.example.onlineshopping.event.ProductChangedEvent;
+import com.example.onlineshopping.event.ProductsImportedEvent;
+import com.example.onlineshopping.model.Product;
+import com.example.onlineshopping.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+// In-memory inverted index over product name, category and description.
+// - Name and category are indexed as character bigrams, which works for both Chinese (no word breaks) and Latin
+//   text and matches any substring. Descriptions are long, so they are indexed as words: Latin words whole, runs of
+//   CJK characters as bigrams. A query matches a description only through whole words.
+// - A posting list is a sorted long[] of product ids (8 bytes per entry), replaced rather than changed in place so
+//   searches read it without locking.
+// - A query intersects the posting lists of its grams, starting from the smallest, and looks at no more than
+//   MAX_CANDIDATES entries of it. Queries shorter than MIN_QUERY_LENGTH match nothing: a single character (or a
+//   bigram like "an") would otherwise mean scoring a large part of the catalog.
+@Component
+public class ProductSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductSearchIndex.class);
+
+    private static final int REBUILD_PAGE_SIZE = 1000;
+    static final int MIN_QUERY_LENGTH = 2;
+    static final int MAX_CANDIDATES = 10_000;
+    private static final long[] NO_IDS = new long[0];
+
+    // Relevance weights per field
+    private static final int NAME_MATCH = 100;
+    private static final int NAME_PREFIX_BONUS = 50;
+    private static final int NAME_EXACT_BONUS = 50;
+    private static final int CATEGORY_MATCH = 20;
+    private static final int DESCRIPTION_MATCH = 10;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    private volatile Map<String, long[]> gramPostings = new ConcurrentHashMap<>(); // Name and category bigrams
+    private volatile Map<String, long[]> wordPostings = new ConcurrentHashMap<>(); // Description words
+    private volatile Map<Long, IndexedProduct> documents = new ConcurrentHashMap<>();
+    private volatile boolean ready = false;
+
+    // Normalized name and category, used to verify and score candidates
+    static final class IndexedProduct {
+        final String name;
+        final String category;
+        final String words; // Distinct description words, space-separated: what to take out of the postings on removal
+
+        IndexedProduct(Product product) {
+            this.name = normalize(product.getName());
+            this.category = normalize(product.getCategory());
+            this.words = String.join(" ", words(normalize(product.getDescription())));
+        }
+
+        Set<String> grams() {
+            Set<String> grams = new LinkedHashSet<>();
+            addBigrams(name, grams);
+            addBigrams(category, grams);
+            return grams;
+        }
+
+        List<String> wordList() {
+            return words.isEmpty() ? Collections.emptyList() : Arrays.asList(words.split(" "));
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    // Reload the whole index from the database, one keyset page at a time
+    public synchronized void rebuild() {
+        long start = System.nanoTime();
+        Map<String, IdList> grams = new HashMap<>();
+        Map<String, IdList> words = new HashMap<>();
+        Map<Long, IndexedProduct> newDocuments = new ConcurrentHashMap<>();
+        long afterId = 0L;
+        while (true) {
+            long pageAfter = afterId;
+            // From the primary: the index is kept current by change events, so it must not start out behind them
+            List<Product> page = ReplicaRoutingDataSource.onPrimary(
+                    () -> productRepository.findByIdGreaterThanOrderByIdAsc(pageAfter, PageRequest.of(0, REBUILD_PAGE_SIZE)));
+            if (page == null || page.isEmpty()) {
+                break;
+            }
+            for (Product product : page) {
+                IndexedProduct doc = new IndexedProduct(product);
+                newDocuments.put(product.getId(), doc);
+                // Pages come in id order, so every list is built already sorted
+                for (String gram : doc.grams()) {
+                    grams.computeIfAbsent(gram, key -> new IdList()).add(product.getId());
+                }
+                for (String word : doc.wordList()) {
+                    words.computeIfAbsent(word, key -> new IdList()).add(product.getId());
+                }
+            }
+            afterId = page.get(page.size() - 1).getId();
+            if (page.size() < REBUILD_PAGE_SIZE) {
+                break;
+            }
+        }
+        this.gramPostings = toPostings(grams);
+        this.wordPostings = toPostings(words);
+        this.documents = newDocuments;
+        this.ready = true;
+        log.info("Product search index built with {} products, {} grams and {} words in {} ms", newDocuments.size(),
+                grams.size(), words.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    public void index(Product product) {
+        if (product != null && product.getId() != null) {
+            index(Collections.singletonList(product));
+        }
+    }
+
+    // Each posting list a batch touches is rewritten once, however many of the batch's products it gains or loses
+    public synchronized void index(List<Product> products) {
+        Map<String, TreeSet<Long>> gramsRemoved = new HashMap<>();
+        Map<String, TreeSet<Long>> gramsAdded = new HashMap<>();
+        Map<String, TreeSet<Long>> wordsRemoved = new HashMap<>();
+        Map<String, TreeSet<Long>> wordsAdded = new HashMap<>();
+        for (Product product : products) {
+            if (product == null || product.getId() == null) {
+                continue;
+            }
+            IndexedProduct previous = documents.get(product.getId());
+            if (previous != null) {
+                collect(gramsRemoved, previous.grams(), product.getId());
+                collect(wordsRemoved, previous.wordList(), product.getId());
+            }
+            IndexedProduct doc = new IndexedProduct(product);
+            collect(gramsAdded, doc.grams(), product.getId());
+            collect(wordsAdded, doc.wordList(), product.getId());
+            documents.put(product.getId(), doc);
+        }
+        apply(gramPostings, gramsRemoved, gramsAdded);
+        apply(wordPostings, wordsRemoved, wordsAdded);
+    }
+
+    public synchronized void remove(Long productId) {
+        IndexedProduct doc = documents.remove(productId);
+        if (doc == null) {
+            return;
+        }
+        Map<String, TreeSet<Long>> grams = new HashMap<>();
+        Map<String, TreeSet<Long>> words = new HashMap<>();
+        collect(grams, doc.grams(), productId);
+        collect(words, doc.wordList(), productId);
+        apply(gramPostings, grams, Collections.emptyMap());
+        apply(wordPostings, words, Collections.emptyMap());
+    }
+
+    @EventListener
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.getType() == ProductChangedEvent.Type.DELETED) {
+            remove(event.getProductId());
+        } else {
+            index(event.getProduct());
+        }
+    }
+
+    @EventListener
+    public void onProductsImported(ProductsImportedEvent event) {
+        index(event.getProducts());
+    }
+
+    // Where a page of ranked results ended: the last hit's rank, sent to clients as "<score>.<name length>.<id>"
+    public static final class Cursor {
+        private final Hit last;
+
+        private Cursor(Hit last) {
+            this.last = last;
+        }
+
+        // Null if malformed
+        public static Cursor parse(String value) {
+            String[] parts = value == null ? new String[0] : value.split("\\.");
+            if (parts.length != 3) {
+                return null;
+            }
+            try {
+                return new Cursor(new Hit(Long.parseLong(parts[2]), Integer.parseInt(parts[0]), Integer.parseInt(parts[1])));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return last.score + "." + last.nameLength + "." + last.id;
+        }
+    }
+
+    // One page of a ranking; next is null once the page came back short
+    public static final class Ranked {
+        private final List<Long> ids;
+        private final Cursor next;
+
+        public Ranked(List<Long> ids, Cursor next) {
+            this.ids = ids;
+            this.next = next;
+        }
+
+        public List<Long> getIds() { return ids; }
+        public Cursor getNext() { return next; }
+    }
+
+    // Ids of the best matching products, most relevant first
+    public List<Long> search(String query, int limit) {
+        return search(query, null, limit).getIds();
+    }
+
+    // The best `limit` matches ranked after the cursor (from the top when it is null)
+    public Ranked search(String query, Cursor after, int limit) {
+        if (limit <= 0) {
+            return new Ranked(Collections.emptyList(), null);
+        }
+        // Keep only the top `limit` hits: the heap head is the weakest one kept so far
+        PriorityQueue<Hit> top = new PriorityQueue<>(Math.min(limit, 64) + 1, Hit.BEST_FIRST.reversed());
+        for (Hit hit : matches(query)) {
+            if (after != null && Hit.BEST_FIRST.compare(hit, after.last) <= 0) {
+                continue; // On an earlier page
+            }
+            top.offer(hit);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>(top);
+        hits.sort(Hit.BEST_FIRST);
+        List<Long> ids = new ArrayList<>(hits.size());
+        for (Hit hit : hits) {
+            ids.add(hit.id);
+        }
+        return new Ranked(ids, hits.size() == limit ? new Cursor(hits.get(hits.size() - 1)) : null);
+    }
+
+    // Every matching id in ascending order, unranked: what a name filter combined with other filters narrows down
+    public List<Long> matchingIds(String query) {
+        List<Hit> matches = matches(query);
+        List<Long> ids = new ArrayList<>(matches.size());
+        for (Hit match : matches) {
+            ids.add(match.id);
+        }
+        return ids;
+    }
+
+    // Matches in id order, scored; empty for queries under MIN_QUERY_LENGTH
+    private List<Hit> matches(String query) {
+        String normalized = normalize(query);
+        if (normalized.length() < MIN_QUERY_LENGTH) {
+            return Collections.emptyList();
+        }
+        Map<Long, IndexedProduct> currentDocuments = this.documents;
+        long[] inText = intersect(gramPostings, bigrams(normalized));
+        long[] inDescription = intersect(wordPostings, words(normalized));
+
+        List<Hit> matches = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < inText.length || j < inDescription.length) {
+            // Walk both candidate lists in id order, as one
+            long id = j >= inDescription.length || (i < inText.length && inText[i] <= inDescription[j]) ? inText[i] : inDescription[j];
+            boolean descriptionMatch = j < inDescription.length && inDescription[j] == id;
+            if (i < inText.length && inText[i] == id) {
+                i++;
+            }
+            if (descriptionMatch) {
+                j++;
+            }
+            IndexedProduct doc = currentDocuments.get(id);
+            if (doc == null) {
+                continue;
+            }
+            int score = score(doc, normalized, descriptionMatch);
+            if (score > 0) { // Zero: grams matched but not as a contiguous substring
+                matches.add(new Hit(id, score, doc.name.length()));
+            }
+        }
+        return matches;
+    }
+
+    // Ids (ascending) found in every key's posting list, looking at no more than MAX_CANDIDATES of the smallest list
+    private static long[] intersect(Map<String, long[]> postings, Set<String> keys) {
+        if (keys.isEmpty()) {
+            return NO_IDS;
+        }
+        List<long[]> lists = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            long[] ids = postings.get(key);
+            if (ids == null) {
+                return NO_IDS; // A key nobody has means no match at all
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(ids -> ids.length));
+        long[] smallest = lists.get(0);
+        int scanned = Math.min(smallest.length, MAX_CANDIDATES);
+        long[] found = new long[scanned];
+        int count = 0;
+        for (int i = 0; i < scanned; i++) {
+            if (containsInAll(lists, smallest[i])) {
+                found[count++] = smallest[i];
+            }
+        }
+        return count == found.length ? found : Arrays.copyOf(found, count);
+    }
+
+    private static boolean containsInAll(List<long[]> lists, long id) {
+        for (int i = 1; i < lists.size(); i++) {
+            if (Arrays.binarySearch(lists.get(i), id) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int score(IndexedProduct doc, String query, boolean descriptionMatch) {
+        int score = 0;
+        if (doc.name.contains(query)) {
+            score += NAME_MATCH;
+            if (doc.name.startsWith(query)) {
+                score += NAME_PREFIX_BONUS;
+            }
+            if (doc.name.equals(query)) {
+                score += NAME_EXACT_BONUS;
+            }
+        }
+        if (doc.category.contains(query)) {
+            score += CATEGORY_MATCH;
+        }
+        if (descriptionMatch) {
+            score += DESCRIPTION_MATCH;
+        }
+        return score;
+    }
+
+    private static final class Hit {
+        // Higher score first, then shorter names (tighter matches), then lower id for a stable order
+        static final Comparator<Hit> BEST_FIRST = Comparator.<Hit>comparingInt(h -> -h.score)
+                .thenComparingInt(h -> h.nameLength)
+                .thenComparingLong(h -> h.id);
+
+        final long id;
+        final int score;
+        final int nameLength;
+
+        Hit(long id, int score, int nameLength) {
+            this.id = id;
+            this.score = score;
+            this.nameLength = nameLength;
+        }
+    }
+
+    // Growable sorted id list, used while rebuilding
+    private static final class IdList {
+        long[] ids = new long[2];
+        int size;
+
+        void add(long id) {
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    private static Map<String, long[]> toPostings(Map<String, IdList> lists) {
+        Map<String, long[]> postings = new ConcurrentHashMap<>(lists.size() * 4 / 3 + 1);
+        for (Map.Entry<String, IdList> list : lists.entrySet()) {
+            postings.put(list.getKey(), Arrays.copyOf(list.getValue().ids, list.getValue().size));
+        }
+        return postings;
+    }
+
+    private static void collect(Map<String, TreeSet<Long>> changes, Iterable<String> keys, long id) {
+        for (String key : keys) {
+            changes.computeIfAbsent(key, k -> new TreeSet<>()).add(id);
+        }
+    }
+
+    private static void apply(Map<String, long[]> postings, Map<String, TreeSet<Long>> removed, Map<String, TreeSet<Long>> added) {
+        Set<String> keys = new LinkedHashSet<>(removed.keySet());
+        keys.addAll(added.keySet());
+        for (String key : keys) {
+            long[] merged = merge(postings.getOrDefault(key, NO_IDS), toArray(removed.get(key)), toArray(added.get(key)));
+            if (merged.length == 0) {
+                postings.remove(key);
+            } else {
+                postings.put(key, merged);
+            }
+        }
+    }
+
+    // current without removed, plus added; all sorted, and so is the result
+    static long[] merge(long[] current, long[] removed, long[] added) {
+        long[] merged = new long[current.length + added.length];
+        int count = 0;
+        int a = 0;
+        for (long id : current) {
+            while (a < added.length && added[a] < id) {
+                merged[count++] = added[a++];
+            }
+            if (a < added.length && added[a] == id) {
+                a++; // Re-added: kept once
+            } else if (Arrays.binarySearch(removed, id) >= 0) {
+                continue;
+            }
+            merged[count++] = id;
+        }
+        while (a < added.length) {
+            merged[count++] = added[a++];
+        }
+        return count == merged.length ? merged : Arrays.copyOf(merged, count);
+    }
+
+    private static long[] toArray(TreeSet<Long> ids) {
+        if (ids == null) {
+            return NO_IDS;
+        }
+        long[] array = new long[ids.size()];
+        int i = 0;
+        for (Long id : ids) {
+            array[i++] = id;
+        }
+        return array;
+    }
+
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> bigrams(String text) {
+        Set<String> grams = new LinkedHashSet<>();
+        addBigrams(text, grams);
+        return grams;
+    }
+
+    private static void addBigrams(String text, Set<String> grams) {
+        for (int i = 0; i + 1 < text.length(); i++) {
+            grams.add(text.substring(i, i + 2));
+        }
+    }
+
+    // Distinct words in order: runs of letters and digits, except that CJK text (no spaces between words) gives
+    // every pair of neighbouring characters, or a lone character on its own
+    static Set<String> words(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        StringBuilder word = new StringBuilder();
+        boolean previousCjk = false;
+        int i = 0;
+        while (i < text.length()) {
+            int c = text.codePointAt(i);
+            int next = i + Character.charCount(c);
+            if (isCjk(c)) {
+                addWord(word, words);
+                boolean nextCjk = next < text.length() && isCjk(text.codePointAt(next));
+                if (nextCjk) {
+                    words.add(text.substring(i, next + Character.charCount(text.codePointAt(next))));
+                } else if (!previousCjk) {
+                    words.add(text.substring(i, next));
+                }
+                previousCjk = true;
+            } else {
+                if (Character.isLetterOrDigit(c)) {
+                    word.appendCodePoint(c);
+                } else {
+                    addWord(word, words);
+                }
+                previousCjk = false;
+            }
+            i = next;
+        }
+        addWord(word, words);
+        return words;
+    }
+
+    private static void addWord(StringBuilder word, Set<String> words) {
+        if (word.length() > 0) {
+            words.add(word.toString());
+            word.setLength(0);
+        }
+    }
+
+    private static boolean isCjk(int c) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(c);
+        return script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.model.Product;
+import com.example.onlineshopping.repository.ProductRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+// Writes the catalog to a response as it is read from the JDBC cursor, so memory stays flat
+@Service
+public class ProductStreamingService {
+
+    private static final int FLUSH_EVERY = 500; // Push rows to the client roughly once per fetch
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Transactional(readOnly = true)
+    public void writeAllAsJsonArray(OutputStream out) throws IOException {
+        try (Stream<Product> products = productRepository.streamAllOrderedById()) {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+            generator.writeStartArray();
+            Iterator<Product> iterator = products.iterator();
+            int written = 0;
+            while (iterator.hasNext()) {
+                Product product = iterator.next();
+                generator.writeObject(product);
+                entityManager.detach(product); // Keep the persistence context empty
+                if (++written % FLUSH_EVERY == 0) {
+                    generator.flush();
+                }
+            }
+            generator.writeEndArray();
+            generator.flush();
+        }
+    }
+}
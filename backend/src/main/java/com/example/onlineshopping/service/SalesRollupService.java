@@ -0,0 +1,326 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.datasource.OrderShard;
+import com.example.onlineshopping.datasource.OrderShards;
+import com.example.onlineshopping.model.Order;
+import com.example.onlineshopping.model.OrderStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Order count and revenue by day, by user and by status, kept up to date as orders are placed and change status,
+// so revenue questions read a few rollup rows instead of summing every order.
+// Changes are recorded after their transaction commits as in-memory deltas and added to the sales_rollups table
+// by a scheduled flush (additive UPDATEs, so several instances can flush into the same rows). Reads therefore
+// trail writes by up to one flush interval. rebuild() recomputes everything from the orders table (of every order shard).
+@Service
+public class SalesRollupService {
+
+    private static final Logger log = LoggerFactory.getLogger(SalesRollupService.class);
+
+    static final String DAY = "day";
+    static final String USER = "user";
+
+    private static final String INCREMENT = "UPDATE sales_rollups SET order_count = order_count + ?, total_amount = total_amount + ? "
+            + "WHERE dimension = ? AND bucket = ? AND status = ?";
+    private static final String INSERT = "INSERT INTO sales_rollups (dimension, bucket, status, order_count, total_amount) VALUES (?, ?, ?, ?, ?)";
+    private static final String REBUILD_BY_DAY = "SELECT CAST(order_date AS DATE) AS order_day, status, COUNT(*) AS order_count, SUM(total_amount) AS total_amount "
+            + "FROM orders GROUP BY CAST(order_date AS DATE), status";
+    private static final String REBUILD_BY_USER = "SELECT user_id, status, COUNT(*) AS order_count, SUM(total_amount) AS total_amount "
+            + "FROM orders GROUP BY user_id, status";
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private OrderShards orderShards;
+
+    private final Map<Key, Delta> pending = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object(); // Flushes and rebuilds never interleave
+
+    // What "group by" means in a summary: days and statuses come from the day rows, users from the user rows
+    public enum GroupBy { DAY, STATUS, USER }
+
+    // The facts about an order a status change needs to move its amount between rollup rows
+    public static final class OrderFacts {
+        private final LocalDateTime orderDate;
+        private final Long userId;
+        private final BigDecimal totalAmount;
+
+        public OrderFacts(LocalDateTime orderDate, Long userId, BigDecimal totalAmount) {
+            this.orderDate = orderDate;
+            this.userId = userId;
+            this.totalAmount = totalAmount;
+        }
+    }
+
+    public static final class RollupRow {
+        private final String key;
+        private final long orderCount;
+        private final BigDecimal totalAmount;
+
+        RollupRow(String key, long orderCount, BigDecimal totalAmount) {
+            this.key = key;
+            this.orderCount = orderCount;
+            this.totalAmount = totalAmount;
+        }
+
+        public String getKey() { return key; }
+        public long getOrderCount() { return orderCount; }
+        public BigDecimal getTotalAmount() { return totalAmount; }
+    }
+
+    public static final class RebuildResult {
+        private final int rows;
+        private final long millis;
+
+        RebuildResult(int rows, long millis) {
+            this.rows = rows;
+            this.millis = millis;
+        }
+
+        public int getRows() { return rows; }
+        public long getMillis() { return millis; }
+    }
+
+    private static final class Key {
+        final String dimension;
+        final String bucket;
+        final String status;
+
+        Key(String dimension, String bucket, String status) {
+            this.dimension = dimension;
+            this.bucket = bucket;
+            this.status = status;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return dimension.equals(other.dimension) && bucket.equals(other.bucket) && status.equals(other.status);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(dimension, bucket, status);
+        }
+    }
+
+    private static final class Delta {
+        final long count;
+        final BigDecimal amount;
+
+        Delta(long count, BigDecimal amount) {
+            this.count = count;
+            this.amount = amount;
+        }
+
+        Delta plus(Delta other) {
+            return new Delta(count + other.count, amount.add(other.amount));
+        }
+    }
+
+    // Call once the order is committed
+    public void orderPlaced(Order order) {
+        record(order.getOrderDate(), order.getUserId(), order.getStatus(), 1, order.getTotalAmount());
+    }
+
+    // Call once the status change is committed, with the orders that actually moved
+    public void statusChanged(Collection<OrderFacts> orders, OrderStatus from, OrderStatus to) {
+        for (OrderFacts order : orders) {
+            record(order.orderDate, order.userId, from.name(), -1, order.totalAmount.negate());
+            record(order.orderDate, order.userId, to.name(), 1, order.totalAmount);
+        }
+    }
+
+    private void record(LocalDateTime orderDate, Long userId, String status, long count, BigDecimal amount) {
+        Delta delta = new Delta(count, amount);
+        pending.merge(new Key(DAY, orderDate.toLocalDate().toString(), status), delta, Delta::plus);
+        pending.merge(new Key(USER, String.valueOf(userId), status), delta, Delta::plus);
+    }
+
+    @Scheduled(fixedDelayString = "${app.rollups.flush-interval-ms:1000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        synchronized (writeLock) {
+            List<Key> keys = new ArrayList<>();
+            List<Delta> deltas = new ArrayList<>();
+            for (Key key : new ArrayList<>(pending.keySet())) {
+                Delta delta = pending.remove(key);
+                if (delta != null && (delta.count != 0 || delta.amount.signum() != 0)) {
+                    keys.add(key);
+                    deltas.add(delta);
+                }
+            }
+            if (keys.isEmpty()) {
+                return;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> write(keys, deltas));
+            } catch (RuntimeException e) {
+                // Keep the deltas for the next flush (e.g. another instance inserted one of the rows meanwhile)
+                log.warn("Sales rollup flush of {} rows failed, will retry", keys.size(), e);
+                for (int i = 0; i < keys.size(); i++) {
+                    pending.merge(keys.get(i), deltas.get(i), Delta::plus);
+                }
+            }
+        }
+    }
+
+    private void write(List<Key> keys, List<Delta> deltas) {
+        List<Object[]> increments = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            Key key = keys.get(i);
+            increments.add(new Object[]{deltas.get(i).count, deltas.get(i).amount, key.dimension, key.bucket, key.status});
+        }
+        int[] updated = jdbcTemplate.batchUpdate(INCREMENT, increments);
+        List<Object[]> inserts = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (updated[i] == 0) { // First order of its day, user or status
+                Key key = keys.get(i);
+                inserts.add(new Object[]{key.dimension, key.bucket, key.status, deltas.get(i).count, deltas.get(i).amount});
+            }
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT, inserts);
+        }
+    }
+
+    // Rows the database keeps for a summary; filters are optional (from/to only apply to day and status summaries)
+    public List<RollupRow> summarize(GroupBy groupBy, LocalDate from, LocalDate to, OrderStatus status, Long userId) {
+        String key = groupBy == GroupBy.STATUS ? "status" : "bucket";
+        StringBuilder sql = new StringBuilder("SELECT ").append(key)
+                .append(" AS rollup_key, SUM(order_count) AS order_count, SUM(total_amount) AS total_amount FROM sales_rollups WHERE dimension = :dimension");
+        MapSqlParameterSource params = new MapSqlParameterSource("dimension", groupBy == GroupBy.USER ? USER : DAY);
+        if (groupBy == GroupBy.USER && userId != null) {
+            sql.append(" AND bucket = :userId");
+            params.addValue("userId", String.valueOf(userId));
+        }
+        if (groupBy != GroupBy.USER && from != null) {
+            sql.append(" AND bucket >= :from");
+            params.addValue("from", from.toString());
+        }
+        if (groupBy != GroupBy.USER && to != null) {
+            sql.append(" AND bucket < :to");
+            params.addValue("to", to.toString());
+        }
+        if (status != null) {
+            sql.append(" AND status = :status");
+            params.addValue("status", status.name());
+        }
+        sql.append(" GROUP BY ").append(key).append(" ORDER BY ").append(key);
+        return namedJdbcTemplate.query(sql.toString(), params,
+                (rs, rowNum) -> new RollupRow(rs.getString("rollup_key"), rs.getLong("order_count"), rs.getBigDecimal("total_amount")));
+    }
+
+    // First start with existing orders (e.g. right after this table was introduced): build the rollups once
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        boolean hasOrders = orderShards.fanOut(orderShards.all(),
+                shard -> !shard.getJdbcTemplate().queryForList("SELECT id FROM orders LIMIT 1", Long.class).isEmpty()).contains(true);
+        boolean hasRollups = !jdbcTemplate.queryForList("SELECT order_count FROM sales_rollups LIMIT 1", Long.class).isEmpty();
+        if (hasOrders && !hasRollups) {
+            rebuild();
+        }
+    }
+
+    @Scheduled(cron = "${app.rollups.rebuild-cron:-}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    // Recomputes every rollup from the orders table in one transaction, replacing the old rows.
+    // Deltas recorded before it starts reading are dropped, since the orders they describe are in what it reads.
+    // An order committed just before the read whose delta arrives just after it (a window of microseconds),
+    // or unflushed deltas of other instances, are counted twice: schedule rebuilds for quiet hours.
+    public RebuildResult rebuild() {
+        long start = System.nanoTime();
+        synchronized (writeLock) {
+            int rows = transactionTemplate.execute(status -> {
+                pending.clear();
+                // With order shards, each shard's days are read in parallel and added up here
+                Map<Key, Delta> byDay = new LinkedHashMap<>();
+                for (List<Object[]> shardDays : orderShards.fanOut(orderShards.all(), shard -> shard.getJdbcTemplate().query(REBUILD_BY_DAY,
+                        (rs, rowNum) -> new Object[]{rs.getDate("order_day").toLocalDate().toString(), rs.getString("status"),
+                                new Delta(rs.getLong("order_count"), rs.getBigDecimal("total_amount"))}))) {
+                    for (Object[] day : shardDays) {
+                        byDay.merge(new Key(DAY, (String) day[0], (String) day[1]), (Delta) day[2], Delta::plus);
+                    }
+                }
+                List<Object[]> dayRows = new ArrayList<>(byDay.size());
+                byDay.forEach((key, delta) -> dayRows.add(new Object[]{key.dimension, key.bucket, key.status, delta.count, delta.amount}));
+                jdbcTemplate.update("DELETE FROM sales_rollups");
+                jdbcTemplate.batchUpdate(INSERT, dayRows);
+                int[] written = {dayRows.size()};
+                // A user's orders are all on one shard, except mid-rebalance: then rows are added to rather than inserted
+                boolean additive = orderShards.all().size() > 1 && orderShards.isMigrating();
+                List<Key> keys = new ArrayList<>(REBUILD_BATCH_SIZE);
+                List<Delta> deltas = new ArrayList<>(REBUILD_BATCH_SIZE);
+                // One row per user and status, so there can be many: inserted in batches as they are read
+                for (OrderShard shard : orderShards.all()) {
+                    shard.getJdbcTemplate().query(REBUILD_BY_USER, rs -> {
+                        keys.add(new Key(USER, String.valueOf(rs.getLong("user_id")), rs.getString("status")));
+                        deltas.add(new Delta(rs.getLong("order_count"), rs.getBigDecimal("total_amount")));
+                        if (keys.size() == REBUILD_BATCH_SIZE) {
+                            written[0] += insertRebuilt(keys, deltas, additive);
+                        }
+                    });
+                }
+                if (!keys.isEmpty()) {
+                    written[0] += insertRebuilt(keys, deltas, additive);
+                }
+                return written[0];
+            });
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            log.info("Sales rollups rebuilt: {} rows in {} ms", rows, millis);
+            return new RebuildResult(rows, millis);
+        }
+    }
+
+    private int insertRebuilt(List<Key> keys, List<Delta> deltas, boolean additive) {
+        int rows = keys.size();
+        if (additive) {
+            write(keys, deltas);
+        } else {
+            List<Object[]> batch = new ArrayList<>(rows);
+            for (int i = 0; i < rows; i++) {
+                batch.add(new Object[]{keys.get(i).dimension, keys.get(i).bucket, keys.get(i).status, deltas.get(i).count, deltas.get(i).amount});
+            }
+            jdbcTemplate.batchUpdate(INSERT, batch);
+        }
+        keys.clear();
+        deltas.clear();
+        return rows;
+    }
+}
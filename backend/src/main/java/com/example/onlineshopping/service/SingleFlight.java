@@ -0,0 +1,94 @@
+package com.example.onlineshopping.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// Collapses concurrent loads of the same key into one: the first caller runs the loader,
+// everyone arriving while it is in flight waits for and shares its result (or its exception).
+// Nothing is kept once the load finishes, so this is not a cache.
+// Nothing bounds the leader's load (lookups by id carry no query timeout), so followers wait at most maxWaitMillis
+// and then run the loader themselves: a stuck load costs one extra query per follower, not every request thread.
+public class SingleFlight<K, V> {
+
+    static final long DEFAULT_MAX_WAIT_MILLIS = 5_000;
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final long maxWaitMillis;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder waitsTimedOut = new LongAdder();
+
+    public SingleFlight() {
+        this(DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    public SingleFlight(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public V load(K key, Function<K, V> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        calls.increment(); // Counted once the caller has joined or started a load
+        if (existing != null) {
+            return await(existing, key, loader);
+        }
+        loads.increment();
+        try {
+            V value = loader.apply(key);
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    // Callers arriving after this start a fresh load instead of joining one that may have read stale data
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    private V await(CompletableFuture<V> flight, K key, Function<K, V> loader) {
+        try {
+            return flight.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            waitsTimedOut.increment();
+            loads.increment();
+            return loader.apply(key); // On its own, without joining or replacing the slow flight
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CompletionException(cause);
+        }
+    }
+
+    public long getCalls() { return calls.sum(); }
+    public long getLoads() { return loads.sum(); }
+    public int getInFlight() { return inFlight.size(); }
+    public long getWaitsTimedOut() { return waitsTimedOut.sum(); }
+
+    // Share of calls that were served by someone else's load, 0.0 when nothing has been asked yet
+    public double getCoalescingRatio() {
+        long total = calls.sum();
+        return total == 0 ? 0.0 : (double) (total - loads.sum()) / total;
+    }
+}
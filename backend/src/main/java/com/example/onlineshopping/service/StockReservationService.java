@@ -0,0 +1,427 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.event.ProductChangedEvent;
+import com.example.onlineshopping.event.ProductsImportedEvent;
+import com.example.onlineshopping.event.StockLevelsChangedEvent;
+import com.example.onlineshopping.model.Product;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Keeps the sellable stock of each product in memory and hands out short-lived reservations against it.
+// Reserve/commit/release only touch in-memory counters (under a short striped lock), so a hot SKU never serializes
+// on a database row lock; committed quantities are written back to the products table in periodic JDBC batches.
+// Every instance keeps its own counters over the same rows, so they are reconciled with the table: a flush only
+// takes units the row still has (and reports any shortfall as oversold), and the counters are re-read after each
+// flush and every app.stock.resync-interval-ms, which is how one instance's sales come off the others' counters.
+@Service
+public class StockReservationService {
+
+    private static final Logger log = LoggerFactory.getLogger(StockReservationService.class);
+
+    private static final String SELECT_STOCK = "SELECT stock_quantity, category FROM products WHERE id = ?";
+    // Only applies if the row still has the units; the version and timestamp move too, so ETags handed out for the
+    // old stock level stop matching
+    private static final String APPLY_DELTA = "UPDATE products SET stock_quantity = stock_quantity - ?, "
+            + "version = version + 1, last_modified = CURRENT_TIMESTAMP WHERE id = ? AND stock_quantity >= ?";
+    // For a row that no longer has them: another instance sold the same units first, or an admin lowered the count
+    private static final String APPLY_SHORTFALL = "UPDATE products SET stock_quantity = GREATEST(stock_quantity - ?, 0), "
+            + "version = version + 1, last_modified = CURRENT_TIMESTAMP WHERE id = ?";
+
+    private static final int LOCK_STRIPES = 64;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.stock.reservation-ttl-seconds:900}")
+    private long reservationTtlSeconds;
+
+    @Value("${app.stock.flush-batch-size:500}")
+    private int flushBatchSize;
+
+    private final Map<Long, StockCounter> counters = new ConcurrentHashMap<>();
+    private final SingleFlight<Long, StockCounter> counterLoads = new SingleFlight<>();
+    private final Map<String, Reservation> reservations = new ConcurrentHashMap<>();
+    private final Set<Long> dirtyProducts = ConcurrentHashMap.newKeySet();
+    private final Object[] counterLocks = new Object[LOCK_STRIPES];
+    private final Object flushLock = new Object(); // A resync must never read the table while a flush is half written
+    private final LongAdder oversoldUnits = new LongAdder();
+
+    public StockReservationService() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            counterLocks[i] = new Object();
+        }
+    }
+
+    public enum Outcome { RESERVED, INSUFFICIENT_STOCK, UNKNOWN_PRODUCT }
+
+    static final class StockCounter {
+        final AtomicInteger available;                          // Sellable now: on hand minus held reservations
+        final AtomicInteger held = new AtomicInteger();         // Reserved but neither committed nor released
+        final AtomicInteger unflushed = new AtomicInteger();    // Committed but not yet written to the products table
+        volatile String category;                               // Carried on change events so caches can invalidate precisely;
+                                                                // follows product updates, imports and resyncs
+
+        StockCounter(int onHand, String category) {
+            this.available = new AtomicInteger(onHand);
+            this.category = category;
+        }
+    }
+
+    public static final class Reservation {
+        private final String id;
+        private final Long productId;
+        private final int quantity;
+        private final Instant expiresAt;
+
+        Reservation(String id, Long productId, int quantity, Instant expiresAt) {
+            this.id = id;
+            this.productId = productId;
+            this.quantity = quantity;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getId() { return id; }
+        public Long getProductId() { return productId; }
+        public int getQuantity() { return quantity; }
+        public Instant getExpiresAt() { return expiresAt; }
+    }
+
+    public static final class ReservationResult {
+        private final Outcome outcome;
+        private final Reservation reservation;
+
+        ReservationResult(Outcome outcome, Reservation reservation) {
+            this.outcome = outcome;
+            this.reservation = reservation;
+        }
+
+        public Outcome getOutcome() { return outcome; }
+        public Reservation getReservation() { return reservation; }
+    }
+
+    public ReservationResult reserve(Long productId, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Reservation quantity must be positive");
+        }
+        StockCounter counter = counterFor(productId);
+        if (counter == null) {
+            return new ReservationResult(Outcome.UNKNOWN_PRODUCT, null);
+        }
+        // One step under the product's lock, so nothing that recomputes available from held sees the units in neither
+        synchronized (lockFor(productId)) {
+            if (counter.available.get() < quantity) {
+                return new ReservationResult(Outcome.INSUFFICIENT_STOCK, null);
+            }
+            counter.available.addAndGet(-quantity);
+            counter.held.addAndGet(quantity);
+        }
+        Reservation reservation = new Reservation(UUID.randomUUID().toString(), productId, quantity,
+                Instant.now().plusSeconds(reservationTtlSeconds));
+        reservations.put(reservation.getId(), reservation);
+        return new ReservationResult(Outcome.RESERVED, reservation);
+    }
+
+    // Seeds counters from products the caller has just loaded, so reserving them does not read each one's stock again.
+    // Such a counter is as current as the caller's read, which the resync corrects like any cold load
+    public void preload(Collection<Product> products) {
+        for (Product product : products) {
+            if (product.getId() != null) {
+                counters.putIfAbsent(product.getId(), new StockCounter(product.getStockQuantity(), product.getCategory()));
+            }
+        }
+    }
+
+    // Turns a reservation into a sale; returns false if it is unknown, already settled or expired
+    public boolean commit(String reservationId) {
+        Reservation reservation = reservations.remove(reservationId);
+        if (reservation == null) {
+            return false;
+        }
+        synchronized (lockFor(reservation.getProductId())) {
+            StockCounter counter = counters.get(reservation.getProductId());
+            if (counter != null) {
+                counter.held.addAndGet(-reservation.getQuantity());
+                counter.unflushed.addAndGet(reservation.getQuantity());
+                dirtyProducts.add(reservation.getProductId());
+            }
+        }
+        return true;
+    }
+
+    // Gives the reserved units back; returns false if it is unknown, already settled or expired
+    public boolean release(String reservationId) {
+        Reservation reservation = reservations.remove(reservationId);
+        if (reservation == null) {
+            return false;
+        }
+        returnToStock(reservation);
+        return true;
+    }
+
+    // Sellable units right now, or -1 if the product does not exist
+    public int availableStock(Long productId) {
+        StockCounter counter = counterFor(productId);
+        return counter == null ? -1 : counter.available.get();
+    }
+
+    // Like availableStock, but never loads: -1 unless the product's counter is already in memory
+    public int trackedAvailableStock(Long productId) {
+        StockCounter counter = counters.get(productId);
+        return counter == null ? -1 : counter.available.get();
+    }
+
+    // Called when an admin sets the on-hand quantity explicitly: it supersedes unflushed sales, held units stay held
+    public void setStockLevel(Long productId, int onHand) {
+        synchronized (lockFor(productId)) {
+            StockCounter counter = counters.get(productId);
+            if (counter != null) {
+                counter.unflushed.set(0);
+                counter.available.set(Math.max(0, onHand - counter.held.get()));
+            }
+        }
+    }
+
+    @EventListener
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.getType() == ProductChangedEvent.Type.DELETED) {
+            counters.remove(event.getProductId());
+            dirtyProducts.remove(event.getProductId());
+        } else if (event.getType() == ProductChangedEvent.Type.UPDATED) {
+            updateCategory(event.getProduct());
+        }
+    }
+
+    // An imported quantity is an explicit on-hand count, like an admin edit
+    @EventListener
+    public void onProductsImported(ProductsImportedEvent event) {
+        event.getProducts().forEach(this::updateCategory);
+        event.getStockLevels().forEach(this::setStockLevel);
+    }
+
+    private void updateCategory(Product product) {
+        StockCounter counter = counters.get(product.getId());
+        if (counter != null) {
+            counter.category = product.getCategory();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.stock.flush-interval-ms:500}")
+    public void flush() {
+        if (dirtyProducts.isEmpty()) {
+            return;
+        }
+        synchronized (flushLock) {
+            flushDirty();
+        }
+    }
+
+    // Re-reads the stock of every product this instance has a counter for, picking up other instances' flushed sales
+    @Scheduled(fixedDelayString = "${app.stock.resync-interval-ms:5000}")
+    public void resync() {
+        if (counters.isEmpty()) {
+            return;
+        }
+        synchronized (flushLock) {
+            List<Long> productIds = new ArrayList<>(counters.keySet());
+            for (int from = 0; from < productIds.size(); from += flushBatchSize) {
+                resync(productIds.subList(from, Math.min(from + flushBatchSize, productIds.size())));
+            }
+        }
+    }
+
+    // Units sold here that the table no longer had when they were flushed, since startup
+    public long getOversoldUnits() {
+        return oversoldUnits.sum();
+    }
+
+    private void flushDirty() {
+        List<Object[]> batch = new ArrayList<>();
+        Iterator<Long> it = dirtyProducts.iterator();
+        while (it.hasNext()) {
+            Long productId = it.next();
+            it.remove();
+            StockCounter counter = counters.get(productId);
+            if (counter == null) {
+                continue;
+            }
+            int delta = counter.unflushed.getAndSet(0);
+            if (delta > 0) {
+                batch.add(new Object[]{delta, productId, delta});
+            }
+            if (batch.size() >= flushBatchSize) {
+                writeBatch(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            writeBatch(batch);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.stock.expiry-check-interval-ms:10000}")
+    public void expireReservations() {
+        Instant now = Instant.now();
+        for (Reservation reservation : reservations.values()) {
+            // remove(key, value) so a concurrent commit/release wins cleanly
+            if (reservation.getExpiresAt().isBefore(now) && reservations.remove(reservation.getId(), reservation)) {
+                returnToStock(reservation);
+            }
+        }
+    }
+
+    private void writeBatch(List<Object[]> batch) {
+        int[] counts;
+        try {
+            counts = jdbcTemplate.batchUpdate(APPLY_DELTA, batch);
+        } catch (RuntimeException e) {
+            batch.forEach(this::retryLater);
+            log.warn("Failed to flush {} stock updates, will retry", batch.size(), e);
+            return;
+        }
+        Map<Long, String> changed = new HashMap<>();
+        List<Long> productIds = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Long productId = (Long) batch.get(i)[1];
+            // 0 rows: the row no longer has the units (a negative count only means the driver did not report one)
+            if (counts[i] == 0 && !applyShortfall(batch.get(i))) {
+                continue;
+            }
+            StockCounter counter = counters.get(productId);
+            changed.put(productId, counter == null ? null : counter.category);
+            productIds.add(productId);
+        }
+        if (!changed.isEmpty()) {
+            eventPublisher.publishEvent(new StockLevelsChangedEvent(changed));
+        }
+        resync(productIds);
+    }
+
+    // The units were already sold to customers, so what the row has left goes and the difference is reported
+    // rather than hidden; false if it could not be written and has been put back for the next flush
+    private boolean applyShortfall(Object[] row) {
+        Long productId = (Long) row[1];
+        int sold = (Integer) row[0];
+        try {
+            List<Integer> onHand = jdbcTemplate.queryForList("SELECT stock_quantity FROM products WHERE id = ?", Integer.class, productId);
+            if (onHand.isEmpty()) {
+                return true; // Deleted meanwhile; resync drops the counter
+            }
+            jdbcTemplate.update(APPLY_SHORTFALL, sold, productId);
+            int oversold = sold - onHand.get(0);
+            oversoldUnits.add(oversold);
+            log.warn("Product {} oversold by {} units: its row had {} of the {} sold here (sold by another instance, "
+                    + "or lowered, since this instance last read it)", productId, oversold, onHand.get(0), sold);
+            return true;
+        } catch (RuntimeException e) {
+            retryLater(row);
+            log.warn("Failed to flush the stock of product {}, will retry", productId, e);
+            return false;
+        }
+    }
+
+    // Puts a delta back so the next flush retries it
+    private void retryLater(Object[] row) {
+        Long productId = (Long) row[1];
+        StockCounter counter = counters.get(productId);
+        if (counter != null) {
+            counter.unflushed.addAndGet((Integer) row[0]);
+            dirtyProducts.add(productId);
+        }
+    }
+
+    // Sellable = what the table has, minus what this instance holds or has sold but not yet written. Only called
+    // under flushLock, so none of this instance's sales is half way between unflushed and the table
+    private void resync(List<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        Map<Long, Integer> onHand = new HashMap<>();
+        Map<Long, String> categories = new HashMap<>(); // Also moved through other instances
+        try {
+            jdbcTemplate.query("SELECT id, stock_quantity, category FROM products WHERE id IN ("
+                            + String.join(",", Collections.nCopies(productIds.size(), "?")) + ")",
+                    rs -> {
+                        onHand.put(rs.getLong("id"), rs.getInt("stock_quantity"));
+                        categories.put(rs.getLong("id"), rs.getString("category"));
+                    }, productIds.toArray());
+        } catch (RuntimeException e) {
+            log.warn("Failed to re-read the stock of {} products, will retry", productIds.size(), e);
+            return;
+        }
+        for (Long productId : productIds) {
+            synchronized (lockFor(productId)) {
+                StockCounter counter = counters.get(productId);
+                if (counter == null) {
+                    continue;
+                }
+                Integer stock = onHand.get(productId);
+                if (stock == null) {
+                    counters.remove(productId); // Deleted, possibly through another instance
+                } else {
+                    counter.available.set(Math.max(0, stock - counter.held.get() - counter.unflushed.get()));
+                    counter.category = categories.get(productId);
+                }
+            }
+        }
+    }
+
+    private void returnToStock(Reservation reservation) {
+        synchronized (lockFor(reservation.getProductId())) {
+            StockCounter counter = counters.get(reservation.getProductId());
+            if (counter != null) {
+                counter.held.addAndGet(-reservation.getQuantity());
+                counter.available.addAndGet(reservation.getQuantity());
+            }
+        }
+    }
+
+    private StockCounter counterFor(Long productId) {
+        StockCounter counter = counters.get(productId);
+        if (counter != null) {
+            return counter;
+        }
+        // One load per product at a time, and no lock held while it runs: a slow query only keeps waiting the callers
+        // that need this same product, never the hot products that share its stripe lock
+        return counterLoads.load(productId, id -> {
+            StockCounter current = counters.get(id); // Loaded while this caller was getting here
+            if (current != null) {
+                return current;
+            }
+            List<StockCounter> loaded = jdbcTemplate.query(SELECT_STOCK,
+                    (rs, rowNum) -> new StockCounter(rs.getInt("stock_quantity"), rs.getString("category")), id);
+            if (loaded.isEmpty()) {
+                return null;
+            }
+            StockCounter seeded = counters.putIfAbsent(id, loaded.get(0)); // A preload may have got there first
+            return seeded != null ? seeded : loaded.get(0);
+        });
+    }
+
+    private Object lockFor(Long productId) {
+        return counterLocks[(int) (productId ^ (productId >>> 32)) & (LOCK_STRIPES - 1)];
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+// Which usernames and emails are probably taken, so most registrations can skip the uniqueness lookup.
+// A "no" is certain for everything the index has seen; a "maybe" is confirmed with one query.
+// Rows the index has not seen (inserted behind the application's back, or during a rebuild)
+// are still caught by the unique constraints on users, so the index never decides a conflict on its own.
+@Component
+public class UserIdentityIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(UserIdentityIndex.class);
+
+    private static final String SELECT_PAGE = "SELECT id, username, email FROM users WHERE id > ? ORDER BY id LIMIT ?";
+    private static final int REBUILD_PAGE_SIZE = 5000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final long expectedUsers;
+    private final double falsePositiveRate;
+
+    private volatile CountingBloomFilter filter;
+    private volatile boolean ready = false;
+
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder lookupsSkipped = new LongAdder();
+
+    public UserIdentityIndex(@Value("${app.users.identity-index.expected-users:1000000}") long expectedUsers,
+                             @Value("${app.users.identity-index.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.expectedUsers = expectedUsers;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filter = newFilter();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    // Reload from the users table, one keyset page of (id, username, email) at a time
+    public synchronized void rebuild() {
+        long start = System.nanoTime();
+        CountingBloomFilter newFilter = newFilter();
+        long afterId = 0L;
+        int users = 0;
+        while (true) {
+            List<Object[]> page = jdbcTemplate.query(SELECT_PAGE,
+                    (rs, rowNum) -> new Object[]{rs.getLong("id"), rs.getString("username"), rs.getString("email")},
+                    afterId, REBUILD_PAGE_SIZE);
+            for (Object[] row : page) {
+                newFilter.add(usernameKey((String) row[1]));
+                newFilter.add(emailKey((String) row[2]));
+            }
+            users += page.size();
+            if (page.size() < REBUILD_PAGE_SIZE) {
+                break;
+            }
+            afterId = (Long) page.get(page.size() - 1)[0];
+        }
+        this.filter = newFilter;
+        this.ready = true;
+        log.info("User identity index built with {} users ({} KB) in {} ms", users, newFilter.sizeInBytes() / 1024,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // False only if neither the username nor the email can belong to an existing user
+    public boolean mightBeTaken(String username, String email) {
+        checks.increment();
+        if (!ready) {
+            return true; // Not loaded yet: let the database decide
+        }
+        CountingBloomFilter current = filter;
+        if (current.mightContain(usernameKey(username)) || current.mightContain(emailKey(email))) {
+            return true;
+        }
+        lookupsSkipped.increment();
+        return false;
+    }
+
+    public void add(User user) {
+        CountingBloomFilter current = filter;
+        current.add(usernameKey(user.getUsername()));
+        current.add(emailKey(user.getEmail()));
+    }
+
+    public void remove(User user) {
+        CountingBloomFilter current = filter;
+        current.remove(usernameKey(user.getUsername()));
+        current.remove(emailKey(user.getEmail()));
+    }
+
+    public long getChecks() { return checks.sum(); }
+    public long getLookupsSkipped() { return lookupsSkipped.sum(); }
+
+    public long sizeInBytes() {
+        return filter.sizeInBytes();
+    }
+
+    private CountingBloomFilter newFilter() {
+        return new CountingBloomFilter(Math.max(1, expectedUsers) * 2, falsePositiveRate); // A username and an email per user
+    }
+
+    // Lower-cased because MySQL's default collation compares them case-insensitively
+    static String usernameKey(String username) {
+        return "u:" + normalize(username);
+    }
+
+    static String emailKey(String email) {
+        return "e:" + normalize(email);
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+}
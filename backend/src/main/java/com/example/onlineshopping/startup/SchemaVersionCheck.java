@@ -0,0 +1,175 @@
+package com.example.onlineshopping.startup;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.metamodel.spi.MetamodelImplementor;
+import org.hibernate.persister.collection.AbstractCollectionPersister;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.persistence.Column;
+import javax.persistence.Embedded;
+import javax.persistence.EmbeddedId;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Replaces Hibernate's schema diffing at startup with one query. The entity mapping (tables, columns and their
+// Hibernate types, plus the @Table indexes and unique constraints and each @Column / @JoinColumn's length,
+// nullability, uniqueness, precision, scale and definition) is reduced to a fingerprint; the schema_version table
+// holds the fingerprint of the mapping the database was last validated against. Not covered: what Hibernate
+// derives without an annotation (e.g. foreign key names) and anything created outside the mapping, such as indexes
+// added by hand. Validating is done once per release (ddl-auto=validate or update together
+// with app.schema.record=true), after which every instance only compares the two and refuses to start on a mismatch.
+// Runs once all singletons exist, before the web server starts taking requests.
+public class SchemaVersionCheck implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaVersionCheck.class);
+
+    static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS schema_version (id INT NOT NULL PRIMARY KEY, "
+            + "fingerprint VARCHAR(64) NOT NULL, recorded_at TIMESTAMP NOT NULL)";
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean record;
+    private final String ddlAuto;
+
+    public SchemaVersionCheck(EntityManagerFactory entityManagerFactory, JdbcTemplate jdbcTemplate, boolean record, String ddlAuto) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.jdbcTemplate = jdbcTemplate;
+        this.record = record;
+        this.ddlAuto = ddlAuto;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (record) {
+            record();
+        } else {
+            verify();
+        }
+    }
+
+    // Recording is only trusted after Hibernate has checked (or brought) the schema in line with the mapping
+    public void record() {
+        if (ddlAuto == null || ddlAuto.isBlank() || "none".equalsIgnoreCase(ddlAuto.trim())) {
+            throw new IllegalStateException("app.schema.record=true needs spring.jpa.hibernate.ddl-auto=validate (or update), "
+                    + "so the schema is checked against the mapping before its fingerprint is recorded");
+        }
+        String fingerprint = fingerprint();
+        jdbcTemplate.execute(CREATE_TABLE);
+        Timestamp now = Timestamp.from(Instant.now());
+        if (jdbcTemplate.update("UPDATE schema_version SET fingerprint = ?, recorded_at = ? WHERE id = 1", fingerprint, now) == 0) {
+            jdbcTemplate.update("INSERT INTO schema_version (id, fingerprint, recorded_at) VALUES (1, ?, ?)", fingerprint, now);
+        }
+        log.info("Recorded schema fingerprint {} (validated with ddl-auto={})", fingerprint, ddlAuto);
+    }
+
+    public void verify() {
+        String expected = fingerprint();
+        String recorded;
+        try {
+            recorded = jdbcTemplate.queryForObject("SELECT fingerprint FROM schema_version WHERE id = 1", String.class);
+        } catch (EmptyResultDataAccessException | BadSqlGrammarException e) {
+            recorded = null; // Never recorded, or no table yet
+        }
+        if (!expected.equals(recorded)) {
+            throw new IllegalStateException("The database schema " + (recorded == null ? "has no recorded fingerprint"
+                    : "was validated for mapping " + recorded) + ", this build maps " + expected + ". Validate and record it "
+                    + "once with spring.jpa.hibernate.ddl-auto=validate (or update) and app.schema.record=true");
+        }
+        log.info("Schema fingerprint {} matches the mapping", expected);
+    }
+
+    // What ddl-auto would create beyond names and types; validate does not check these, so a change must still move
+    // the fingerprint and send the release through recording again
+    static void addConstraints(List<String> lines, String table, Class<?> type) {
+        Table mapping = type.getAnnotation(Table.class);
+        if (mapping != null) {
+            for (Index index : mapping.indexes()) {
+                lines.add(table + " #index " + index.name() + " " + index.columnList().replace(" ", "") + (index.unique() ? " unique" : ""));
+            }
+            for (UniqueConstraint unique : mapping.uniqueConstraints()) {
+                lines.add(table + " #unique " + unique.name() + " " + String.join(",", unique.columnNames()));
+            }
+        }
+        addColumns(lines, table, "", type);
+    }
+
+    private static void addColumns(List<String> lines, String table, String prefix, Class<?> type) {
+        for (Class<?> declaring = type; declaring != null && declaring != Object.class; declaring = declaring.getSuperclass()) {
+            for (Field field : declaring.getDeclaredFields()) {
+                String name = prefix + field.getName();
+                Column column = field.getAnnotation(Column.class);
+                if (column != null) {
+                    lines.add(table + " " + name + " #column length=" + column.length() + " nullable=" + column.nullable()
+                            + " unique=" + column.unique() + " precision=" + column.precision() + " scale=" + column.scale()
+                            + " definition=" + column.columnDefinition());
+                }
+                JoinColumn join = field.getAnnotation(JoinColumn.class);
+                if (join != null) {
+                    lines.add(table + " " + name + " #join nullable=" + join.nullable() + " unique=" + join.unique()
+                            + " definition=" + join.columnDefinition());
+                }
+                if (field.isAnnotationPresent(EmbeddedId.class) || field.isAnnotationPresent(Embedded.class)) {
+                    addColumns(lines, table, name + ".", field.getType());
+                }
+            }
+        }
+    }
+
+    // Stable across restarts and instances: sorted, and built from names rather than object identities
+    public String fingerprint() {
+        MetamodelImplementor metamodel = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getMetamodel();
+        List<String> lines = new ArrayList<>();
+        for (EntityPersister persister : metamodel.entityPersisters().values()) {
+            AbstractEntityPersister entity = (AbstractEntityPersister) persister;
+            String table = entity.getTableName();
+            lines.add(table + " #id " + String.join(",", entity.getIdentifierColumnNames()) + " " + entity.getIdentifierType().getName());
+            String[] properties = entity.getPropertyNames();
+            Type[] types = entity.getPropertyTypes();
+            for (int i = 0; i < properties.length; i++) {
+                lines.add(table + " " + properties[i] + " " + String.join(",", entity.getPropertyColumnNames(i)) + " " + types[i].getName());
+            }
+            addConstraints(lines, table, entity.getMappedClass());
+        }
+        for (CollectionPersister persister : metamodel.collectionPersisters().values()) {
+            AbstractCollectionPersister collection = (AbstractCollectionPersister) persister;
+            lines.add(collection.getRole() + " " + collection.getTableName() + " " + String.join(",", collection.getKeyColumnNames()));
+        }
+        Collections.sort(lines);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String line : lines) {
+                digest.update(line.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            StringBuilder hex = new StringBuilder();
+            byte[] hash = digest.digest();
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
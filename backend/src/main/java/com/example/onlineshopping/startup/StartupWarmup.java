@@ -0,0 +1,147 @@
+package com.example.onlineshopping.startup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+
+// Sends the hot read paths through the running server before the instance reports ready, so the first real requests
+// find the product JSON cache filled, the lazily created controllers and services built, Jackson's serializers
+// cached and the code at least partly compiled. Ready is only published once all runners have returned
+// (GET /api/health/readiness answers 503 until then). Runs against the server's own port; without one (server.port=-1)
+// only the serializers are prepared.
+public class StartupWarmup implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupWarmup.class);
+
+    // Sent with every warm-up request; RequestMetricsInterceptor leaves these out of the endpoint statistics
+    public static final String HEADER = "X-Warm-Up";
+
+    private final ApplicationContext context;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final int products;
+    private final int categories;
+    private final int rounds;
+    private final long maxMillis;
+
+    private long requests;
+    private long failures;
+
+    public StartupWarmup(ApplicationContext context, JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+                         int products, int categories, int rounds, long maxMillis) {
+        this.context = context;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.products = products;
+        this.categories = categories;
+        this.rounds = rounds;
+        this.maxMillis = maxMillis;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long start = System.nanoTime();
+        int serializers = prepareSerializers();
+        int port = context instanceof WebServerApplicationContext ? ((WebServerApplicationContext) context).getWebServer().getPort() : -1;
+        if (port > 0) {
+            sendRequests(port, start + maxMillis * 1_000_000);
+        }
+        log.info("Warmed up in {} ms: {} serializers, {} requests ({} failed)",
+                (System.nanoTime() - start) / 1_000_000, serializers, requests, failures);
+    }
+
+    // Builds and caches a serializer for every type a controller returns (canSerialize does exactly that)
+    private int prepareSerializers() {
+        int prepared = 0;
+        for (RequestMappingHandlerMapping mapping : context.getBeansOfType(RequestMappingHandlerMapping.class).values()) {
+            for (HandlerMethod handler : mapping.getHandlerMethods().values()) {
+                Class<?> body = bodyType(handler.getReturnType());
+                if (body != null && body != Object.class && body != byte[].class && objectMapper.canSerialize(body)) {
+                    prepared++;
+                }
+            }
+        }
+        return prepared;
+    }
+
+    // ResponseEntity<List<Product>> -> Product, CompletableFuture<ResponseEntity<Order>> -> Order
+    private static Class<?> bodyType(MethodParameter returnType) {
+        ResolvableType type = ResolvableType.forMethodParameter(returnType);
+        while (CompletionStage.class.isAssignableFrom(type.toClass()) || HttpEntity.class.isAssignableFrom(type.toClass())
+                || Collection.class.isAssignableFrom(type.toClass())) {
+            type = type.getGeneric();
+        }
+        if (Map.class.isAssignableFrom(type.toClass())) {
+            type = type.getGeneric(1);
+        }
+        return type.resolve();
+    }
+
+    private void sendRequests(int port, long deadlineNanos) {
+        List<Long> productIds = jdbcTemplate.queryForList("SELECT id FROM products ORDER BY id LIMIT ?", Long.class, products);
+        List<String> categoryNames = jdbcTemplate.queryForList(
+                "SELECT DISTINCT category FROM products WHERE category IS NOT NULL ORDER BY category LIMIT ?", String.class, categories);
+        List<String> paths = new ArrayList<>();
+        paths.add("/api/products");
+        paths.add("/api/products/facets");
+        for (String category : categoryNames) {
+            paths.add("/api/products?category=" + URLEncoder.encode(category, StandardCharsets.UTF_8));
+        }
+        for (Long id : productIds) {
+            paths.add("/api/products/" + id);
+        }
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(Duration.ofSeconds(5)).build();
+        String base = "http://localhost:" + port;
+        for (int round = 0; round < rounds; round++) {
+            for (String path : paths) {
+                if (System.nanoTime() > deadlineNanos) {
+                    log.info("Warm-up stopped after {} ms (app.startup.warmup.max-ms)", maxMillis);
+                    return;
+                }
+                send(client, URI.create(base + path));
+            }
+        }
+    }
+
+    private void send(HttpClient client, URI uri) {
+        requests++;
+        try {
+            int status = client.send(HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(10)).header(HEADER, "true").GET().build(),
+                    HttpResponse.BodyHandlers.discarding()).statusCode();
+            if (status >= 400) {
+                failures++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failures++;
+        } catch (Exception e) {
+            failures++;
+        }
+    }
+
+    public long getRequests() { return requests; }
+    public long getFailures() { return failures; }
+}
@@ -0,0 +1,132 @@
+package com.example.onlineshopping.admission;
+
+import com.example.onlineshopping.security.AuthenticatedUser;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdmissionControlFilterTests {
+
+    @Test
+    public void tokenBucket_shouldAllowBurstThenPaceAtRate() {
+        long now = 0;
+        TokenBucket bucket = new TokenBucket(2, 3, now); // One token every 500 ms, three at once
+        for (int i = 0; i < 3; i++) {
+            assertThat(bucket.tryAcquire(now)).isZero();
+        }
+        long wait = bucket.tryAcquire(now);
+        assertThat(wait).isEqualTo(TimeUnit.MILLISECONDS.toNanos(500));
+        assertThat(bucket.tryAcquire(now + wait)).isZero();
+        assertThat(bucket.tryAcquire(now + wait)).isPositive();
+        assertThat(bucket.isFull(now + wait)).isFalse();
+        assertThat(bucket.isFull(now + TimeUnit.SECONDS.toNanos(2))).isTrue();
+    }
+
+    @Test
+    public void ordersBeyondUsersRate_shouldGet429WithRetryAfter() throws Exception {
+        AdmissionControlFilter filter = filter(10, 10, 0.5, 2);
+
+        assertThat(placeOrder(filter, 1L).getStatus()).isEqualTo(200);
+        assertThat(placeOrder(filter, 1L).getStatus()).isEqualTo(200);
+        MockHttpServletResponse limited = placeOrder(filter, 1L);
+        assertThat(limited.getStatus()).isEqualTo(429);
+        assertThat(limited.getHeader("Retry-After")).isEqualTo("2");
+
+        // Other users have their own bucket, and reads are never limited
+        assertThat(placeOrder(filter, 2L).getStatus()).isEqualTo(200);
+        MockHttpServletResponse read = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/orders"), read, new MockFilterChain());
+        assertThat(read.getStatus()).isEqualTo(200);
+
+        assertThat(filter.getGroups().get(0).getRateLimited()).isEqualTo(1);
+        assertThat(filter.getGroups().get(0).getAdmitted()).isEqualTo(3);
+    }
+
+    @Test
+    public void writesBeyondConcurrencyLimit_shouldBeShedUntilAsyncRequestCompletes() throws Exception {
+        AdmissionControlFilter filter = filter(1, 1, 100, 100);
+
+        // An order still in flight asynchronously keeps its permit after the filter returns
+        MockHttpServletRequest pending = orderRequest(1L);
+        pending.setAsyncSupported(true);
+        FilterChain startAsync = (req, res) -> req.startAsync();
+        filter.doFilter(pending, new MockHttpServletResponse(), startAsync);
+        assertThat(filter.getGroups().get(2).getInFlight()).isEqualTo(1);
+
+        MockHttpServletResponse shed = placeOrder(filter, 2L);
+        assertThat(shed.getStatus()).isEqualTo(503);
+        assertThat(shed.getHeader("Retry-After")).isEqualTo("1");
+        MockHttpServletResponse otherWrite = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("PUT", "/api/products/1"), otherWrite, new MockFilterChain());
+        assertThat(otherWrite.getStatus()).isEqualTo(503);
+
+        ((MockAsyncContext) pending.getAsyncContext()).complete();
+        assertThat(filter.getGroups().get(2).getInFlight()).isZero();
+        assertThat(placeOrder(filter, 2L).getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    public void loginsAndBulkWrites_shouldHaveTheirOwnLimitsAndLeaveOrdersTheirSlots() throws Exception {
+        AdmissionControlFilter filter = filter(1, 1, 100, 100);
+
+        // A login flood from one address runs out of its own bucket
+        assertThat(login(filter, "10.0.0.9").getStatus()).isEqualTo(200);
+        assertThat(login(filter, "10.0.0.9").getStatus()).isEqualTo(200);
+        assertThat(login(filter, "10.0.0.9").getStatus()).isEqualTo(429);
+        assertThat(login(filter, "10.0.0.10").getStatus()).isEqualTo(200);
+
+        // A login and an import in flight hold no "writes" slot, so an order still gets in
+        MockHttpServletRequest slowLogin = new MockHttpServletRequest("POST", "/api/users/login");
+        slowLogin.setRemoteAddr("10.0.0.11");
+        slowLogin.setAsyncSupported(true);
+        filter.doFilter(slowLogin, new MockHttpServletResponse(), (req, res) -> req.startAsync());
+        MockHttpServletRequest importing = new MockHttpServletRequest("POST", "/api/products/imports");
+        importing.setAsyncSupported(true);
+        filter.doFilter(importing, new MockHttpServletResponse(), (req, res) -> req.startAsync());
+        assertThat(placeOrder(filter, 1L).getStatus()).isEqualTo(200);
+
+        // Each is capped on its own
+        assertThat(login(filter, "10.0.0.12").getStatus()).isEqualTo(503);
+        MockHttpServletResponse secondImport = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("POST", "/api/products/imports"), secondImport, new MockFilterChain());
+        assertThat(secondImport.getStatus()).isEqualTo(503);
+        assertThat(filter.getGroups().get(2).getInFlight()).isZero();
+    }
+
+    private static MockHttpServletResponse login(AdmissionControlFilter filter, String address) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/users/login");
+        request.setRemoteAddr(address);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    private static AdmissionControlFilter filter(int writes, int orders, double ordersRate, int ordersBurst) {
+        return new AdmissionControlFilter(
+                new AdmissionGroup("orders", orders, ordersRate, ordersBurst, 100),
+                new AdmissionGroup("registration", 1, 0.1, 1, 100),
+                new AdmissionGroup("writes", writes, 0, 1, 0),
+                new AdmissionGroup("login", 1, 1, 2, 100),
+                new AdmissionGroup("bulk", 1, 0, 1, 0));
+    }
+
+    private static MockHttpServletResponse placeOrder(AdmissionControlFilter filter, Long userId) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(orderRequest(userId), response, new MockFilterChain());
+        return response;
+    }
+
+    private static MockHttpServletRequest orderRequest(Long userId) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/orders");
+        request.setAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE, new AuthenticatedUser(userId, "token-" + userId, Instant.now(), Instant.now().plusSeconds(60)));
+        return request;
+    }
+}
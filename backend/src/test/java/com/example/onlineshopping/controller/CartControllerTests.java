@@ -0,0 +1,130 @@
+package com.example.onlineshopping.controller;
+
+import com.example.onlineshopping.model.Product;
+import com.example.onlineshopping.model.User;
+import com.example.onlineshopping.repository.ProductRepository;
+import com.example.onlineshopping.repository.UserRepository;
+import com.example.onlineshopping.security.TokenService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.math.BigDecimal;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class CartControllerTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private TokenService tokenService;
+
+    private String bearer;
+    private Product pen;
+    private Product notebook;
+
+    @BeforeEach
+    public void seed() throws Exception {
+        User shopper = userRepository.findByUsername("shopper")
+                .orElseGet(() -> userRepository.save(new User(null, "shopper", "secret", "shopper@example.com", null, null, null, null)));
+        bearer = "Bearer " + tokenService.issue(shopper.getId());
+        pen = productRepository.save(new Product(null, "Pen", null, new BigDecimal("1.50"), "Office", null, 100));
+        notebook = productRepository.save(new Product(null, "Notebook", null, new BigDecimal("4.00"), "Office", null, 100));
+        mockMvc.perform(delete("/api/cart").header("Authorization", bearer)).andExpect(status().isNoContent());
+    }
+
+    @Test
+    public void checkout_shouldPriceTheCartFromCurrentProductsAndEmptyIt() throws Exception {
+        mockMvc.perform(post("/api/cart/items").header("Authorization", bearer)
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"productId\":" + pen.getId() + ",\"quantity\":2}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalAmount", is(3.0)));
+        mockMvc.perform(put("/api/cart/items/" + notebook.getId()).header("Authorization", bearer)
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"quantity\":3}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(2)))
+                .andExpect(jsonPath("$.totalAmount", is(15.0)));
+
+        pen.setPrice(new BigDecimal("2.00")); // Repriced after it went into the cart
+        productRepository.save(pen);
+
+        MvcResult started = mockMvc.perform(post("/api/cart/checkout").header("Authorization", bearer)
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"shippingAddress\":\"1 Main St\",\"billingAddress\":\"1 Main St\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.totalAmount", is(16.0)));
+
+        mockMvc.perform(get("/api/cart").header("Authorization", bearer))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(0)));
+    }
+
+    @Test
+    public void checkout_shouldOrderTheCartOnceAndGiveItBackWhenTheOrderFails() throws Exception {
+        mockMvc.perform(put("/api/cart/items/" + pen.getId()).header("Authorization", bearer)
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"quantity\":101}"))
+                .andExpect(status().isOk());
+        MvcResult outOfStock = checkout();
+        mockMvc.perform(asyncDispatch(outOfStock)).andExpect(status().is4xxClientError());
+        mockMvc.perform(get("/api/cart").header("Authorization", bearer))
+                .andExpect(jsonPath("$.items", hasSize(1)));
+
+        mockMvc.perform(put("/api/cart/items/" + pen.getId()).header("Authorization", bearer)
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"quantity\":1}"))
+                .andExpect(status().isOk());
+        // A double click: both requests are in before either order is saved
+        MvcResult first = checkout();
+        MvcResult second = checkout();
+        mockMvc.perform(asyncDispatch(first)).andExpect(status().isCreated());
+        mockMvc.perform(asyncDispatch(second)).andExpect(status().isBadRequest());
+    }
+
+    private MvcResult checkout() throws Exception {
+        return mockMvc.perform(post("/api/cart/checkout").header("Authorization", bearer)
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"shippingAddress\":\"1 Main St\",\"billingAddress\":\"1 Main St\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+    }
+
+    @Test
+    public void cart_shouldRejectUnknownProductsEmptyCheckoutAndAnonymousCallers() throws Exception {
+        mockMvc.perform(post("/api/cart/items").header("Authorization", bearer)
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"productId\":999999999,\"quantity\":1}"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(put("/api/cart/items/" + pen.getId()).header("Authorization", bearer)
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"quantity\":-1}"))
+                .andExpect(status().isBadRequest());
+        MvcResult empty = mockMvc.perform(post("/api/cart/checkout").header("Authorization", bearer)
+                        .contentType(MediaType.APPLICATION_JSON).content("{}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(empty)).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/cart")).andExpect(status().isUnauthorized());
+    }
+}
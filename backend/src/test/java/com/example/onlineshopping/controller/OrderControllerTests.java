@@ -0,0 +1,256 @@
+package com.example.onlineshopping.controller;
+
+import com.example.onlineshopping.metrics.EndpointMetrics;
+import com.example.onlineshopping.metrics.EndpointMetrics.EndpointSnapshot;
+import com.example.onlineshopping.model.Order;
+import com.example.onlineshopping.model.OrderStatus;
+import com.example.onlineshopping.model.User;
+import com.example.onlineshopping.repository.OrderRepository;
+import com.example.onlineshopping.repository.UserRepository;
+import com.example.onlineshopping.security.TokenService;
+import com.example.onlineshopping.service.OrderStatusService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+// Runs against an embedded database so the number of SQL statements per request can be asserted
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class OrderControllerTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private EndpointMetrics endpointMetrics;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private OrderStatusService orderStatusService;
+
+    private Statistics statistics;
+    private User alice;
+    private User bob;
+    private User carol;
+
+    @BeforeEach
+    public void seed() {
+        orderRepository.deleteAll();
+        userRepository.deleteAll();
+        alice = userRepository.save(new User(null, "alice", "pw-alice", "alice@example.com", null, null, null, null));
+        bob = userRepository.save(new User(null, "bob", "pw-bob", "bob@example.com", null, null, null, null));
+        carol = userRepository.save(new User(null, "carol", "pw-carol", "carol@example.com", null, null, null, null));
+        LocalDateTime base = LocalDateTime.of(2024, 5, 1, 12, 0);
+        for (int i = 0; i < 9; i++) {
+            User owner = i % 3 == 0 ? alice : (i % 3 == 1 ? bob : carol);
+            orderRepository.save(newOrder(owner, base.plusMinutes(i)));
+        }
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    public void getAllOrders_shouldUseOneStatementForManyUsers() throws Exception {
+        mockMvc.perform(get("/api/orders"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(9)))
+                .andExpect(jsonPath("$[0].username", is("carol"))) // Newest first
+                .andExpect(jsonPath("$[0].password").doesNotExist())
+                .andExpect(jsonPath("$[0].user").doesNotExist());
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void getAllOrders_shouldBeRecordedInEndpointMetrics() throws Exception {
+        endpointMetrics.reset();
+        mockMvc.perform(get("/api/orders")).andExpect(status().isOk());
+        mockMvc.perform(get("/api/orders")).andExpect(status().isOk());
+
+        EndpointSnapshot snapshot = endpointMetrics.snapshot().stream()
+                .filter(s -> s.getEndpoint().equals("GET /api/orders"))
+                .findFirst().orElseThrow(AssertionError::new);
+        assertThat(snapshot.getCount()).isEqualTo(2);
+        assertThat(snapshot.getStatementsPerRequest()).isEqualTo(1.0);
+        assertThat(snapshot.getP99Micros()).isPositive();
+    }
+
+    @Test
+    public void getAllOrders_shouldPageWithKeysetCursor() throws Exception {
+        MvcResult first = mockMvc.perform(get("/api/orders").param("limit", "4"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(4)))
+                .andExpect(header().exists("X-Next-Cursor"))
+                .andReturn();
+        String cursor = first.getResponse().getHeader("X-Next-Cursor");
+
+        mockMvc.perform(get("/api/orders").param("limit", "4").param("before", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(4)));
+        mockMvc.perform(get("/api/orders").param("before", "not-a-cursor"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void getOrdersByUserId_shouldUseOneStatement() throws Exception {
+        mockMvc.perform(get("/api/orders/user/" + bob.getId()).header("Authorization", bearer(bob.getId())))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andExpect(jsonPath("$[0].userId", is(bob.getId().intValue())));
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void getOrdersByUserId_whenUserDoesNotExist_shouldReturnNotFound() throws Exception {
+        Long missing = carol.getId() + 100;
+        mockMvc.perform(get("/api/orders/user/" + missing).header("Authorization", bearer(missing)))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void getOrdersByUserId_shouldOnlyServeTheTokenOwner() throws Exception {
+        mockMvc.perform(get("/api/orders/user/" + bob.getId()))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/orders/user/" + bob.getId()).header("Authorization", bearer(alice.getId())))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/orders/user/" + bob.getId()).header("Authorization", "Bearer forged.token"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    public void getOrderById_shouldExposeUserIdButNotTheUser() throws Exception {
+        Order order = orderRepository.findAll().get(0);
+        mockMvc.perform(get("/api/orders/" + order.getId()).header("Authorization", bearer(order.getUserId())))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.userId").exists())
+                .andExpect(jsonPath("$.user").doesNotExist());
+    }
+
+    @Test
+    public void exportOrders_shouldStreamFilteredNdjsonInOneStatement() throws Exception {
+        String all = mockMvc.perform(get("/api/orders/export"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString();
+        String[] lines = all.split("\n");
+        assertThat(lines).hasSize(9);
+        assertThat(lines[0]).contains("\"username\":\"alice\"").doesNotContain("password");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1); // Buyers come with the orders
+
+        Order shipped = orderRepository.findAll().stream().filter(o -> o.getOrderDate().getMinute() == 4)
+                .findFirst().orElseThrow(AssertionError::new);
+        shipped.setStatus("SHIPPED");
+        orderRepository.save(shipped);
+        byte[] gzipped = mockMvc.perform(get("/api/orders/export").header("Accept-Encoding", "gzip")
+                        .param("from", "2024-05-01T12:02").param("to", "2024-05-01T12:07").param("status", "pending"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andReturn().getResponse().getContentAsByteArray();
+        String filtered = new String(new GZIPInputStream(new ByteArrayInputStream(gzipped)).readAllBytes(), StandardCharsets.UTF_8);
+        assertThat(filtered.split("\n")).hasSize(4); // Minutes 2..6, less the shipped one
+        mockMvc.perform(get("/api/orders/export").header("Accept-Encoding", "gzip;q=0, identity"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"));
+        assertThat(OrderController.acceptsGzip("br;q=1.0, GZip;q=0.5")).isTrue();
+        assertThat(OrderController.acceptsGzip("*;q=0.1")).isTrue();
+        assertThat(OrderController.acceptsGzip("*, gzip;q=0")).isFalse();
+        assertThat(OrderController.acceptsGzip("deflate")).isFalse();
+
+        mockMvc.perform(get("/api/orders/export").param("from", "yesterday")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/orders/export").param("status", "LOST")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void transitionOrders_shouldReportUpdatedConflictedAndMissingIds() throws Exception {
+        List<Long> ids = orderRepository.findAll().stream().map(Order::getId).sorted().collect(Collectors.toList());
+        Set<Long> alreadyProcessing = new HashSet<>(ids.subList(0, 3));
+        orderStatusService.transition(alreadyProcessing, OrderStatus.PENDING, OrderStatus.PROCESSING);
+        List<Long> requested = new ArrayList<>(ids);
+        requested.add(ids.get(ids.size() - 1) + 1000);
+
+        ReflectionTestUtils.setField(orderStatusService, "chunkSize", 4); // Several chunks, each with a mix of outcomes
+        try {
+            mockMvc.perform(post("/api/orders/status-transitions").contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"orderIds\":" + requested + ",\"from\":\"PENDING\",\"to\":\"PROCESSING\"}"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.updated", hasSize(6)))
+                    .andExpect(jsonPath("$.conflicted", hasSize(3)))
+                    .andExpect(jsonPath("$.notFound[0]", is(requested.get(requested.size() - 1).intValue())));
+        } finally {
+            ReflectionTestUtils.setField(orderStatusService, "chunkSize", 1000);
+        }
+        assertThat(orderRepository.findAll()).extracting(Order::getStatus).containsOnly("PROCESSING");
+
+        mockMvc.perform(post("/api/orders/status-transitions").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"orderIds\":" + requested + ",\"from\":\"PROCESSING\",\"to\":\"DELIVERED\"}"))
+                .andExpect(status().isBadRequest()); // Has to be shipped first
+    }
+
+    @Test
+    public void updateOrderStatus_shouldOnlyAllowLegalTransitions() throws Exception {
+        Order order = orderRepository.findAll().get(0);
+        mockMvc.perform(put("/api/orders/" + order.getId() + "/status").content("SHIPPED"))
+                .andExpect(status().isConflict());
+        mockMvc.perform(put("/api/orders/" + order.getId() + "/status").content("on its way"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(put("/api/orders/" + order.getId() + "/status").content("processing"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status", is("PROCESSING")));
+        assertThat(orderRepository.findById(order.getId()).orElseThrow(AssertionError::new).getStatus()).isEqualTo("PROCESSING");
+    }
+
+    private String bearer(Long userId) {
+        return "Bearer " + tokenService.issue(userId);
+    }
+
+    private static Order newOrder(User user, LocalDateTime orderDate) {
+        Order order = new Order();
+        order.setUser(user);
+        order.setOrderDate(orderDate);
+        order.setStatus("PENDING");
+        order.setTotalAmount(new BigDecimal("10.00"));
+        return order;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.onlineshopping.controller;
+
+import com.example.onlineshopping.event.ProductChangedEvent;
+import com.example.onlineshopping.event.StockLevelsChangedEvent;
+import com.example.onlineshopping.model.Product;
+import com.example.onlineshopping.service.ProductChangeFeed;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+// The feed is flushed by hand here (the test profile sets a long coalescing window)
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class ProductChangeFeedControllerTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProductChangeFeed productChangeFeed;
+
+    @Test
+    public void subscriber_shouldGetOneCoalescedEventPerProductInItsCategories() throws Exception {
+        MvcResult books = subscribe("/api/products/changes?category=Books", null);
+
+        productChangeFeed.onProductChanged(ProductChangedEvent.updated("Books", product(9001L, "Books", "10.00", 5)));
+        productChangeFeed.onProductChanged(ProductChangedEvent.updated("Books", product(9001L, "Books", "12.50", 4)));
+        productChangeFeed.onProductChanged(ProductChangedEvent.updated("Toys", product(9002L, "Toys", "99.00", 1)));
+        productChangeFeed.onStockLevelsChanged(new StockLevelsChangedEvent(Collections.singletonMap(9001L, "Books")));
+        // Moved into Books: the old category's watchers are told too
+        productChangeFeed.onProductChanged(ProductChangedEvent.updated("Books", product(9003L, "Garden", "3.00", 7)));
+        productChangeFeed.flush();
+
+        String body = awaitContent(books, "\"productId\":9003");
+        assertThat(count(body, "event:change")).isEqualTo(2);
+        assertThat(body).contains("\"type\":\"updated\",\"productId\":9001,\"category\":\"Books\",\"previousCategory\":null,\"price\":12.50,\"stock\":4");
+        assertThat(body).contains("\"productId\":9003,\"category\":\"Garden\",\"previousCategory\":\"Books\"");
+        assertThat(body).doesNotContain("\"productId\":9002");
+    }
+
+    @Test
+    public void reconnectingSubscriber_shouldResumeAfterLastEventIdOrBeToldToReset() throws Exception {
+        MvcResult live = subscribe("/api/products/changes?category=Resume", null);
+        productChangeFeed.onProductChanged(ProductChangedEvent.created(product(9101L, "Resume", "1.00", 1)));
+        productChangeFeed.flush();
+        Matcher id = Pattern.compile("id:(\\S+)\\nevent:change").matcher(awaitContent(live, "\"productId\":9101"));
+        assertThat(id.find()).isTrue();
+
+        productChangeFeed.onProductChanged(ProductChangedEvent.deleted(9102L, "Resume"));
+        productChangeFeed.flush();
+
+        String resumed = awaitContent(subscribe("/api/products/changes?category=Resume", id.group(1)), "\"productId\":9102");
+        assertThat(resumed).contains("\"type\":\"deleted\"").doesNotContain("\"productId\":9101");
+
+        String stale = awaitContent(subscribe("/api/products/changes?category=Resume", "previous-process-1"), "event:reset");
+        assertThat(stale).doesNotContain("event:change");
+    }
+
+    private MvcResult subscribe(String url, String lastEventId) throws Exception {
+        return mockMvc.perform(lastEventId == null ? get(url) : get(url).header("Last-Event-ID", lastEventId))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+    }
+
+    // Events are written by the feed's sender threads
+    private static String awaitContent(MvcResult result, String expected) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        String body = result.getResponse().getContentAsString();
+        while (!body.contains(expected) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            body = result.getResponse().getContentAsString();
+        }
+        assertThat(body).contains(expected);
+        return body;
+    }
+
+    private static int count(String body, String token) {
+        int count = 0;
+        for (int at = body.indexOf(token); at >= 0; at = body.indexOf(token, at + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    private static Product product(Long id, String category, String price, int stock) {
+        return new Product(id, "Product " + id, null, new BigDecimal(price), category, null, stock);
+    }
+}
@@ -1,23 +1,41 @@
 package com.example.onlineshopping.controller;
 
+import com.example.onlineshopping.dto.CatalogStamp;
 import com.example.onlineshopping.model.Product;
 import com.example.onlineshopping.repository.ProductRepository;
+import com.example.onlineshopping.service.CategoryFacetCounter;
+import com.example.onlineshopping.service.EntityLookupService;
+import com.example.onlineshopping.service.ProductFilterService;
+import com.example.onlineshopping.service.ProductJsonCache;
+import com.example.onlineshopping.service.ProductSearchIndex;
+import com.example.onlineshopping.service.ProductStreamingService;
+import com.example.onlineshopping.service.StockReservationService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.hamcrest.Matchers.hasSize;
@@ -32,6 +50,27 @@ public class ProductControllerTests {
     @MockBean // Mocks ProductRepository, Spring Boot will inject this mock
     private ProductRepository productRepository;
 
+    @MockBean
+    private ProductStreamingService productStreamingService;
+
+    @MockBean
+    private ProductSearchIndex productSearchIndex;
+
+    @MockBean
+    private StockReservationService stockReservationService;
+
+    @MockBean
+    private ProductJsonCache productJsonCache;
+
+    @MockBean
+    private EntityLookupService entityLookupService;
+
+    @MockBean
+    private ProductFilterService productFilterService;
+
+    @MockBean
+    private CategoryFacetCounter categoryFacetCounter;
+
     @Autowired
     private ObjectMapper objectMapper; // For converting objects to JSON strings
 
@@ -41,20 +80,68 @@ public class ProductControllerTests {
         Product product2 = new Product(2L, "Coffee Maker", "Makes great coffee", new BigDecimal("79.99"), "Appliances", "img2.jpg", 25);
         List<Product> allProducts = Arrays.asList(product1, product2);
 
-        given(productRepository.findAll()).willReturn(allProducts);
+        given(productRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), any(Pageable.class))).willReturn(allProducts);
 
         mockMvc.perform(get("/api/products"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$", hasSize(2)))
                 .andExpect(jsonPath("$[0].name", is(product1.getName())))
-                .andExpect(jsonPath("$[1].name", is(product2.getName())));
+                .andExpect(jsonPath("$[1].name", is(product2.getName())))
+                .andExpect(header().doesNotExist("X-Next-Cursor"));
+    }
+
+    @Test
+    public void getAllProducts_whenPageIsFull_shouldReturnNextCursor() throws Exception {
+        Product product1 = new Product(3L, "Laptop Pro", "High-end laptop", new BigDecimal("1200.00"), "Electronics", "img1.jpg", 10);
+        Product product2 = new Product(7L, "Coffee Maker", "Makes great coffee", new BigDecimal("79.99"), "Appliances", "img2.jpg", 25);
+
+        given(productRepository.findByIdGreaterThanOrderByIdAsc(eq(2L), eq(PageRequest.of(0, 2)))).willReturn(Arrays.asList(product1, product2));
+
+        mockMvc.perform(get("/api/products").param("after", "2").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(header().string("X-Next-Cursor", "7"));
+        mockMvc.perform(get("/api/products").param("after", "seven")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void getAllProducts_byCategoryWithLimit_shouldPageThroughTheFilter() throws Exception {
+        Product first = new Product(3L, "Laptop Pro", null, new BigDecimal("1200.00"), "Electronics", null, 10);
+        Product second = new Product(5L, "Tablet", null, new BigDecimal("300.00"), "Electronics", null, 4);
+        given(productFilterService.find(any(ProductFilterService.Filter.class), any(), eq(2))).willReturn(Arrays.asList(first, second));
+
+        mockMvc.perform(get("/api/products").param("category", "Electronics").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(header().string("X-Next-Cursor", "5"));
+        mockMvc.perform(get("/api/products").param("category", "Electronics").param("limit", "2").param("after", "5"))
+                .andExpect(status().isOk());
+        verify(productRepository, never()).findByCategory(anyString());
+        verify(productRepository, never()).findStampByCategory(anyString());
+    }
+
+    @Test
+    public void getAllProducts_withPriceFilterAndSort_shouldUseTheFilterAndReturnAPriceCursor() throws Exception {
+        Product cheap = new Product(7L, "Mouse", null, new BigDecimal("19.90"), "Electronics", null, 3);
+        Product dear = new Product(4L, "Keyboard", null, new BigDecimal("49.00"), "Electronics", null, 1);
+        given(productFilterService.find(any(ProductFilterService.Filter.class), any(), eq(2))).willReturn(Arrays.asList(cheap, dear));
+
+        mockMvc.perform(get("/api/products").param("category", "Electronics").param("name", "o")
+                        .param("minPrice", "10").param("inStock", "true").param("sort", "price_asc").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(header().string("X-Next-Cursor", "49.00_4"));
+        verify(productRepository, never()).findByCategory(anyString());
+
+        mockMvc.perform(get("/api/products").param("sort", "cheapest")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/products").param("sort", "price_desc").param("after", "12")).andExpect(status().isBadRequest());
     }
 
     @Test
     public void getProductById_whenProductExists_shouldReturnProduct() throws Exception {
         Product product = new Product(1L, "Laptop Pro", "High-end laptop", new BigDecimal("1200.00"), "Electronics", "img1.jpg", 10);
-        given(productRepository.findById(1L)).willReturn(Optional.of(product));
+        given(entityLookupService.findProductById(1L)).willReturn(Optional.of(product));
 
         mockMvc.perform(get("/api/products/1"))
                 .andExpect(status().isOk())
@@ -63,7 +150,7 @@ public class ProductControllerTests {
 
     @Test
     public void getProductById_whenProductDoesNotExist_shouldReturnNotFound() throws Exception {
-        given(productRepository.findById(1L)).willReturn(Optional.empty());
+        given(entityLookupService.findProductById(1L)).willReturn(Optional.empty());
 
         mockMvc.perform(get("/api/products/1"))
                 .andExpect(status().isNotFound());
@@ -102,6 +189,47 @@ public class ProductControllerTests {
                 .andExpect(jsonPath("$.description", is(updatedDetails.getDescription())));
     }
 
+    @Test
+    public void updateProduct_withoutStockQuantity_shouldLeaveStockAlone() throws Exception {
+        Product existingProduct = new Product(1L, "Old Name", "Old desc", BigDecimal.TEN, "OldCat", "old.jpg", 5);
+        given(productRepository.findById(1L)).willReturn(Optional.of(existingProduct));
+        given(productRepository.save(any(Product.class))).willAnswer(invocation -> invocation.getArgument(0));
+
+        mockMvc.perform(put("/api/products/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"New Name\",\"price\":10,\"category\":\"OldCat\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.stockQuantity", is(5)));
+        verify(stockReservationService, never()).setStockLevel(anyLong(), anyInt());
+    }
+
+    @Test
+    public void updateProduct_fromAStaleCopy_shouldBeRejected() throws Exception {
+        Product existingProduct = new Product(1L, "Name", "Desc", BigDecimal.TEN, "Cat", "img.jpg", 3);
+        existingProduct.setVersion(4); // A stock flush landed after the admin loaded version 3
+        given(productRepository.findById(1L)).willReturn(Optional.of(existingProduct));
+
+        mockMvc.perform(put("/api/products/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Name\",\"price\":10,\"stockQuantity\":5,\"version\":3}"))
+                .andExpect(status().isConflict());
+        mockMvc.perform(put("/api/products/1")
+                        .header("If-Match", "\"1-3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Name\",\"price\":10,\"stockQuantity\":5}"))
+                .andExpect(status().isPreconditionFailed());
+        verify(productRepository, never()).save(any(Product.class));
+        verify(stockReservationService, never()).setStockLevel(anyLong(), anyInt());
+
+        given(productRepository.save(any(Product.class))).willAnswer(invocation -> invocation.getArgument(0));
+        mockMvc.perform(put("/api/products/1")
+                        .header("If-Match", "\"1-4\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Name\",\"price\":10,\"stockQuantity\":5,\"version\":4}"))
+                .andExpect(status().isOk());
+        verify(stockReservationService).setStockLevel(1L, 5);
+    }
+
     @Test
     public void updateProduct_whenProductDoesNotExist_shouldReturnNotFound() throws Exception {
         given(productRepository.findById(anyLong())).willReturn(Optional.empty());
@@ -115,20 +243,110 @@ public class ProductControllerTests {
 
     @Test
     public void deleteProduct_whenProductExists_shouldReturnNoContent() throws Exception {
-        given(productRepository.existsById(1L)).willReturn(true);
-        // BDDMockito.doNothing().when(productRepository).deleteById(1L); // For void methods
+        Product product = new Product(1L, "Laptop Pro", "High-end laptop", new BigDecimal("1200.00"), "Electronics", "img1.jpg", 10);
+        given(productRepository.findById(1L)).willReturn(Optional.of(product));
 
         mockMvc.perform(delete("/api/products/1"))
                 .andExpect(status().isNoContent());
+        verify(productRepository).delete(product);
     }
 
     @Test
     public void deleteProduct_whenProductDoesNotExist_shouldReturnNotFound() throws Exception {
-        given(productRepository.existsById(1L)).willReturn(false);
+        given(productRepository.findById(1L)).willReturn(Optional.empty());
 
         mockMvc.perform(delete("/api/products/1"))
                 .andExpect(status().isNotFound());
     }
 
-    // TODO: Add tests for filtering (e.g., get /api/products?category=Electronics)
+    @Test
+    public void getAllProducts_byName_shouldReturnProductsInIndexRankOrder() throws Exception {
+        Product product1 = new Product(1L, "Laptop Pro", "High-end laptop", new BigDecimal("1200.00"), "Electronics", "img1.jpg", 10);
+        Product product2 = new Product(2L, "Laptop Bag", "Fits a laptop", new BigDecimal("49.00"), "Accessories", "img2.jpg", 30);
+
+        given(productSearchIndex.isReady()).willReturn(true);
+        given(productSearchIndex.search(eq("laptop"), isNull(), eq(2)))
+                .willReturn(new ProductSearchIndex.Ranked(Arrays.asList(2L, 1L), ProductSearchIndex.Cursor.parse("150.10.1")));
+        given(productRepository.findAllById(Arrays.asList(2L, 1L))).willReturn(Arrays.asList(product1, product2));
+
+        mockMvc.perform(get("/api/products").param("name", "laptop").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id", is(2)))
+                .andExpect(jsonPath("$[1].id", is(1)))
+                .andExpect(header().string("X-Next-Cursor", "150.10.1"));
+
+        given(productSearchIndex.search(eq("laptop"), any(ProductSearchIndex.Cursor.class), eq(2)))
+                .willReturn(new ProductSearchIndex.Ranked(Collections.emptyList(), null));
+        mockMvc.perform(get("/api/products").param("name", "laptop").param("limit", "2").param("after", "150.10.1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(0)))
+                .andExpect(header().doesNotExist("X-Next-Cursor"));
+        mockMvc.perform(get("/api/products").param("name", "laptop").param("after", "7")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void getAllProducts_byName_whenIndexNotReady_shouldGoThroughTheFilter() throws Exception {
+        Product product = new Product(1L, "Laptop Pro", "High-end laptop", new BigDecimal("1200.00"), "Electronics", "img1.jpg", 10);
+        given(productFilterService.find(any(ProductFilterService.Filter.class), isNull(), eq(50))).willReturn(Arrays.asList(product));
+
+        mockMvc.perform(get("/api/products").param("name", "laptop"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].name", is(product.getName())));
+    }
+
+    @Test
+    public void getAllProducts_byCategory_shouldSerializeOnceAndCacheTheBytes() throws Exception {
+        Product product = new Product(1L, "Laptop Pro", "High-end laptop", new BigDecimal("1200.00"), "Electronics", "img1.jpg", 10);
+        given(productRepository.findByCategory("Electronics")).willReturn(Arrays.asList(product));
+        given(productRepository.findStampByCategory("Electronics")).willReturn(new CatalogStamp(1L, 1L, 0L, 961L, null));
+        given(productJsonCache.generation()).willReturn(3L);
+
+        mockMvc.perform(get("/api/products").param("category", "Electronics"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].name", is(product.getName())))
+                .andExpect(header().string("ETag", "W/\"1-1-0-3c1\""));
+        verify(productJsonCache).put(eq("category:Electronics"), any(ProductJsonCache.Entry.class), eq(3L));
+    }
+
+    @Test
+    public void getAllProducts_byCategory_whenEtagMatches_shouldNotLoadTheProducts() throws Exception {
+        given(productRepository.findStampByCategory("Electronics")).willReturn(new CatalogStamp(2L, 3L, 5L, 7L, null));
+
+        mockMvc.perform(get("/api/products").param("category", "Electronics").header("If-None-Match", "W/\"2-3-5-7\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        verify(productRepository, never()).findByCategory(anyString());
+    }
+
+    @Test
+    public void getProductById_whenEtagMatches_shouldReturnNotModified() throws Exception {
+        Product product = new Product(1L, "Laptop Pro", "High-end laptop", new BigDecimal("1200.00"), "Electronics", "img1.jpg", 10);
+        product.setVersion(4);
+        given(entityLookupService.findProductById(1L)).willReturn(Optional.of(product));
+
+        mockMvc.perform(get("/api/products/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1-4\""));
+        mockMvc.perform(get("/api/products/1").header("If-None-Match", "\"1-4\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        mockMvc.perform(get("/api/products/1").header("If-None-Match", "\"1-3\""))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void getProductById_whenCached_shouldSkipTheRepository() throws Exception {
+        given(productJsonCache.get("id:1")).willReturn(new ProductJsonCache.Entry(
+                "{\"id\":1,\"name\":\"Laptop Pro\"}".getBytes(StandardCharsets.UTF_8), "\"1-0\"", -1));
+
+        mockMvc.perform(get("/api/products/1"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.name", is("Laptop Pro")));
+        verify(entityLookupService, never()).findProductById(anyLong());
+    }
 }
@@ -0,0 +1,138 @@
+package com.example.onlineshopping.controller;
+
+import com.example.onlineshopping.model.User;
+import com.example.onlineshopping.repository.OrderRepository;
+import com.example.onlineshopping.repository.UserRepository;
+import com.example.onlineshopping.service.UserIdentityIndex;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.example.onlineshopping.service.UserIdentityIndex;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class UserControllerTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserIdentityIndex userIdentityIndex;
+
+    @BeforeEach
+    public void clean() {
+        orderRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void registerLoginLogout_shouldHashPasswordAndIssueRevocableToken() throws Exception {
+        mockMvc.perform(post("/api/users/register").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"username\":\"dave\",\"password\":\"s3cret\",\"email\":\"dave@example.com\"}"))
+                .andExpect(status().isCreated());
+        User saved = userRepository.findByUsername("dave").orElseThrow(AssertionError::new);
+        assertThat(saved.getPassword()).startsWith("pbkdf2$").doesNotContain("s3cret");
+
+        String token = login("dave", "s3cret");
+        mockMvc.perform(get("/api/users/" + saved.getId()).header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.username").value("dave"));
+
+        mockMvc.perform(post("/api/users/logout").header("Authorization", "Bearer " + token))
+                .andExpect(status().isNoContent());
+        mockMvc.perform(get("/api/users/" + saved.getId()).header("Authorization", "Bearer " + token))
+                .andExpect(status().isUnauthorized())
+                .andExpect(header().exists("WWW-Authenticate"));
+    }
+
+    @Test
+    public void register_shouldRejectTakenNamesWhetherOrNotTheIndexKnowsThem() throws Exception {
+        register("heidi", "heidi@example.com").andExpect(status().isCreated());
+        long skipped = userIdentityIndex.getLookupsSkipped();
+
+        register("heidi", "other@example.com").andExpect(status().isConflict());
+        register("someone", "heidi@example.com").andExpect(status().isConflict());
+        assertThat(userIdentityIndex.getLookupsSkipped()).isEqualTo(skipped); // Both went to the database
+
+        // Inserted behind the index's back: the unique constraint still catches it
+        userRepository.save(new User(null, "ivan", "pw", "ivan@example.com", null, null, null, null));
+        register("ivan", "ivan2@example.com").andExpect(status().isConflict());
+
+        register("judy", "judy@example.com").andExpect(status().isCreated());
+        assertThat(userIdentityIndex.getLookupsSkipped()).isGreaterThan(skipped);
+    }
+
+    @Test
+    public void login_shouldRejectBadCredentialsAndUpgradePlainTextPasswords() throws Exception {
+        User legacy = userRepository.save(new User(null, "erin", "plain-pw", "erin@example.com", null, null, null, null));
+
+        mockMvc.perform(post("/api/users/login").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"username\":\"erin\",\"password\":\"wrong\"}"))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(post("/api/users/login").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"username\":\"nobody\",\"password\":\"plain-pw\"}"))
+                .andExpect(status().isUnauthorized());
+
+        login("erin", "plain-pw");
+        assertThat(userRepository.findById(legacy.getId()).orElseThrow(AssertionError::new).getPassword()).startsWith("pbkdf2$");
+        login("erin", "plain-pw"); // Still works against the upgraded hash
+    }
+
+    @Test
+    public void getUserById_shouldNeedTheOwnersToken() throws Exception {
+        User frank = userRepository.save(new User(null, "frank", "pw", "frank@example.com", null, null, null, null));
+        User grace = userRepository.save(new User(null, "grace", "pw", "grace@example.com", null, null, null, null));
+
+        mockMvc.perform(get("/api/users/" + frank.getId()))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/users/" + frank.getId()).header("Authorization", "Bearer " + login("grace", "pw")))
+                .andExpect(status().isForbidden());
+        assertThat(grace.getId()).isNotEqualTo(frank.getId());
+
+        // The listing shows nobody to anonymous callers, and only their own account to everyone else
+        mockMvc.perform(get("/api/users"))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/users").header("Authorization", "Bearer " + login("grace", "pw")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].username").value("grace"));
+    }
+
+    private ResultActions register(String username, String email) throws Exception {
+        return mockMvc.perform(post("/api/users/register").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"username\":\"" + username + "\",\"password\":\"pw\",\"email\":\"" + email + "\"}"));
+    }
+
+    private String login(String username, String password) throws Exception {
+        MvcResult result = mockMvc.perform(post("/api/users/login").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"username\":\"" + username + "\",\"password\":\"" + password + "\"}"))
+                .andExpect(status().isOk())
+                .andReturn();
+        JsonNode body = objectMapper.readTree(result.getResponse().getContentAsString());
+        return body.get("token").asText();
+    }
+}
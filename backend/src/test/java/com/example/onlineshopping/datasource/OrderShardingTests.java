@@ -0,0 +1,239 @@
+package com.example.onlineshopping.datasource;
+
+import com.example.onlineshopping.datasource.OrderShardRebalancer.RebalanceReport;
+import com.example.onlineshopping.model.Product;
+import com.example.onlineshopping.model.User;
+import com.example.onlineshopping.repository.ProductRepository;
+import com.example.onlineshopping.repository.UserRepository;
+import com.example.onlineshopping.security.TokenService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Three embedded databases stand in for the order shards; users and products stay in the (embedded) primary
+@SpringBootTest(properties = {
+        "app.orders.shards.urls=" + OrderShardingTests.SHARD_URLS,
+        "app.orders.shards.id-block-size=5"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class OrderShardingTests {
+
+    static final String SHARD_URLS = "jdbc:h2:mem:orders-shard-0;DB_CLOSE_DELAY=-1,"
+            + "jdbc:h2:mem:orders-shard-1;DB_CLOSE_DELAY=-1,jdbc:h2:mem:orders-shard-2;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private OrderShards orderShards;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final List<User> users = new ArrayList<>();
+    private Product product;
+
+    @BeforeEach
+    public void seed() {
+        for (OrderShard shard : orderShards.all()) {
+            shard.getJdbcTemplate().update("DELETE FROM order_items");
+            shard.getJdbcTemplate().update("DELETE FROM orders");
+        }
+        userRepository.deleteAll(); // Products stay: the stock flusher may still be writing to earlier ones
+        users.clear();
+        for (int i = 0; i < 8; i++) {
+            users.add(userRepository.save(new User(null, "user" + i, "pw", "user" + i + "@example.com", null, null, null, null)));
+        }
+        product = productRepository.save(new Product(null, "Lamp", "Desk lamp", new BigDecimal("19.90"), "Home", null, 1000));
+    }
+
+    @Test
+    public void orders_shouldLiveOnTheirUsersShardAndListingsShouldMergeAllShards() throws Exception {
+        List<Long> placed = new ArrayList<>();
+        for (int round = 0; round < 2; round++) {
+            for (User user : users) {
+                placed.add(placeOrder(user));
+            }
+        }
+
+        Set<Integer> shardsUsed = new HashSet<>();
+        long stored = 0;
+        for (int i = 0; i < orderShards.getShards().size(); i++) {
+            OrderShard shard = orderShards.getShards().get(i);
+            for (Long userId : shard.getJdbcTemplate().queryForList("SELECT user_id FROM orders", Long.class)) {
+                assertThat(orderShards.shardFor(userId)).isSameAs(shard);
+                shardsUsed.add(i);
+                stored++;
+            }
+            assertThat(shard.getJdbcTemplate().queryForObject("SELECT COUNT(*) FROM order_items oi LEFT JOIN orders o ON o.id = oi.order_id "
+                    + "WHERE o.id IS NULL", Long.class)).isZero(); // Lines are stored with their order
+        }
+        assertThat(stored).isEqualTo(placed.size());
+        assertThat(shardsUsed).hasSizeGreaterThan(1);
+        assertThat(new HashSet<>(placed)).hasSameSizeAs(placed); // Ids are unique across shards
+
+        // Pages of 5 across three shards: every order exactly once, newest first
+        List<Long> listed = new ArrayList<>();
+        String cursor = null;
+        do {
+            MvcResult page = mockMvc.perform(cursor == null ? get("/api/orders").param("limit", "5")
+                            : get("/api/orders").param("limit", "5").param("before", cursor))
+                    .andExpect(status().isOk()).andReturn();
+            for (JsonNode order : objectMapper.readTree(page.getResponse().getContentAsString())) {
+                listed.add(order.get("id").asLong());
+                assertThat(order.get("username").asText()).startsWith("user");
+            }
+            cursor = page.getResponse().getHeader("X-Next-Cursor");
+        } while (cursor != null);
+        List<Long> newestFirst = new ArrayList<>(placed);
+        Collections.reverse(newestFirst); // Placed one after another: later orders have later dates, ties broken by the later id
+        assertThat(listed).containsExactlyElementsOf(newestFirst);
+
+        User buyer = users.get(3);
+        String bearer = "Bearer " + tokenService.issue(buyer.getId());
+        MvcResult own = mockMvc.perform(get("/api/orders/user/" + buyer.getId()).header("Authorization", bearer))
+                .andExpect(status().isOk()).andReturn();
+        assertThat(objectMapper.readTree(own.getResponse().getContentAsString())).hasSize(2);
+        Long orderId = placed.get(3);
+        MvcResult single = mockMvc.perform(get("/api/orders/" + orderId).header("Authorization", bearer))
+                .andExpect(status().isOk()).andReturn();
+        JsonNode order = objectMapper.readTree(single.getResponse().getContentAsString());
+        assertThat(order.get("userId").asLong()).isEqualTo(buyer.getId());
+        assertThat(order.get("orderItems").get(0).get("productName").asText()).isEqualTo("Lamp");
+
+        // A bulk transition reaches orders on every shard
+        MvcResult moved = mockMvc.perform(post("/api/orders/status-transitions").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"orderIds\":" + placed + ",\"from\":\"PENDING\",\"to\":\"PROCESSING\"}"))
+                .andExpect(status().isOk()).andReturn();
+        assertThat(objectMapper.readTree(moved.getResponse().getContentAsString()).get("updated")).hasSize(placed.size());
+        for (OrderShard shard : orderShards.all()) {
+            assertThat(shard.getJdbcTemplate().queryForList("SELECT DISTINCT status FROM orders", String.class)).containsOnly("PROCESSING");
+        }
+    }
+
+    @Test
+    public void rebalance_shouldMoveOnlyOrdersWhoseShardChangedAndDrainRetiredShards() {
+        EmbeddedDatabase a = embedded();
+        EmbeddedDatabase b = embedded();
+        EmbeddedDatabase c = embedded();
+        try {
+            OrderShard shardA = OrderShard.of("a", a);
+            OrderShard shardB = OrderShard.of("b", b);
+            OrderShard shardC = OrderShard.of("c", c);
+            List.of(shardA, shardB, shardC).forEach(OrderShard::createSchema);
+            OrderShards two = new OrderShards(List.of(shardA, shardB), List.of(), 2, false);
+            long id = 1;
+            for (long userId = 1; userId <= 60; userId++) {
+                for (int i = 0; i < 3; i++, id++) {
+                    insertOrder(two.shardFor(userId), id, userId);
+                }
+            }
+
+            // Growing to three shards: only orders moving to the new shard move
+            OrderShards three = new OrderShards(List.of(shardA, shardB, shardC), List.of(), 2, false);
+            long expectedMoves = 0;
+            for (long userId = 1; userId <= 60; userId++) {
+                if (three.shardFor(userId) != two.shardFor(userId)) {
+                    assertThat(three.shardFor(userId)).isSameAs(shardC);
+                    expectedMoves += 3;
+                }
+            }
+            RebalanceReport grown = new OrderShardRebalancer(7).rebalance(three);
+            assertThat(grown.getScanned()).isGreaterThanOrEqualTo(180); // Orders moved to a shard not scanned yet are seen twice
+            assertThat(grown.getMoved()).isEqualTo(expectedMoves).isPositive();
+            assertThat(grown.getMovedTo()).containsOnlyKeys("c");
+            assertPlacement(three, 180);
+
+            // Shrinking back: the retired shard is drained into the others, still readable meanwhile
+            OrderShards shrinking = new OrderShards(List.of(shardA, shardB), List.of(shardC), 2, false);
+            assertThat(shrinking.isMigrating()).isTrue();
+            assertThat(shrinking.shardsForUser(1)).hasSize(3);
+            RebalanceReport drained = new OrderShardRebalancer(7).rebalance(shrinking);
+            assertThat(drained.getMoved()).isEqualTo(expectedMoves);
+            assertThat(shardC.getJdbcTemplate().queryForObject("SELECT COUNT(*) FROM orders", Long.class)).isZero();
+            assertThat(shardC.getJdbcTemplate().queryForObject("SELECT COUNT(*) FROM order_items", Long.class)).isZero();
+            assertPlacement(two, 180);
+        } finally {
+            a.shutdown();
+            b.shutdown();
+            c.shutdown();
+        }
+    }
+
+    private Long placeOrder(User user) throws Exception {
+        MvcResult pending = mockMvc.perform(post("/api/orders")
+                        .header("Authorization", "Bearer " + tokenService.issue(user.getId()))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"items\":[{\"productId\":" + product.getId() + ",\"quantity\":1}],\"shippingAddress\":\"Here\"}"))
+                .andExpect(request().asyncStarted()).andReturn();
+        MvcResult created = mockMvc.perform(asyncDispatch(pending)).andExpect(status().isCreated()).andReturn();
+        return objectMapper.readTree(created.getResponse().getContentAsString()).get("id").asLong();
+    }
+
+    // Every order (and each of its lines) on its user's shard of the layout, none lost or duplicated
+    private static void assertPlacement(OrderShards layout, long expectedOrders) {
+        long orders = 0;
+        Map<Long, Integer> seen = new HashMap<>();
+        for (OrderShard shard : layout.all()) {
+            for (Map<String, Object> row : shard.getJdbcTemplate().queryForList("SELECT id, user_id FROM orders")) {
+                assertThat(layout.shardFor(((Number) row.get("user_id")).longValue())).isSameAs(shard);
+                seen.merge(((Number) row.get("id")).longValue(), 1, Integer::sum);
+                orders++;
+            }
+            assertThat(shard.getJdbcTemplate().queryForObject("SELECT COUNT(*) FROM order_items", Long.class))
+                    .isEqualTo(shard.getJdbcTemplate().queryForObject("SELECT COUNT(*) FROM orders", Long.class));
+        }
+        assertThat(orders).isEqualTo(expectedOrders);
+        assertThat(seen.values()).containsOnly(1);
+    }
+
+    private static void insertOrder(OrderShard shard, long id, long userId) {
+        shard.getJdbcTemplate().update("INSERT INTO orders (id, user_id, order_date, status, total_amount, shipping_address, billing_address) "
+                + "VALUES (?, ?, ?, 'PENDING', 10.00, 'Here', NULL)", id, userId, Timestamp.valueOf(LocalDateTime.of(2024, 5, 1, 12, 0).plusMinutes(id)));
+        shard.getJdbcTemplate().update("INSERT INTO order_items (id, order_id, product_id, product_name, unit_price, quantity, line_total) "
+                + "VALUES (?, ?, 1, 'Lamp', 10.00, 1, 10.00)", id, id);
+    }
+
+    private static EmbeddedDatabase embedded() {
+        return new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.onlineshopping.datasource;
+
+import com.example.onlineshopping.model.Product;
+import com.example.onlineshopping.model.User;
+import com.example.onlineshopping.repository.OrderRepository;
+import com.example.onlineshopping.repository.ProductRepository;
+import com.example.onlineshopping.repository.UserRepository;
+import com.example.onlineshopping.security.TokenService;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Two embedded databases stand in for the primary and a replica. The replica never receives the application's
+// writes, so every row copied to it by hand behaves like a replica that is lagging behind.
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1",
+        "app.datasource.replicas.urls=" + ReplicaRoutingTests.REPLICA_URL,
+        "app.datasource.replicas.read-your-writes-ms=60000"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class ReplicaRoutingTests {
+
+    static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private HikariDataSource primaryDataSource;
+
+    @Autowired
+    private ReplicaRoutingDataSource replicaRoutingDataSource;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private TokenService tokenService;
+
+    private JdbcTemplate primary;
+    private JdbcTemplate replica;
+
+    @BeforeEach
+    public void resetDatabases() {
+        orderRepository.deleteAll();
+        productRepository.deleteAll();
+        userRepository.deleteAll();
+        primary = new JdbcTemplate(primaryDataSource);
+        replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+        // Same schema as the primary, no rows
+        replica.execute("DROP ALL OBJECTS");
+        for (String statement : primary.queryForList("SCRIPT NODATA", String.class)) {
+            if (!statement.startsWith("CREATE USER")) {
+                replica.execute(statement);
+            }
+        }
+    }
+
+    @Test
+    public void readOnlyTransactions_shouldGoToTheReplicaAndWritesToThePrimary() throws Exception {
+        Product product = productRepository.save(new Product(null, "Lamp", "Desk lamp", new BigDecimal("19.90"), "Home", null, 5));
+        assertThat(replica.queryForObject("SELECT COUNT(*) FROM products", Integer.class)).isZero();
+        copyToReplica("products", product.getId(), Collections.singletonMap("NAME", "Lamp (replica)"));
+        long replicaConnections = replicaRoutingDataSource.getRoutedConnections().get("replica-0");
+
+        assertThat(productRepository.findById(product.getId()).orElseThrow(AssertionError::new).getName()).isEqualTo("Lamp (replica)");
+        assertThat(productRepository.findByCategory("Home")).extracting(Product::getName).containsExactly("Lamp (replica)");
+        mockMvc.perform(get("/api/products"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].name").value("Lamp (replica)"));
+
+        assertThat(replicaRoutingDataSource.getRoutedConnections().get("replica-0")).isEqualTo(replicaConnections + 3);
+    }
+
+    @Test
+    public void cachedProductJson_shouldBeFilledFromThePrimary() throws Exception {
+        Product product = productRepository.save(new Product(null, "Lamp", "Desk lamp", new BigDecimal("19.90"), "Home", null, 5));
+        copyToReplica("products", product.getId(), Collections.emptyMap());
+        mockMvc.perform(get("/api/products/" + product.getId())).andExpect(jsonPath("$.name").value("Lamp"));
+        mockMvc.perform(get("/api/products?category=Home")).andExpect(jsonPath("$[0].name").value("Lamp"));
+
+        // An anonymous admin update; the replica keeps the old row, and nothing pins the next readers to the primary
+        mockMvc.perform(put("/api/products/" + product.getId()).contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Lamp v2\",\"description\":\"Desk lamp\",\"price\":19.90,\"category\":\"Home\"}"))
+                .andExpect(status().isOk());
+        assertThat(replica.queryForObject("SELECT name FROM products WHERE id = ?", String.class, product.getId())).isEqualTo("Lamp");
+
+        mockMvc.perform(get("/api/products/" + product.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Lamp v2"));
+        mockMvc.perform(get("/api/products?category=Home"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].name").value("Lamp v2"));
+    }
+
+    @Test
+    public void writers_shouldReadTheirOwnWritesFromThePrimary() throws Exception {
+        User alice = userRepository.save(new User(null, "alice", "pw", "alice@example.com", "Old", null, null, null));
+        copyToReplica("users", alice.getId(), Collections.emptyMap());
+        String bearer = "Bearer " + tokenService.issue(alice.getId());
+
+        mockMvc.perform(get("/api/users/" + alice.getId()).header("Authorization", bearer))
+                .andExpect(jsonPath("$.firstName").value("Old"));
+
+        // The write reads the row from the primary, and so does alice's next read; the replica still lags
+        mockMvc.perform(put("/api/users/" + alice.getId()).header("Authorization", bearer)
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"firstName\":\"New\"}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/users/" + alice.getId()).header("Authorization", bearer))
+                .andExpect(jsonPath("$.firstName").value("New"));
+
+        assertThat(primary.queryForObject("SELECT first_name FROM users WHERE id = ?", String.class, alice.getId())).isEqualTo("New");
+        assertThat(userRepository.findById(alice.getId()).orElseThrow(AssertionError::new).getFirstName()).isEqualTo("Old");
+    }
+
+    // Copies a row as the application wrote it to the primary, with some columns changed
+    private void copyToReplica(String table, Long id, Map<String, Object> overrides) {
+        Map<String, Object> row = new LinkedHashMap<>(primary.queryForMap("SELECT * FROM " + table + " WHERE id = ?", id));
+        row.putAll(overrides);
+        List<String> placeholders = new ArrayList<>(Collections.nCopies(row.size(), "?"));
+        replica.update("INSERT INTO " + table + " (" + String.join(", ", row.keySet()) + ") VALUES (" + String.join(", ", placeholders) + ")",
+                row.values().toArray());
+    }
+}
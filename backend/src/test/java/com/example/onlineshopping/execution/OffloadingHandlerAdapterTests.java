@@ -0,0 +1,186 @@
+package com.example.onlineshopping.execution;
+
+import com.example.onlineshopping.metrics.EndpointMetrics;
+import com.example.onlineshopping.metrics.EndpointMetrics.EndpointSnapshot;
+import com.example.onlineshopping.model.Product;
+import com.example.onlineshopping.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.CoreMatchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+// One offload thread and one queue slot, so the tests can fill the executor by parking its only thread
+@SpringBootTest(properties = {
+        "app.web.execution.mode=async",
+        "app.web.execution.threads=1",
+        "app.web.execution.max-queued=1",
+        "app.web.execution.long-running-timeout-ms=120000"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class OffloadingHandlerAdapterTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private RequestExecutor requestExecutor;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EndpointMetrics endpointMetrics;
+
+    private Product lamp;
+
+    @BeforeEach
+    public void seed() {
+        lamp = productRepository.save(new Product(null, "Lamp", null, new BigDecimal("20.00"), "Home", null, 5));
+    }
+
+    @Test
+    public void repositoryBackedHandlers_shouldRunOffloadedAndAnswerAsBefore() throws Exception {
+        MvcResult started = mockMvc.perform(get("/api/products/" + lamp.getId()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult done = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name", is("Lamp")))
+                .andReturn();
+
+        // Conditional GETs still end in a bodiless 304 set up by the handler on the offload thread
+        MvcResult conditional = mockMvc.perform(get("/api/products/" + lamp.getId())
+                        .header("If-None-Match", done.getResponse().getHeader("ETag")))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(conditional))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        MvcResult missing = mockMvc.perform(get("/api/products/" + (lamp.getId() + 1000))).andReturn();
+        mockMvc.perform(asyncDispatch(missing)).andExpect(status().isNotFound());
+        assertThat(requestExecutor.getInFlight()).isZero();
+    }
+
+    @Test
+    public void offloadedStatements_shouldStillCountTowardsTheEndpoint() throws Exception {
+        endpointMetrics.reset();
+        MvcResult started = mockMvc.perform(get("/api/orders")).andExpect(request().asyncStarted()).andReturn();
+        mockMvc.perform(asyncDispatch(started)).andExpect(status().isOk());
+
+        EndpointSnapshot snapshot = endpointMetrics.snapshot().stream()
+                .filter(s -> s.getEndpoint().equals("GET /api/orders"))
+                .findFirst().orElseThrow(AssertionError::new);
+        assertThat(snapshot.getCount()).isEqualTo(1);
+        assertThat(snapshot.getStatementsPerRequest()).isEqualTo(1.0);
+    }
+
+    @Test
+    public void inMemoryAndStreamingHandlers_shouldStayOnTheRequestThread() throws Exception {
+        mockMvc.perform(get("/api/products/facets"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/metrics/execution"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(jsonPath("$.maxInFlight", is(2)));
+        mockMvc.perform(get("/api/orders/export"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void metrics_shouldOnlyAnswerCallersOnThisHost() throws Exception {
+        mockMvc.perform(delete("/api/metrics/endpoints").with(request -> {
+            request.setRemoteAddr("10.0.0.7");
+            return request;
+        })).andExpect(status().isForbidden());
+    }
+
+    @Test
+    public void endpointTimeouts_shouldComeFromTheAnnotationOrTheDefault() throws Exception {
+        MvcResult rebuild = mockMvc.perform(post("/api/rollups/sales/rebuild")).andExpect(request().asyncStarted()).andReturn();
+        assertThat(rebuild.getRequest().getAsyncContext().getTimeout()).isEqualTo(120_000);
+        mockMvc.perform(asyncDispatch(rebuild)).andExpect(status().isOk());
+
+        MvcResult lookup = mockMvc.perform(get("/api/products/" + lamp.getId())).andExpect(request().asyncStarted()).andReturn();
+        assertThat(lookup.getRequest().getAsyncContext().getTimeout()).isEqualTo(30_000);
+        mockMvc.perform(asyncDispatch(lookup)).andExpect(status().isOk());
+    }
+
+    @Test
+    public void writesThatTimeOutAfterStarting_shouldNotBeInvitedToRetry() {
+        ResponseEntity<Object> write = OffloadingHandlerAdapter.timedOut(true, "POST");
+        assertThat(write.getStatusCode()).isEqualTo(HttpStatus.GATEWAY_TIMEOUT);
+        assertThat(write.getHeaders().containsKey("Retry-After")).isFalse();
+
+        assertThat(OffloadingHandlerAdapter.timedOut(false, "POST").getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(OffloadingHandlerAdapter.timedOut(true, "GET").getHeaders().getFirst("Retry-After")).isEqualTo("1");
+    }
+
+    @Test
+    public void whenFull_shouldShedRequestsAndTimeOutQueuedOnes() throws Exception {
+        CountDownLatch parked = new CountDownLatch(1);
+        CountDownLatch unpark = new CountDownLatch(1);
+        requestExecutor.getTaskExecutor().execute(() -> {
+            parked.countDown();
+            try {
+                unpark.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertThat(parked.await(10, TimeUnit.SECONDS)).isTrue();
+        try {
+            MvcResult first = mockMvc.perform(get("/api/products/" + lamp.getId())).andExpect(request().asyncStarted()).andReturn();
+            MvcResult second = mockMvc.perform(get("/api/products/" + lamp.getId())).andExpect(request().asyncStarted()).andReturn();
+            mockMvc.perform(get("/api/products/" + lamp.getId()))
+                    .andExpect(request().asyncNotStarted())
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string("Retry-After", "1"));
+
+            // The container gives up on the first while it is still queued: it will not run, so its slot comes back
+            MockAsyncContext timedOut = (MockAsyncContext) first.getRequest().getAsyncContext();
+            for (AsyncListener listener : timedOut.getListeners()) {
+                listener.onTimeout(new AsyncEvent(timedOut));
+            }
+            // (MockMvc only records results of handlers that ran, so read this one from the async manager)
+            Object timeoutResult = WebAsyncUtils.getAsyncManager(first.getRequest()).getConcurrentResult();
+            assertThat(timeoutResult).isInstanceOf(ResponseEntity.class);
+            assertThat(((ResponseEntity<?>) timeoutResult).getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+            assertThat(((ResponseEntity<?>) timeoutResult).getHeaders().getFirst("Retry-After")).isEqualTo("1");
+            timedOut.complete();
+            assertThat(requestExecutor.getInFlight()).isEqualTo(1);
+
+            unpark.countDown();
+            mockMvc.perform(asyncDispatch(second)).andExpect(status().isOk());
+            assertThat(requestExecutor.getInFlight()).isZero();
+            assertThat(requestExecutor.getStats().get("rejected")).isPositive();
+            assertThat(requestExecutor.getStats().get("timedOut")).isPositive();
+        } finally {
+            unpark.countDown();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.onlineshopping.metrics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CountingDataSourceTests {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void createTable() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        jdbcTemplate = new JdbcTemplate(new CountingDataSource(database));
+        jdbcTemplate.execute("CREATE TABLE items (id BIGINT PRIMARY KEY, name VARCHAR(50))");
+    }
+
+    @AfterEach
+    public void dropDatabase() {
+        database.shutdown();
+    }
+
+    @Test
+    public void jdbcTemplateWork_shouldCountStatementsAndRowsRead() {
+        RequestCounters counters = RequestCounters.current();
+        int statements = counters.getStatements();
+        long rows = counters.getRows();
+
+        jdbcTemplate.batchUpdate("INSERT INTO items (id, name) VALUES (?, ?)",
+                Arrays.asList(new Object[]{1L, "a"}, new Object[]{2L, "b"}, new Object[]{3L, "c"}));
+        List<String> names = jdbcTemplate.queryForList("SELECT name FROM items WHERE id > ?", String.class, 1L);
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM items", Integer.class);
+
+        assertThat(names).containsExactly("b", "c");
+        assertThat(count).isEqualTo(3);
+        assertThat(counters.getStatements() - statements).isEqualTo(3); // One batch, two queries
+        assertThat(counters.getRows() - rows).isEqualTo(3);
+    }
+
+    @Test
+    public void localOnly_shouldAcceptLoopbackAddressesOnly() {
+        assertThat(LocalOnlyFilter.isLoopback("127.0.0.1")).isTrue();
+        assertThat(LocalOnlyFilter.isLoopback("0:0:0:0:0:0:0:1")).isTrue();
+        assertThat(LocalOnlyFilter.isLoopback("10.0.0.7")).isFalse();
+        assertThat(LocalOnlyFilter.isLoopback("localhost")).isFalse(); // Never resolved
+        assertThat(LocalOnlyFilter.isLoopback("")).isFalse();
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.onlineshopping.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LatencyHistogramTests {
+
+    @Test
+    public void bucketBounds_shouldCoverEveryValueWithinAnEighth() {
+        for (long value = 0; value < 1_000_000; value += 7) {
+            long upper = LatencyHistogram.upperBound(LatencyHistogram.indexOf(value));
+            assertThat(upper).isGreaterThanOrEqualTo(value);
+            assertThat(upper - value).isLessThanOrEqualTo(Math.max(1, value / 8));
+        }
+        assertThat(LatencyHistogram.upperBound(LatencyHistogram.indexOf(Long.MAX_VALUE))).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void percentiles_shouldTrackTheDistribution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 100L); // 100us .. 100ms, uniform
+        }
+        assertThat(histogram.getCount()).isEqualTo(1000);
+        assertThat(histogram.percentile(0.50)).isBetween(50_000L, 50_000L * 9 / 8);
+        assertThat(histogram.percentile(0.99)).isBetween(99_000L, 100_000L);
+        assertThat(histogram.percentile(0.999)).isEqualTo(100_000L);
+        assertThat(histogram.getMax()).isEqualTo(100_000L);
+        assertThat(histogram.getMean()).isEqualTo(50_050L);
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.onlineshopping.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PasswordHasherTests {
+
+    private final PasswordHasher hasher = new PasswordHasher(1000, 2);
+
+    @Test
+    public void hash_shouldBeSaltedAndVerifiable() {
+        String first = hasher.hash("secret");
+        String second = hasher.hash("secret");
+        assertThat(first).startsWith("pbkdf2$1000$").isNotEqualTo(second);
+        assertThat(hasher.matches("secret", first)).isTrue();
+        assertThat(hasher.matches("Secret", first)).isFalse();
+        assertThat(hasher.needsRehash(first)).isFalse();
+    }
+
+    @Test
+    public void legacyOrOutdatedValues_shouldMatchButNeedRehash() {
+        assertThat(hasher.matches("plain", "plain")).isTrue();
+        assertThat(hasher.matches("plain", "other")).isFalse();
+        assertThat(hasher.needsRehash("plain")).isTrue();
+
+        String cheaper = new PasswordHasher(500, 1).hash("secret");
+        assertThat(hasher.matches("secret", cheaper)).isTrue();
+        assertThat(hasher.needsRehash(cheaper)).isTrue();
+    }
+
+    @Test
+    public void damagedHashes_shouldNotMatchRatherThanThrow() {
+        String good = hasher.hash("secret");
+        String[] parts = good.split("\\$");
+        assertThat(hasher.matches("secret", "pbkdf2$lots$" + parts[2] + "$" + parts[3])).isFalse();
+        assertThat(hasher.matches("secret", "pbkdf2$-1$" + parts[2] + "$" + parts[3])).isFalse();
+        assertThat(hasher.matches("secret", "pbkdf2$1000$not*base64$" + parts[3])).isFalse();
+        assertThat(hasher.matches("secret", "pbkdf2$1000$" + parts[2] + "$%%%")).isFalse();
+        assertThat(hasher.matches("secret", "pbkdf2$1000$$" + parts[3])).isFalse();
+    }
+}
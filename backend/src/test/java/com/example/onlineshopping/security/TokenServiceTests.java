@@ -0,0 +1,56 @@
+package com.example.onlineshopping.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TokenServiceTests {
+
+    private static final String SECRET = Base64.getEncoder().encodeToString(new byte[32]);
+
+    private final TokenService tokenService = new TokenService(SECRET, 3600);
+
+    @Test
+    public void issuedToken_shouldVerifyToItsUser() {
+        AuthenticatedUser user = tokenService.verify(tokenService.issue(7L));
+        assertThat(user).isNotNull();
+        assertThat(user.is(7L)).isTrue();
+        assertThat(user.is(8L)).isFalse();
+    }
+
+    @Test
+    public void tamperedOrForeignToken_shouldNotVerify() {
+        String token = tokenService.issue(7L);
+        String otherPayload = tokenService.issue(8L).split("\\.")[0];
+        assertThat(tokenService.verify(otherPayload + token.substring(token.indexOf('.')))).isNull();
+        assertThat(tokenService.verify("garbage")).isNull();
+        assertThat(tokenService.verify("not base64!.x")).isNull();
+
+        TokenService otherKey = new TokenService(Base64.getEncoder().encodeToString(new byte[]{1, 2, 3, 4}), 3600);
+        assertThat(otherKey.verify(token)).isNull();
+    }
+
+    @Test
+    public void expiredToken_shouldNotVerify() {
+        TokenService shortLived = new TokenService(SECRET, -1);
+        assertThat(shortLived.verify(shortLived.issue(7L))).isNull();
+    }
+
+    @Test
+    public void revocation_shouldVoidOneOrAllTokens() {
+        String first = tokenService.issue(7L);
+        String second = tokenService.issue(7L);
+        tokenService.revoke(tokenService.verify(first));
+        assertThat(tokenService.verify(first)).isNull();
+        assertThat(tokenService.verify(second)).isNotNull();
+
+        tokenService.revokeAllFor(7L);
+        assertThat(tokenService.verify(second)).isNull();
+        assertThat(tokenService.verify(tokenService.issue(8L))).isNotNull();
+
+        tokenService.purgeRevocations(); // Nothing has expired yet
+        assertThat(tokenService.revokedCount()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.service.CartStore.CartUpdate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Stores are created by hand so each test controls capacity and can "restart" against the same table.
+// User ids start high to stay clear of carts the application's own store may be saving meanwhile.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+public class CartStoreTests {
+
+    private static final long FIRST_USER = 1_000_000L;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void cleanTable() {
+        jdbcTemplate.update("DELETE FROM carts WHERE user_id >= ?", FIRST_USER);
+    }
+
+    @Test
+    public void cartsPushedOutOfMemory_shouldKeepTheirChangesAndSurviveRestart() {
+        CartStore store = newStore(100, 10, false);
+        Map<Long, Map<Long, Integer>> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (long user = FIRST_USER; user < FIRST_USER + 500; user++) {
+            int lines = 1 + random.nextInt(5);
+            for (int i = 0; i < lines; i++) {
+                long productId = 1 + random.nextInt(1000);
+                int quantity = 1 + random.nextInt(5);
+                assertThat(store.addQuantity(user, productId, quantity)).isEqualTo(CartUpdate.UPDATED);
+                expected.computeIfAbsent(user, key -> new LinkedHashMap<>()).merge(productId, quantity, Integer::sum);
+            }
+        }
+        // Changed again after most of them were pushed out, before any snapshot
+        for (long user = FIRST_USER; user < FIRST_USER + 50; user++) {
+            store.setQuantity(user, 5000L, 2);
+            expected.get(user).put(5000L, 2);
+        }
+        assertThat(store.getCartsInMemory()).isLessThanOrEqualTo(100);
+        assertThat(store.getEvictions()).isPositive();
+        for (Map.Entry<Long, Map<Long, Integer>> cart : expected.entrySet()) {
+            assertThat(store.getCart(cart.getKey())).isEqualTo(cart.getValue());
+        }
+
+        store.snapshot();
+        assertThat(store.getUnsavedEvicted()).isZero();
+        CartStore restarted = newStore(1000, 10, false);
+        for (Map.Entry<Long, Map<Long, Integer>> cart : expected.entrySet()) {
+            assertThat(restarted.getCart(cart.getKey())).isEqualTo(cart.getValue());
+        }
+    }
+
+    @Test
+    public void updates_shouldRespectLimitsAndEmptyCartsShouldLeaveTheTable() {
+        CartStore store = newStore(100, 2, false);
+        long user = FIRST_USER + 1000;
+        assertThat(store.addQuantity(user, 1L, 1)).isEqualTo(CartUpdate.UPDATED);
+        assertThat(store.addQuantity(user, 2L, 1)).isEqualTo(CartUpdate.UPDATED);
+        assertThat(store.addQuantity(user, 3L, 1)).isEqualTo(CartUpdate.TOO_MANY_LINES);
+        assertThat(store.addQuantity(user, 1L, CartStore.MAX_QUANTITY)).isEqualTo(CartUpdate.INVALID);
+        assertThat(store.setQuantity(user, CartStore.MAX_PRODUCT_ID + 1, 1)).isEqualTo(CartUpdate.INVALID);
+        assertThat(store.setQuantity(user, 1L, 0)).isEqualTo(CartUpdate.UPDATED);
+        assertThat(store.getCart(user)).containsExactly(Map.entry(2L, 1));
+
+        store.snapshot();
+        assertThat(rowsFor(user)).isEqualTo(1);
+        store.clear(user);
+        store.snapshot();
+        assertThat(rowsFor(user)).isZero();
+    }
+
+    @Test
+    public void tables_shouldGrowWithTheCartsRatherThanStartAtTheLimit() {
+        CartStore store = newStore(2_000_000, 10, false);
+        assertThat(store.getBytesInMemory()).isLessThan(1_000_000);
+
+        for (long user = FIRST_USER + 10_000; user < FIRST_USER + 15_000; user++) {
+            store.addQuantity(user, user % 1000 + 1, 1);
+        }
+        assertThat(store.getCartsInMemory()).isEqualTo(5000);
+        assertThat(store.getEvictions()).isZero();
+        for (long user = FIRST_USER + 10_000; user < FIRST_USER + 15_000; user++) {
+            assertThat(store.getCart(user)).containsExactly(Map.entry(user % 1000 + 1, 1));
+        }
+    }
+
+    @Test
+    public void sweep_shouldDeleteAbandonedCarts() {
+        long abandoned = FIRST_USER + 2000;
+        long recent = FIRST_USER + 2001;
+        byte[] items = CartStore.encode(new long[]{CartStore.pack(7L, 1)});
+        jdbcTemplate.update("INSERT INTO carts (user_id, items, updated_at, revision) VALUES (?, ?, ?, 1)",
+                abandoned, items, Timestamp.from(Instant.now().minus(Duration.ofDays(31))));
+        jdbcTemplate.update("INSERT INTO carts (user_id, items, updated_at, revision) VALUES (?, ?, ?, 1)",
+                recent, items, Timestamp.from(Instant.now().minus(Duration.ofDays(29))));
+
+        CartStore store = newStore(100, 10, false);
+        store.sweep();
+
+        assertThat(store.getCart(abandoned)).isEmpty();
+        assertThat(store.getCart(recent)).containsExactly(Map.entry(7L, 1));
+    }
+
+    @Test
+    public void writeThrough_shouldShareCartsBetweenInstances() {
+        CartStore first = newStore(100, 10, true);
+        CartStore second = newStore(100, 10, true);
+        long user = FIRST_USER + 3000;
+        first.addQuantity(user, 1L, 1);
+        assertThat(second.getCart(user)).containsExactly(Map.entry(1L, 1));
+
+        // Each holds a copy at the same revision; the second change lands on top of the first, not over it
+        second.addQuantity(user, 2L, 1);
+        first.addQuantity(user, 1L, 4);
+        assertThat(second.getCart(user)).containsExactly(Map.entry(1L, 5), Map.entry(2L, 1));
+
+        second.clear(user);
+        assertThat(first.getCart(user)).isEmpty();
+        assertThat(rowsFor(user)).isZero();
+        first.addQuantity(user, 3L, 1); // A new row after the delete: the old revision must not look current
+        assertThat(second.getCart(user)).containsExactly(Map.entry(3L, 1));
+    }
+
+    @Test
+    public void takeAll_shouldHandTheLinesToOneCheckoutOnly() {
+        CartStore first = newStore(100, 10, true);
+        CartStore second = newStore(100, 10, true);
+        long user = FIRST_USER + 4000;
+        first.addQuantity(user, 1L, 2);
+        second.getCart(user);
+
+        assertThat(first.takeAll(user)).containsExactly(Map.entry(1L, 2));
+        assertThat(second.takeAll(user)).isEmpty();
+
+        second.addQuantity(user, 2L, 1);
+        first.putBack(user, Map.of(1L, 2)); // The checkout failed: back next to what was added meanwhile
+        assertThat(second.getCart(user)).containsExactly(Map.entry(2L, 1), Map.entry(1L, 2));
+    }
+
+    private CartStore newStore(int maxCarts, int maxLines, boolean writeThrough) {
+        CartStore store = new CartStore(maxCarts, maxLines, 60, 30, writeThrough);
+        ReflectionTestUtils.setField(store, "jdbcTemplate", jdbcTemplate);
+        return store;
+    }
+
+    private int rowsFor(long userId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM carts WHERE user_id = ?", Integer.class, userId);
+    }
+}
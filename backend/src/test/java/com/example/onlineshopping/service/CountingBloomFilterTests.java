@@ -0,0 +1,48 @@
+package com.example.onlineshopping.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CountingBloomFilterTests {
+
+    @Test
+    public void addedKeys_shouldAlwaysBeFoundAndRemovedKeysForgotten() {
+        CountingBloomFilter filter = new CountingBloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("user" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(filter.mightContain("user" + i)).isTrue();
+        }
+        for (int i = 0; i < 5_000; i++) {
+            filter.remove("user" + i);
+        }
+        for (int i = 5_000; i < 10_000; i++) {
+            assertThat(filter.mightContain("user" + i)).isTrue(); // Removing others never causes a false negative
+        }
+        int stillPresent = 0;
+        for (int i = 0; i < 5_000; i++) {
+            if (filter.mightContain("user" + i)) {
+                stillPresent++;
+            }
+        }
+        assertThat(stillPresent).isLessThan(150);
+    }
+
+    @Test
+    public void falsePositiveRate_shouldStayNearTheTarget() {
+        CountingBloomFilter filter = new CountingBloomFilter(50_000, 0.01);
+        for (int i = 0; i < 50_000; i++) {
+            filter.add("taken-" + i + "@example.com");
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("free-" + i + "@example.com")) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives / 100_000.0).isLessThan(0.02);
+        assertThat(filter.sizeInBytes()).isLessThan(50_000L * 5); // About 9.6 four-bit counters per key
+    }
+}
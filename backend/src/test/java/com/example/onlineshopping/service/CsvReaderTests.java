@@ -0,0 +1,35 @@
+package com.example.onlineshopping.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CsvReaderTests {
+
+    @Test
+    public void quotedFields_shouldKeepCommasQuotesAndLineBreaks() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("﻿sku,name\r\nA-1,\"Lamp, \"\"desk\"\"\"\r\n\r\nA-2,\"Two\nlines\"\nA-3,\n"));
+
+        assertThat(reader.next()).isEqualTo(Arrays.asList("sku", "name"));
+        assertThat(reader.getRecordLine()).isEqualTo(1);
+        assertThat(reader.next()).isEqualTo(Arrays.asList("A-1", "Lamp, \"desk\""));
+        assertThat(reader.next()).isEqualTo(Arrays.asList("A-2", "Two\nlines"));
+        assertThat(reader.getRecordLine()).isEqualTo(4); // Blank line 3 skipped
+        assertThat(reader.next()).isEqualTo(Arrays.asList("A-3", ""));
+        assertThat(reader.getRecordLine()).isEqualTo(6);
+        assertThat(reader.next()).isNull();
+    }
+
+    @Test
+    public void unterminatedQuote_shouldFail() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("sku,name\nA-1,\"Lamp\n"));
+        reader.next();
+
+        assertThatThrownBy(reader::next).isInstanceOf(IOException.class).hasMessageContaining("line 2");
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.model.Order;
+import com.example.onlineshopping.model.Product;
+import com.example.onlineshopping.model.User;
+import com.example.onlineshopping.repository.OrderRepository;
+import com.example.onlineshopping.repository.ProductRepository;
+import com.example.onlineshopping.repository.UserRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.persistence.EntityManagerFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "app.orders.ingestion.mode=group-commit",
+        "app.orders.ingestion.max-batch-size=50",
+        "app.orders.ingestion.max-flush-latency-ms=50"
+})
+@ActiveProfiles("test")
+public class OrderIngestionServiceTests {
+
+    @Autowired
+    private OrderIngestionService orderIngestionService;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    public void concurrentOrders_shouldBeCommittedInGroups() throws Exception {
+        User user = userRepository.save(new User(null, "groupie", "secret", "groupie@example.com", null, null, null, null));
+        Product product = productRepository.save(new Product(null, "Hot item", null, new BigDecimal("10.00"), "Test", null, 1000));
+        long ordersBefore = orderRepository.count();
+        int orders = 200;
+        List<OrderService.PreparedOrder> prepared = new ArrayList<>();
+        for (int i = 0; i < orders; i++) {
+            prepared.add(orderService.prepareOrder(user, Collections.singletonMap(product.getId(), 1), "Addr", "Addr"));
+        }
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        ExecutorService clients = Executors.newFixedThreadPool(32);
+        List<CompletableFuture<Order>> results = Collections.synchronizedList(new ArrayList<>());
+        for (OrderService.PreparedOrder order : prepared) {
+            clients.execute(() -> results.add(orderIngestionService.submit(order)));
+        }
+        clients.shutdown();
+        assertThat(clients.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        for (CompletableFuture<Order> result : results) {
+            assertThat(result.get(30, TimeUnit.SECONDS).getId()).isNotNull();
+        }
+        // Many orders per commit rather than one transaction each
+        assertThat(statistics.getTransactionCount()).isLessThan(orders / 4);
+        assertThat(orderRepository.count() - ordersBefore).isEqualTo(orders);
+        assertThat(orderIngestionService.queuedOrders()).isZero();
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.metrics.RequestCounters;
+import com.example.onlineshopping.model.Order;
+import com.example.onlineshopping.model.Product;
+import com.example.onlineshopping.model.User;
+import com.example.onlineshopping.repository.OrderRepository;
+import com.example.onlineshopping.repository.ProductRepository;
+import com.example.onlineshopping.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+public class OrderServiceTests {
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private StockReservationService stockReservationService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    private User user;
+    private final List<Product> products = new ArrayList<>();
+
+    @BeforeEach
+    public void seed() {
+        orderRepository.deleteAll();
+        user = userRepository.findByUsername("buyer")
+                .orElseGet(() -> userRepository.save(new User(null, "buyer", "secret", "buyer@example.com", null, null, null, null)));
+        products.clear();
+        for (int i = 0; i < 50; i++) {
+            products.add(productRepository.save(new Product(null, "Item " + i, null, new BigDecimal("2.50"), "Test", null, 100)));
+        }
+    }
+
+    @Test
+    public void placeOrder_shouldPriceLinesOnServerAndWriteThemInFewStatements() {
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (Product product : products) {
+            quantities.put(product.getId(), 2);
+        }
+        int before = RequestCounters.current().getStatements(); // Counted at the DataSource: JdbcTemplate work too
+
+        Order order = orderService.placeOrder(user, quantities, "Addr", "Addr");
+
+        // One product lookup, one order insert, pooled id fetches and a single batched statement for the 50 lines;
+        // the stock of the 50 cold products comes from the lookup, not 50 queries of its own
+        assertThat(RequestCounters.current().getStatements() - before).isLessThanOrEqualTo(5);
+        assertThat(order.getOrderItems()).hasSize(50);
+        assertThat(order.getOrderItems()).allSatisfy(item -> assertThat(item.getId()).isNotNull());
+        assertThat(order.getTotalAmount()).isEqualByComparingTo("250.00");
+        assertThat(stockReservationService.availableStock(products.get(0).getId())).isEqualTo(98);
+    }
+
+    @Test
+    public void placeOrder_whenStockRunsOut_shouldReleaseEverythingItHeld() {
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        quantities.put(products.get(0).getId(), 5);
+        quantities.put(products.get(1).getId(), 101);
+
+        assertThatThrownBy(() -> orderService.placeOrder(user, quantities, "Addr", "Addr"))
+                .isInstanceOf(OrderPlacementException.class)
+                .extracting(e -> ((OrderPlacementException) e).getReason())
+                .isEqualTo(OrderPlacementException.Reason.OUT_OF_STOCK);
+        assertThat(stockReservationService.availableStock(products.get(0).getId())).isEqualTo(100);
+        assertThat(orderRepository.count()).isZero();
+    }
+
+    @Test
+    public void placeOrder_shouldRejectUnknownProductsAndEmptyOrders() {
+        Map<Long, Integer> unknown = new LinkedHashMap<>();
+        unknown.put(-1L, 1);
+        assertThatThrownBy(() -> orderService.placeOrder(user, unknown, "Addr", "Addr"))
+                .extracting(e -> ((OrderPlacementException) e).getReason())
+                .isEqualTo(OrderPlacementException.Reason.UNKNOWN_PRODUCT);
+        assertThatThrownBy(() -> orderService.placeOrder(user, new LinkedHashMap<>(), "Addr", "Addr"))
+                .extracting(e -> ((OrderPlacementException) e).getReason())
+                .isEqualTo(OrderPlacementException.Reason.NO_ITEMS);
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.dto.CatalogStamp;
+import com.example.onlineshopping.event.ProductChangedEvent;
+import com.example.onlineshopping.model.Product;
+import com.example.onlineshopping.repository.ProductRepository;
+import com.example.onlineshopping.service.ProductFilterService.Cursor;
+import com.example.onlineshopping.service.ProductFilterService.Filter;
+import com.example.onlineshopping.service.ProductFilterService.Sort;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+public class ProductFilterServiceTests {
+
+    @Autowired
+    private ProductFilterService productFilterService;
+
+    @Autowired
+    private CategoryFacetCounter categoryFacetCounter;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    private static final String CATEGORY = "Filter-Garden";
+
+    @BeforeEach
+    public void seed() {
+        productRepository.findByCategory(CATEGORY).forEach(productRepository::delete);
+        String[] names = {"Hose 10m", "Hose 20m", "Rake", "Spade", "Hose_reel", "Gloves"};
+        String[] prices = {"15.00", "25.00", "15.00", "30.00", "45.00", "5.00"};
+        int[] stock = {3, 0, 8, 2, 1, 0};
+        for (int i = 0; i < names.length; i++) {
+            productRepository.save(new Product(null, names[i], null, new BigDecimal(prices[i]), CATEGORY, null, stock[i]));
+        }
+        productSearchIndex.rebuild(); // Saved straight through the repository, so no change events reached it
+    }
+
+    @Test
+    public void categoryStamp_shouldMatchTheLoadedRowsAndFollowWhichProductChanged() {
+        List<Product> products = productRepository.findByCategory(CATEGORY);
+        CatalogStamp stamp = productRepository.findStampByCategory(CATEGORY);
+        assertThat(stamp.etag()).isEqualTo(CatalogStamp.of(products).etag());
+
+        // One product edited twice, or two products edited once each: same count, id sum and version sum
+        Product first = products.get(0);
+        Product second = products.get(1);
+        first.setVersion(first.getVersion() + 2);
+        String twiceOnFirst = CatalogStamp.of(products).etag();
+        first.setVersion(first.getVersion() - 1);
+        second.setVersion(second.getVersion() + 1);
+        assertThat(CatalogStamp.of(products).etag()).isNotEqualTo(twiceOnFirst);
+    }
+
+    @Test
+    public void combinedFilters_shouldApplyTogetherAndPageByPrice() {
+        Filter hoses = new Filter().category(CATEGORY).name("HOSE").maxPrice(new BigDecimal("40")).sort(Sort.PRICE_DESC);
+        assertThat(names(productFilterService.find(hoses, null, 10))).containsExactly("Hose 20m", "Hose 10m");
+
+        Filter inStock = new Filter().category(CATEGORY).inStockOnly(true).minPrice(new BigDecimal("10")).sort(Sort.PRICE_ASC);
+        List<String> paged = new ArrayList<>();
+        Cursor cursor = null;
+        while (true) {
+            List<Product> page = productFilterService.find(inStock, cursor, 2);
+            paged.addAll(names(page));
+            if (page.size() < 2) {
+                break;
+            }
+            // Round trip through the header format, as a client would
+            cursor = Cursor.parse(Cursor.after(page.get(page.size() - 1), Sort.PRICE_ASC).toString(), Sort.PRICE_ASC);
+        }
+        assertThat(paged).containsExactly("Hose 10m", "Rake", "Spade", "Hose_reel"); // Equal prices in id order
+
+        // "_" is matched literally, not as a LIKE wildcard
+        assertThat(names(productFilterService.find(new Filter().category(CATEGORY).name("e_r"), null, 10))).containsExactly("Hose_reel");
+        // Matched like a plain name search, so the category text counts too
+        assertThat(productFilterService.find(new Filter().name("filter-garden").inStockOnly(true), null, 10)).hasSize(4);
+    }
+
+    @Test
+    public void facetCounts_shouldFollowProductChanges() {
+        categoryFacetCounter.rebuild();
+        assertThat(count(CATEGORY)).isEqualTo(6);
+
+        Product moved = productRepository.findByCategory(CATEGORY).get(0);
+        moved.setCategory("Filter-Tools");
+        productRepository.save(moved);
+        eventPublisher.publishEvent(ProductChangedEvent.updated(CATEGORY, moved));
+        Product removed = productRepository.findByCategory(CATEGORY).get(0);
+        productRepository.delete(removed);
+        eventPublisher.publishEvent(ProductChangedEvent.deleted(removed.getId(), CATEGORY));
+
+        assertThat(count(CATEGORY)).isEqualTo(4);
+        assertThat(count("Filter-Tools")).isEqualTo(1);
+        categoryFacetCounter.rebuild();
+        assertThat(count(CATEGORY)).isEqualTo(4); // Same as counting from scratch
+        productRepository.deleteById(moved.getId());
+    }
+
+    private long count(String category) {
+        return categoryFacetCounter.facets().stream().filter(f -> f.getCategory().equals(category))
+                .mapToLong(CategoryFacetCounter.Facet::getCount).sum();
+    }
+
+    private static List<String> names(List<Product> products) {
+        return products.stream().map(Product::getName).collect(Collectors.toList());
+    }
+}
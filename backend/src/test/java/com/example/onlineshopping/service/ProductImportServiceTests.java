@@ -0,0 +1,105 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.model.Product;
+import com.example.onlineshopping.repository.ProductRepository;
+import com.example.onlineshopping.service.ProductImportService.Format;
+import com.example.onlineshopping.service.ProductImportService.ImportJob;
+import com.example.onlineshopping.service.ProductImportService.RowError;
+import com.example.onlineshopping.service.ProductImportService.State;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Tiny batches and a one-batch queue, so a handful of rows goes through several transactions and the backpressure path
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "app.products.import.batch-size=2",
+        "app.products.import.queue-batches=1"
+})
+@ActiveProfiles("test")
+public class ProductImportServiceTests {
+
+    @Autowired
+    private ProductImportService productImportService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    @Test
+    public void csvImport_shouldInsertThenUpdateBySkuAndReportBadRows() {
+        ImportJob first = runImport(Format.CSV, "sku,name,price,category,stock_quantity,description\n"
+                + "IMP-1,Teapot,12.50,Kitchen,10,\"Glazed, 1 litre\"\n"
+                + "IMP-2,Kettle,30,Kitchen,,\n"
+                + ",No sku,1.00,Kitchen,1,\n"
+                + "IMP-3,Negative,-1,Kitchen,1,\n"
+                + "IMP-4,Bad stock,1.00,Kitchen,lots,\n"
+                + "IMP-5,Short row\n"
+                + "IMP-6,Mug,4.99,Kitchen,100,\n");
+
+        assertThat(first.getState()).isEqualTo(State.COMPLETED);
+        assertThat(first.getRowsRead()).isEqualTo(7);
+        assertThat(first.getInserted()).isEqualTo(3);
+        assertThat(first.getRejected()).isEqualTo(4);
+        assertThat(first.getErrors().stream().map(RowError::getLine).collect(Collectors.toList())).containsExactly(4, 5, 6, 7);
+        Product teapot = bySku("IMP-1");
+        assertThat(teapot.getDescription()).isEqualTo("Glazed, 1 litre");
+        assertThat(teapot.getStockQuantity()).isEqualTo(10);
+        assertThat(bySku("IMP-2").getStockQuantity()).isZero();
+
+        // Same SKUs again: updates, with left-out optional fields kept and the last row of a SKU winning
+        ImportJob second = runImport(Format.CSV, "SKU,Name,Price\n"
+                + "IMP-1,Teapot XL,14.00\n"
+                + "IMP-6,Mug,5.00\n"
+                + "IMP-6,Big mug,6.00\n");
+
+        assertThat(second.getUpdated()).isEqualTo(3); // The two IMP-6 rows fall in different batches
+        assertThat(second.getInserted()).isZero();
+        Product updated = bySku("IMP-1");
+        assertThat(updated.getId()).isEqualTo(teapot.getId());
+        assertThat(updated.getName()).isEqualTo("Teapot XL");
+        assertThat(updated.getPrice()).isEqualByComparingTo("14.00");
+        assertThat(updated.getDescription()).isEqualTo("Glazed, 1 litre");
+        assertThat(updated.getStockQuantity()).isEqualTo(10);
+        assertThat(updated.getVersion()).isEqualTo(teapot.getVersion() + 1);
+        assertThat(bySku("IMP-6").getName()).isEqualTo("Big mug");
+        assertThat(productSearchIndex.search("teapot", 10)).contains(teapot.getId());
+    }
+
+    @Test
+    public void ndjsonImport_shouldRejectMalformedLinesOnly() {
+        ImportJob job = runImport(Format.NDJSON, "{\"sku\":\"NDJ-1\",\"name\":\"Scarf\",\"price\":19.9,\"imageUrl\":\"scarf.jpg\"}\n"
+                + "\n"
+                + "{not json\n"
+                + "[1,2]\n"
+                + "{\"sku\":\"NDJ-2\",\"name\":\"Gloves\",\"price\":\"9.95\",\"stockQuantity\":3}\n");
+
+        assertThat(job.getState()).isEqualTo(State.COMPLETED);
+        assertThat(job.getInserted()).isEqualTo(2);
+        assertThat(job.getErrors().stream().map(RowError::getLine).collect(Collectors.toList())).containsExactly(3, 4);
+        assertThat(bySku("NDJ-1").getImageUrl()).isEqualTo("scarf.jpg");
+        assertThat(bySku("NDJ-1").getPrice()).isEqualByComparingTo(new BigDecimal("19.90"));
+        assertThat(bySku("NDJ-2").getStockQuantity()).isEqualTo(3);
+    }
+
+    private ImportJob runImport(Format format, String body) {
+        ImportJob job = productImportService.begin(format);
+        assertThat(job).isNotNull();
+        assertThat(productImportService.begin(format)).isNull(); // One import at a time
+        productImportService.run(job, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        return job;
+    }
+
+    private Product bySku(String sku) {
+        return productRepository.findAll().stream().filter(p -> sku.equals(p.getSku())).findFirst().orElseThrow(AssertionError::new);
+    }
+}
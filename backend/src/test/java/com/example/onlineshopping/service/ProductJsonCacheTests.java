@@ -0,0 +1,90 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.event.ProductChangedEvent;
+import com.example.onlineshopping.event.StockLevelsChangedEvent;
+import com.example.onlineshopping.model.Product;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProductJsonCacheTests {
+
+    private static ProductJsonCache.Entry json(String value) {
+        return new ProductJsonCache.Entry(value.getBytes(StandardCharsets.UTF_8), "\"test\"", -1);
+    }
+
+    @Test
+    public void put_shouldEvictLeastRecentlyUsedOnceOverBudget() {
+        ProductJsonCache cache = new ProductJsonCache(16 * 10, 60_000); // 10 bytes per segment
+        String first = ProductJsonCache.productKey(1L);
+        // Find two more keys landing in the same segment as the first
+        String second = null;
+        String third = null;
+        for (long id = 2; third == null; id++) {
+            String key = ProductJsonCache.productKey(id);
+            if ((key.hashCode() & 0x7fffffff) % 16 == (first.hashCode() & 0x7fffffff) % 16) {
+                if (second == null) {
+                    second = key;
+                } else {
+                    third = key;
+                }
+            }
+        }
+        cache.put(first, json("aaaa"), cache.generation());
+        cache.put(second, json("bbbb"), cache.generation());
+        cache.get(first); // Touch, so second is now the eldest
+        cache.put(third, json("cccc"), cache.generation());
+
+        assertThat(cache.get(first)).isNotNull();
+        assertThat(cache.get(second)).isNull();
+        assertThat(cache.get(third)).isNotNull();
+        assertThat(cache.sizeInBytes()).isEqualTo(8);
+    }
+
+    @Test
+    public void put_shouldDropValuesLoadedBeforeAnInvalidation() {
+        ProductJsonCache cache = new ProductJsonCache(1 << 20, 60_000);
+        long generation = cache.generation();
+        cache.invalidate(ProductJsonCache.productKey(2L)); // A write lands while the value is being loaded
+        cache.put(ProductJsonCache.productKey(1L), json("{}"), generation);
+
+        assertThat(cache.get(ProductJsonCache.productKey(1L))).isNull();
+    }
+
+    @Test
+    public void get_shouldMissOnceAnEntryIsOlderThanTheMaxAge() throws InterruptedException {
+        ProductJsonCache cache = new ProductJsonCache(1 << 20, 20);
+        cache.put(ProductJsonCache.productKey(1L), json("{}"), cache.generation());
+        assertThat(cache.get(ProductJsonCache.productKey(1L))).isNotNull();
+
+        Thread.sleep(40); // Changed through another instance, say: no event arrives here
+        assertThat(cache.get(ProductJsonCache.productKey(1L))).isNull();
+        assertThat(cache.sizeInBytes()).isZero();
+    }
+
+    @Test
+    public void productChanges_shouldInvalidateTheProductAndBothCategories() {
+        ProductJsonCache cache = new ProductJsonCache(1 << 20, 60_000);
+        cache.put(ProductJsonCache.productKey(1L), json("{}"), cache.generation());
+        cache.put(ProductJsonCache.categoryKey("Old"), json("[]"), cache.generation());
+        cache.put(ProductJsonCache.categoryKey("New"), json("[]"), cache.generation());
+        cache.put(ProductJsonCache.categoryKey("Other"), json("[]"), cache.generation());
+
+        Product moved = new Product(1L, "Lamp", "Desk lamp", BigDecimal.TEN, "New", "lamp.jpg", 3);
+        cache.onProductChanged(ProductChangedEvent.updated("Old", moved));
+
+        assertThat(cache.get(ProductJsonCache.productKey(1L))).isNull();
+        assertThat(cache.get(ProductJsonCache.categoryKey("Old"))).isNull();
+        assertThat(cache.get(ProductJsonCache.categoryKey("New"))).isNull();
+        assertThat(cache.get(ProductJsonCache.categoryKey("Other"))).isNotNull();
+
+        cache.put(ProductJsonCache.productKey(1L), json("{}"), cache.generation());
+        cache.onStockLevelsChanged(new StockLevelsChangedEvent(Collections.singletonMap(1L, "Other")));
+        assertThat(cache.get(ProductJsonCache.productKey(1L))).isNull();
+        assertThat(cache.get(ProductJsonCache.categoryKey("Other"))).isNull();
+    }
+}
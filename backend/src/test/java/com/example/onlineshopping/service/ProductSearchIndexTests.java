@@ -0,0 +1,124 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.event.ProductChangedEvent;
+import com.example.onlineshopping.model.Product;
+import com.example.onlineshopping.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class ProductSearchIndexTests {
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @InjectMocks
+    private ProductSearchIndex index;
+
+    @BeforeEach
+    public void buildIndex() {
+        given(productRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), any(Pageable.class))).willReturn(Arrays.asList(
+                new Product(1L, "时尚智能手表 S1", "最新款智能手表，拥有多种健康监测功能。", new BigDecimal("699.00"), "电子产品", null, 50),
+                new Product(2L, "无线蓝牙降噪耳机", "主动降噪技术，兼容智能手机。", new BigDecimal("899.00"), "电子产品", null, 55),
+                new Product(3L, "Laptop Pro", "High-end laptop", new BigDecimal("1200.00"), "Electronics", null, 10),
+                new Product(4L, "Laptop", "Entry laptop", new BigDecimal("500.00"), "Electronics", null, 10),
+                new Product(5L, "Laptop Bag", "Fits a laptop", new BigDecimal("49.00"), "Accessories", null, 30)));
+        index.rebuild();
+    }
+
+    @Test
+    public void search_shouldMatchChineseSubstringsAcrossFields() {
+        assertThat(index.isReady()).isTrue();
+        assertThat(index.search("智能", 10)).containsExactly(1L, 2L); // Name match ranks above description-only match
+        assertThat(index.search("电子", 10)).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(index.search("手表", 10)).containsExactly(1L);
+    }
+
+    @Test
+    public void search_shouldRankExactAndPrefixNameMatchesFirst() {
+        assertThat(index.search("LAPTOP", 10)).containsExactly(4L, 3L, 5L); // Exact name, then prefix matches by id
+        assertThat(index.search("laptop", 2)).containsExactly(4L, 3L);
+    }
+
+    @Test
+    public void search_shouldPageThroughTheRankingWithACursor() {
+        ProductSearchIndex.Ranked first = index.search("laptop", null, 2);
+        assertThat(first.getIds()).containsExactly(4L, 3L);
+        ProductSearchIndex.Cursor next = ProductSearchIndex.Cursor.parse(first.getNext().toString()); // As a client sends it back
+        ProductSearchIndex.Ranked second = index.search("laptop", next, 2);
+        assertThat(second.getIds()).containsExactly(5L);
+        assertThat(second.getNext()).isNull();
+
+        assertThat(index.matchingIds("laptop")).containsExactly(3L, 4L, 5L);
+        assertThat(ProductSearchIndex.Cursor.parse("7")).isNull();
+    }
+
+    @Test
+    public void search_shouldRequireContiguousMatch() {
+        assertThat(index.search("top lap", 10)).isEmpty(); // All bigrams exist, but never in this order
+        assertThat(index.search("xyz", 10)).isEmpty();
+        assertThat(index.search("  ", 10)).isEmpty();
+    }
+
+    @Test
+    public void search_shouldMatchDescriptionsByWholeWords() {
+        assertThat(index.search("fits", 10)).containsExactly(5L);
+        assertThat(index.search("high-end", 10)).containsExactly(3L);
+        assertThat(index.search("fit", 10)).isEmpty(); // Only names and categories match parts of words
+        assertThat(index.search("健康", 10)).containsExactly(1L);
+    }
+
+    @Test
+    public void search_shouldIgnoreSingleCharacterQueriesAndCapCandidates() {
+        assertThat(index.search("l", 10)).isEmpty();
+        assertThat(index.search("表", 10)).isEmpty();
+
+        List<Product> widgets = new ArrayList<>();
+        for (long id = 1; id <= ProductSearchIndex.MAX_CANDIDATES + 5; id++) {
+            widgets.add(new Product(id, "Widget " + id, "", new BigDecimal("1.00"), "Parts", null, 1));
+        }
+        given(productRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), any(Pageable.class))).willReturn(widgets);
+        index.rebuild();
+        assertThat(index.search("widget", Integer.MAX_VALUE)).hasSize(ProductSearchIndex.MAX_CANDIDATES);
+    }
+
+    @Test
+    public void productChanges_shouldUpdateIndexIncrementally() {
+        Product renamed = new Product(3L, "Notebook Pro", "High-end notebook", new BigDecimal("1200.00"), "Electronics", null, 10);
+        index.onProductChanged(ProductChangedEvent.updated("Electronics", renamed));
+        assertThat(index.search("laptop", 10)).containsExactly(4L, 5L);
+        assertThat(index.search("notebook", 10)).containsExactly(3L);
+
+        index.onProductChanged(ProductChangedEvent.deleted(4L, null));
+        assertThat(index.search("laptop", 10)).containsExactly(5L);
+
+        index.onProductChanged(ProductChangedEvent.created(
+                new Product(6L, "Gaming Laptop", "Fast", new BigDecimal("1500.00"), "Electronics", null, 3)));
+        assertThat(index.search("laptop", 10)).containsExactly(5L, 6L); // Prefix match outranks a mid-name match
+        assertThat(index.size()).isEqualTo(5);
+    }
+
+    @Test
+    public void rebuild_withEmptyCatalog_shouldLeaveEmptyIndex() {
+        given(productRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), any(Pageable.class))).willReturn(Collections.emptyList());
+        index.rebuild();
+        assertThat(index.size()).isZero();
+        assertThat(index.search("laptop", 10)).isEmpty();
+    }
+}
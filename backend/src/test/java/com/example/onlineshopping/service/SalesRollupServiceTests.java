@@ -0,0 +1,150 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.model.Order;
+import com.example.onlineshopping.model.OrderStatus;
+import com.example.onlineshopping.model.Product;
+import com.example.onlineshopping.model.User;
+import com.example.onlineshopping.repository.OrderRepository;
+import com.example.onlineshopping.repository.ProductRepository;
+import com.example.onlineshopping.repository.UserRepository;
+import com.example.onlineshopping.service.SalesRollupService.GroupBy;
+import com.example.onlineshopping.service.SalesRollupService.RollupRow;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+public class SalesRollupServiceTests {
+
+    @Autowired
+    private SalesRollupService salesRollupService;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OrderStatusService orderStatusService;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    public void incrementalRollups_shouldMatchFullRecomputationOnRandomOrders() {
+        long seed = System.nanoTime();
+        Random random = new Random(seed);
+        salesRollupService.rebuild(); // Start from whatever other tests left in the shared database
+
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            users.add(userRepository.save(new User(null, "rollup" + i + "-" + seed, "secret", "rollup" + i + "-" + seed + "@example.com",
+                    null, null, null, null)));
+        }
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            products.add(productRepository.save(new Product(null, "Rollup item " + i, null,
+                    new BigDecimal(random.nextInt(5000) + 1).movePointLeft(2), "Test", null, 100_000)));
+        }
+        LocalDateTime base = LocalDateTime.of(2023, 3, 1, 9, 30);
+        Map<Long, OrderStatus> statuses = new HashMap<>();
+        for (int i = 0; i < 80; i++) {
+            Map<Long, Integer> quantities = new HashMap<>();
+            for (int line = random.nextInt(3); line >= 0; line--) {
+                quantities.merge(products.get(random.nextInt(products.size())).getId(), random.nextInt(3) + 1, Integer::sum);
+            }
+            OrderService.PreparedOrder prepared = orderService.prepareOrder(users.get(random.nextInt(users.size())), quantities, "Addr", "Addr");
+            prepared.getOrder().setOrderDate(base.plusDays(random.nextInt(7)).plusHours(random.nextInt(14)));
+            statuses.put(orderService.save(prepared).getId(), OrderStatus.PENDING);
+        }
+        for (int round = 0; round < 12; round++) {
+            OrderStatus from = OrderStatus.values()[random.nextInt(OrderStatus.values().length)];
+            List<OrderStatus> targets = new ArrayList<>();
+            for (OrderStatus to : OrderStatus.values()) {
+                if (from.canTransitionTo(to)) {
+                    targets.add(to);
+                }
+            }
+            if (targets.isEmpty()) {
+                continue;
+            }
+            OrderStatus to = targets.get(random.nextInt(targets.size()));
+            List<Long> ids = statuses.keySet().stream().filter(id -> random.nextInt(3) > 0).collect(Collectors.toList());
+            orderStatusService.transition(ids, from, to).getUpdated().forEach(id -> statuses.put(id, to));
+        }
+        salesRollupService.flush();
+        assertMatchesOrders("seed " + seed);
+
+        salesRollupService.rebuild();
+        assertMatchesOrders("seed " + seed + ", after rebuild");
+    }
+
+    private void assertMatchesOrders(String description) {
+        List<Order> orders = orderRepository.findAll();
+        assertThat(rows(GroupBy.DAY, null, null, null, null)).as(description)
+                .isEqualTo(expected(orders, o -> true, o -> o.getOrderDate().toLocalDate().toString()));
+        assertThat(rows(GroupBy.STATUS, null, null, null, null)).as(description)
+                .isEqualTo(expected(orders, o -> true, Order::getStatus));
+        LocalDate from = LocalDate.of(2023, 3, 2);
+        LocalDate to = LocalDate.of(2023, 3, 5);
+        assertThat(rows(GroupBy.STATUS, from, to, null, null)).as(description)
+                .isEqualTo(expected(orders, o -> !o.getOrderDate().toLocalDate().isBefore(from) && o.getOrderDate().toLocalDate().isBefore(to),
+                        Order::getStatus));
+        for (OrderStatus status : OrderStatus.values()) {
+            assertThat(rows(GroupBy.DAY, null, null, status, null)).as(description)
+                    .isEqualTo(expected(orders, o -> o.getStatus().equals(status.name()), o -> o.getOrderDate().toLocalDate().toString()));
+        }
+        for (Long userId : orders.stream().map(Order::getUserId).collect(Collectors.toSet())) {
+            assertThat(rows(GroupBy.USER, null, null, null, userId)).as(description)
+                    .isEqualTo(expected(orders, o -> o.getUserId().equals(userId), o -> String.valueOf(userId)));
+            assertThat(rows(GroupBy.USER, null, null, OrderStatus.CANCELED, userId)).as(description)
+                    .isEqualTo(expected(orders, o -> o.getUserId().equals(userId) && o.getStatus().equals("CANCELED"), o -> String.valueOf(userId)));
+        }
+    }
+
+    // "key count amount" lines, amounts normalized so 10.5 and 10.50 compare equal; keys with no orders are left out
+    private Map<String, String> rows(GroupBy groupBy, LocalDate from, LocalDate to, OrderStatus status, Long userId) {
+        Map<String, String> result = new TreeMap<>();
+        for (RollupRow row : salesRollupService.summarize(groupBy, from, to, status, userId)) {
+            if (row.getOrderCount() != 0) {
+                result.put(row.getKey(), row.getOrderCount() + " " + row.getTotalAmount().stripTrailingZeros().toPlainString());
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, String> expected(List<Order> orders, Predicate<Order> filter, Function<Order, String> key) {
+        Map<String, Long> counts = new TreeMap<>();
+        Map<String, BigDecimal> amounts = new HashMap<>();
+        for (Order order : orders) {
+            if (filter.test(order)) {
+                counts.merge(key.apply(order), 1L, Long::sum);
+                amounts.merge(key.apply(order), order.getTotalAmount(), BigDecimal::add);
+            }
+        }
+        Map<String, String> result = new TreeMap<>();
+        counts.forEach((k, count) -> result.put(k, count + " " + amounts.get(k).stripTrailingZeros().toPlainString()));
+        return result;
+    }
+}
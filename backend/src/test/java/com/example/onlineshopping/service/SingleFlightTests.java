@@ -0,0 +1,95 @@
+package com.example.onlineshopping.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SingleFlightTests {
+
+    @Test
+    public void concurrentCallersForOneKey_shouldShareASingleLoad() throws Exception {
+        int callers = 64;
+        SingleFlight<Long, String> flight = new SingleFlight<>();
+        AtomicInteger queries = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            results.add(pool.submit(() -> flight.load(42L, id -> {
+                queries.incrementAndGet();
+                try {
+                    release.await(); // Hold the "query" open until every caller has arrived
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "product-" + id;
+            })));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (flight.getCalls() < callers && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        for (Future<String> result : results) {
+            assertThat(result.get(30, TimeUnit.SECONDS)).isEqualTo("product-42");
+        }
+        pool.shutdown();
+
+        assertThat(queries.get()).isEqualTo(1);
+        assertThat(flight.getLoads()).isEqualTo(1);
+        assertThat(flight.getCoalescingRatio()).isEqualTo((callers - 1) / (double) callers);
+        assertThat(flight.getInFlight()).isZero();
+    }
+
+    @Test
+    public void followersOfAStuckLoad_shouldStopWaitingAndLoadThemselves() throws Exception {
+        SingleFlight<Long, String> flight = new SingleFlight<>(50);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<String> leader = pool.submit(() -> flight.load(7L, id -> {
+            started.countDown();
+            try {
+                release.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "slow";
+        }));
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(flight.load(7L, id -> "own")).isEqualTo("own");
+        assertThat(flight.getWaitsTimedOut()).isEqualTo(1);
+
+        // An interrupted follower gives up rather than carrying on waiting
+        Thread.currentThread().interrupt();
+        assertThatThrownBy(() -> flight.load(7L, id -> "unused")).hasCauseInstanceOf(InterruptedException.class);
+        assertThat(Thread.interrupted()).isTrue();
+
+        release.countDown();
+        assertThat(leader.get(30, TimeUnit.SECONDS)).isEqualTo("slow");
+        pool.shutdown();
+    }
+
+    @Test
+    public void failedLoad_shouldNotBeRemembered() {
+        SingleFlight<Long, String> flight = new SingleFlight<>();
+        assertThatThrownBy(() -> flight.load(1L, id -> {
+            throw new IllegalStateException("database down");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(flight.load(1L, id -> "recovered")).isEqualTo("recovered");
+        assertThat(flight.getLoads()).isEqualTo(2);
+    }
+}
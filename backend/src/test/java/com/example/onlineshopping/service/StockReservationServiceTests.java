@@ -0,0 +1,286 @@
+package com.example.onlineshopping.service;
+
+import com.example.onlineshopping.event.ProductChangedEvent;
+import com.example.onlineshopping.event.StockLevelsChangedEvent;
+import com.example.onlineshopping.model.Product;
+import com.example.onlineshopping.service.StockReservationService.Outcome;
+import com.example.onlineshopping.service.StockReservationService.ReservationResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class StockReservationServiceTests {
+
+    private static final long HOT_SKU = 1L;
+    private static final int INITIAL_STOCK = 1_000;
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private StockReservationService service;
+    private ApplicationEventPublisher eventPublisher;
+
+    @BeforeEach
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("CREATE TABLE products (id BIGINT PRIMARY KEY, category VARCHAR(255), stock_quantity INT NOT NULL, "
+                + "version BIGINT DEFAULT 0 NOT NULL, last_modified TIMESTAMP)");
+        jdbcTemplate.update("INSERT INTO products (id, stock_quantity) VALUES (?, ?)", HOT_SKU, INITIAL_STOCK);
+
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        service = newService();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void reserveCommitRelease_shouldMoveStockBetweenStates() {
+        ReservationResult first = service.reserve(HOT_SKU, 300);
+        ReservationResult second = service.reserve(HOT_SKU, 200);
+        assertThat(first.getOutcome()).isEqualTo(Outcome.RESERVED);
+        assertThat(service.availableStock(HOT_SKU)).isEqualTo(500);
+
+        assertThat(service.commit(first.getReservation().getId())).isTrue();
+        assertThat(service.release(second.getReservation().getId())).isTrue();
+        assertThat(service.commit(first.getReservation().getId())).isFalse(); // Already settled
+        assertThat(service.availableStock(HOT_SKU)).isEqualTo(700);
+
+        service.flush();
+        assertThat(databaseStock()).isEqualTo(700);
+        assertThat(jdbcTemplate.queryForObject("SELECT version FROM products WHERE id = ?", Long.class, HOT_SKU)).isEqualTo(1L);
+        verify(eventPublisher).publishEvent(any(StockLevelsChangedEvent.class));
+    }
+
+    @Test
+    public void reserve_shouldRejectWhatIsNotThere() {
+        assertThat(service.reserve(HOT_SKU, INITIAL_STOCK + 1).getOutcome()).isEqualTo(Outcome.INSUFFICIENT_STOCK);
+        assertThat(service.reserve(42L, 1).getOutcome()).isEqualTo(Outcome.UNKNOWN_PRODUCT);
+        assertThat(service.availableStock(HOT_SKU)).isEqualTo(INITIAL_STOCK);
+    }
+
+    @Test
+    public void expiredReservations_shouldReturnToStock() {
+        ReflectionTestUtils.setField(service, "reservationTtlSeconds", -1L);
+        ReservationResult result = service.reserve(HOT_SKU, 10);
+        service.expireReservations();
+        assertThat(service.availableStock(HOT_SKU)).isEqualTo(INITIAL_STOCK);
+        assertThat(service.commit(result.getReservation().getId())).isFalse();
+    }
+
+    @Test
+    public void setStockLevel_shouldKeepHeldUnitsHeld() {
+        service.reserve(HOT_SKU, 100);
+        service.setStockLevel(HOT_SKU, 50);
+        assertThat(service.availableStock(HOT_SKU)).isZero();
+        service.setStockLevel(HOT_SKU, 400);
+        assertThat(service.availableStock(HOT_SKU)).isEqualTo(300);
+    }
+
+    @Test
+    public void instancesOverTheSameTable_shouldPickUpEachOthersSales() {
+        StockReservationService other = newService();
+        commit(service, 600);
+        assertThat(other.availableStock(HOT_SKU)).isEqualTo(INITIAL_STOCK); // Not flushed yet
+
+        service.flush();
+        other.resync();
+        assertThat(other.availableStock(HOT_SKU)).isEqualTo(400);
+        assertThat(other.reserve(HOT_SKU, 401).getOutcome()).isEqualTo(Outcome.INSUFFICIENT_STOCK);
+
+        // Held and unflushed units stay off the counter through a resync
+        ReservationResult held = other.reserve(HOT_SKU, 100);
+        commit(other, 50);
+        other.resync();
+        assertThat(other.availableStock(HOT_SKU)).isEqualTo(250);
+        assertThat(other.release(held.getReservation().getId())).isTrue();
+        assertThat(other.availableStock(HOT_SKU)).isEqualTo(350);
+    }
+
+    @Test
+    public void salesTheTableNoLongerHas_shouldBeReportedAsOversold() {
+        StockReservationService other = newService();
+        commit(service, 700);
+        commit(other, 500); // Both sold from 1000 before either flushed
+
+        service.flush();
+        other.flush();
+
+        assertThat(databaseStock()).isZero();
+        assertThat(service.getOversoldUnits()).isZero();
+        assertThat(other.getOversoldUnits()).isEqualTo(200);
+        assertThat(other.availableStock(HOT_SKU)).isZero();
+        service.resync();
+        assertThat(service.availableStock(HOT_SKU)).isZero();
+    }
+
+    @Test
+    public void stockEvents_shouldCarryTheProductsCurrentCategory() {
+        jdbcTemplate.update("UPDATE products SET category = 'Lamps' WHERE id = ?", HOT_SKU);
+        assertThat(service.availableStock(HOT_SKU)).isEqualTo(INITIAL_STOCK); // Counter loaded with Lamps
+
+        Product moved = new Product(null, "Lamp", null, BigDecimal.ONE, "Desks", null, INITIAL_STOCK);
+        moved.setId(HOT_SKU);
+        service.onProductChanged(ProductChangedEvent.updated("Lamps", moved));
+        commit(service, 1);
+        service.flush();
+        assertThat(lastStockEvent().getCategoriesByProduct()).containsEntry(HOT_SKU, "Desks");
+
+        // Moved through another instance: picked up by the resync
+        jdbcTemplate.update("UPDATE products SET category = 'Chairs' WHERE id = ?", HOT_SKU);
+        service.resync();
+        commit(service, 1);
+        service.flush();
+        assertThat(lastStockEvent().getCategoriesByProduct()).containsEntry(HOT_SKU, "Chairs");
+    }
+
+    @Test
+    public void manyThreadsOnOneHotSku_shouldNeverOversell() throws Exception {
+        int threads = 32;
+        int attemptsPerThread = 500;
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger committed = new AtomicInteger();
+        AtomicBoolean wentNegative = new AtomicBoolean();
+        AtomicBoolean done = new AtomicBoolean();
+
+        // Keep flushing while the buyers hammer the counter, as the scheduler would
+        Future<?> flusher = pool.submit(() -> {
+            while (!done.get()) {
+                service.flush();
+                if (databaseStock() < 0) {
+                    wentNegative.set(true);
+                }
+            }
+        });
+
+        List<Future<?>> buyers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            buyers.add(pool.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < attemptsPerThread; i++) {
+                    ReservationResult result = service.reserve(HOT_SKU, 1 + random.nextInt(3));
+                    if (service.availableStock(HOT_SKU) < 0) {
+                        wentNegative.set(true);
+                    }
+                    if (result.getOutcome() != Outcome.RESERVED) {
+                        continue;
+                    }
+                    // Most carts check out, some are abandoned
+                    if (random.nextInt(10) < 8) {
+                        service.commit(result.getReservation().getId());
+                        committed.addAndGet(result.getReservation().getQuantity());
+                    } else {
+                        service.release(result.getReservation().getId());
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> buyer : buyers) {
+            buyer.get(60, TimeUnit.SECONDS);
+        }
+        done.set(true);
+        flusher.get(60, TimeUnit.SECONDS);
+        pool.shutdown();
+        service.flush();
+
+        assertThat(wentNegative).isFalse();
+        assertThat(committed.get()).isLessThanOrEqualTo(INITIAL_STOCK);
+        assertThat(committed.get()).isGreaterThan(0);
+        assertThat(service.availableStock(HOT_SKU)).isEqualTo(INITIAL_STOCK - committed.get());
+        assertThat(databaseStock()).isEqualTo(INITIAL_STOCK - committed.get());
+    }
+
+    @Test
+    public void coldLoad_shouldNotHoldUpHotProductsInTheSameStripe() throws Exception {
+        long coldSku = HOT_SKU + 64; // Same lock stripe as the hot SKU
+        jdbcTemplate.update("INSERT INTO products (id, stock_quantity) VALUES (?, ?)", coldSku, 5);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+        ReflectionTestUtils.setField(service, "jdbcTemplate", new JdbcTemplate(database) {
+            @Override
+            public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+                if (args.length == 1 && Long.valueOf(coldSku).equals(args[0])) {
+                    loading.countDown();
+                    try {
+                        releaseLoad.await(); // A slow stock query
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.query(sql, rowMapper, args);
+            }
+        });
+        service.preload(List.of(new Product(HOT_SKU, "Hot", null, BigDecimal.ONE, null, null, INITIAL_STOCK)));
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> cold = pool.submit(() -> service.availableStock(coldSku));
+            assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<ReservationResult> hot = pool.submit(() -> service.reserve(HOT_SKU, 1));
+            assertThat(hot.get(5, TimeUnit.SECONDS).getOutcome()).isEqualTo(Outcome.RESERVED);
+
+            releaseLoad.countDown();
+            assertThat(cold.get(5, TimeUnit.SECONDS)).isEqualTo(5);
+        } finally {
+            releaseLoad.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    private StockReservationService newService() {
+        StockReservationService instance = new StockReservationService();
+        ReflectionTestUtils.setField(instance, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(instance, "eventPublisher", eventPublisher);
+        ReflectionTestUtils.setField(instance, "reservationTtlSeconds", 900L);
+        ReflectionTestUtils.setField(instance, "flushBatchSize", 100);
+        return instance;
+    }
+
+    private static void commit(StockReservationService instance, int quantity) {
+        ReservationResult result = instance.reserve(HOT_SKU, quantity);
+        assertThat(result.getOutcome()).isEqualTo(Outcome.RESERVED);
+        assertThat(instance.commit(result.getReservation().getId())).isTrue();
+    }
+
+    private StockLevelsChangedEvent lastStockEvent() {
+        ArgumentCaptor<StockLevelsChangedEvent> published = ArgumentCaptor.forClass(StockLevelsChangedEvent.class);
+        verify(eventPublisher, atLeastOnce()).publishEvent(published.capture());
+        return published.getValue();
+    }
+
+    private int databaseStock() {
+        return jdbcTemplate.queryForObject("SELECT stock_quantity FROM products WHERE id = ?", Integer.class, HOT_SKU);
+    }
+}
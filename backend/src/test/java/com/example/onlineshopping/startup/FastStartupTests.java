@@ -0,0 +1,75 @@
+package com.example.onlineshopping.startup;
+
+import com.example.onlineshopping.config.StartupConfig;
+import com.example.onlineshopping.controller.OrderShardController;
+import com.example.onlineshopping.metrics.EndpointMetrics;
+import com.example.onlineshopping.service.ProductJsonCache;
+import com.example.onlineshopping.service.ProductSearchIndex;
+import com.example.onlineshopping.service.StockReservationService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// A real port, and the sample catalog from data.sql loaded before the runners, so the warm-up has something to fetch
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "app.startup.warmup.enabled=true",
+        "app.startup.warmup.rounds=2",
+        "spring.sql.init.mode=always",
+        "spring.sql.init.encoding=UTF-8",
+        "spring.jpa.defer-datasource-initialization=true"
+})
+@ActiveProfiles("test")
+public class FastStartupTests {
+
+    @Autowired
+    private StartupWarmup startupWarmup;
+
+    @Autowired
+    private ProductJsonCache productJsonCache;
+
+    @Autowired
+    private EndpointMetrics endpointMetrics;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Test
+    public void warmup_shouldFillTheCachesBeforeReadyAndLeaveNoMetricsBehind() {
+        // Listing, facets, 7 categories and 17 products, twice
+        assertThat(startupWarmup.getRequests()).isEqualTo(2 * (2 + 7 + 17));
+        assertThat(startupWarmup.getFailures()).isZero();
+        assertThat(productJsonCache.getMisses()).isPositive();
+        assertThat(productJsonCache.getHits()).isPositive(); // The second round was served from the cache
+        assertThat(endpointMetrics.snapshot()).noneMatch(s -> s.getEndpoint().startsWith("GET /api/products"));
+    }
+
+    @Test
+    public void readiness_shouldReportAcceptingTrafficOnceStarted() {
+        ResponseEntity<Map<String, Object>> readiness = restTemplate.exchange("/api/health/readiness", HttpMethod.GET, null,
+                new ParameterizedTypeReference<Map<String, Object>>() {});
+
+        assertThat(readiness.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(readiness.getBody()).containsEntry("state", "ACCEPTING_TRAFFIC");
+        assertThat(restTemplate.getForEntity("/api/health/liveness", String.class).getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    public void lazyInitialization_shouldKeepScheduledAndListeningBeansEager() {
+        LazyInitializationExcludeFilter filter = StartupConfig.scheduledAndListeningBeansExcludeFilter();
+
+        assertThat(filter.isExcluded("stockReservationService", null, StockReservationService.class)).isTrue();
+        assertThat(filter.isExcluded("productSearchIndex", null, ProductSearchIndex.class)).isTrue();
+        assertThat(filter.isExcluded("orderShardController", null, OrderShardController.class)).isFalse();
+    }
+}
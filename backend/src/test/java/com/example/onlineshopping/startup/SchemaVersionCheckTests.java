@@ -0,0 +1,92 @@
+package com.example.onlineshopping.startup;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.persistence.Column;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// The test profile creates the schema with ddl-auto, which counts as validated, so the context records on startup
+@SpringBootTest(properties = {"app.schema.check=version", "app.schema.record=true"})
+@ActiveProfiles("test")
+public class SchemaVersionCheckTests {
+
+    @Autowired
+    private SchemaVersionCheck schemaVersionCheck;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void recordedFingerprint_shouldPassTheCheck() {
+        String recorded = jdbcTemplate.queryForObject("SELECT fingerprint FROM schema_version WHERE id = 1", String.class);
+
+        assertThat(recorded).hasSize(32).isEqualTo(schemaVersionCheck.fingerprint());
+        // Same mapping, same fingerprint, whichever instance computes it
+        assertThat(new SchemaVersionCheck(entityManagerFactory, jdbcTemplate, false, "none").fingerprint()).isEqualTo(recorded);
+        schemaVersionCheck.verify();
+    }
+
+    @Test
+    public void staleOrMissingFingerprint_shouldRefuseToStart() {
+        SchemaVersionCheck check = new SchemaVersionCheck(entityManagerFactory, jdbcTemplate, false, "none");
+        try {
+            jdbcTemplate.update("UPDATE schema_version SET fingerprint = 'validated-for-an-older-build' WHERE id = 1");
+            assertThatThrownBy(check::afterSingletonsInstantiated)
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("validated-for-an-older-build");
+
+            jdbcTemplate.update("DELETE FROM schema_version");
+            assertThatThrownBy(check::verify).hasMessageContaining("no recorded fingerprint");
+        } finally {
+            schemaVersionCheck.record();
+        }
+    }
+
+    @Test
+    public void indexesAndColumnLimits_shouldMoveTheFingerprint() {
+        List<String> before = new ArrayList<>();
+        SchemaVersionCheck.addConstraints(before, "items", Before.class);
+        List<String> after = new ArrayList<>();
+        SchemaVersionCheck.addConstraints(after, "items", After.class);
+
+        assertThat(before).contains("items #index idx_items_sku sku unique",
+                "items sku #column length=64 nullable=true unique=false precision=0 scale=0 definition=");
+        assertThat(after).doesNotContainAnyElementsOf(before);
+    }
+
+    @Test
+    public void recording_shouldNeedHibernateToHaveCheckedTheSchema() {
+        SchemaVersionCheck unchecked = new SchemaVersionCheck(entityManagerFactory, jdbcTemplate, true, "none");
+
+        assertThatThrownBy(unchecked::afterSingletonsInstantiated)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("ddl-auto=validate");
+    }
+
+    // The same column before and after a release that widened it and dropped the unique index
+    @Table(name = "items", indexes = @Index(name = "idx_items_sku", columnList = "sku", unique = true))
+    private static class Before {
+        @Column(length = 64)
+        private String sku;
+    }
+
+    @Table(name = "items", indexes = @Index(name = "idx_items_sku", columnList = "sku"))
+    private static class After {
+        @Column(length = 128)
+        private String sku;
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.onlineshopping.bench;
+
+import com.example.onlineshopping.OnlineShoppingApplication;
+import com.example.onlineshopping.metrics.LatencyHistogram;
+import com.example.onlineshopping.security.PasswordHasher;
+import com.example.onlineshopping.security.TokenService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Open-socket load test for write admission control: a fixed set of readers fetch products while the number of
+// order writers is stepped up past what the server can take. Prints reader latency and write outcomes per step,
+// once with admission control on and once with it off. JMH is the wrong tool here: what matters is how one kind
+// of request behaves while another kind overloads the server, not the cost of a single call.
+//
+//   mvn package exec:exec -Dbench.main=com.example.onlineshopping.bench.AdmissionLoadTest
+//   mvn package exec:exec -Dbench.main=com.example.onlineshopping.bench.AdmissionLoadTest -Dbench.args="20000 16 0,16,64,256 15"
+//
+// Arguments: products, reader threads, writer threads per step, seconds per step.
+public class AdmissionLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int products = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int[] writerSteps = parseSteps(args.length > 2 ? args[2] : "0,8,32,128");
+        int stepSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        for (boolean admission : new boolean[]{true, false}) {
+            System.out.println();
+            System.out.println("Admission control " + (admission ? "on" : "off"));
+            System.out.printf("%8s %10s %10s %10s %10s %8s %8s %8s %8s%n",
+                    "writers", "reads/s", "read p50", "read p99", "read max", "201", "429", "503", "other");
+            run(admission, products, readers, writerSteps, stepSeconds);
+        }
+    }
+
+    private static void run(boolean admission, int products, int readers, int[] writerSteps, int stepSeconds) throws Exception {
+        // A real port and a small, production-like thread and connection budget, so writes can actually saturate it
+        // (passed as arguments: builder properties are only defaults, and the benchmark properties turn the port off)
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(OnlineShoppingApplication.class)
+                .run("--server.port=0", "--server.tomcat.threads.max=32", "--spring.datasource.hikari.maximum-pool-size=10",
+                        "--app.admission.enabled=" + admission);
+        try {
+            int users = Math.max(1_000, products / 10);
+            FixtureLoader fixtures = new FixtureLoader(context.getBean(DataSource.class));
+            fixtures.load(products, users, 0, context.getBean(PasswordHasher.class).hash(FixtureLoader.PASSWORD));
+            long maxProductId = fixtures.maxProductId();
+            TokenService tokenService = context.getBean(TokenService.class);
+            String[] bearerTokens = new String[users + 1];
+            for (int userId = 1; userId <= users; userId++) {
+                bearerTokens[userId] = "Bearer " + tokenService.issue((long) userId);
+            }
+            String base = "http://localhost:" + ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+            HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5))
+                    .executor(Executors.newCachedThreadPool()).build();
+
+            for (int writers : writerSteps) {
+                Step step = new Step();
+                long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(stepSeconds);
+                ExecutorService pool = Executors.newFixedThreadPool(readers + writers);
+                for (int i = 0; i < readers; i++) {
+                    pool.execute(() -> read(client, base, maxProductId, end, step));
+                }
+                for (int i = 0; i < writers; i++) {
+                    pool.execute(() -> write(client, base, users, bearerTokens, maxProductId, end, step));
+                }
+                pool.shutdown();
+                pool.awaitTermination(stepSeconds + 60L, TimeUnit.SECONDS);
+                System.out.printf("%8d %10d %8d us %8d us %8d us %8d %8d %8d %8d%n", writers,
+                        step.readLatency.getCount() / stepSeconds, step.readLatency.percentile(0.5),
+                        step.readLatency.percentile(0.99), step.readLatency.getMax(),
+                        step.created.sum(), step.tooManyRequests.sum(), step.unavailable.sum(), step.otherWrites.sum());
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    private static void read(HttpClient client, String base, long maxProductId, long end, Step step) {
+        while (System.nanoTime() < end) {
+            long id = 1 + ThreadLocalRandom.current().nextLong(maxProductId);
+            HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/api/products/" + id))
+                    .timeout(Duration.ofSeconds(30)).GET().build();
+            long start = System.nanoTime();
+            try {
+                client.send(request, HttpResponse.BodyHandlers.discarding());
+                step.readLatency.record((System.nanoTime() - start) / 1_000);
+            } catch (Exception e) {
+                step.readLatency.record((System.nanoTime() - start) / 1_000); // A timeout is a slow read, not a missing one
+            }
+        }
+    }
+
+    private static void write(HttpClient client, String base, int users, String[] bearerTokens, long maxProductId,
+                              long end, Step step) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < end) {
+            int userId = 1 + random.nextInt(users);
+            String body = "{\"userId\":" + userId + ",\"shippingAddress\":\"Bench Street 1\",\"billingAddress\":\"Bench Street 1\","
+                    + "\"items\":[{\"productId\":" + (1 + random.nextLong(maxProductId)) + ",\"quantity\":1}]}";
+            HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/api/orders"))
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Authorization", bearerTokens[userId]).header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+            try {
+                int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                if (status == 201) {
+                    step.created.increment();
+                } else if (status == 429) {
+                    step.tooManyRequests.increment();
+                } else if (status == 503) {
+                    step.unavailable.increment();
+                } else {
+                    step.otherWrites.increment();
+                }
+            } catch (Exception e) {
+                step.otherWrites.increment();
+            }
+        }
+    }
+
+    private static int[] parseSteps(String value) {
+        List<Integer> steps = new ArrayList<>();
+        for (String part : value.split(",")) {
+            steps.add(Integer.parseInt(part.trim()));
+        }
+        return steps.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static class Step {
+        final LatencyHistogram readLatency = new LatencyHistogram();
+        final LongAdder created = new LongAdder();
+        final LongAdder tooManyRequests = new LongAdder();
+        final LongAdder unavailable = new LongAdder();
+        final LongAdder otherWrites = new LongAdder();
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.onlineshopping.bench;
+
+import com.example.onlineshopping.OnlineShoppingApplication;
+import com.example.onlineshopping.metrics.LatencyHistogram;
+import com.example.onlineshopping.security.PasswordHasher;
+import com.example.onlineshopping.security.TokenService;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Open-socket load test for app.web.execution.mode: every statement is delayed to simulate a slow database, a
+// stepped-up number of clients list their orders (one statement each), and a fixed set of clients keep reading
+// the in-memory category facets. Prints throughput and p99 of both per step, once in blocking mode and once in
+// async mode. With a slow database and blocking handlers, the request threads all end up waiting for connections
+// and the cheap reads queue behind them; in async mode only the offload pool waits.
+//
+//   mvn package exec:exec -Dbench.main=com.example.onlineshopping.bench.ExecutionModeLoadTest
+//   mvn package exec:exec -Dbench.main=com.example.onlineshopping.bench.ExecutionModeLoadTest -Dbench.args="50 16,64,256,1024 8 15"
+//
+// Arguments: milliseconds added to each statement, database clients per step, facet readers, seconds per step.
+public class ExecutionModeLoadTest {
+
+    private static final int USERS = 1_000;
+
+    private static volatile long statementDelayMillis; // 0 while fixtures load
+
+    public static void main(String[] args) throws Exception {
+        long delayMillis = args.length > 0 ? Long.parseLong(args[0]) : 20;
+        int[] clientSteps = parseSteps(args.length > 1 ? args[1] : "8,32,128,512");
+        int readers = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int stepSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        for (String mode : new String[]{"blocking", "async"}) {
+            System.out.println();
+            System.out.println("app.web.execution.mode=" + mode + ", " + delayMillis + " ms per statement");
+            System.out.printf("%8s %10s %10s %10s %8s %8s %12s %12s%n",
+                    "clients", "orders/s", "orders p50", "orders p99", "503", "other", "facets/s", "facets p99");
+            run(mode, delayMillis, clientSteps, readers, stepSeconds);
+        }
+    }
+
+    private static void run(String mode, long delayMillis, int[] clientSteps, int readers, int stepSeconds) throws Exception {
+        // Same production-like thread and connection budget as AdmissionLoadTest
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(OnlineShoppingApplication.class, SlowDatabase.class)
+                .run("--server.port=0", "--server.tomcat.threads.max=32", "--spring.datasource.hikari.maximum-pool-size=10",
+                        "--app.web.execution.mode=" + mode);
+        try {
+            statementDelayMillis = 0;
+            FixtureLoader fixtures = new FixtureLoader(context.getBean(DataSource.class));
+            fixtures.load(1_000, USERS, 20_000, context.getBean(PasswordHasher.class).hash(FixtureLoader.PASSWORD));
+            TokenService tokenService = context.getBean(TokenService.class);
+            String[] bearerTokens = new String[USERS + 1];
+            for (int userId = 1; userId <= USERS; userId++) {
+                bearerTokens[userId] = "Bearer " + tokenService.issue((long) userId);
+            }
+            String base = "http://localhost:" + ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+            HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5))
+                    .executor(Executors.newCachedThreadPool()).build();
+            statementDelayMillis = delayMillis;
+
+            for (int clients : clientSteps) {
+                Step step = new Step();
+                long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(stepSeconds);
+                ExecutorService pool = Executors.newFixedThreadPool(readers + clients);
+                for (int i = 0; i < readers; i++) {
+                    pool.execute(() -> readFacets(client, base, end, step));
+                }
+                for (int i = 0; i < clients; i++) {
+                    pool.execute(() -> listOrders(client, base, bearerTokens, end, step));
+                }
+                pool.shutdown();
+                pool.awaitTermination(stepSeconds + 60L, TimeUnit.SECONDS);
+                System.out.printf("%8d %10d %7d us %7d us %8d %8d %12d %9d us%n", clients,
+                        step.orderLatency.getCount() / stepSeconds, step.orderLatency.percentile(0.5),
+                        step.orderLatency.percentile(0.99), step.unavailable.sum(), step.otherErrors.sum(),
+                        step.facetLatency.getCount() / stepSeconds, step.facetLatency.percentile(0.99));
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    private static void readFacets(HttpClient client, String base, long end, Step step) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/api/products/facets"))
+                .timeout(Duration.ofSeconds(30)).GET().build();
+        while (System.nanoTime() < end) {
+            long start = System.nanoTime();
+            try {
+                client.send(request, HttpResponse.BodyHandlers.discarding());
+            } catch (Exception e) {
+                // A timeout is a slow read, not a missing one
+            }
+            step.facetLatency.record((System.nanoTime() - start) / 1_000);
+        }
+    }
+
+    // Successful listings are timed; 503s (offload pool full, or timed out) are counted instead
+    private static void listOrders(HttpClient client, String base, String[] bearerTokens, long end, Step step) {
+        while (System.nanoTime() < end) {
+            int userId = 1 + ThreadLocalRandom.current().nextInt(USERS);
+            HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/api/orders/user/" + userId + "?limit=20"))
+                    .timeout(Duration.ofSeconds(30)).header("Authorization", bearerTokens[userId]).GET().build();
+            long start = System.nanoTime();
+            try {
+                int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                if (status == 200) {
+                    step.orderLatency.record((System.nanoTime() - start) / 1_000);
+                } else if (status == 503) {
+                    step.unavailable.increment();
+                } else {
+                    step.otherErrors.increment();
+                }
+            } catch (Exception e) {
+                step.otherErrors.increment();
+            }
+        }
+    }
+
+    private static int[] parseSteps(String value) {
+        List<Integer> steps = new ArrayList<>();
+        for (String part : value.split(",")) {
+            steps.add(Integer.parseInt(part.trim()));
+        }
+        return steps.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static class Step {
+        final LatencyHistogram orderLatency = new LatencyHistogram();
+        final LatencyHistogram facetLatency = new LatencyHistogram();
+        final LongAdder unavailable = new LongAdder();
+        final LongAdder otherErrors = new LongAdder();
+    }
+
+    // Registered as a source of this run only (not a @Configuration, so the other benchmarks never pick it up):
+    // every statement prepared on a pooled connection first sleeps, holding the connection like a slow query would
+    public static class SlowDatabase implements BeanPostProcessor {
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!(bean instanceof DataSource) || !"dataSource".equals(beanName)) {
+                return bean;
+            }
+            return new DelegatingDataSource((DataSource) bean) {
+                @Override
+                public Connection getConnection() throws SQLException {
+                    return slow(super.getConnection());
+                }
+            };
+        }
+
+        private static Connection slow(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, methodArgs) -> {
+                        long delay = statementDelayMillis;
+                        if (delay > 0 && (method.getName().startsWith("prepare") || method.getName().equals("createStatement"))) {
+                            Thread.sleep(delay);
+                        }
+                        try {
+                            return method.invoke(connection, methodArgs);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.onlineshopping.bench;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.EncodedResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Seeds the embedded database: the backend's own data.sql first, then synthetic rows up to the requested scale.
+// Everything is generated from a fixed seed, so two runs at the same scale see the same data.
+public class FixtureLoader {
+
+    static final String PASSWORD = "bench-password";
+    static final String[] SEARCH_TERMS = {"laptop", "智能手表", "running shoes", "coffee", "显示器"};
+
+    private static final String[] NAME_WORDS = {"Laptop", "Coffee", "Running Shoes", "Desk Lamp", "Backpack", "Headphones",
+            "智能手表", "显示器", "积木", "连衣裙", "Monitor", "Keyboard"};
+    private static final String[] MODELS = {"Pro", "Lite", "Max", "Mini", "Plus", "Air", "S1", "X"};
+    private static final int BATCH = 1_000;
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final Random random = new Random(42);
+    private List<String> categories;
+
+    public FixtureLoader(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    // passwordHash is PASSWORD hashed by the application, so logins measure a real check rather than the plain-text upgrade
+    public void load(int products, int users, int orders, String passwordHash) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            ScriptUtils.executeSqlScript(connection, new EncodedResource(new ClassPathResource("fixtures/data.sql"), "UTF-8"));
+        }
+        // Plenty of stock so order creation never runs dry in the middle of a measurement
+        jdbcTemplate.update("UPDATE products SET stock_quantity = 1000000000");
+        categories = jdbcTemplate.queryForList("SELECT DISTINCT category FROM products ORDER BY category", String.class);
+        insertProducts(products - countOf("products"));
+        insertUsers(users, passwordHash);
+        insertOrders(orders, users);
+    }
+
+    public List<String> categories() {
+        return categories;
+    }
+
+    public long maxProductId() {
+        return jdbcTemplate.queryForObject("SELECT MAX(id) FROM products", Long.class);
+    }
+
+    private int countOf(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+    }
+
+    private void insertProducts(int count) {
+        String sql = "INSERT INTO products (name, description, price, category, image_url, stock_quantity, version) VALUES (?, ?, ?, ?, ?, ?, 0)";
+        List<Object[]> batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < count; i++) {
+            String name = NAME_WORDS[random.nextInt(NAME_WORDS.length)] + " " + MODELS[random.nextInt(MODELS.length)] + " " + i;
+            batch.add(new Object[]{name, "Synthetic product " + i + " for benchmarks: " + name,
+                    BigDecimal.valueOf(100 + random.nextInt(100_000), 2), categories.get(random.nextInt(categories.size())),
+                    "https://placehold.co/600x400?text=" + i, 1_000_000_000});
+            if (batch.size() == BATCH) {
+                jdbcTemplate.batchUpdate(sql, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, batch);
+        }
+    }
+
+    private void insertUsers(int count, String passwordHash) {
+        String sql = "INSERT INTO users (username, password, email, first_name, last_name) VALUES (?, ?, ?, ?, ?)";
+        List<Object[]> batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < count; i++) {
+            batch.add(new Object[]{username(i), passwordHash, username(i) + "@bench.example.com", "Bench", "User " + i});
+            if (batch.size() == BATCH) {
+                jdbcTemplate.batchUpdate(sql, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, batch);
+        }
+    }
+
+    // Order headers only: line items use a pooled sequence that must stay under Hibernate's control
+    private void insertOrders(int count, int users) {
+        long firstUserId = jdbcTemplate.queryForObject("SELECT MIN(id) FROM users", Long.class);
+        String sql = "INSERT INTO orders (user_id, order_date, status, total_amount, shipping_address, billing_address) VALUES (?, ?, ?, ?, ?, ?)";
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        List<Object[]> batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < count; i++) {
+            batch.add(new Object[]{firstUserId + random.nextInt(users), Timestamp.valueOf(start.plusSeconds(i * 30L)),
+                    i % 10 == 0 ? "PENDING" : "DELIVERED", BigDecimal.valueOf(100 + random.nextInt(500_000), 2),
+                    "Bench Street " + i, "Bench Street " + i});
+            if (batch.size() == BATCH) {
+                jdbcTemplate.batchUpdate(sql, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, batch);
+        }
+    }
+
+    static String username(int index) {
+        return "bench-user-" + index;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.onlineshopping.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+// End-to-end request benchmarks: each call goes through the DispatcherServlet, interceptors, message
+// converters and the repositories, against the seeded embedded database. Results are microseconds per call.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ShopBenchmarks {
+
+    private static final int PAGE_SIZE = 50;
+
+    @Benchmark
+    public int listProductsPage(ShopState state) throws Exception {
+        long afterId = ThreadLocalRandom.current().nextLong(Math.max(1, state.maxProductId - PAGE_SIZE));
+        return perform(state, get("/api/products").param("after", String.valueOf(afterId)).param("limit", String.valueOf(PAGE_SIZE)));
+    }
+
+    @Benchmark
+    public int listProductsByCategory(ShopState state) throws Exception {
+        String category = state.categories.get(ThreadLocalRandom.current().nextInt(state.categories.size()));
+        return perform(state, get("/api/products").param("category", category));
+    }
+
+    @Benchmark
+    public int getProductById(ShopState state) throws Exception {
+        long id = 1 + ThreadLocalRandom.current().nextLong(state.maxProductId);
+        return perform(state, get("/api/products/" + id));
+    }
+
+    @Benchmark
+    public int searchByName(ShopState state) throws Exception {
+        String term = FixtureLoader.SEARCH_TERMS[ThreadLocalRandom.current().nextInt(FixtureLoader.SEARCH_TERMS.length)];
+        return perform(state, get("/api/products").param("name", term));
+    }
+
+    @Benchmark
+    public int createOrder(ShopState state) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int userId = 1 + random.nextInt(state.users);
+        long firstProduct = 1 + random.nextLong(state.maxProductId);
+        long secondProduct = 1 + random.nextLong(state.maxProductId);
+        String body = "{\"userId\":" + userId + ",\"shippingAddress\":\"Bench Street 1\",\"billingAddress\":\"Bench Street 1\","
+                + "\"items\":[{\"productId\":" + firstProduct + ",\"quantity\":1},{\"productId\":" + secondProduct + ",\"quantity\":2}]}";
+        MvcResult started = state.mockMvc.perform(post("/api/orders")
+                .header("Authorization", state.bearerTokens[userId]).contentType(MediaType.APPLICATION_JSON).content(body)).andReturn();
+        return check(state.mockMvc.perform(asyncDispatch(started)).andReturn());
+    }
+
+    @Benchmark
+    public int login(ShopState state) throws Exception {
+        String username = FixtureLoader.username(ThreadLocalRandom.current().nextInt(state.users));
+        String body = "{\"username\":\"" + username + "\",\"password\":\"" + FixtureLoader.PASSWORD + "\"}";
+        return perform(state, post("/api/users/login").contentType(MediaType.APPLICATION_JSON).content(body));
+    }
+
+    // The response size is returned so the JIT cannot drop the work
+    private static int perform(ShopState state, RequestBuilder request) throws Exception {
+        return check(state.mockMvc.perform(request).andReturn());
+    }
+
+    private static int check(MvcResult result) throws Exception {
+        int status = result.getResponse().getStatus();
+        if (status >= 400) {
+            throw new IllegalStateException("Benchmark request failed with " + status + ": " + result.getResponse().getContentAsString());
+        }
+        return result.getResponse().getContentAsByteArray().length;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.onlineshopping.bench;
+
+import com.example.onlineshopping.OnlineShoppingApplication;
+import com.example.onlineshopping.security.PasswordHasher;
+import com.example.onlineshopping.security.TokenService;
+import com.example.onlineshopping.service.ProductSearchIndex;
+import com.example.onlineshopping.service.UserIdentityIndex;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+// One application context and one seeded database per trial, shared by all benchmark threads.
+// Scale is set with JMH parameters, e.g. -p products=1000000 -p orders=1000000.
+@State(Scope.Benchmark)
+public class ShopState {
+
+    @Param({"10000"})
+    public int products;
+
+    @Param({"10000"})
+    public int orders;
+
+    ConfigurableApplicationContext context;
+    MockMvc mockMvc;
+    List<String> categories;
+    long maxProductId;
+    int users;
+    String[] bearerTokens; // Indexed by user id
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        context = new SpringApplicationBuilder(OnlineShoppingApplication.class).run();
+        users = Math.max(100, orders / 10);
+        FixtureLoader fixtures = new FixtureLoader(context.getBean(DataSource.class));
+        fixtures.load(products, users, orders, context.getBean(PasswordHasher.class).hash(FixtureLoader.PASSWORD));
+        categories = fixtures.categories();
+        maxProductId = fixtures.maxProductId();
+        context.getBean(ProductSearchIndex.class).rebuild(); // Both were built on startup, before the data existed
+        context.getBean(UserIdentityIndex.class).rebuild();
+        TokenService tokenService = context.getBean(TokenService.class);
+        bearerTokens = new String[users + 1];
+        for (int userId = 1; userId <= users; userId++) {
+            bearerTokens[userId] = "Bearer " + tokenService.issue((long) userId);
+        }
+        // The token filter is the only servlet filter the API relies on; MockMvc does not pick filters up by itself
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context)
+                .addFilters(context.getBean("tokenAuthenticationFilter", FilterRegistrationBean.class).getFilter())
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.onlineshopping.bench;
+
+import com.example.onlineshopping.OnlineShoppingApplication;
+import com.example.onlineshopping.metrics.LatencyHistogram;
+import com.example.onlineshopping.security.PasswordHasher;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+// Time from launch to the first ready request, for the default startup and for the prod profile. The database is an
+// H2 file seeded once (and its schema fingerprint recorded, as a release would); each run then starts the backend as
+// a fresh JVM, polls GET /api/health/readiness until it answers 200, and right away sends the first user traffic:
+// product lookups spread over the whole catalogue and one category listing. Prints every run and the medians; the
+// third mode shows what the warm-up costs in time to ready and what it saves on the first requests.
+//
+//   mvn package exec:exec -Dbench.main=com.example.onlineshopping.bench.StartupBenchmark
+//   mvn package exec:exec -Dbench.main=com.example.onlineshopping.bench.StartupBenchmark -Dbench.args="10 50000"
+//
+// Arguments: runs per mode, products.
+public class StartupBenchmark {
+
+    private static final Path DIRECTORY = Paths.get("target", "startup-bench").toAbsolutePath();
+    private static final String DATABASE_URL = "jdbc:h2:file:" + DIRECTORY.resolve("shop") + ";MODE=MySQL";
+    private static final int FIRST_LOOKUPS = 100;
+
+    private static long maxProductId; // Set by prepare
+    private static String category;
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int products = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+
+        prepare(products);
+        int launched = 0;
+        String[][] modes = {
+                {"default", "--spring.jpa.hibernate.ddl-auto=update"},
+                {"prod", "--spring.profiles.active=prod"},
+                {"prod, no warm-up", "--spring.profiles.active=prod", "--app.startup.warmup.enabled=false"}
+        };
+        for (String[] mode : modes) {
+            System.out.println();
+            String[] arguments = Arrays.copyOfRange(mode, 1, mode.length);
+            System.out.println(mode[0] + " (" + String.join(" ", arguments) + ")");
+            System.out.printf("%4s %10s %14s %14s %14s %14s%n",
+                    "run", "ready ms", "1st lookup ms", "lookups p50", "lookups max", "1st listing ms");
+            List<Run> results = new ArrayList<>();
+            for (int i = 1; i <= runs; i++) {
+                Run run = launch("run-" + (++launched), arguments);
+                results.add(run);
+                System.out.printf("%4d %10d %14.1f %11d us %11d us %14.1f%n", i, run.readyMillis, run.firstLookupMicros / 1000.0,
+                        run.lookups.percentile(0.5), run.lookups.percentile(1.0), run.firstListingMicros / 1000.0);
+            }
+            System.out.printf("median %8d %14.1f %14s %14s %14.1f%n", median(results, r -> r.readyMillis),
+                    median(results, r -> r.firstLookupMicros) / 1000.0, "", "", median(results, r -> r.firstListingMicros) / 1000.0);
+        }
+    }
+
+    // Schema from the entities, then the fingerprint prod instances check against, then the data
+    private static void prepare(int products) throws Exception {
+        if (Files.exists(DIRECTORY)) {
+            try (Stream<Path> files = Files.walk(DIRECTORY)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+        Files.createDirectories(DIRECTORY);
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(OnlineShoppingApplication.class)
+                .run("--spring.datasource.url=" + DATABASE_URL, "--spring.jpa.hibernate.ddl-auto=create",
+                        "--app.schema.check=version", "--app.schema.record=true");
+        try {
+            FixtureLoader fixtures = new FixtureLoader(context.getBean(DataSource.class));
+            fixtures.load(products, 1_000, 20_000, context.getBean(PasswordHasher.class).hash(FixtureLoader.PASSWORD));
+            maxProductId = fixtures.maxProductId();
+            category = fixtures.categories().get(0);
+        } finally {
+            context.close();
+        }
+    }
+
+    private static Run launch(String name, String... arguments) throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        File log = DIRECTORY.resolve(name + ".log").toFile();
+        List<String> command = new ArrayList<>(Arrays.asList(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), OnlineShoppingApplication.class.getName(),
+                "--spring.datasource.url=" + DATABASE_URL, "--server.port=" + port));
+        command.addAll(Arrays.asList(arguments));
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(1)).build();
+        String base = "http://localhost:" + port;
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+        try {
+            Run run = new Run();
+            while (status(client, base + "/api/health/readiness") != 200) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("The backend exited during startup, see " + log);
+                }
+                if (System.nanoTime() - start > TimeUnit.MINUTES.toNanos(5)) {
+                    throw new IllegalStateException("Not ready after 5 minutes, see " + log);
+                }
+                Thread.sleep(5);
+            }
+            run.readyMillis = (System.nanoTime() - start) / 1_000_000;
+
+            // Same ids every run, spread over the catalogue rather than the handful the warm-up touched
+            Random random = new Random(7);
+            for (int i = 0; i < FIRST_LOOKUPS; i++) {
+                long id = 1 + (long) (random.nextDouble() * maxProductId);
+                long sent = System.nanoTime();
+                status(client, base + "/api/products/" + id);
+                long micros = (System.nanoTime() - sent) / 1_000;
+                if (i == 0) {
+                    run.firstLookupMicros = micros;
+                }
+                run.lookups.record(micros);
+            }
+            long sent = System.nanoTime();
+            status(client, base + "/api/products?category=" + URLEncoder.encode(category, StandardCharsets.UTF_8));
+            run.firstListingMicros = (System.nanoTime() - sent) / 1_000;
+            return run;
+        } finally {
+            // SIGTERM, so the context closes and H2 writes the database file back cleanly for the next run
+            process.destroy();
+            if (!process.waitFor(60, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    // -1 while the server is not listening yet
+    private static int status(HttpClient client, String url) {
+        try {
+            return client.send(HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(30)).GET().build(),
+                    HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static long median(List<Run> runs, ToLongFunction<Run> value) {
+        List<Long> values = new ArrayList<>();
+        for (Run run : runs) {
+            values.add(value.applyAsLong(run));
+        }
+        Collections.sort(values);
+        return values.get(values.size() / 2);
+    }
+
+    private static class Run {
+        long readyMillis;
+        long firstLookupMicros;
+        long firstListingMicros;
+        final LatencyHistogram lookups = new LatencyHistogram();
+    }
+}
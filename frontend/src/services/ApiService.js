@@ -27,6 +27,9 @@ export default {
   loginUser(credentials) {
     return apiClient.post('/users/login', credentials);
   },
+  logoutUser(token) { // Revokes the token on the server; passed explicitly because it is cleared from localStorage right away
+    return apiClient.post('/users/logout', null, { headers: { Authorization: `Bearer ${token}` } });
+  },
   getUser(userId) {
     return apiClient.get(`/users/${userId}`);
   },